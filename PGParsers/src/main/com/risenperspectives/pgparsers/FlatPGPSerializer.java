@@ -1,5 +1,14 @@
 package com.risenperspectives.pgparsers;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
 import com.risenperspectives.pgparsers.PGPNode.PGPDataType;
 
 public class FlatPGPSerializer implements PGPSerializerInterface {
@@ -8,6 +17,15 @@ public class FlatPGPSerializer implements PGPSerializerInterface {
 	private int    debug_;
 	private String EOL = System.getProperty("line.separator");
 
+	// Parallel serializing (PGPOptionFlags.PARALLEL)
+	private ForkJoinPool pool_;
+	private int    parallelThreshold_ = 1 << 14;	// smaller trees (in nodes) are serialized sequentially
+	private PGPParallelSerializer parallel_;
+	private PGPMetrics metrics_ = PGPMetrics.NONE;
+
+	// Streaming (serialize to an Appendable or OutputStream)
+	private static final int WRITE_CHUNK = 8192;	// chars gathered before handing them on
+
 	public String protocolName() { return "FLAT"; }
 
 	public void setFlags( PGPOptionFlags flags ) {
@@ -32,6 +50,55 @@ public class FlatPGPSerializer implements PGPSerializerInterface {
 		return null;
 	}
 
+	// setForkJoinPool() -- pool used when the PARALLEL flag is set. null uses the common pool.
+	public void setForkJoinPool( ForkJoinPool pool ) {
+		pool_     = pool;
+		parallel_ = null;
+	}
+	public ForkJoinPool getForkJoinPool() {
+		return pool_;
+	}
+
+	// setParallelThreshold() -- Nodes with fewer nodes below them than this are serialized
+	// sequentially even when the PARALLEL flag is set.
+	public void setParallelThreshold( int nodes ) {
+		parallelThreshold_ = nodes;
+		parallel_          = null;
+	}
+	public int getParallelThreshold() {
+		return parallelThreshold_;
+	}
+
+	// setMetrics() -- told of each serialize, or PGPMetrics.NONE (or null) for none.
+	public void setMetrics( PGPMetrics metrics ) {
+		metrics_ = (null == metrics) ? PGPMetrics.NONE : metrics;
+	}
+	public PGPMetrics getMetrics() {
+		return metrics_;
+	}
+
+	// parallel() -- renders the children of large nodes in parallel when the PARALLEL flag is set.
+	// returns null when serializing sequentially.
+	private PGPParallelSerializer parallel() {
+		if ( null == flags_ || !flags_.isSet(PGPOptionFlags.PARALLEL) )
+			return null;
+		if ( null == parallel_ )
+			parallel_ = new PGPParallelSerializer( new PGPParallelSerializer.Renderer() {
+				public StringBuilder serialize( StringBuilder sb, PGPNode node, int atDepth ) {
+					return FlatPGPSerializer.this.serialize( sb, node, atDepth );
+				}
+				public void serializeSiblings( StringBuilder sb, PGPNode first, PGPNode last, int atDepth ) {
+					// One walk for the run, so the flat name of first is looked up only once.
+					try {
+						FlatPGPSerializer.this.serialize( sb, null, first, (null != last) ? last : first.parent_.headChild_.prev_, atDepth );
+					} catch ( IOException e ) {
+						throw new UncheckedIOException( e );
+					}
+				}
+			}, node -> true, pool_, parallelThreshold_ );
+		return parallel_;
+	}
+
 	// encodeAndAppend().  Encodes a string and appends it to the StringBuilder.
 	public void encodeAndAppend( StringBuilder sb, String s ) {
 
@@ -61,6 +128,13 @@ public class FlatPGPSerializer implements PGPSerializerInterface {
 	}
 
 	public StringBuilder serialize( StringBuilder sb, PGPNode node, PGPOptionFlags flags ) {
+		if ( PGPMetrics.NONE != metrics_ )
+			return PGPMetered.serialize( metrics_, protocolName(), sb, node, () -> serializeText( sb, node, flags ) );
+		return serializeText( sb, node, flags );
+	}
+
+	// serializeText() -- serialize() without the metrics.
+	private StringBuilder serializeText( StringBuilder sb, PGPNode node, PGPOptionFlags flags ) {
 		flags_ = (null == flags) ? new PGPOptionFlags() : flags;
 		PGPNode siblingNode = node;
 		do {
@@ -68,17 +142,97 @@ public class FlatPGPSerializer implements PGPSerializerInterface {
 			siblingNode = siblingNode.next_;
 		} while ( (null == getLastErrorText()) && (siblingNode != null) && (siblingNode != node) );
 
-		return serialize( sb, node, 0 );
+		return sb;
+	}
+
+	// serialize() -- streams the node, its following siblings and their subnodes to out
+	// (a Writer, PrintStream, StringBuilder...). The output is handed to out in pieces of
+	// about WRITE_CHUNK chars, so it is never all in memory.
+	public void serialize( Appendable out, PGPNode node, PGPOptionFlags flags ) throws IOException {
+		if ( PGPMetrics.NONE != metrics_ ) {
+			PGPMetered.Counter counter = PGPMetered.counter( out );
+			PGPMetered.serialize( metrics_, protocolName(), counter, node, () -> serializeText( counter, node, flags ) );
+			return;
+		}
+		serializeText( out, node, flags );
+	}
+
+	// serializeText() -- serialize() to out without the metrics.
+	private void serializeText( Appendable out, PGPNode node, PGPOptionFlags flags ) throws IOException {
+		flags_ = (null == flags) ? new PGPOptionFlags() : flags;
+		StringBuilder sb = new StringBuilder( WRITE_CHUNK + 1024 );
+		PGPNode last = (null != node.parent_) ? node.parent_.headChild_.prev_ : (null != node.prev_) ? node.prev_ : node;
+		serialize( sb, out, node, last, 0 );
+		out.append( sb );
+	}
+
+	// serialize() -- streams the node, its following siblings and their subnodes to out as UTF-8.
+	// out is flushed, not closed.
+	public void serialize( OutputStream out, PGPNode node, PGPOptionFlags flags ) throws IOException {
+		Writer writer = new OutputStreamWriter( out, StandardCharsets.UTF_8 );
+		serialize( writer, node, flags );
+		writer.flush();
 	}
 
 	// serialize() -- renders the node and subnodes to look like Flat Namespace output
 	//  returns the StringBuilder.
 	public StringBuilder serialize( StringBuilder sb, PGPNode node, int atDepth ) {
-
 		if ( null == sb )
 			sb = new StringBuilder( 2000 );
-		StringBuilder sbFlatName = node.appendFlatName( sb );
-		String flatName = sbFlatName.toString();
+		try {
+			serialize( sb, null, node, node, atDepth );
+		} catch ( IOException e ) {
+			throw new UncheckedIOException( e );	// Can't happen without an Appendable
+		}
+		return sb;
+	}
+
+	// serialize() -- renders the siblings from first through last and their subnodes.
+	// The walk goes down .headChild_ and back up .parent_ instead of recursing, and the
+	// flat name is kept in a FlatPath that grows and shrinks with it, so each line costs
+	// only its own length. When out isn't null, sb is handed to it every WRITE_CHUNK chars.
+	private void serialize( StringBuilder sb, Appendable out, PGPNode first, PGPNode last, int atDepth ) throws IOException {
+		PGPParallelSerializer parallel = parallel();
+		FlatPath path    = new FlatPath( first );
+		PGPNode  current = first;
+		int      depth   = atDepth;
+		while ( true ) {
+			serializeNode( sb, current, path.name_ );
+			if ( null != out && sb.length() >= WRITE_CHUNK ) {
+				out.append( sb );
+				sb.setLength( 0 );
+			}
+			if ( null != current.headChild_ && (null == parallel || !parallel.serializeChildren( sb, current, depth+1 )) ) {
+				current = current.headChild_;	// Go down to the children
+				path.push( current );
+				++depth;
+				continue;
+			}
+
+			// On to the next sibling, or the next sibling of a parent.
+			while ( true ) {
+				if ( depth == atDepth ) {
+					if ( current == last )
+						return;
+					current = current.next_;	// On to the next of the siblings asked for
+					path.next( current );
+					break;
+				}
+				if ( current.next_ != current.parent_.headChild_ ) {
+					current = current.next_;	// On to the next sibling
+					path.next( current );
+					break;
+				}
+				current = current.parent_;
+				path.pop();
+				--depth;
+			}
+		}
+
+	}//serialize()
+
+	// serializeNode() -- renders the attributes and value of one node.
+	private void serializeNode( StringBuilder sb, PGPNode node, StringBuilder flatName ) {
 
 		// Add in the attributes if any
 		PGPNode firstAttr = node.getAttr();
@@ -100,18 +254,63 @@ public class FlatPGPSerializer implements PGPSerializerInterface {
 			sb.append(EOL);
 		}
 
-		// Go through and output the children
-		PGPNode firstChild = node.getChild();
-		subnode            = firstChild;
-		while ( null != subnode ) {
-			serialize( sb, subnode, atDepth+1 );
-			subnode = subnode.getNext();
-			if ( subnode == firstChild )
-				break;
+	}//serializeNode()
+
+
+	// FlatPath -- the flat name of the node being rendered, kept up to date as the walk
+	// moves, like PGPNode.flatName() but without walking up to the top for every node.
+	// Unnamed nodes are shown by their index, which is counted as the walk goes along.
+	private static class FlatPath {
+		final StringBuilder name_ = new StringBuilder( 256 );
+		private int[] marks_ = new int[32];	// length of name_ before the name of the node at each level
+		private int[] index_ = new int[32];	// index of the node at each level among its siblings
+		private int   level_;
+
+		// FlatPath() -- starts with the flat name of first. Only first has its parents looked up.
+		FlatPath( PGPNode first ) {
+			PGPNode parent = first.parent_;
+			if ( null != parent )
+				parent.appendFlatName( name_ );
+			index_[0] = (null == parent) ? 0 : first.indexOf();
+			append( first );
 		}
 
-		return sb;
+		// push() -- goes down to node, the first child of the current node.
+		void push( PGPNode node ) {
+			if ( ++level_ == marks_.length ) {
+				marks_ = Arrays.copyOf( marks_, level_ * 2 );
+				index_ = Arrays.copyOf( index_, level_ * 2 );
+			}
+			index_[ level_ ] = 0;
+			append( node );
+		}
 
-	}//serialize()
+		// next() -- moves over to node, the next sibling of the current node.
+		void next( PGPNode node ) {
+			++index_[ level_ ];
+			name_.setLength( marks_[ level_ ] );
+			append( node );
+		}
+
+		// pop() -- goes back up to the parent of the current node.
+		// Its name is already in name_, under the names of the levels below.
+		void pop() {
+			name_.setLength( marks_[ level_ ] );
+			--level_;
+		}
+
+		private void append( PGPNode node ) {
+			marks_[ level_ ] = name_.length();
+			if ( null == node.parent_ )
+				return;	// The top node has no name of its own
+			if ( null != node.parent_.parent_ )
+				name_.append( '.' );
+			if ( null != node.name_ )
+				name_.append( node.name_ );
+			else
+				name_.append( '[' ).append( index_[ level_ ] ).append( ']' );
+		}
+
+	}//class FlatPath
 
 }//class FlatPGPSerializer
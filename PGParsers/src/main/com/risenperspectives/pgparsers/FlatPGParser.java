@@ -6,7 +6,12 @@ package com.risenperspectives.pgparsers;
 // February, 2025
 //
 
-import java.util.Hashtable;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import com.risenperspectives.pgparsers.PGPNode.PGPDataType;
 
@@ -15,17 +20,51 @@ public class FlatPGParser implements PGParsersInterface {
 	public  PGPOptionFlags flags_ = new PGPOptionFlags();
 	private int    debug_;
 
-	private String data_;
+	private PGPChars data_;
+	private int    end_;	// scanning stops here (end of the data, or end of a chunk)
 	public  int    onLine_;
 	public  int    at_;
 	private boolean bPastSpaces_;
 	public  int    onCharOfLine_;
 
+	// Parallel parsing (PGPOptionFlags.PARALLEL)
+	private ForkJoinPool pool_;
+	private int    parallelThreshold_ = 1 << 20;	// smaller documents are parsed sequentially
+	private int    minChunkSize_      = 1 << 16;
+
+	// Progress reporting (setProgressListener())
+	private PGPProgressListener progress_;
+	private int    nextProgressAt_ = Integer.MAX_VALUE;
+	private static final int PROGRESS_CHARS = 1 << 16;	// chars between progress() calls
+
+	// Metrics (setMetrics())
+	private PGPMetrics metrics_ = PGPMetrics.NONE;
+
+	// Chunk state. Only used by the parsers working on a chunk of a parallel parse.
+	private boolean chunked_;
+	private int     chunkStart_;
+	private PGPNode chunkTop_;
+	private PGPException chunkError_;
+	private boolean mixedIndex_;	// An [index] landed on a named node. The chunk can't be merged.
+	private IdentityHashMap<PGPNode,Integer> indexBase_;	// Array parents whose first element seen in the chunk wasn't [0]
+	private IdentityHashMap<PGPNode,Integer> lateValues_;	// Nodes given a value after they had children (child count then)
+
 	public String protocolName() { return "FLAT"; }
 
 	public FlatPGParser() {
 	}
 
+	// Parser for one chunk of a parallel parse.
+	private FlatPGParser( PGPChars data, int start, int end ) {
+		data_       = data;
+		at_         = start;
+		end_        = end;
+		chunked_    = true;
+		chunkStart_ = start;
+		indexBase_  = new IdentityHashMap<PGPNode,Integer>();
+		lateValues_ = new IdentityHashMap<PGPNode,Integer>();
+	}
+
 	public void setFlags( PGPOptionFlags flags ) {
 		flags_ = flags;
 	}
@@ -37,6 +76,60 @@ public class FlatPGParser implements PGParsersInterface {
 		debug_ = dbgLevel;
 	}
 
+	// setForkJoinPool() -- pool used when the PARALLEL flag is set. null uses the common pool.
+	public void setForkJoinPool( ForkJoinPool pool ) {
+		pool_ = pool;
+	}
+	public ForkJoinPool getForkJoinPool() {
+		return pool_;
+	}
+
+	// setParallelThreshold() -- Documents shorter than this (in chars) are parsed sequentially
+	// even when the PARALLEL flag is set.
+	public void setParallelThreshold( int chars ) {
+		parallelThreshold_ = chars;
+	}
+	public int getParallelThreshold() {
+		return parallelThreshold_;
+	}
+
+	// reportProgress() -- tells the progress listener how far the parse has got.
+	// throws PGPException if the listener cancels the parse.
+	private void reportProgress() throws PGPException {
+		nextProgressAt_ = at_ + PROGRESS_CHARS;
+		if ( !progress_.progress( at_, data_.length() ) )
+			throw new PGPException( at_, onLine_, onCharOfLine_, 1, "Parse cancelled" );
+	}
+
+	// startProgress() -- resets the progress reporting for a new parse.
+	private void startProgress() {
+		nextProgressAt_ = (null == progress_) ? Integer.MAX_VALUE : PROGRESS_CHARS;
+	}
+
+	// endProgress() -- tells the progress listener the parse is done.
+	private void endProgress() {
+		nextProgressAt_ = Integer.MAX_VALUE;
+		if ( null != progress_ )
+			progress_.progress( data_.length(), data_.length() );
+	}
+
+
+	// setProgressListener() -- listener told of the progress of each parse, or null for none.
+	public void setProgressListener( PGPProgressListener listener ) {
+		progress_ = listener;
+	}
+	public PGPProgressListener getProgressListener() {
+		return progress_;
+	}
+
+	// setMetrics() -- told of each parse, or PGPMetrics.NONE (or null) for none.
+	public void setMetrics( PGPMetrics metrics ) {
+		metrics_ = (null == metrics) ? PGPMetrics.NONE : metrics;
+	}
+	public PGPMetrics getMetrics() {
+		return metrics_;
+	}
+
 	public String getLastErrorText() {
 		return null;
 	}
@@ -46,7 +139,7 @@ public class FlatPGParser implements PGParsersInterface {
 	// and the indent.
 	//
 	protected char getNext() {
-		if ( at_ < data_.length()) {
+		if ( at_ < end_ ) {
 			char c = data_.charAt(at_++);
 			onCharOfLine_++;
 			if ( c == '\n' ) {
@@ -82,7 +175,7 @@ public class FlatPGParser implements PGParsersInterface {
 	// at_ will be after the character returned.
 	//
 	protected char getNextNonSpaceChar() {
-		while ( at_ < data_.length() ) {
+		while ( at_ < end_ ) {
 			char c = data_.charAt(at_++);
 			onCharOfLine_++;
 
@@ -91,7 +184,7 @@ public class FlatPGParser implements PGParsersInterface {
 				// We have reached the start of a comment.
 				// skip to the eol
 				c = 0;
-				while ( at_ < data_.length() ) {
+				while ( at_ < end_ ) {
 					c = data_.charAt(at_++);
 					onCharOfLine_++;
 					if ( c == '\n' )
@@ -108,9 +201,9 @@ public class FlatPGParser implements PGParsersInterface {
 	}//getNextNonSpaceChar()
 
 
-	public String decodeValue( String data, int start, int end ) {
+	public String decodeValue( CharSequence data, int start, int end ) {
 
-		return data.substring(start,end);
+		return data.subSequence(start,end).toString();
 
 	}//decodeValue()
 
@@ -121,25 +214,67 @@ public class FlatPGParser implements PGParsersInterface {
 		flags_ = flags;
 		return parse( data );
 	}
+	public PGPNode parse( CharSequence text, PGPOptionFlags flags ) throws PGPException
+	{
+		flags_ = flags;
+		return parse( text );
+	}
+
+	public PGPNode parse( String data ) throws PGPException {
+		return parse( (CharSequence)data );
+	}
 
 	// parse() -- Scan a FLAT message and create a PGPNode structure.
+	// The text is read in place: a StringBuilder or CharBuffer is not copied to a String first.
 	// returns topNode
 	// If there was an error, the lastError_ value will have a non-zero value.
 	// If
-	public PGPNode parse( String data ) throws PGPException {
+	public PGPNode parse( CharSequence text ) throws PGPException {
+		if ( PGPMetrics.NONE == metrics_ )
+			return parseText( text );
+		return PGPMetered.parse( metrics_, protocolName(), text, () -> parseText( text ), null );
+	}
+
+	// parseText() -- parse() without the metrics.
+	private PGPNode parseText( CharSequence text ) throws PGPException {
 		if (debug_>0) System.out.println("Enter: parse()" );
 
+		PGPChars data = PGPChars.of( text );
+
+		if ( null != flags_ && flags_.isSet(PGPOptionFlags.PARALLEL) && data.length() >= parallelThreshold_ ) {
+			PGPNode topNode = parseParallel( data );
+			if ( null != progress_ )
+				progress_.progress( data.length(), data.length() );
+			return topNode;
+		}
+
 		PGPNode topNode = new PGPNode();
 
 		data_         = data;
+		end_          = data.length();
 		at_           = 0;
 		onLine_       = 0;
 		onCharOfLine_ = 0;
 		bPastSpaces_  = false;
+		chunked_      = false;
+		startProgress();
+
+		scanInLines( topNode );
+
+		endProgress();
+		return topNode;
 
+	}//parseText()
+
+
+	// scanInLines() -- Scans the lines from at_ up to end_ into the topNode.
+	private void scanInLines( PGPNode topNode ) throws PGPException {
 		char c;
 		while ( (c = getNextNonSpaceChar()) != '\0')
 		{
+			if ( at_ >= nextProgressAt_ )
+				reportProgress();
+
 			// scan in the full name (before the '=', or an Attributes '#' )
 			int nameAnchor = at_-1;
 			while ( (c = getNext() ) != 0 && c != '=' && c != '#' && c != '\n' ) {
@@ -151,7 +286,7 @@ public class FlatPGParser implements PGParsersInterface {
 				throw new PGPException( at_, onLine_, onCharOfLine_, 1, "'=' not found on line at" + at_ );
 
 			String nodeName = data_.substring(nameAnchor, at_-1);
-			PGPNode node = topNode.getNodeFromFlatName( nodeName );
+			PGPNode node = chunked_ ? getChunkNode( topNode, nodeName ) : topNode.getNodeFromFlatName( nodeName );
 
 			if ( c == '#' ) {
 				// We have an attribute.
@@ -179,13 +314,300 @@ public class FlatPGParser implements PGParsersInterface {
 				valueLen--; // don't include the '\n'
 			if (  valueLen >= 0 ) {
 				String value = decodeValue( data_, valueAnchor, valueAnchor+valueLen );
+				if ( chunked_ && null != node.headChild_ )
+					lateValues_.put( node, node.getChildCount() );
 				node.setValue( value, PGPDataType.STRING );
 			}
 
 		}//while not at end
 
+	}//scanInLines()
+
+
+	// parseParallel() -- Cuts the data into chunks on line boundaries, parses the chunks
+	// into partial trees on the ForkJoinPool, then merges the partial trees in order.
+	// The result is the same tree a sequential parse() produces. If a chunk uses [index]
+	// and names for the same parent in a way that can't be merged, the whole document is
+	// parsed sequentially instead.
+	public PGPNode parseParallel( CharSequence text ) throws PGPException {
+		if (debug_>0) System.out.println("Enter: parseParallel()" );
+
+		PGPChars data = PGPChars.of( text );
+		ForkJoinPool pool = (null != pool_) ? pool_ : ForkJoinPool.commonPool();
+		int len       = data.length();
+		int chunkSize = Math.max( minChunkSize_, len / (4 * pool.getParallelism()) );
+
+		List<FlatPGParser> chunks = new ArrayList<FlatPGParser>();
+		int start = 0;
+		while ( start < len ) {
+			int end = start + chunkSize;
+			if ( end >= len )
+				end = len;
+			else {
+				end = data.indexOf( '\n', end );
+				end = (end < 0) ? len : end+1;	// The chunk includes its last '\n'
+			}
+			chunks.add( new FlatPGParser( data, start, end ) );
+			start = end;
+		}
+
+		if ( chunks.size() > 1 ) {
+			pool.invoke( new ChunkTask( chunks, 0, chunks.size() ) );
+
+			// Report the first error in document order, with a document line number.
+			for ( FlatPGParser chunk : chunks ) {
+				PGPException e = chunk.chunkError_;
+				if ( null != e ) {
+					int lines = 0;
+					for ( int i = 0; i < chunk.chunkStart_; ++i )
+						if ( data.charAt(i) == '\n' )
+							++lines;
+					throw new PGPException( e.at_, e.line_ + lines, e.onCharOfLine_, e.error_, e.message_ );
+				}
+			}
+
+			PGPNode topNode = mergeChunks( chunks );
+			if ( null != topNode )
+				return topNode;
+			if (debug_>0) System.out.println("  chunks can't be merged, parsing sequentially" );
+		}
+
+		// Sequential parse
+		PGPOptionFlags flags = flags_;
+		flags_ = new PGPOptionFlags( (null == flags) ? 0 : flags.getFlagsInt() );
+		flags_.clearFlag( PGPOptionFlags.PARALLEL );
+		try {
+			return parse( data );
+		} finally {
+			flags_ = flags;
+		}
+
+	}//parseParallel()
+
+
+	// ChunkTask -- parses a range of chunks, splitting the range in halves.
+	private static class ChunkTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final List<FlatPGParser> chunks_;
+		private final int from_;
+		private final int to_;
+
+		ChunkTask( List<FlatPGParser> chunks, int from, int to ) {
+			chunks_ = chunks;
+			from_   = from;
+			to_     = to;
+		}
+
+		protected void compute() {
+			if ( to_ - from_ == 1 ) {
+				FlatPGParser chunk = chunks_.get( from_ );
+				chunk.chunkTop_ = new PGPNode();
+				try {
+					chunk.scanInLines( chunk.chunkTop_ );
+				} catch ( PGPException e ) {
+					chunk.chunkError_ = e;
+				}
+				return;
+			}
+			int mid = (from_ + to_) >>> 1;
+			invokeAll( new ChunkTask( chunks_, from_, mid ), new ChunkTask( chunks_, mid, to_ ) );
+		}
+	}//class ChunkTask
+
+
+	// arrayIndex() -- returns the index of an "[n]" name, or -1 if the name is not an index.
+	// Follows the same rules as PGPNode.getNodeFromNameList().
+	static int arrayIndex( String name ) {
+		int nlen = name.length();
+		if (   (nlen < 3)
+			|| (name.charAt(0) != '[')
+			|| (name.charAt(nlen-1) != ']')
+			|| !Character.isDigit( name.charAt(1) )
+		   )
+			return -1;
+		int index=0;
+		for (int i=1; i<(nlen-1); ++i) {
+			char c = name.charAt(i);
+			if ( !Character.isDigit(c) )
+				break;
+			index = (index*10) + (c - '0');
+		}
+		return index;
+	}//arrayIndex()
+
+
+	// getChunkNode() -- Like PGPNode.getNodeFromFlatName(), but array elements are created
+	// sparsely. An array that first shows up in a chunk at [n] only gets elements from [n] on,
+	// since the elements before it are likely in an earlier chunk. indexBase_ remembers n.
+	private PGPNode getChunkNode( PGPNode node, String flatName ) {
+		for ( String name : flatName.split( PGPNode.getNameSeparator() ) ) {
+			int index = arrayIndex( name );
+			node = (index >= 0) ? getChunkElement( node, index ) : getChunkChild( node, name );
+		}
+		return node;
+	}//getChunkNode()
+
+	private PGPNode getChunkChild( PGPNode parent, String name ) {
+		PGPNode node = parent.headChild_;
+		if ( null == node )
+			return parent.addChild( name );
+		do {
+			if ( name.equals( node.name_ ) )
+				return node;
+			node = node.next_;
+		} while ( node != parent.headChild_ );
+		parent.setType( PGPDataType.OBJECT );
+		return parent.addChild( name );
+	}//getChunkChild()
+
+	private PGPNode getChunkElement( PGPNode parent, int index ) {
+		if ( null == parent.headChild_ ) {
+			parent.setType( PGPDataType.ARRAY );
+			if ( index > 0 )
+				indexBase_.put( parent, index );
+			return parent.addChild();
+		}
+
+		Integer baseIndex = indexBase_.get( parent );
+		int base = (null == baseIndex) ? 0 : baseIndex;
+		if ( index < base ) {
+			// An element before the first one this chunk has seen. Fill in ahead of the head.
+			for ( int i = base-1; i >= index; --i )
+				parent.headChild_ = parent.addChild();
+			base = index;
+			if ( base > 0 )
+				indexBase_.put( parent, base );
+			else
+				indexBase_.remove( parent );
+		}
+
+		PGPNode node = parent.headChild_;
+		for ( int i = base; i < index; ++i ) {
+			if ( node.next_ == parent.headChild_ )
+				node = parent.addChild();
+			else
+				node = node.next_;
+		}
+		if ( null != node.name_ )
+			mixedIndex_ = true;
+		return node;
+	}//getChunkElement()
+
+
+	// mergeChunks() -- merges the partial trees of the chunks in document order.
+	// returns the merged topNode, or null if the chunks can't be merged.
+	private PGPNode mergeChunks( List<FlatPGParser> chunks ) {
+		for ( FlatPGParser chunk : chunks ) {
+			if ( chunk.mixedIndex_ )
+				return null;
+		}
+
+		FlatPGParser first = chunks.get(0);
+		PGPNode topNode = first.chunkTop_;
+		first.fillIndexBases();
+
+		for ( int i = 1; i < chunks.size(); ++i ) {
+			FlatPGParser chunk = chunks.get(i);
+			if ( !chunk.mergeNode( topNode, chunk.chunkTop_ ) )
+				return null;
+			chunk.fillIndexBases();
+		}
 		return topNode;
+	}//mergeChunks()
+
+
+	// fillIndexBases() -- Arrays that were created new in this chunk get the elements
+	// before their first one, just like a sequential parse creates them.
+	private void fillIndexBases() {
+		for ( Map.Entry<PGPNode,Integer> entry : indexBase_.entrySet() ) {
+			PGPNode parent = entry.getKey();
+			for ( int i = entry.getValue(); i > 0; --i )
+				parent.headChild_ = parent.addChild();
+		}
+		indexBase_.clear();
+	}//fillIndexBases()
+
+
+	// mergeNode() -- merges the src node of this chunk into the dst node of the tree so far.
+	// The children of src are moved (not copied) into dst. The type of dst ends up being
+	// what the sequential parser would have set last: STRING when a value was set, ARRAY when
+	// the first element was added, OBJECT when a new name was added to existing children.
+	// returns false if src has both named and [index] children, which can't be lined up.
+	private boolean mergeNode( PGPNode dst, PGPNode src ) {
+		// Attributes are always appended.
+		PGPNode attr;
+		while ( null != (attr = src.headAttr_) )
+			dst.addAttr( attr.unlink() );
+
+		boolean dstHadChildren = null != dst.headChild_;
+		int         lastEvent  = -1;	// child ordinal that last changed the dst type
+		PGPDataType eventType  = null;
+
+		PGPNode srcChild = src.headChild_;
+		if ( null != srcChild && null == srcChild.name_ ) {
+			// [index] children. Line them up with dst by position.
+			Integer baseIndex = indexBase_.remove( src );
+			int base = (null == baseIndex) ? 0 : baseIndex;
+			if ( !dstHadChildren ) {
+				lastEvent = 0;
+				eventType = PGPDataType.ARRAY;
+			}
+			PGPNode dstChild = dst.getChildAt( base );
+			if ( null == dstChild ) {
+				// dst needs elements up to just before base.
+				int count = dst.getChildCount();
+				while ( count++ < base )
+					dst.addChild();
+			}
+			while ( null != (srcChild = src.headChild_) ) {
+				if ( null != srcChild.name_ )
+					return false;
+				srcChild.unlink();
+				if ( null == dstChild )
+					dst.addChild( srcChild );
+				else {
+					if ( !mergeNode( dstChild, srcChild ) )
+						return false;
+					dstChild = dstChild.next_;
+					if ( dstChild == dst.headChild_ )
+						dstChild = null;
+				}
+			}
+		}
+		else if ( null != srcChild ) {
+			// Named children. Line them up with dst by name.
+			int ordinal = 0;
+			while ( null != (srcChild = src.headChild_) ) {
+				if ( null == srcChild.name_ )
+					return false;
+				srcChild.unlink();
+				PGPNode dstChild = dst.findChild( srcChild.name_ );
+				if ( null != dstChild ) {
+					if ( !mergeNode( dstChild, srcChild ) )
+						return false;
+				}
+				else {
+					if ( dstHadChildren || ordinal > 0 ) {
+						lastEvent = ordinal;
+						eventType = PGPDataType.OBJECT;
+					}
+					dst.addChild( srcChild );
+				}
+				++ordinal;
+			}
+		}
+
+		if ( null != src.value_ ) {
+			dst.value_ = src.value_;
+			Integer childCount = lateValues_.get( src );
+			if ( lastEvent < ((null == childCount) ? 0 : childCount) )
+				eventType = PGPDataType.STRING;	// The value was set after the last type change.
+		}
+		if ( null != eventType )
+			dst.type_ = eventType;
+
+		return true;
 
-	}//parse()
+	}//mergeNode()
 
 }//class FlatPGParsers
@@ -0,0 +1,559 @@
+package com.risenperspectives.pgparsers;
+
+// JsonLinesPGParser -- parses JSON Lines (NDJSON) on a pool of threads.
+//
+// Each line holds one JSON object. The input is cut into batches of whole lines,
+// the batches are parsed on the executor (each worker thread keeps its own JsonPGParser),
+// and the records come back as a Stream<PGPNode>. Records are returned in input order,
+// unless setOrdered(false) is used, which returns them as soon as their batch is done.
+//
+// Only a bounded number of batches are read ahead of the consumer, so inputs that
+// never end (like a pipe) are fine. Parse errors are thrown from the stream as a
+// PGPUncheckedException, with the line number counted from the start of the input.
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.risenperspectives.pgparsers.PGPNode.PGPDataType;
+
+public class JsonLinesPGParser implements PGParsersInterface {
+
+	public  PGPOptionFlags flags_ = new PGPOptionFlags();
+	private int     debug_;
+	private ExecutorService executor_;
+	private boolean ordered_    = true;
+	private int     batchChars_ = 1 << 16;	// about this many chars (or bytes) per batch
+	private int     readAhead_;				// batches in flight, 0 is 4 per pool thread
+	private int     mapSize_    = 1 << 28;	// bytes of a file mapped at once
+	private PGPMetrics metrics_ = PGPMetrics.NONE;
+
+	private final ThreadLocal<JsonPGParser> parsers_ = ThreadLocal.withInitial( JsonPGParser::new );
+
+	public String protocolName() { return "JSONL"; }
+
+	public JsonLinesPGParser() {
+	}
+
+	public void setFlags( PGPOptionFlags flags ) {
+		flags_ = flags;
+	}
+	public PGPOptionFlags getFlags() {
+		return flags_;
+	}
+
+	public void setDebugLevel( int dbgLevel ) {
+		debug_ = dbgLevel;
+	}
+
+	// setMetrics() -- told of each parse, or PGPMetrics.NONE (or null) for none.
+	public void setMetrics( PGPMetrics metrics ) {
+		metrics_ = (null == metrics) ? PGPMetrics.NONE : metrics;
+	}
+	public PGPMetrics getMetrics() {
+		return metrics_;
+	}
+
+	public String getLastErrorText() {
+		return null;
+	}
+
+	// setExecutor() -- where the batches are parsed. null uses the ForkJoinPool common pool.
+	public void setExecutor( ExecutorService executor ) {
+		executor_ = executor;
+	}
+	public ExecutorService getExecutor() {
+		return executor_;
+	}
+
+	// setOrdered() -- false returns records in the order their batches finish.
+	public void setOrdered( boolean ordered ) {
+		ordered_ = ordered;
+	}
+	public boolean isOrdered() {
+		return ordered_;
+	}
+
+	// setBatchSize() -- about how many chars (bytes for files) of lines go in one task.
+	public void setBatchSize( int chars ) {
+		batchChars_ = Math.max( 1, chars );
+	}
+	public int getBatchSize() {
+		return batchChars_;
+	}
+
+	// setReadAhead() -- how many batches may be in flight. 0 is 4 per pool thread.
+	public void setReadAhead( int batches ) {
+		readAhead_ = batches;
+	}
+	public int getReadAhead() {
+		return readAhead_;
+	}
+
+
+	// parse() includes any optional flags.
+	public PGPNode parse( String data, PGPOptionFlags flags ) throws PGPException
+	{
+		flags_ = flags;
+		return parse( data );
+	}
+	public PGPNode parse( CharSequence data, PGPOptionFlags flags ) throws PGPException
+	{
+		flags_ = flags;
+		return parse( data );
+	}
+
+	public PGPNode parse( String data ) throws PGPException {
+		return parse( (CharSequence)data );
+	}
+
+	// parse() -- parses all the lines. Each record becomes an element of the returned ARRAY node.
+	public PGPNode parse( CharSequence data ) throws PGPException {
+		if ( PGPMetrics.NONE == metrics_ )
+			return parseText( data );
+		return PGPMetered.parse( metrics_, protocolName(), data, () -> parseText( data ), null );
+	}
+
+	// parseText() -- parse() without the metrics.
+	private PGPNode parseText( CharSequence data ) throws PGPException {
+		if (debug_>0) System.out.println("Enter: parse()" );
+
+		PGPNode topNode = new PGPNode( null, null, PGPDataType.ARRAY );
+		boolean ordered = ordered_;
+		ordered_ = true;
+		try ( Stream<PGPNode> records = stream( data ) ) {
+			records.forEachOrdered( topNode::addChild );
+		} catch ( PGPUncheckedException e ) {
+			throw e.getPGPException();
+		} finally {
+			ordered_ = ordered;
+		}
+		return topNode;
+	}//parseText()
+
+
+	// stream() -- the records of the lines in data.
+	public Stream<PGPNode> stream( CharSequence data ) {
+		return stream( new CharSequenceSource( PGPChars.of( data ) ) );
+	}
+
+	// stream() -- the records read from reader. Closing the stream closes the reader.
+	public Stream<PGPNode> stream( Reader reader ) {
+		return stream( new ReaderSource( reader, null ) );
+	}
+
+	// stream() -- the records of UTF-8 lines read from in. Closing the stream closes in.
+	public Stream<PGPNode> stream( InputStream in ) {
+		return stream( new ReaderSource( new InputStreamReader( in, StandardCharsets.UTF_8 ), in ) );
+	}
+
+	// stream() -- the records of a UTF-8 file, read through memory mapping.
+	public Stream<PGPNode> stream( Path file ) throws IOException {
+		return stream( new MappedFileSource( FileChannel.open( file, StandardOpenOption.READ ) ) );
+	}
+
+	// spliterator() -- the records of the lines in data, for use with StreamSupport.
+	public Spliterator<PGPNode> spliterator( CharSequence data ) {
+		return new RecordSpliterator( new CharSequenceSource( PGPChars.of( data ) ) );
+	}
+
+	private Stream<PGPNode> stream( BatchSource source ) {
+		RecordSpliterator records = new RecordSpliterator( source );
+		return StreamSupport.stream( records, false ).onClose( records::close );
+	}
+
+
+	// Batch -- a range of whole lines, and the records parsed from them.
+	private static final class Batch {
+		CharSequence chars_;	// either chars_ or bytes_ holds the lines
+		ByteBuffer   bytes_;
+		int          from_;
+		int          to_;
+		long         firstLine_;
+
+		PGPNode[]    nodes_ = new PGPNode[16];
+		int          count_;
+		PGPException error_;
+	}//class Batch
+
+
+	// parseBatch() -- runs on a worker thread.
+	private Batch parseBatch( Batch batch ) {
+		JsonPGParser parser = parsers_.get();
+		PGPOptionFlags flags = flags_;
+		long line = batch.firstLine_;
+		byte[] bytes = null;
+
+		int at = batch.from_;
+		while ( at < batch.to_ ) {
+			int eol = at;
+			String record;
+			if ( null != batch.chars_ ) {
+				CharSequence chars = batch.chars_;
+				while ( eol < batch.to_ && chars.charAt(eol) != '\n' )
+					++eol;
+				int end = eol;
+				if ( end > at && chars.charAt(end-1) == '\r' )
+					--end;
+				record = chars.subSequence( at, end ).toString();
+			}
+			else {
+				ByteBuffer buf = batch.bytes_;
+				while ( eol < batch.to_ && buf.get(eol) != '\n' )
+					++eol;
+				int end = eol;
+				if ( end > at && buf.get(end-1) == '\r' )
+					--end;
+				int len = end - at;
+				if ( null == bytes || bytes.length < len )
+					bytes = new byte[ Math.max( len, 256 ) ];
+				ByteBuffer dup = buf.duplicate();
+				dup.position( at );
+				dup.get( bytes, 0, len );
+				record = new String( bytes, 0, len, StandardCharsets.UTF_8 );
+			}
+			at = eol + 1;
+
+			if ( !record.isBlank() ) {
+				try {
+					PGPNode node = parser.parse( record, flags );
+					if ( batch.count_ == batch.nodes_.length )
+						batch.nodes_ = Arrays.copyOf( batch.nodes_, batch.count_ * 2 );
+					batch.nodes_[ batch.count_++ ] = node;
+				} catch ( PGPException e ) {
+					batch.error_ = new PGPException( e.at_, (int)line, e.onCharOfLine_, e.error_,
+													 "Line " + (line+1) + ": " + e.message_ );
+					break;
+				}
+			}
+			++line;
+		}
+
+		batch.chars_ = null;	// don't hold on to the input
+		batch.bytes_ = null;
+		return batch;
+	}//parseBatch()
+
+
+	// RecordSpliterator -- keeps up to readAhead batches parsing, hands out their records.
+	private final class RecordSpliterator implements Spliterator<PGPNode> {
+		private final BatchSource source_;
+		private final ExecutorService executor_;
+		private final boolean ordered_;
+		private final int readAhead_;
+		private final ArrayDeque<Future<Batch>> pending_ = new ArrayDeque<Future<Batch>>();
+		private final ExecutorCompletionService<Batch> completed_;
+		private int     inFlight_;
+		private boolean exhausted_;
+		private Batch   current_;
+		private int     index_;
+
+		RecordSpliterator( BatchSource source ) {
+			source_   = source;
+			executor_ = (null != JsonLinesPGParser.this.executor_) ? JsonLinesPGParser.this.executor_
+																	: ForkJoinPool.commonPool();
+			ordered_  = JsonLinesPGParser.this.ordered_;
+			int readAhead = JsonLinesPGParser.this.readAhead_;
+			if ( readAhead <= 0 )
+				readAhead = 4 * ((executor_ instanceof ForkJoinPool) ? ((ForkJoinPool)executor_).getParallelism()
+																	 : Runtime.getRuntime().availableProcessors());
+			readAhead_ = readAhead;
+			completed_ = ordered_ ? null : new ExecutorCompletionService<Batch>( executor_ );
+		}
+
+		public boolean tryAdvance( Consumer<? super PGPNode> action ) {
+			while ( null == current_ || index_ >= current_.count_ ) {
+				if ( null != current_ && null != current_.error_ ) {
+					PGPException e = current_.error_;
+					current_ = null;
+					throw new PGPUncheckedException( e );
+				}
+				current_ = nextBatch();
+				index_   = 0;
+				if ( null == current_ )
+					return false;
+			}
+			PGPNode node = current_.nodes_[ index_ ];
+			current_.nodes_[ index_++ ] = null;
+			action.accept( node );
+			return true;
+		}
+
+		// fill() -- Submits batches until readAhead are in flight. Only blocks on the
+		// source if mayBlock and nothing is in flight.
+		private void fill( boolean mayBlock ) {
+			try {
+				while ( !exhausted_ && inFlight_ < readAhead_ && ((mayBlock && 0 == inFlight_) || source_.ready()) ) {
+					Batch batch = source_.next();
+					if ( null == batch ) {
+						exhausted_ = true;
+						break;
+					}
+					if ( ordered_ )
+						pending_.add( executor_.submit( () -> parseBatch( batch ) ) );
+					else
+						completed_.submit( () -> parseBatch( batch ) );
+					++inFlight_;
+				}
+			} catch ( IOException e ) {
+				throw new UncheckedIOException( e );
+			}
+		}
+
+		private Batch nextBatch() {
+			fill( true );
+			if ( 0 == inFlight_ )
+				return null;
+			try {
+				Future<Batch> future = ordered_ ? pending_.poll() : completed_.take();
+				--inFlight_;
+				Batch batch = future.get();
+				fill( false );	// keep the workers busy while the consumer works on this batch
+				return batch;
+			} catch ( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+				throw new CancellationException( "Interrupted waiting for records" );
+			} catch ( ExecutionException e ) {
+				Throwable cause = e.getCause();
+				if ( cause instanceof RuntimeException )
+					throw (RuntimeException)cause;
+				throw new IllegalStateException( cause );
+			}
+		}
+
+		void close() {
+			for ( Future<Batch> future : pending_ )
+				future.cancel( false );
+			pending_.clear();
+			exhausted_ = true;
+			try {
+				source_.close();
+			} catch ( IOException e ) {
+				throw new UncheckedIOException( e );
+			}
+		}
+
+		public Spliterator<PGPNode> trySplit() {
+			return null;	// The parallelism is inside, on the executor.
+		}
+
+		public long estimateSize() {
+			return Long.MAX_VALUE;
+		}
+
+		public int characteristics() {
+			return ordered_ ? (ORDERED | NONNULL) : NONNULL;
+		}
+	}//class RecordSpliterator
+
+
+	// BatchSource -- cuts the input into batches of whole lines.
+	private abstract static class BatchSource {
+		protected long lines_;	// lines handed out so far
+
+		abstract Batch next() throws IOException;	// null at the end
+
+		boolean ready() throws IOException {		// can next() return without blocking?
+			return true;
+		}
+
+		void close() throws IOException {
+		}
+	}//class BatchSource
+
+
+	private final class CharSequenceSource extends BatchSource {
+		private final CharSequence data_;
+		private int at_;
+
+		CharSequenceSource( CharSequence data ) {
+			data_ = data;
+		}
+
+		Batch next() {
+			int len = data_.length();
+			if ( at_ >= len )
+				return null;
+			Batch batch = new Batch();
+			batch.chars_     = data_;
+			batch.from_      = at_;
+			batch.firstLine_ = lines_;
+
+			int target = (int)Math.min( (long)at_ + batchChars_, len );
+			int at = at_;
+			while ( at < target ) {
+				if ( data_.charAt(at++) == '\n' )
+					++lines_;
+			}
+			// Finish the line we are in.
+			while ( at < len && (at == 0 || data_.charAt(at-1) != '\n') ) {
+				if ( data_.charAt(at++) == '\n' )
+					++lines_;
+			}
+			batch.to_ = at;
+			at_ = at;
+			return batch;
+		}
+	}//class CharSequenceSource
+
+
+	private final class ReaderSource extends BatchSource {
+		private final Reader reader_;
+		private final InputStream in_;	// if set, asked instead of reader_ if data is waiting
+		private char[]  buf_;
+		private int     len_;
+		private boolean eof_;
+		private int     scanned_;		// buf_ before this has been checked for '\n'
+		private int     lastEol_ = -1;
+		private int     eols_;
+
+		ReaderSource( Reader reader, InputStream in ) {
+			reader_ = reader;
+			in_     = in;
+			buf_    = new char[ batchChars_ ];
+		}
+
+		boolean ready() throws IOException {
+			return eof_ || hasLine() || waiting();
+		}
+
+		// waiting() -- true if reading won't block.
+		// InputStreamReader.ready() can say true with nothing to read, so ask the stream.
+		private boolean waiting() throws IOException {
+			return (null != in_) ? in_.available() > 0 : reader_.ready();
+		}
+
+		private boolean hasLine() {
+			for ( ; scanned_ < len_; ++scanned_ ) {
+				if ( buf_[scanned_] == '\n' ) {
+					lastEol_ = scanned_;
+					++eols_;
+				}
+			}
+			return lastEol_ >= 0;
+		}
+
+		Batch next() throws IOException {
+			// Read until the buffer is full, or reading would block and there is a whole line.
+			while ( !eof_ && len_ < buf_.length && (len_ == 0 || !hasLine() || waiting()) ) {
+				int n = reader_.read( buf_, len_, buf_.length - len_ );
+				if ( n < 0 )
+					eof_ = true;
+				else
+					len_ += n;
+				if ( len_ == buf_.length && !hasLine() )
+					buf_ = Arrays.copyOf( buf_, buf_.length * 2 );	// a very long line
+			}
+			if ( len_ == 0 )
+				return null;
+
+			// Cut after the last '\n', unless at the end.
+			hasLine();
+			int cut = (eof_ || lastEol_ < 0) ? len_ : lastEol_ + 1;
+
+			Batch batch = new Batch();
+			batch.chars_     = new String( buf_, 0, cut );
+			batch.from_      = 0;
+			batch.to_        = cut;
+			batch.firstLine_ = lines_;
+			lines_ += eols_;
+
+			System.arraycopy( buf_, cut, buf_, 0, len_ - cut );
+			len_    -= cut;
+			scanned_ = len_;
+			lastEol_ = -1;
+			eols_    = 0;
+			return batch;
+		}
+
+		void close() throws IOException {
+			reader_.close();
+		}
+	}//class ReaderSource
+
+
+	private final class MappedFileSource extends BatchSource {
+		private final FileChannel channel_;
+		private final long size_;
+		private long mapStart_;		// file position of map_
+		private MappedByteBuffer map_;
+		private int  at_;			// position in map_
+
+		MappedFileSource( FileChannel channel ) throws IOException {
+			channel_ = channel;
+			size_    = channel.size();
+		}
+
+		Batch next() throws IOException {
+			if ( null == map_ || at_ >= map_.limit() ) {
+				long start = mapStart_ + ((null == map_) ? 0 : at_);
+				if ( start >= size_ )
+					return null;
+				long mapSize = Math.min( mapSize_, size_ - start );
+				while ( true ) {
+					map_ = channel_.map( FileChannel.MapMode.READ_ONLY, start, mapSize );
+					mapStart_ = start;
+					at_ = 0;
+					if ( start + mapSize == size_ )
+						break;
+					// Only use the map up to its last '\n'. The rest goes in the next map.
+					int lastEol = (int)mapSize - 1;
+					while ( lastEol >= 0 && map_.get(lastEol) != '\n' )
+						--lastEol;
+					if ( lastEol >= 0 ) {
+						map_.limit( lastEol + 1 );
+						break;
+					}
+					if ( mapSize >= Integer.MAX_VALUE )
+						throw new IOException( "Line too long at file position " + start );
+					mapSize = Math.min( 2 * mapSize, Math.min( Integer.MAX_VALUE, size_ - start ) );	// a very long line
+				}
+			}
+
+			Batch batch = new Batch();
+			batch.bytes_     = map_;
+			batch.from_      = at_;
+			batch.firstLine_ = lines_;
+
+			int limit  = map_.limit();
+			int target = (int)Math.min( (long)at_ + batchChars_, limit );
+			int at = at_;
+			while ( at < target ) {
+				if ( map_.get(at++) == '\n' )
+					++lines_;
+			}
+			while ( at < limit && (at == 0 || map_.get(at-1) != '\n') ) {
+				if ( map_.get(at++) == '\n' )
+					++lines_;
+			}
+			batch.to_ = at;
+			at_ = at;
+			return batch;
+		}
+
+		void close() throws IOException {
+			channel_.close();
+		}
+	}//class MappedFileSource
+
+}//class JsonLinesPGParser
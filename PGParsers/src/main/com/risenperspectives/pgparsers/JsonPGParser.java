@@ -6,7 +6,20 @@ package com.risenperspectives.pgparsers;
 // November, 2020
 //
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
 
 import com.risenperspectives.pgparsers.PGPNode.PGPDataType;
 
@@ -17,21 +30,60 @@ public class JsonPGParser implements PGParsersInterface {
     private String depthString_;
 	private int    debug_;
 
-	private String data_;
+	private PGPChars data_;
 	public  int    onLine_;
 	public  int    at_;
 	private boolean bPastSpaces_;
 	public  int    indent_; // spaces before first non-space on line.
 	public  int    onCharOfLine_;
 	public  Hashtable<String,PGPNode> aliases_;
-	public  int[]  indentStack_;
-	public  int    indentCount_;
+	private long   aliasExpansions_;	// alias references copied by the last parse, for the metrics
+
+	// aliasedTrees_ -- the top nodes of the trees whose parse copied an alias. An edit in an
+	// aliased container would leave its copies stale, so reparse() parses these trees in full.
+	// Shared by all parsers, as a tree may be reparsed by another parser than the one that made it.
+	private static final Set<PGPNode> aliasedTrees_ = Collections.synchronizedSet( Collections.newSetFromMap( new WeakHashMap<PGPNode,Boolean>() ) );
+
+	// The closing bracket of each open Object or Array. Nested containers are scanned
+	// in a loop instead of recursively, so the depth is only limited by maxDepth_.
+	private int[]  stateStack_ = new int[64];
+	private int[]  startStack_ = new int[64];	// and where each one starts in data_
+	private int    depth_;
+	private int    maxDepth_   = 100000;
+
+	// Parallel parsing (PGPOptionFlags.PARALLEL)
+	private ForkJoinPool pool_;
+	private int    parallelThreshold_ = 1 << 20;	// smaller documents are parsed sequentially
+	private int    minChunkSize_      = 1 << 16;
+	private ParallelParse parallel_;				// null when parsing sequentially
+	private int    parallelDepth_;					// large containers being parsed in parallel around this parser
+	private static final int MAX_PARALLEL_DEPTH = 8;
+
+	// Progress reporting (setProgressListener())
+	private PGPProgressListener progress_;
+	private int    nextProgressAt_ = Integer.MAX_VALUE;
+	private static final int PROGRESS_CHARS = 1 << 16;	// chars between progress() calls
+
+	// Metrics (setMetrics())
+	private PGPMetrics metrics_ = PGPMetrics.NONE;
 
 	public String protocolName() { return "JSON"; }
 
 	public JsonPGParser() {
 	}
 
+	// JsonPGParser() -- parser for a batch of a parallel parse, at the depth of the parent parser.
+	private JsonPGParser( ParallelParse parallel, JsonPGParser parent ) {
+		flags_         = parallel.flags_;
+		debug_         = parallel.debug_;
+		data_          = parallel.data_;
+		parallel_      = parallel;
+		aliases_       = new Hashtable<String,PGPNode>();
+		maxDepth_      = parent.maxDepth_;
+		depth_         = parent.depth_;
+		parallelDepth_ = parent.parallelDepth_ + 1;
+	}
+
 	public void setDepthSpaces( int depthSpaces)
 	{
 		depthSpaces_ = depthSpaces;
@@ -51,6 +103,68 @@ public class JsonPGParser implements PGParsersInterface {
 		debug_ = dbgLevel;
 	}
 
+	// setForkJoinPool() -- pool used when the PARALLEL flag is set. null uses the common pool.
+	public void setForkJoinPool( ForkJoinPool pool ) {
+		pool_ = pool;
+	}
+	public ForkJoinPool getForkJoinPool() {
+		return pool_;
+	}
+
+	// setParallelThreshold() -- Documents shorter than this (in chars) are parsed sequentially
+	// even when the PARALLEL flag is set.
+	public void setParallelThreshold( int chars ) {
+		parallelThreshold_ = chars;
+	}
+	public int getParallelThreshold() {
+		return parallelThreshold_;
+	}
+
+	// setMaxDepth() -- Objects and Arrays nested deeper than this are an error.
+	public void setMaxDepth( int depth ) {
+		maxDepth_ = depth;
+	}
+	public int getMaxDepth() {
+		return maxDepth_;
+	}
+
+	// reportProgress() -- tells the progress listener how far the parse has got.
+	// throws PGPException if the listener cancels the parse.
+	private void reportProgress() throws PGPException {
+		nextProgressAt_ = at_ + PROGRESS_CHARS;
+		if ( !progress_.progress( at_, data_.length() ) )
+			throw new PGPException( at_, onLine_, onCharOfLine_, 1, "Parse cancelled" );
+	}
+
+	// startProgress() -- resets the progress reporting for a new parse.
+	private void startProgress() {
+		nextProgressAt_ = (null == progress_) ? Integer.MAX_VALUE : PROGRESS_CHARS;
+	}
+
+	// endProgress() -- tells the progress listener the parse is done.
+	private void endProgress() {
+		nextProgressAt_ = Integer.MAX_VALUE;
+		if ( null != progress_ )
+			progress_.progress( data_.length(), data_.length() );
+	}
+
+
+	// setProgressListener() -- listener told of the progress of each parse, or null for none.
+	public void setProgressListener( PGPProgressListener listener ) {
+		progress_ = listener;
+	}
+	public PGPProgressListener getProgressListener() {
+		return progress_;
+	}
+
+	// setMetrics() -- told of each parse, or PGPMetrics.NONE (or null) for none.
+	public void setMetrics( PGPMetrics metrics ) {
+		metrics_ = (null == metrics) ? PGPMetrics.NONE : metrics;
+	}
+	public PGPMetrics getMetrics() {
+		return metrics_;
+	}
+
 	public String getLastErrorText() {
 		return null;
 	}
@@ -95,7 +209,6 @@ public class JsonPGParser implements PGParsersInterface {
 	// This should only need to be done once after a hard lookAhead.
 	protected void pushBack() {
 		--at_;
-		--onCharOfLine_;
 		if ( --onCharOfLine_ < 0 ) {
 			bPastSpaces_ = true;
 			--onLine_;
@@ -177,7 +290,13 @@ public class JsonPGParser implements PGParsersInterface {
 				}
 			}// if a comment.
 
-			if ( c != ' ' && c != '\n'  &&  c != '\t' )
+			if ( c == '\n' ) {
+				onLine_++;
+				onCharOfLine_ = 0;
+				bPastSpaces_  = false;
+				indent_       = 0;
+			}
+			else if ( c != ' ' &&  c != '\t' )
 				return c;
 
 		}//while
@@ -240,73 +359,14 @@ public class JsonPGParser implements PGParsersInterface {
 				;// keep in loop till not a digit.
 		}
 		// If we got here, then we have a number. Get the string of it.
-		--at_;	// back up to the char just after the number.
+		if ( c != '\0' )
+			--at_;	// back up to the char just after the number (at the end, getNext() didn't move).
 		String sNumber = data_.substring(anchor,at_);
 		return sNumber;
 
 	}//scanInNumber()
 
 
-	byte XXX = (byte)0xFF;	// Not Escaped Char
-	byte NUL = 0x00;
-	byte SOH = 0x01;
-	byte STX = 0x02;
-	byte ETX = 0x03;
-	byte EOT = 0x04;
-	byte ENQ = 0x05;
-	byte ACK = 0x06;
-	byte BEL = 0x07; // \a
-	byte BS  = 0x08; // \b
-	byte TAB = 0x09; // \t
-	byte LF  = 0x0A; // \n
-	byte VT  = 0x0B; // \v
-	byte FF  = 0x0C; // \f
-	byte CR  = 0x0D; // \r
-	byte SO  = 0x0E; //
-	byte SI  = 0x0F; //
-	byte DLE = 0x10; //
-	byte DC1 = 0x11; //
-	byte DC2 = 0x12; //
-	byte DC3 = 0x13; //
-	byte DC4 = 0x14; //
-	byte NAK = 0x15; //
-	byte SYN = 0x16; //
-	byte ETB = 0x17; //
-	byte CAN = 0x18; //
-	byte EM  = 0x19; //
-	byte SUB = 0x1A; //
-	byte ESC = 0x1B; // \e
-	byte FS  = 0x1C; //
-	byte GS  = 0x1D; //
-	byte RS  = 0x1E; //
-	byte US  = 0x1F; //
-
-	// TODO: Find out what the following values should be.
-	byte LS  = XXX;
-	byte NEL = XXX;
-	byte PS  = XXX;
-	byte NBSP= XXX;
-
-	byte escapedCodes[] = {
-		 // NUL  SOH  STX  ETX  EOT  ENQ  ACK  BEL  BS   HT   LF   VT   FF   CR   SO   SI
-			XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX,
-		 // DLE  DC1  DC2  DC3  DC4  NAK  SYN  ETB  CAN  EM   SUB  ESC  FS   GS   RS   US
-			XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX,
-		 // ' '  !    "    #    $    %    &    '    (    )    *    +    ,    -    .    /
-			' ', XXX, '\"',XXX, XXX, XXX, XXX, '\'',XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX,
-		 // 0    1    2    3    4    5    6    7    8    9    :    ;    <    =    >    ?
-			XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX,
-		 // @    A    B    C    D    E    F    G    H    I    J    K    L    M    N    O
-			XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, LS,  XXX, NEL, XXX,
-		 // P    Q    R    S    T    U    V    W    X    Y    Z    [    \    ]    ^    _
-			PS,  XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, NBSP,
-		 // `    a    b    c    d    e    f    g    h    i    j    k    l    m    n    o
-	        XXX, BEL, BS,  XXX, XXX, ESC, FF,  XXX, XXX, XXX, XXX, XXX, XXX, XXX, LF,  XXX,
-		 // p    q    r    s    t    u    v    w    x    y    z    {    |    }    ~
-	        XXX, XXX, CR,  XXX, TAB, XXX, VT,  XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX,
-	     };
-
-
 	// scanInQuotedString() returns quoted string.
 	// at_ assumed to be at the first char of the string.
 	// throws an exception if this was not a valid Quoted string.
@@ -333,8 +393,8 @@ public class JsonPGParser implements PGParsersInterface {
 				throw new PGPException( at_, onLine_, onCharOfLine_, 1, "Unbalanced Quotes before EOL");
 			case '\\':
 				c = getNext();
-				byte code = escapedCodes[ c ];
-				if ( code != XXX )
+				byte code = PGPEscapes.ESCAPED_CODES[ c ];
+				if ( code != PGPEscapes.XXX )
 				{
 					c = (char)code;
 				}
@@ -605,32 +665,9 @@ public class JsonPGParser implements PGParsersInterface {
 			throw new PGPException( at_, onLine_, onCharOfLine_, 1, "Expected '{' to start Object." );
 		}
 		node.setType( PGPDataType.OBJECT );
+		node.spanStart_ = at_-1;
 
-		do {
-			c = getNextNonSpaceChar();
-			if ( c == '}' )
-				break;	// At end of the Object
-
-			if ( c == ',' ) {
-				if ( node.headChild_ == null )
-					throw new PGPException( at_, onLine_, onCharOfLine_, 1, "Unexpected ','" );
-				c = getNext();
-			}
-
-			// Expect a string : VALUE
-
-			pushBack();	// We let the string routine take in the first char
-			PGPNode child;
-			String key = scanInKey();
-			child = node.addChild( key );
-
-			c = getNextNonSpaceChar();
-			if ( c != ':' )
-				throw new PGPException( at_, onLine_, onCharOfLine_, 1, "Expected ':'" );
-
-			scanInJsonValue( child );
-
-		} while (true);
+		scanInJsonMembers( node, false, -1 );
 
 		if (debug_>0) System.out.println("Exit:  scanInObject()" );
 
@@ -639,6 +676,15 @@ public class JsonPGParser implements PGParsersInterface {
 	}//scanInJsonObject()
 
 
+	// scanInJsonMembers() -- scans the members of an Object up to and including the '}'.
+	// A parallel parse starts a batch of members in the middle of an object (continued),
+	// and stops when the ',' at stopAt is reached, which is where the next batch starts.
+	// returns true if it stopped at stopAt, false if it reached the '}'.
+	protected boolean scanInJsonMembers( PGPNode node, boolean continued, int stopAt ) throws PGPException {
+		return scanInJsonContainer( node, '}', continued, stopAt );
+	}//scanInJsonMembers()
+
+
 	// scanInJsonArray()
 	// Object = '[' [ Value [, Value ]* ] ']'
 	//
@@ -650,36 +696,114 @@ public class JsonPGParser implements PGParsersInterface {
 			throw new PGPException( at_, onLine_, onCharOfLine_, 1, "Expected '[' to start Array." );
 		}
 		node.setType( PGPDataType.ARRAY );
+		node.spanStart_ = at_-1;
+
+		scanInJsonElements( node, false, -1 );
+
+		if (debug_>0) System.out.println("Exit:  scanInArray()" );
+
+		return node;
+
+	}//scanInJsonArray()
+
+
+	// scanInJsonElements() -- scans the elements of an Array up to and including the ']'.
+	// continued and stopAt are used like in scanInJsonMembers().
+	protected boolean scanInJsonElements( PGPNode node, boolean continued, int stopAt ) throws PGPException {
+		return scanInJsonContainer( node, ']', continued, stopAt );
+	}//scanInJsonElements()
+
 
+	// scanInJsonContainer() -- scans the members of an Object or the elements of an Array
+	// up to and including the close bracket.
+	// Objects and Arrays inside it are scanned by this same loop: their close bracket is
+	// pushed on the state stack, and the parent_ of the node leads back out.
+	// continued and stopAt only apply to node itself.
+	private boolean scanInJsonContainer( PGPNode node, char close, boolean continued, int stopAt ) throws PGPException {
+		int  base  = depth_;
+		int  start = node.spanStart_;
+		char c;
+		statePush( close, start );
 		do {
+			if ( at_ >= nextProgressAt_ )
+				reportProgress();
 			c = getNextNonSpaceChar();
-			if ( c == ']' )
-				break;	// At end of the Object
+			if ( c == '\0' )
+				throw new PGPException( at_, onLine_, onCharOfLine_, 1, "Unexpected end of data" );
+			if ( c == close ) {
+				// At end of the Object or Array
+				node.spanLength_ = at_ - start;
+				if ( --depth_ == base )
+					break;
+				close = (char)stateStack_[ depth_-1 ];
+				start = startStack_[ depth_-1 ];
+				node  = node.parent_;
+				continue;
+			}
 
 			if ( c == ',' ) {
-				if ( node.headChild_ == null )
+				if ( node.headChild_ == null && !(continued && depth_ == base+1) )
 					throw new PGPException( at_, onLine_, onCharOfLine_, 1, "Unexpected ','" );
+				if ( at_-1 == stopAt && depth_ == base+1 ) {
+					depth_ = base;
+					return true;
+				}
 				c = getNext();
 			}
 
-			// Expect a string : VALUE
-
 			pushBack();	// We let the string routine take in the first char
-			PGPNode child = node.addChild( );
-			scanInJsonValue( child );
+			PGPNode child;
+			if ( close == '}' ) {
+				// Expect a string : VALUE
+				String key = scanInKey();
+				child = node.addChild( key );
+
+				c = getNextNonSpaceChar();
+				if ( c != ':' )
+					throw new PGPException( at_, onLine_, onCharOfLine_, 1, "Expected ':'" );
+			}
+			else
+				child = node.addChild( );
+
+			boolean scalar = scanInJsonScalar( child );
+			int childStart = child.spanStart_;
+			child.spanStart_ -= start;
+			if ( !scalar ) {
+				// The value is an Object or Array. Continue with its members.
+				c = getNextNonSpaceChar();
+				if (debug_>0) System.out.println("  OPEN "+c+" at="+at_ );
+				child.setType( (c == '{') ? PGPDataType.OBJECT : PGPDataType.ARRAY );
+				close = (c == '{') ? '}' : ']';
+				statePush( close, childStart );
+				start = childStart;
+				node  = child;
+			}
 
 		} while (true);
 
-		if (debug_>0) System.out.println("Exit:  scanInArray()" );
+		return false;
 
-		return node;
-
-	}//scanInJsonArray()
+	}//scanInJsonContainer()
 
 
 	// scanInJsonValue
 	//
 	protected PGPNode scanInJsonValue( PGPNode node ) throws PGPException {
+		if ( !scanInJsonScalar( node ) ) {
+			if ( lookAhead() == '{' )
+				scanInJsonObject( node );
+			else
+				scanInJsonArray( node );
+		}
+		return node;
+
+	}//scanInJsonValue()
+
+
+	// scanInJsonScalar() -- scans a value that is not an Object or Array, or an alias.
+	// returns false with at_ on the '{' or '[' if the value is an Object or Array,
+	// unless a parallel parse scanned it.
+	protected boolean scanInJsonScalar( PGPNode node ) throws PGPException {
 		if (debug_>0) System.out.println("Enter: scanInValue() at="+at_ );
 
 		String aliasName = null;
@@ -689,21 +813,30 @@ public class JsonPGParser implements PGParsersInterface {
 		// Alias Support
 		if ( c == '*' ) {
 			// Reference an existing alias
+			node.spanStart_ = at_-1;
 			aliasName = scanInAliasName();
 			// Lookup the alias and copy it's node
+			PGPNode aliasNode = aliases_.get(aliasName);
+			// An alias referenced inside its own value would be copied into itself without end.
+			for ( PGPNode up = node; null != aliasNode && null != up; up = up.parent_ )
+				if ( up == aliasNode )
+					throw new PGPException( at_, onLine_, onCharOfLine_, 1, "Alias *"+aliasName+" refers to itself" );
 			try {
-				PGPNode aliasNode = aliases_.get(aliasName);
 				node.setValue( aliasNode );
+				++aliasExpansions_;
 			}
 			catch(Exception e) {
 				throw new PGPException( at_, onLine_, onCharOfLine_, 1, "Unknown alias encountered ("+aliasName+")" );
 			}
-			return node;
+			node.spanLength_ = at_ - node.spanStart_;
+			return true;
 		}
 		if ( c == '&' ) {
 			// Will define an alias at this node
 			// This can then recall this node when the alias is referenced.
 			aliasName = scanInAliasName();
+			if ( null != parallel_ )
+				parallel_.defineAlias( this, aliasName );
 			if ( aliases_.containsKey(aliasName) )
 				aliases_.replace(aliasName, node);
 			else
@@ -712,6 +845,7 @@ public class JsonPGParser implements PGParsersInterface {
 		}
 
 		pushBack();
+		node.spanStart_ = at_;
 		if ( c == '\"' ) {
 			node.setValue( scanInQuotedString(), PGPNode.PGPDataType.STRING );
 			if (debug_>0) System.out.println("  STRING: "+node.getValue() );
@@ -720,11 +854,8 @@ public class JsonPGParser implements PGParsersInterface {
 			node.setValue( scanInSingleString(), PGPNode.PGPDataType.STRING );
 			if (debug_>0) System.out.println("  Single STRING: "+node.getValue() );
 		}
-		else if ( c == '{' ) {
-			scanInJsonObject(node);
-		}
-		else if ( c == '[' ) {
-			scanInJsonArray(node);
+		else if ( c == '{' || c == '[' ) {
+			return null != parallel_ && parallel_.scanInBigContainer( this, node );	// which records the span
 		}
 		else if ( (c == '-') || Character.isDigit(c) ) {
 			node.setValue( scanInNumber(), PGPNode.PGPDataType.NUMBER );
@@ -772,12 +903,13 @@ public class JsonPGParser implements PGParsersInterface {
 		}
 		else
 			throw new PGPException( at_, onLine_, onCharOfLine_, 1, "Invalid character encountered ("+c+")" );
+		node.spanLength_ = at_ - node.spanStart_;
 
 		if (debug_>0) System.out.println("Exit:  scanInValue()" );
 
-		return node;
+		return true;
 
-	}//scanInValue()
+	}//scanInJsonScalar()
 
 
 	// parse() includes any optional flags.
@@ -786,14 +918,42 @@ public class JsonPGParser implements PGParsersInterface {
 		flags_ = flags;
 		return parse( data );
 	}
+	public PGPNode parse( CharSequence text, PGPOptionFlags flags ) throws PGPException
+	{
+		flags_ = flags;
+		return parse( text );
+	}
+
+	public PGPNode parse( String data ) throws PGPException {
+		return parse( (CharSequence)data );
+	}
 
 	// parser() -- Scan a JSON message and create a PGPNode structure.
+	// The text is read in place: a StringBuilder or CharBuffer is not copied to a String first.
 	// returns topNode
 	// If there was an error, the lastError_ value will have a non-zero value.
 	// If
-	public PGPNode parse( String data ) throws PGPException {
+	public PGPNode parse( CharSequence text ) throws PGPException {
+		if ( PGPMetrics.NONE == metrics_ )
+			return parseText( text );
+		return PGPMetered.parse( metrics_, protocolName(), text, () -> parseText( text ), () -> aliasExpansions_ );
+	}
+
+	// parseText() -- parse() without the metrics.
+	private PGPNode parseText( CharSequence text ) throws PGPException {
 		if (debug_>0) System.out.println("Enter: parse()" );
 
+		PGPChars data = PGPChars.of( text );
+
+		if ( null != flags_ && flags_.isSet(PGPOptionFlags.PARALLEL) && data.length() >= parallelThreshold_ ) {
+			PGPNode topNode = parseParallel( data );
+			if ( null != topNode ) {
+				endProgress();
+				return parsed( topNode );
+			}
+			if (debug_>0) System.out.println("  speculation failed, parsing sequentially" );
+		}
+
 		PGPNode topNode = new PGPNode();
 
 		data_         = data;
@@ -802,24 +962,446 @@ public class JsonPGParser implements PGParsersInterface {
 		onCharOfLine_ = 0;
 		bPastSpaces_  = false;
 		aliases_      = new Hashtable<String,PGPNode>();
-		indentStack_  = new int[100];
-		indentCount_  = -1;
-		indentPush(0);
+		aliasExpansions_ = 0;
+		depth_        = 0;
+		startProgress();
 
 		scanInJsonObject(topNode);
 		if ( getNextNonSpaceChar() != '\0' ) {
 			throw new PGPException( at_, onLine_, onCharOfLine_, 1, "END Expected");
 		}
 
-		return topNode;
-	}//parse()
+		endProgress();
+		return parsed( topNode );
+	}//parseText()
 
-	public void indentPush( int value ) {
-		indentStack_[ ++indentCount_ ] = value;
+	// parsed() -- remembers topNode if its parse copied an alias, for reparse().
+	private PGPNode parsed( PGPNode topNode ) {
+		if ( 0 != aliasExpansions_ )
+			aliasedTrees_.add( topNode );
+		return topNode;
 	}
 
-	public int indentPop() {
-		return indentStack_[ --indentCount_ ];
+	// reparse() -- parses data, which is the text topNode was parsed from after an edit that
+	// replaced removed chars at offset with inserted chars.
+	// Only the smallest Object or Array that holds the edit between its brackets is parsed again.
+	// Its members are replaced in topNode, and the spans of the nodes after it are moved by
+	// the change in length. That takes time in proportion to the size of that container, and
+	// the number of members of the containers around it, instead of the size of the document.
+	// A full parse is done instead when no container holds the edit, when the edit moves where
+	// the container ends, when the tree or the new text defines or references an alias (as the
+	// copies of an edited alias would be stale), or when it has an error, so that the error is
+	// reported as parse() reports it.
+	// returns topNode, or a new top node after a full parse. After an exception topNode no
+	// longer matches the text, and a full parse is needed.
+	public PGPNode reparse( PGPNode topNode, CharSequence text, int offset, int removed, int inserted ) throws PGPException {
+		if (debug_>0) System.out.println("Enter: reparse() at="+offset+" removed="+removed+" inserted="+inserted );
+
+		PGPChars data = PGPChars.of( text );
+
+		int     delta     = inserted - removed;
+		if ( aliasedTrees_.contains( topNode ) )
+			return parse( data );
+		PGPNode container = findEditContainer( topNode, offset, removed );
+		if ( null == container )
+			return parse( data );
+		int  start = container.getSpanStart();
+		int  end   = start + container.spanLength_ + delta;	// just past the close bracket in data
+		char close = (container.type_ == PGPDataType.OBJECT) ? '}' : ']';
+		if ( end > data.length() || data.charAt( end-1 ) != close )
+			return parse( data );
+
+		PGPNode members = new PGPNode();
+		members.spanStart_ = start;
+		data_           = data;
+		at_             = start + 1;
+		onLine_         = 0;
+		onCharOfLine_   = 0;
+		bPastSpaces_    = true;
+		aliases_        = new Hashtable<String,PGPNode>();
+		depth_          = 0;
+		nextProgressAt_ = Integer.MAX_VALUE;
+		try {
+			scanInJsonContainer( members, close, false, -1 );
+		} catch ( PGPException e ) {
+			return parse( data );
+		}
+		if ( at_ != end || !aliases_.isEmpty() )
+			return parse( data );
+
+		// Move the new members into the container.
+		PGPNode child = members.headChild_;
+		container.headChild_ = child;
+		if ( null != child ) {
+			do {
+				child.parent_ = container;
+				child = child.next_;
+			} while ( child != container.headChild_ );
+		}
+
+		// The container, and each node around it, changes length, and their later siblings move.
+		for ( PGPNode node = container; ; node = node.parent_ ) {
+			node.spanLength_ += delta;
+			PGPNode parent = node.parent_;
+			if ( null == parent )
+				break;
+			for ( PGPNode next = node.next_; next != parent.headChild_; next = next.next_ )
+				next.spanStart_ += delta;
+		}
+
+		if (debug_>0) System.out.println("Exit:  reparse() "+(end-start)+" chars parsed" );
+		return topNode;
+	}//reparse()
+
+	// findEditContainer() -- the smallest Object or Array that holds the chars from offset to
+	// offset+removed between its brackets, or null if topNode has no span or doesn't hold them.
+	private static PGPNode findEditContainer( PGPNode topNode, int offset, int removed ) {
+		PGPNode found = null;
+		PGPNode node  = topNode;
+		int     start = topNode.spanStart_;
+		while ( null != node
+				&& (node.type_ == PGPDataType.OBJECT || node.type_ == PGPDataType.ARRAY)
+				&& offset > start && offset + removed < start + node.spanLength_ ) {
+			found = node;
+			PGPNode inner = null;
+			PGPNode child = node.headChild_;
+			if ( null != child ) {
+				do {
+					int childStart = start + child.spanStart_;
+					if ( childStart > offset )
+						break;
+					if ( offset + removed <= childStart + child.spanLength_ ) {
+						inner = child;
+						start = childStart;
+						break;
+					}
+					child = child.next_;
+				} while ( child != node.headChild_ );
+			}
+			node = inner;
+		}
+		return found;
+	}//findEditContainer()
+
+	// parseParallel() -- Speculative parallel parse.
+	// A quick scan finds the brackets and ',' separators of the containers that are larger
+	// than a chunk, guessing past strings and comments. While the document is parsed,
+	// each large container is split into batches of members which are parsed on the
+	// ForkJoinPool and linked in order. Each batch must end exactly at the ',' where the
+	// next batch starts, and the last one at the closing bracket, so a wrong guess is
+	// detected. Aliases are resolved within a batch; an alias that is referenced in another
+	// batch, or defined in more than one, fails the speculation.
+	// returns null if the speculation failed (including on any error). The caller then
+	// parses sequentially, which also reports the error at the right line.
+	private PGPNode parseParallel( PGPChars data ) {
+		ForkJoinPool pool = (null != pool_) ? pool_ : ForkJoinPool.commonPool();
+		int chunkSize = Math.max( minChunkSize_, data.length() / (4 * pool.getParallelism()) );
+
+		ParallelParse parallel = ParallelParse.prescan( data, pool, chunkSize );
+		if ( null == parallel )
+			return null;	// Nothing large enough to split, or the scan got lost.
+		parallel.flags_ = flags_;
+		parallel.debug_ = debug_;
+
+		PGPNode topNode = new PGPNode();
+
+		data_         = data;
+		at_           = parallel.rootOpen_;
+		onLine_       = 0;
+		onCharOfLine_ = 0;
+		bPastSpaces_  = false;
+		aliases_      = new Hashtable<String,PGPNode>();
+		aliasExpansions_ = 0;
+		depth_        = 0;
+		parallel_     = parallel;
+		startProgress();
+		try {
+			if ( !parallel.scanInBigContainer( this, topNode ) )
+				scanInJsonObject( topNode );
+			if ( getNextNonSpaceChar() != '\0' || parallel.failed_ )
+				return null;
+			aliasExpansions_ += parallel.aliasExpansions_.sum();
+			return topNode;
+		} catch ( Exception e ) {
+			return null;
+		} finally {
+			parallel_ = null;
+		}
+
+	}//parseParallel()
+
+
+	// ParallelParse -- The large containers found by the prescan, and the state shared
+	// by the parsers of one parallel parse.
+	private static class ParallelParse {
+		final PGPChars      data_;
+		final ForkJoinPool  pool_;
+		final int           chunkSize_;
+		PGPOptionFlags      flags_;
+		int                 debug_;
+		int                 rootOpen_;
+		final Map<Integer,Container> containers_ = new HashMap<Integer,Container>();
+		final Map<String,JsonPGParser> aliasOwners_ = new ConcurrentHashMap<String,JsonPGParser>();
+		final LongAdder     aliasExpansions_ = new LongAdder();	// by the batch parsers
+		volatile boolean    failed_;
+
+		ParallelParse( PGPChars data, ForkJoinPool pool, int chunkSize ) {
+			data_      = data;
+			pool_      = pool;
+			chunkSize_ = chunkSize;
+		}
+
+		// Container -- the bracket positions and top level ',' positions of a container.
+		static class Container {
+			int   open_;
+			int   close_;
+			int[] seps_  = new int[16];
+			int   count_;	// number of seps_
+
+			void addSep( int at ) {
+				if ( count_ == seps_.length )
+					seps_ = Arrays.copyOf( seps_, count_ * 2 );
+				seps_[ count_++ ] = at;
+			}
+		}
+
+		// prescan() -- Finds the containers of at least chunkSize chars.
+		// Follows the tokenizer closely enough for ordinary documents: quotes, '#' and
+		// opening brackets count only at the start of a token.
+		// returns null if there is nothing to split, or the structure doesn't add up.
+		static ParallelParse prescan( PGPChars data, ForkJoinPool pool, int chunkSize ) {
+			ParallelParse parallel = new ParallelParse( data, pool, chunkSize );
+			List<Container> stack = new ArrayList<Container>();	// frames are reused
+			int     depth      = 0;
+			int     len        = data.length();
+			boolean tokenStart = true;
+
+			for ( int i = 0; i < len; ++i ) {
+				char c = data.charAt(i);
+				if ( depth == 0 && c != '{' && c != '#' && c != ' ' && c != '\t' && c != '\n' )
+					return null;	// Only comments may come before the root object.
+				switch ( c ) {
+				case ' ':
+				case '\t':
+				case '\n':
+				case '\r':
+					tokenStart = true;
+					continue;
+				case '#':
+					if ( !tokenStart )
+						break;
+					i = data.indexOf( '\n', i );	// skip the comment
+					if ( i < 0 )
+						return null;
+					continue;
+				case '\"':
+					if ( !tokenStart )
+						break;
+					while ( true ) {
+						if ( ++i >= len )
+							return null;
+						c = data.charAt(i);
+						if ( c == '\\' )
+							++i;
+						else if ( c == '\"' )
+							break;
+						else if ( c == '\n' )
+							return null;
+					}
+					tokenStart = false;
+					continue;
+				case '\'':
+					if ( !tokenStart )
+						break;
+					while ( true ) {
+						if ( ++i >= len )
+							return null;
+						if ( data.charAt(i) == '\'' ) {
+							if ( i+1 < len && data.charAt(i+1) == '\'' )
+								++i;	// '' is a quote in the string
+							else
+								break;
+						}
+					}
+					tokenStart = false;
+					continue;
+				case '{':
+				case '[':
+					if ( !tokenStart )
+						break;
+					if ( depth == stack.size() )
+						stack.add( new Container() );
+					Container frame = stack.get( depth++ );
+					frame.open_  = i;
+					frame.count_ = 0;
+					if ( depth == 1 )
+						parallel.rootOpen_ = i;
+					continue;
+				case '}':
+				case ']':
+					if ( depth == 0 )
+						return null;
+					Container top = stack.get( --depth );
+					if ( data.charAt( top.open_ ) != ((c == '}') ? '{' : '[') )
+						return null;
+					if ( i - top.open_ >= chunkSize ) {
+						top.close_ = i;
+						parallel.containers_.put( top.open_, top );
+						stack.set( depth, new Container() );
+					}
+					if ( depth == 0 )
+						return parallel.containers_.isEmpty() ? null : parallel;
+					tokenStart = true;
+					continue;
+				case ',':
+					if ( depth > 0 )
+						stack.get( depth-1 ).addSep( i );
+					tokenStart = true;
+					continue;
+				case ':':
+					tokenStart = true;
+					continue;
+				default:
+					break;
+				}
+				tokenStart = false;
+			}
+			return null;	// The root was never closed.
+
+		}//prescan()
+
+
+		// defineAlias() -- an alias defined by more than one parser can't be resolved locally.
+		void defineAlias( JsonPGParser parser, String name ) {
+			JsonPGParser owner = aliasOwners_.putIfAbsent( name, parser );
+			if ( null != owner && owner != parser )
+				failed_ = true;
+		}
+
+		// scanInBigContainer() -- If the parser is at the opening bracket of a large container,
+		// parses its members in parallel into node and leaves the parser after the closing bracket.
+		// returns false if this is not a large container.
+		boolean scanInBigContainer( JsonPGParser parser, PGPNode node ) throws PGPException {
+			Container container = containers_.get( parser.at_ );
+			if ( null == container || parser.parallelDepth_ >= MAX_PARALLEL_DEPTH )
+				return false;	// Deeply nested large containers are scanned by the batch parser.
+
+			// Group the members into batches of about chunkSize_ chars.
+			// A batch starts at the ',' before its first member, and stops at the ',' after its last.
+			int   members = container.count_ + 1;
+			int[] starts  = new int[ members ];
+			int   batches = 0;
+			int   start   = container.open_;
+			for ( int i = 0; i < members; ++i ) {
+				int end = (i < container.count_) ? container.seps_[i] : container.close_;
+				if ( i == 0 || end - starts[batches-1] > chunkSize_ ) {
+					starts[ batches++ ] = start;
+				}
+				start = end;
+			}
+			if ( batches < 2 )
+				return false;
+
+			boolean object = data_.charAt( container.open_ ) == '{';
+			node.setType( object ? PGPDataType.OBJECT : PGPDataType.ARRAY );
+
+			BatchTask task = new BatchTask( this, parser, container, object, starts, batches, 0, batches );
+			if ( ForkJoinTask.getPool() == pool_ )
+				task.invoke();
+			else
+				pool_.invoke( task );
+
+			if ( failed_ )
+				throw new PGPException( parser.at_, parser.onLine_, parser.onCharOfLine_, 1, "Parallel parse failed" );
+
+			// The spans of the holders' children are offsets in the text.
+			for ( PGPNode holder : task.holders_ ) {
+				while ( null != holder.headChild_ )
+					node.addChild( holder.headChild_.unlink() ).spanStart_ -= container.open_;
+			}
+			parser.at_       = container.close_ + 1;
+			node.spanStart_  = container.open_;
+			node.spanLength_ = parser.at_ - container.open_;
+			return true;
+
+		}//scanInBigContainer()
+
+	}//class ParallelParse
+
+
+	// BatchTask -- parses a range of the batches of a container, splitting the range in halves.
+	private static class BatchTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final ParallelParse parallel_;
+		private final JsonPGParser  parent_;	// the parser at the container
+		private final ParallelParse.Container container_;
+		private final boolean   object_;
+		private final int[]     starts_;
+		private final int       batches_;
+		private final int       from_;
+		private final int       to_;
+		final PGPNode[]         holders_;
+
+		BatchTask( ParallelParse parallel, JsonPGParser parent, ParallelParse.Container container, boolean object,
+				int[] starts, int batches, int from, int to ) {
+			this( parallel, parent, container, object, starts, batches, from, to, new PGPNode[ batches ] );
+		}
+		private BatchTask( ParallelParse parallel, JsonPGParser parent, ParallelParse.Container container, boolean object,
+				int[] starts, int batches, int from, int to, PGPNode[] holders ) {
+			parallel_  = parallel;
+			parent_    = parent;
+			container_ = container;
+			object_    = object;
+			starts_    = starts;
+			batches_   = batches;
+			from_      = from;
+			to_        = to;
+			holders_   = holders;
+		}
+
+		protected void compute() {
+			if ( to_ - from_ > 1 ) {
+				int mid = (from_ + to_) >>> 1;
+				invokeAll( new BatchTask( parallel_, parent_, container_, object_, starts_, batches_, from_, mid, holders_ ),
+						   new BatchTask( parallel_, parent_, container_, object_, starts_, batches_, mid, to_, holders_ ) );
+				return;
+			}
+			if ( parallel_.failed_ )
+				return;
+
+			// The first batch starts after the opening bracket, the others at a ','.
+			boolean last   = (from_ == batches_-1);
+			int     stopAt = last ? -1 : starts_[ from_+1 ];
+			JsonPGParser parser = new JsonPGParser( parallel_, parent_ );
+			PGPNode holder = new PGPNode();
+			parser.at_ = (from_ == 0) ? starts_[ from_ ] + 1 : starts_[ from_ ];
+			try {
+				boolean stopped = object_
+						? parser.scanInJsonMembers( holder, from_ > 0, stopAt )
+						: parser.scanInJsonElements( holder, from_ > 0, stopAt );
+				if ( stopped == last || (last && parser.at_ != container_.close_ + 1) )
+					parallel_.failed_ = true;
+				parallel_.aliasExpansions_.add( parser.aliasExpansions_ );
+			} catch ( Exception e ) {
+				parallel_.failed_ = true;
+			}
+			holders_[ from_ ] = holder;
+
+		}//compute()
+
+	}//class BatchTask
+
+
+	// statePush() -- opens a level of nesting, of a container that starts at start.
+	private void statePush( int state, int start ) throws PGPException {
+		if ( depth_ >= maxDepth_ )
+			throw new PGPException( at_, onLine_, onCharOfLine_, 1, "Nesting deeper than " + maxDepth_ + " levels" );
+		if ( depth_ >= stateStack_.length ) {
+			stateStack_ = Arrays.copyOf( stateStack_, Math.max( stateStack_.length * 2, depth_ + 1 ) );
+			startStack_ = Arrays.copyOf( startStack_, stateStack_.length );
+		}
+		startStack_[ depth_ ] = start;
+		stateStack_[ depth_++ ] = state;
 	}
 
 }//class JsonPGParsers
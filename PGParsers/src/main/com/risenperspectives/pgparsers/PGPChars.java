@@ -0,0 +1,112 @@
+package com.risenperspectives.pgparsers;
+
+import java.nio.CharBuffer;
+
+// PGPChars -- the text a parser scans, read where it is.
+//
+// A String, and a CharBuffer with an accessible array, are read directly. Any other
+// CharSequence (a StringBuilder, a Swing Segment, a direct or read-only CharBuffer) is read
+// through the CharSequence interface, which is slower per char, but still saves copying
+// the whole text into a String before parsing it.
+//
+// The text must not change while it is being parsed.
+
+final class PGPChars implements CharSequence {
+
+	private final String       string_;	// the text, if it is a String
+	private final char[]       array_;	// or the array of a CharBuffer
+	private final int          offset_;	// of the first char in array_
+	private final CharSequence chars_;	// or any other CharSequence
+	private final int          length_;
+
+	private PGPChars( String string, char[] array, int offset, CharSequence chars, int length ) {
+		string_ = string;
+		array_  = array;
+		offset_ = offset;
+		chars_  = chars;
+		length_ = length;
+	}
+
+	// of() -- the chars of data, from the position to the limit if it is a CharBuffer.
+	static PGPChars of( CharSequence data ) {
+		if ( data instanceof PGPChars )
+			return (PGPChars)data;
+		if ( data instanceof String )
+			return new PGPChars( (String)data, null, 0, null, data.length() );
+		if ( data instanceof CharBuffer && ((CharBuffer)data).hasArray() ) {
+			CharBuffer buffer = (CharBuffer)data;
+			return new PGPChars( null, buffer.array(), buffer.arrayOffset() + buffer.position(), null, buffer.remaining() );
+		}
+		return new PGPChars( null, null, 0, data, data.length() );
+	}
+
+	public int length() {
+		return length_;
+	}
+
+	public char charAt( int index ) {
+		if ( null != string_ )
+			return string_.charAt( index );
+		if ( null != array_ ) {
+			if ( index >= length_ )
+				throw new IndexOutOfBoundsException( "index " + index + ", length " + length_ );
+			return array_[ offset_ + index ];
+		}
+		return chars_.charAt( index );
+	}
+
+	// substring() -- a copy of the chars from start up to end, like String.substring().
+	public String substring( int start, int end ) {
+		if ( null != string_ )
+			return string_.substring( start, end );
+		if ( start < 0 || end > length_ || start > end )
+			throw new IndexOutOfBoundsException( "start " + start + ", end " + end + ", length " + length_ );
+		if ( null != array_ )
+			return new String( array_, offset_ + start, end - start );
+		return chars_.subSequence( start, end ).toString();
+	}
+
+	public CharSequence subSequence( int start, int end ) {
+		return substring( start, end );
+	}
+
+	// startsWith() -- true if prefix is at offset, like String.startsWith().
+	public boolean startsWith( String prefix, int offset ) {
+		if ( null != string_ )
+			return string_.startsWith( prefix, offset );
+		if ( offset < 0 || offset > length_ - prefix.length() )
+			return false;
+		for ( int i = 0; i < prefix.length(); ++i ) {
+			if ( charAt( offset + i ) != prefix.charAt(i) )
+				return false;
+		}
+		return true;
+	}
+
+	// indexOf() -- the index of the first c at or after from, or -1, like String.indexOf().
+	public int indexOf( char c, int from ) {
+		if ( null != string_ )
+			return string_.indexOf( c, from );
+		for ( int i = Math.max( from, 0 ); i < length_; ++i ) {
+			if ( charAt(i) == c )
+				return i;
+		}
+		return -1;
+	}
+
+	// indexOf() -- the index of the first str at or after from, or -1, like String.indexOf().
+	public int indexOf( String str, int from ) {
+		if ( null != string_ )
+			return string_.indexOf( str, from );
+		for ( int i = Math.max( from, 0 ); i <= length_ - str.length(); ++i ) {
+			if ( startsWith( str, i ) )
+				return i;
+		}
+		return -1;
+	}
+
+	public String toString() {
+		return (null != string_) ? string_ : substring( 0, length_ );
+	}
+
+}//class PGPChars
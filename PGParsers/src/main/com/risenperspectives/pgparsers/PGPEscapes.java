@@ -0,0 +1,70 @@
+package com.risenperspectives.pgparsers;
+
+// PGPEscapes -- the control codes, and what the char after a backslash stands for in a
+// quoted string. Shared by every parser, rather than built again for each one.
+
+final class PGPEscapes {
+
+	private PGPEscapes() {
+	}
+
+	static final byte XXX = (byte)0xFF;	// Not Escaped Char
+	static final byte NUL = 0x00;
+	static final byte SOH = 0x01;
+	static final byte STX = 0x02;
+	static final byte ETX = 0x03;
+	static final byte EOT = 0x04;
+	static final byte ENQ = 0x05;
+	static final byte ACK = 0x06;
+	static final byte BEL = 0x07; // \a
+	static final byte BS  = 0x08; // \b
+	static final byte TAB = 0x09; // \t
+	static final byte LF  = 0x0A; // \n
+	static final byte VT  = 0x0B; // \v
+	static final byte FF  = 0x0C; // \f
+	static final byte CR  = 0x0D; // \r
+	static final byte SO  = 0x0E; //
+	static final byte SI  = 0x0F; //
+	static final byte DLE = 0x10; //
+	static final byte DC1 = 0x11; //
+	static final byte DC2 = 0x12; //
+	static final byte DC3 = 0x13; //
+	static final byte DC4 = 0x14; //
+	static final byte NAK = 0x15; //
+	static final byte SYN = 0x16; //
+	static final byte ETB = 0x17; //
+	static final byte CAN = 0x18; //
+	static final byte EM  = 0x19; //
+	static final byte SUB = 0x1A; //
+	static final byte ESC = 0x1B; // \e
+	static final byte FS  = 0x1C; //
+	static final byte GS  = 0x1D; //
+	static final byte RS  = 0x1E; //
+	static final byte US  = 0x1F; //
+
+	// TODO: Find out what the following values should be.
+	static final byte LS  = XXX;
+	static final byte NEL = XXX;
+	static final byte PS  = XXX;
+	static final byte NBSP= XXX;
+
+	static final byte[] ESCAPED_CODES = {
+		 // NUL  SOH  STX  ETX  EOT  ENQ  ACK  BEL  BS   HT   LF   VT   FF   CR   SO   SI
+			XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX,
+		 // DLE  DC1  DC2  DC3  DC4  NAK  SYN  ETB  CAN  EM   SUB  ESC  FS   GS   RS   US
+			XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX,
+		 // ' '  !    "    #    $    %    &    '    (    )    *    +    ,    -    .    /
+			' ', XXX, '\"',XXX, XXX, XXX, XXX, '\'',XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX,
+		 // 0    1    2    3    4    5    6    7    8    9    :    ;    <    =    >    ?
+			XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX,
+		 // @    A    B    C    D    E    F    G    H    I    J    K    L    M    N    O
+			XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, LS,  XXX, NEL, XXX,
+		 // P    Q    R    S    T    U    V    W    X    Y    Z    [    \    ]    ^    _
+			PS,  XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, NBSP,
+		 // `    a    b    c    d    e    f    g    h    i    j    k    l    m    n    o
+	        XXX, BEL, BS,  XXX, XXX, ESC, FF,  XXX, XXX, XXX, XXX, XXX, XXX, XXX, LF,  XXX,
+		 // p    q    r    s    t    u    v    w    x    y    z    {    |    }    ~
+	        XXX, XXX, CR,  XXX, TAB, XXX, VT,  XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX,
+	     };
+
+}//class PGPEscapes
@@ -0,0 +1,152 @@
+package com.risenperspectives.pgparsers;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// PGPFormatMetrics -- the parses and serializes of one format, added up without locks.
+// PGPJmxMetrics keeps one for each format, and registers it as an MBean.
+
+public final class PGPFormatMetrics implements PGPFormatMetricsMBean {
+
+	private static final long NANOS_PER_MICRO = 1000;
+
+	private final String format_;
+
+	private final PGPHistogram    parseNanos_        = new PGPHistogram();
+	private final PGPHistogram    parseChars_        = new PGPHistogram();
+	private final LongAdder       parseErrors_       = new LongAdder();
+	private final LongAdder       parseNodes_        = new LongAdder();
+	private final LongAccumulator parseMaxDepth_     = new LongAccumulator( Math::max, 0 );
+	private final LongAdder       aliasExpansions_   = new LongAdder();
+
+	private final PGPHistogram    serializeNanos_    = new PGPHistogram();
+	private final LongAdder       serializeErrors_   = new LongAdder();
+	private final LongAdder       serializeChars_    = new LongAdder();
+	private final LongAdder       serializeNodes_    = new LongAdder();
+	private final LongAccumulator serializeMaxDepth_ = new LongAccumulator( Math::max, 0 );
+
+	public PGPFormatMetrics( String format ) {
+		format_ = format;
+	}
+
+	// parsed() -- see PGPMetrics.parsed().
+	public void parsed( long nanos, long chars, long nodes, int maxDepth, long aliases ) {
+		parseNanos_.record( nanos );
+		parseChars_.record( chars );
+		parseNodes_.add( nodes );
+		parseMaxDepth_.accumulate( maxDepth );
+		if ( 0 != aliases )
+			aliasExpansions_.add( aliases );
+	}
+
+	// parseFailed() -- a failed parse counts as an error, not in the times or sizes.
+	public void parseFailed() {
+		parseErrors_.increment();
+	}
+
+	// serialized() -- see PGPMetrics.serialized().
+	public void serialized( long nanos, long chars, long nodes, int maxDepth ) {
+		serializeNanos_.record( nanos );
+		serializeChars_.add( chars );
+		serializeNodes_.add( nodes );
+		serializeMaxDepth_.accumulate( maxDepth );
+	}
+
+	public void serializeFailed() {
+		serializeErrors_.increment();
+	}
+
+	public PGPHistogram parseNanos() {
+		return parseNanos_;
+	}
+	public PGPHistogram serializeNanos() {
+		return serializeNanos_;
+	}
+
+	public String getFormat() {
+		return format_;
+	}
+
+	public long getParseCount() {
+		return parseNanos_.getCount();
+	}
+	public long getParseErrorCount() {
+		return parseErrors_.sum();
+	}
+	public double getParseMeanMicros() {
+		return parseNanos_.getMean() / NANOS_PER_MICRO;
+	}
+	public long getParseP50Micros() {
+		return parseNanos_.getPercentile( 50 ) / NANOS_PER_MICRO;
+	}
+	public long getParseP99Micros() {
+		return parseNanos_.getPercentile( 99 ) / NANOS_PER_MICRO;
+	}
+	public long getParseMaxMicros() {
+		return parseNanos_.getMax() / NANOS_PER_MICRO;
+	}
+	public long getParseChars() {
+		return parseChars_.getSum();
+	}
+	public long getParseP99Chars() {
+		return parseChars_.getPercentile( 99 );
+	}
+	public long getParseNodes() {
+		return parseNodes_.sum();
+	}
+	public long getParseMaxDepth() {
+		return parseMaxDepth_.get();
+	}
+	public long getAliasExpansions() {
+		return aliasExpansions_.sum();
+	}
+
+	public long getSerializeCount() {
+		return serializeNanos_.getCount();
+	}
+	public long getSerializeErrorCount() {
+		return serializeErrors_.sum();
+	}
+	public double getSerializeMeanMicros() {
+		return serializeNanos_.getMean() / NANOS_PER_MICRO;
+	}
+	public long getSerializeP50Micros() {
+		return serializeNanos_.getPercentile( 50 ) / NANOS_PER_MICRO;
+	}
+	public long getSerializeP99Micros() {
+		return serializeNanos_.getPercentile( 99 ) / NANOS_PER_MICRO;
+	}
+	public long getSerializeMaxMicros() {
+		return serializeNanos_.getMax() / NANOS_PER_MICRO;
+	}
+	public long getSerializeChars() {
+		return serializeChars_.sum();
+	}
+	public long getSerializeNodes() {
+		return serializeNodes_.sum();
+	}
+	public long getSerializeMaxDepth() {
+		return serializeMaxDepth_.get();
+	}
+
+	public void reset() {
+		parseNanos_.reset();
+		parseChars_.reset();
+		parseErrors_.reset();
+		parseNodes_.reset();
+		parseMaxDepth_.reset();
+		aliasExpansions_.reset();
+		serializeNanos_.reset();
+		serializeErrors_.reset();
+		serializeChars_.reset();
+		serializeNodes_.reset();
+		serializeMaxDepth_.reset();
+	}
+
+	public String toString() {
+		return String.format( "%s: parse %s errors=%d chars=%d nodes=%d; serialize %s errors=%d chars=%d nodes=%d",
+				format_, parseNanos_, getParseErrorCount(), getParseChars(), getParseNodes(),
+				serializeNanos_, getSerializeErrorCount(), getSerializeChars(), getSerializeNodes() );
+	}
+
+}//class PGPFormatMetrics
@@ -0,0 +1,35 @@
+package com.risenperspectives.pgparsers;
+
+// PGPFormatMetricsMBean -- the JMX view of the PGPFormatMetrics of one format. Times are in
+// microseconds, sizes in chars, and the percentiles are rounded up to the top of their bucket
+// (see PGPHistogram).
+
+public interface PGPFormatMetricsMBean {
+
+	String getFormat();
+
+	long   getParseCount();
+	long   getParseErrorCount();
+	double getParseMeanMicros();
+	long   getParseP50Micros();
+	long   getParseP99Micros();
+	long   getParseMaxMicros();
+	long   getParseChars();
+	long   getParseP99Chars();
+	long   getParseNodes();
+	long   getParseMaxDepth();
+	long   getAliasExpansions();
+
+	long   getSerializeCount();
+	long   getSerializeErrorCount();
+	double getSerializeMeanMicros();
+	long   getSerializeP50Micros();
+	long   getSerializeP99Micros();
+	long   getSerializeMaxMicros();
+	long   getSerializeChars();
+	long   getSerializeNodes();
+	long   getSerializeMaxDepth();
+
+	void reset();
+
+}//interface PGPFormatMetricsMBean
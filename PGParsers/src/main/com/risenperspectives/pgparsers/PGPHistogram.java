@@ -0,0 +1,106 @@
+package com.risenperspectives.pgparsers;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// PGPHistogram -- counts values (durations, sizes) into buckets without locks, for the mean,
+// the max and percentiles. Any number of threads may record at once.
+//
+// The values below SUB_BUCKETS have a bucket each. Above that, each power of two is split into
+// SUB_BUCKETS buckets of equal width, so a percentile is the top of a bucket that is at most
+// 1/SUB_BUCKETS (12.5%) wider than the values in it. 496 buckets cover every long.
+//
+// The figures read while other threads record are each up to date, but not with each other.
+
+public final class PGPHistogram {
+
+	private static final int SUB_BITS    = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+	private final AtomicLongArray counts_ = new AtomicLongArray( (64 - SUB_BITS + 1) * SUB_BUCKETS );
+	private final LongAdder       count_  = new LongAdder();
+	private final LongAdder       sum_    = new LongAdder();
+	private final LongAccumulator max_    = new LongAccumulator( Math::max, 0 );
+
+	public PGPHistogram() {
+	}
+
+	// record() -- counts value. Negative values count as 0.
+	public void record( long value ) {
+		if ( value < 0 )
+			value = 0;
+		counts_.incrementAndGet( bucket( value ) );
+		count_.increment();
+		sum_.add( value );
+		max_.accumulate( value );
+	}
+
+	public long getCount() {
+		return count_.sum();
+	}
+	public long getSum() {
+		return sum_.sum();
+	}
+	public long getMax() {
+		return max_.get();
+	}
+	public double getMean() {
+		long count = count_.sum();
+		return (count == 0) ? 0.0 : (double) sum_.sum() / count;
+	}
+
+	// getPercentile() -- the value that percent (0 to 100) of the values are at or below,
+	// rounded up to the top of its bucket, but no more than the max. 0 when there are none.
+	public long getPercentile( double percent ) {
+		int  buckets = counts_.length();
+		long total   = 0;
+		for ( int i = 0; i < buckets; ++i )
+			total += counts_.get(i);
+		if ( total == 0 )
+			return 0;
+		long rank = Math.max( 1, (long) Math.ceil( total * Math.min( percent, 100.0 ) / 100.0 ) );
+		long seen = 0;
+		for ( int i = 0; i < buckets; ++i ) {
+			seen += counts_.get(i);
+			if ( seen >= rank )
+				return Math.min( top( i ), getMax() );
+		}
+		return getMax();
+	}
+
+	// reset() -- forgets the values. Values recorded during the reset may be kept in part.
+	public void reset() {
+		for ( int i = 0; i < counts_.length(); ++i )
+			counts_.set( i, 0 );
+		count_.reset();
+		sum_.reset();
+		max_.reset();
+	}
+
+	// bucket() -- the bucket of a value that isn't negative.
+	static int bucket( long value ) {
+		if ( value < SUB_BUCKETS )
+			return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros( value );	// SUB_BITS or more
+		int sub      = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	// top() -- the largest value of a bucket.
+	static long top( int bucket ) {
+		if ( bucket < SUB_BUCKETS )
+			return bucket;
+		int  exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		int  sub      = bucket % SUB_BUCKETS;
+		int  shift    = exponent - SUB_BITS;
+		long bottom   = (long) (SUB_BUCKETS + sub) << shift;
+		return bottom + ((1L << shift) - 1);
+	}
+
+	public String toString() {
+		return String.format( "count=%d mean=%.1f p50=%d p99=%d max=%d",
+				getCount(), getMean(), getPercentile( 50 ), getPercentile( 99 ), getMax() );
+	}
+
+}//class PGPHistogram
@@ -0,0 +1,137 @@
+package com.risenperspectives.pgparsers;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// PGPJmxMetrics -- PGPMetrics that add up the calls of each format in a PGPFormatMetrics, and
+// register it as an MBean the first time the format is seen, named
+//
+//		com.risenperspectives.pgparsers:type=Metrics,name=<name>,format=<FORMAT>
+//
+// The name keeps apart the metrics of two users of the library in one JVM, and the constructor
+// refuses a name that is in use. The metrics never fail the call they measure: a format whose
+// MBean can't be registered is still added up, and the failure is kept for
+// getRegisterFailure(). close() unregisters the MBeans. One PGPJmxMetrics can be set on any
+// number of parsers and serializers, on any threads.
+
+public final class PGPJmxMetrics implements PGPMetrics, AutoCloseable {
+
+	public static final String DOMAIN = "com.risenperspectives.pgparsers";
+
+	private final MBeanServer server_;
+	private final String      name_;
+	private final ConcurrentHashMap<String,PGPFormatMetrics> formats_ = new ConcurrentHashMap<>();
+	private final Set<String> registered_ = ConcurrentHashMap.newKeySet();
+	private volatile boolean  closed_;
+	private volatile Exception registerFailure_;
+
+	// PGPJmxMetrics() -- registers with the platform MBeanServer.
+	public PGPJmxMetrics( String name ) {
+		this( name, ManagementFactory.getPlatformMBeanServer() );
+	}
+
+	// PGPJmxMetrics() -- throws IllegalArgumentException if MBeans with name are registered.
+	public PGPJmxMetrics( String name, MBeanServer server ) {
+		server_ = server;
+		name_   = name;
+		ObjectName pattern;
+		try {
+			pattern = new ObjectName( DOMAIN + ":type=Metrics,name=" + ObjectName.quote( name_ ) + ",*" );
+		} catch ( JMException e ) {
+			throw new IllegalArgumentException( "Bad metrics name: " + name_, e );
+		}
+		if ( !server_.queryNames( pattern, null ).isEmpty() )
+			throw new IllegalArgumentException( "Metrics named " + name_ + " are already registered" );
+	}
+
+	public String getName() {
+		return name_;
+	}
+
+	// get() -- the metrics of format, registered if they are new (unless closed).
+	public PGPFormatMetrics get( String format ) {
+		PGPFormatMetrics metrics = formats_.get( format );
+		if ( null == metrics )
+			metrics = formats_.computeIfAbsent( format, this::register );
+		return metrics;
+	}
+
+	// getRegisterFailure() -- why the last MBean that couldn't be registered wasn't, or null.
+	public Exception getRegisterFailure() {
+		return registerFailure_;
+	}
+
+	// formats() -- the metrics of every format seen so far.
+	public Collection<PGPFormatMetrics> formats() {
+		return Collections.unmodifiableCollection( formats_.values() );
+	}
+
+	// objectName() -- the name format's MBean is registered under.
+	public ObjectName objectName( String format ) {
+		try {
+			return new ObjectName( DOMAIN + ":type=Metrics,name=" + ObjectName.quote( name_ )
+					+ ",format=" + ObjectName.quote( format ) );
+		} catch ( JMException e ) {
+			throw new IllegalArgumentException( "Bad metrics name: " + name_, e );
+		}
+	}
+
+	public void parsed( String format, long nanos, long chars, long nodes, int maxDepth, long aliases ) {
+		get( format ).parsed( nanos, chars, nodes, maxDepth, aliases );
+	}
+
+	public void parseFailed( String format, long nanos, long chars, Exception e ) {
+		get( format ).parseFailed();
+	}
+
+	public void serialized( String format, long nanos, long chars, long nodes, int maxDepth ) {
+		get( format ).serialized( nanos, chars, nodes, maxDepth );
+	}
+
+	public void serializeFailed( String format, long nanos, Exception e ) {
+		get( format ).serializeFailed();
+	}
+
+	// close() -- unregisters the MBeans this registered. The metrics still add up, but new
+	// formats aren't registered.
+	public void close() {
+		closed_ = true;
+		for ( String format : registered_ ) {
+			try {
+				server_.unregisterMBean( objectName( format ) );
+			} catch ( InstanceNotFoundException e ) {
+				// Already gone
+			} catch ( JMException e ) {
+				throw new IllegalStateException( "Can't unregister " + objectName( format ), e );
+			}
+			registered_.remove( format );
+		}
+	}
+
+	// register() -- new metrics for format, as an MBean if it can be registered.
+	private PGPFormatMetrics register( String format ) {
+		PGPFormatMetrics metrics = new PGPFormatMetrics( format );
+		if ( closed_ )
+			return metrics;
+		try {
+			server_.registerMBean( metrics, objectName( format ) );
+			registered_.add( format );
+		} catch ( JMException | RuntimeException e ) {
+			registerFailure_ = e;	// Added up all the same
+		}
+		return metrics;
+	}
+
+	public String toString() {
+		return "PGPJmxMetrics " + name_ + " " + formats_.values();
+	}
+
+}//class PGPJmxMetrics
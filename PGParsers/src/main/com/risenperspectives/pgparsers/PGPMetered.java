@@ -0,0 +1,151 @@
+package com.risenperspectives.pgparsers;
+
+import java.io.IOException;
+import java.util.function.LongSupplier;
+
+// PGPMetered -- times a parse or serialize, counts the nodes of its tree, and tells a
+// PGPMetrics about it. Only used when the metrics aren't PGPMetrics.NONE.
+
+final class PGPMetered {
+
+	interface Parse {
+		PGPNode parse() throws PGPException;
+	}
+
+	interface Serialize {
+		void serialize() throws IOException;
+	}
+
+	private long nodes_;
+	private int  maxDepth_;
+
+	private PGPMetered() {
+	}
+
+	// parse() -- runs parse. aliases, if not null, gives the alias references it expanded.
+	static PGPNode parse( PGPMetrics metrics, String format, CharSequence text, Parse parse, LongSupplier aliases ) throws PGPException {
+		long start = System.nanoTime();
+		PGPNode topNode;
+		try {
+			topNode = parse.parse();
+		} catch ( PGPException | RuntimeException e ) {
+			metrics.parseFailed( format, System.nanoTime() - start, text.length(), e );
+			throw e;
+		}
+		long nanos = System.nanoTime() - start;
+		PGPMetered tree = PGPMetered.of( topNode );
+		metrics.parsed( format, nanos, text.length(), tree.nodes_, tree.maxDepth_, (null == aliases) ? 0 : aliases.getAsLong() );
+		return topNode;
+	}
+
+	// serialize() -- runs serialize, which writes node, the siblings after it and their subnodes
+	// to sb.
+	static StringBuilder serialize( PGPMetrics metrics, String format, StringBuilder sb, PGPNode node, Serialize serialize ) {
+		int  before = sb.length();
+		long start  = System.nanoTime();
+		try {
+			serialize.serialize();
+		} catch ( IOException e ) {
+			throw new IllegalStateException( e );	// Can't happen with a StringBuilder
+		} catch ( RuntimeException e ) {
+			metrics.serializeFailed( format, System.nanoTime() - start, e );
+			throw e;
+		}
+		serialized( metrics, format, start, sb.length() - before, node );
+		return sb;
+	}
+
+	// counter() -- out, counting the chars written to it, for serialize().
+	static Counter counter( Appendable out ) {
+		return new Counter( out );
+	}
+
+	// serialize() -- runs serialize, which writes node, the siblings after it and their subnodes
+	// to out.
+	static void serialize( PGPMetrics metrics, String format, Counter out, PGPNode node, Serialize serialize ) throws IOException {
+		long start = System.nanoTime();
+		try {
+			serialize.serialize();
+		} catch ( IOException | RuntimeException e ) {
+			metrics.serializeFailed( format, System.nanoTime() - start, e );
+			throw e;
+		}
+		serialized( metrics, format, start, out.chars_, node );
+	}
+
+	private static void serialized( PGPMetrics metrics, String format, long start, long chars, PGPNode node ) {
+		long nanos = System.nanoTime() - start;
+		PGPMetered tree = PGPMetered.of( node );
+		metrics.serialized( format, nanos, chars, tree.nodes_, tree.maxDepth_ );
+	}
+
+
+	// of() -- counts first, the siblings after it (as the serializers write them) and all the
+	// nodes below them.
+	private static PGPMetered of( PGPNode first ) {
+		PGPMetered tree = new PGPMetered();
+		PGPNode top = first;
+		do {
+			tree.add( top );
+			top = top.next_;
+		} while ( null != top && top != first );
+		return tree;
+	}
+
+	// add() -- counts top and the nodes below it. The walk goes down .headChild_ and back up
+	// .parent_ instead of recursing, like the serializers.
+	private void add( PGPNode top ) {
+		PGPNode node  = top;
+		int     depth = 0;
+		while ( true ) {
+			++nodes_;
+			if ( depth > maxDepth_ )
+				maxDepth_ = depth;
+			if ( null != node.headChild_ ) {
+				node = node.headChild_;
+				++depth;
+				continue;
+			}
+			while ( true ) {
+				if ( node == top )
+					return;
+				if ( node.next_ != node.parent_.headChild_ ) {
+					node = node.next_;
+					break;
+				}
+				node = node.parent_;
+				--depth;
+			}
+		}
+	}//add()
+
+
+	// Counter -- an Appendable that counts the chars appended to it.
+	static final class Counter implements Appendable {
+		private final Appendable out_;
+		long chars_;
+
+		Counter( Appendable out ) {
+			out_ = out;
+		}
+
+		public Appendable append( CharSequence csq ) throws IOException {
+			chars_ += (null == csq) ? 4 : csq.length();
+			out_.append( csq );
+			return this;
+		}
+
+		public Appendable append( CharSequence csq, int start, int end ) throws IOException {
+			chars_ += end - start;
+			out_.append( csq, start, end );
+			return this;
+		}
+
+		public Appendable append( char c ) throws IOException {
+			++chars_;
+			out_.append( c );
+			return this;
+		}
+	}//class Counter
+
+}//class PGPMetered
@@ -0,0 +1,38 @@
+package com.risenperspectives.pgparsers;
+
+// PGPMetrics -- told of each parse and serialize by the parsers and serializers it is set on
+// with setMetrics(), to count and time them. The methods are called after the call, on the
+// thread that made it, so an implementation must be thread safe, and quick.
+//
+// NONE, the default, does nothing. A parser or serializer with NONE doesn't read the clock or
+// count anything, so it costs a compare per call. With other metrics, the nodes are counted by
+// walking the tree once more after the call.
+//
+// Sizes are in chars, as the parsers read chars and the serializers write them.
+// The depth of the top node is 0. JsonLinesPGParser.stream() isn't metered, only parse().
+//
+// PGPJmxMetrics adds them up for each format, and publishes them over JMX.
+
+public interface PGPMetrics {
+
+	PGPMetrics NONE = new PGPMetrics() {
+	};
+
+	// parsed() -- a parse of chars chars took nanos ns, and made a tree of nodes nodes, maxDepth
+	// levels deep. aliases is how many alias references it expanded into copies.
+	default void parsed( String format, long nanos, long chars, long nodes, int maxDepth, long aliases ) {
+	}
+
+	// parseFailed() -- a parse of chars chars threw e after nanos ns.
+	default void parseFailed( String format, long nanos, long chars, Exception e ) {
+	}
+
+	// serialized() -- nodes nodes, maxDepth levels deep, were written as chars chars in nanos ns.
+	default void serialized( String format, long nanos, long chars, long nodes, int maxDepth ) {
+	}
+
+	// serializeFailed() -- a serialize threw e after nanos ns.
+	default void serializeFailed( String format, long nanos, Exception e ) {
+	}
+
+}//interface PGPMetrics
@@ -80,6 +80,14 @@ public class PGPNode {
 	protected String value_;
 	protected PGPDataType type_;
 
+	// spanStart_ and spanLength_ -- where the value of this node is in the text it was parsed
+	// from, for parsers that record it (JSON). spanStart_ is relative to the start of the
+	// parent's value, so an edit of the text only moves the later siblings of the nodes
+	// around it, not every node after it. The top node's spanStart_ is the offset in the text.
+	// spanLength_ is 0 when there is no span.
+	protected int spanStart_;
+	protected int spanLength_;
+
 	static private String nameSeparator_ = "\\.";
 	static private int    debug_level    = 0;
 	static private int    depthSpaces_   = 2;
@@ -167,6 +175,21 @@ public class PGPNode {
 	public PGPNode getNext()   {	return next_;     }
 	public PGPNode getPrev()   {	return prev_;     }
 
+	// getSpanStart() -- offset of the first char of this node's value in the parsed text, or -1 if not known.
+	// getSpanEnd() -- offset just past the value, or -1 if not known.
+	public int getSpanStart() {
+		if ( spanLength_ == 0 )
+			return -1;
+		int start = 0;
+		for ( PGPNode node = this; null != node; node = node.parent_ )
+			start += node.spanStart_;
+		return start;
+	}
+	public int getSpanEnd() {
+		int start = getSpanStart();
+		return (start < 0) ? -1 : start + spanLength_;
+	}
+
 	public PGPNode setName(String name)      { name_  = name; return this; }
 	public PGPNode setValue(String val)      { value_ = val;  return this; }
 	public PGPNode setValue(String val, PGPDataType type) {
@@ -328,12 +351,43 @@ public class PGPNode {
 	// All attributes and children are copied over.
 	// Everything from the source node is copied,
 	// except for the name and parent is not copied.
-	// The children of the source are recursively copied over.
+	// The children of the source are copied over by walking down .headChild_ and back up
+	// .parent_ instead of recursing, so deep trees don't need a deep thread stack.
 	// returns this node.
 	public PGPNode setValue( PGPNode srcNode ) {
 		if ( debug_level >= 2 )
 			System.out.println("ENTRY: '"+flatName()+"'.setValue("+srcNode.flatName()+")");
 
+		PGPNode src = srcNode;
+		PGPNode dst = this;
+		dst.copyValue( src );
+		while ( true ) {
+			if ( null != src.headChild_ ) {
+				src = src.headChild_;	// Copy the children
+				dst = dst.addChild( src.name_ );
+				dst.copyValue( src );
+				continue;
+			}
+
+			// On to the next sibling of src, or of the parents it was the last child of.
+			while ( true ) {
+				if ( src == srcNode )
+					return this;
+				if ( src.next_ != src.parent_.headChild_ ) {
+					src = src.next_;
+					dst = dst.parent_.addChild( src.name_ );
+					dst.copyValue( src );
+					break;
+				}
+				src = src.parent_;
+				dst = dst.parent_;
+			}
+		}
+
+	}//setValue(node)
+
+	// copyValue() -- copies the value, type and attributes of srcNode, but not its children.
+	private void copyValue( PGPNode srcNode ) {
 		// Copy over the Value and Type
 		value_ = srcNode.value_;
 		type_  = srcNode.type_;
@@ -347,21 +401,7 @@ public class PGPNode {
 				srcAttrNode = srcAttrNode.next_;
 			} while ( srcAttrNode != srcNode.headAttr_ );
 		}
-
-		// go through the children and copy/clone them.
-		PGPNode srcChildNode = srcNode.headChild_;
-		if ( null != srcChildNode )
-		{
-			do {
-				PGPNode childNode = addChild( srcChildNode.name_ );
-				childNode.setValue( srcChildNode );
-				srcChildNode = srcChildNode.next_;
-			} while ( srcChildNode != srcNode.headChild_ );
-		}
-
-		return this;
-
-	}//setValue(node)
+	}//copyValue()
 
 
 	// findChild() -- look for a child node that matches the name.
@@ -825,19 +865,26 @@ public class PGPNode {
 		return appendFlatName( new StringBuilder() ).toString();
 	}
 
+	// appendFlatName() -- appends the names from below the top node down to this node,
+	// separated by '.'. Unnamed nodes are shown by their index, like [2].
 	public StringBuilder appendFlatName( StringBuilder sb ) {
-		if ( null == parent_)
-			return sb;
-		if ( null != parent_.parent_ )
-		{
-			//parent_.fullName(sb).append( nameSeparator_ );
-			parent_.appendFlatName(sb).append( '.' );
-		}
-		if ( null != name_ )
-			sb.append( name_ );
-		else {
-			int index = indexOf();
-			sb.append( "["+index+"]" );
+		// Collect the path first, since the names are appended from the top down.
+		int depth = 0;
+		for ( PGPNode node = this; null != node.parent_; node = node.parent_ )
+			++depth;
+		PGPNode[] path = new PGPNode[ depth ];
+		PGPNode   node = this;
+		for ( int i = depth; i > 0; node = node.parent_ )
+			path[ --i ] = node;
+
+		for ( int i = 0; i < depth; ++i ) {
+			node = path[i];
+			if ( i > 0 )
+				sb.append( '.' );
+			if ( null != node.name_ )
+				sb.append( node.name_ );
+			else
+				sb.append( '[' ).append( node.indexOf() ).append( ']' );
 		}
 		return sb;
 	}//appendFlatName
@@ -887,6 +934,46 @@ public class PGPNode {
 	}//detach()
 
 
+	// replaceWith() -- Puts node in the place of this node in its parent's child (or attribute)
+	// list, and unlinks this node. node is unlinked from wherever it was first.
+	// A null node just removes this node.
+	// The sibling list is changed while holding the parent's lock, so siblings can be
+	// replaced from different threads (PGPTreeWalker.walkParallel()).
+	// returns this node.
+	public PGPNode replaceWith( PGPNode node ) {
+		PGPNode parent = parent_;
+		if ( null == parent || node == this )
+			return this;	// Nothing to do if this is the top.
+		if ( null != node )
+			node.unlink();
+
+		synchronized ( parent ) {
+			if ( null == node ) {
+				unlink();
+				return this;
+			}
+
+			node.parent_ = parent;
+			if ( next_ == this ) {
+				node.next_ = node.prev_ = node;	// Lonely child
+			} else {
+				node.next_  = next_;
+				node.prev_  = prev_;
+				next_.prev_ = node;
+				prev_.next_ = node;
+			}
+			if ( parent.headChild_ == this )
+				parent.headChild_ = node;
+			else if ( parent.headAttr_ == this )
+				parent.headAttr_ = node;
+
+			parent_ = next_ = prev_ = null;
+		}
+		return this;
+
+	}//replaceWith()
+
+
 	// dump() -- helpful for debugging the node structure data
 	// It recursively shows the current, attribute and children nodes.
 	// Sibling nodes are shown by the parent
@@ -913,7 +1000,36 @@ public class PGPNode {
 		return sb;
 	}//show
 
+	// dump() -- The walk goes down .headChild_ and back up .parent_ instead of recursing,
+	// so deep trees don't need a deep thread stack.
 	public StringBuilder dump( int atDepth, StringBuilder sb ) {
+		PGPNode node  = this;
+		int     depth = atDepth;
+		while ( true ) {
+			node.dumpOpen( depth, sb );
+			if ( null != node.headChild_ ) {
+				node = node.headChild_;	// Show the children
+				++depth;
+				continue;
+			}
+
+			// Close node, and the parents it was the last child of.
+			while ( true ) {
+				node.dumpClose( depth, sb );
+				if ( node == this )
+					return sb;
+				if ( node.next_ != node.parent_.headChild_ ) {
+					node = node.next_;	// On to the next sibling
+					break;
+				}
+				node = node.parent_;
+				--depth;
+			}
+		}
+	}//dump()
+
+	// dumpOpen() -- shows the node up to its children.
+	private void dumpOpen( int atDepth, StringBuilder sb ) {
 		int d;
 
 		if ( (null != parent_) && (this != parent_.headChild_) ) {
@@ -967,13 +1083,15 @@ public class PGPNode {
 						sb.append("{" );
 						break;
 			}
+		}
 
-			node = headChild_;
-			do {
-				node.dump( atDepth+1, sb );
-				node = node.next_;
-			} while ( node != headChild_ );
+	}//dumpOpen()
 
+	// dumpClose() -- shows the end of the node after its children.
+	private void dumpClose( int atDepth, StringBuilder sb ) {
+		int d;
+
+		if ( null != headChild_ ) {
 			if ( getDepthSpaces() > 0 ) {
 				// Flush sb buffer if not empty
 				if ( sb.length() > 0 ) {
@@ -982,7 +1100,7 @@ public class PGPNode {
 			}
 
 			// Show depth
-			for (d=0; d<atDepth; ++d)
+			for (d=0; d<atDepth && getDepthSpaces() > 0; ++d)
 				sb.append( getDepthString() );
 			switch( type_ ) {
 			case ARRAY:	sb.append(']' );
@@ -994,9 +1112,7 @@ public class PGPNode {
 
 		}//if headChild_
 
-		return sb;
-
-	}//dump()
+	}//dumpClose()
 
 
 	public static void main( String[] args ) {
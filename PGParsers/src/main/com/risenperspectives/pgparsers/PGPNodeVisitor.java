@@ -0,0 +1,27 @@
+package com.risenperspectives.pgparsers;
+
+// PGPNodeVisitor -- callbacks for PGPTreeWalker.
+//
+// enter() is called for a node before its children (pre-order), and leave() after all of
+// its children (post-order). Attribute nodes are not visited; use node.getAttr().
+//
+// A callback may change the subtree of the node it is given, and may replace or remove
+// the node itself with node.replaceWith(). A node replaced in enter() is done: its
+// children are not visited and leave() is not called. A replacement node is not visited.
+// A callback must not change the siblings or parents of the node it is given.
+//
+// When the walk is parallel, the callbacks are called from several threads at once
+// (for nodes in different subtrees) and must be thread safe.
+
+public interface PGPNodeVisitor {
+
+	enum Action {
+		CONTINUE,		// Keep going
+		SKIP_CHILDREN,	// (from enter()) Don't visit the children of this node. leave() is still called.
+		STOP			// End the walk
+	};
+
+	default Action enter( PGPNode node ) { return Action.CONTINUE; }
+	default Action leave( PGPNode node ) { return Action.CONTINUE; }
+
+}
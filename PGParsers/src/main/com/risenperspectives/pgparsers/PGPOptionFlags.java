@@ -8,6 +8,7 @@ public class PGPOptionFlags {
 	public static final int STRIP_WHITESPACE = 2;
 	public static final int CRLF_EOL = 4;
 	public static final int DOUBLE_QUOTE_ATTR = 8;	// For XML, default is Single quotes.
+	public static final int PARALLEL = 16;			// Split large work across a ForkJoinPool.
 
 	private int flags_ = 0;
 
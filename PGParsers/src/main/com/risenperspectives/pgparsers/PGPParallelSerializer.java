@@ -0,0 +1,222 @@
+package com.risenperspectives.pgparsers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Predicate;
+
+// PGPParallelSerializer -- Renders the children of a large node on a ForkJoinPool for the
+// serializers (PGPOptionFlags.PARALLEL).
+//
+// The children are grouped into batches of about the same number of nodes. Each batch is
+// rendered into its own StringBuilder, and the buffers are appended in order.
+// The serializers look at the last char of the output to decide on line breaks, so each
+// buffer is seeded with the char the batch is expected to follow. The expectation is
+// checked when the buffers are appended, and a batch that guessed wrong is rendered again
+// in place. The output is always the same as the sequential output.
+
+class PGPParallelSerializer {
+
+	// Renderer -- the serializer's recursive serialize( sb, node, atDepth ).
+	interface Renderer {
+		StringBuilder serialize( StringBuilder sb, PGPNode node, int atDepth );
+
+		// serializeSiblings() -- renders the siblings from first through last (null for through the end of the list).
+		default void serializeSiblings( StringBuilder sb, PGPNode first, PGPNode last, int atDepth ) {
+			PGPNode child = first;
+			PGPNode head  = first.parent_.headChild_;
+			do {
+				serialize( sb, child, atDepth );
+				if ( child == last )
+					break;
+				child = child.next_;
+			} while ( child != head );
+		}
+	}
+
+	private final Renderer           renderer_;
+	private final Predicate<PGPNode> endsLine_;	// guess if the output of a node ends with '\n'
+	private final ForkJoinPool       pool_;
+	private final int                threshold_;
+
+	// Set while rendering a batch of small children, so their children are not counted again.
+	private static final ThreadLocal<boolean[]> sequential_ = ThreadLocal.withInitial( () -> new boolean[1] );
+
+	private static final char EMPTY = '\0';
+
+	PGPParallelSerializer( Renderer renderer, Predicate<PGPNode> endsLine, ForkJoinPool pool, int threshold ) {
+		renderer_  = renderer;
+		endsLine_  = endsLine;
+		pool_      = (null != pool) ? pool : ForkJoinPool.commonPool();
+		threshold_ = Math.max( 2, threshold );
+	}
+
+
+	// serializeChildren() -- renders all children of node at atDepth.
+	// Nodes with fewer than threshold nodes below them are rendered sequentially.
+	// returns false, without rendering anything, if the children are not split here.
+	// The caller then renders them, and the children of large children may be split.
+	boolean serializeChildren( StringBuilder sb, PGPNode node, int atDepth ) {
+		boolean[] sequential = sequential_.get();
+		if ( sequential[0] || node.headChild_.next_ == node.headChild_ )
+			return false;
+
+		// Weigh the children. A child of threshold nodes or more is rendered on its own.
+		List<PGPNode> children = new ArrayList<PGPNode>();
+		int[] weights = new int[16];
+		int   total   = 0;
+		PGPNode child = node.headChild_;
+		do {
+			if ( children.size() == weights.length )
+				weights = Arrays.copyOf( weights, weights.length * 2 );
+			int weight = countNodes( child, threshold_ );
+			weights[ children.size() ] = weight;
+			children.add( child );
+			total += weight;
+			child = child.next_;
+		} while ( child != node.headChild_ );
+
+		if ( total < threshold_ ) {
+			sequential[0] = true;
+			try {
+				renderChildren( sb, node.headChild_, null, atDepth );
+			} finally {
+				sequential[0] = false;
+			}
+			return true;
+		}
+
+		// Group the children into batches.
+		int target = Math.max( Math.min( threshold_, 1024 ), total / (4 * pool_.getParallelism()) );
+		List<Batch> batches = new ArrayList<Batch>();
+		Batch batch = null;
+		for ( int i = 0; i < children.size(); ++i ) {
+			boolean big = weights[i] >= threshold_;
+			if ( null == batch || big || batch.big_ || batch.weight_ >= target ) {
+				batch = new Batch( children.get(i), big );
+				batches.add( batch );
+			}
+			batch.last_    = children.get(i);
+			batch.weight_ += weights[i];
+		}
+
+		if ( batches.size() == 1 )
+			return false;	// Only one large child. Split below it.
+
+		// Guess the char each batch follows. The first one is known.
+		batches.get(0).follows_ = lastChar( sb );
+		for ( int i = 1; i < batches.size(); ++i )
+			batches.get(i).follows_ = endsLine_.test( batches.get(i-1).last_ ) ? '\n' : ' ';
+
+		BatchTask task = new BatchTask( this, batches, atDepth, 0, batches.size() );
+		if ( ForkJoinTask.getPool() == pool_ )
+			task.invoke();
+		else
+			pool_.invoke( task );
+
+		for ( Batch b : batches ) {
+			char follows = lastChar( sb );
+			if ( follows == b.follows_ || (follows != '\n' && follows != EMPTY && b.follows_ == ' ') )
+				sb.append( b.sb_, (b.follows_ == EMPTY) ? 0 : 1, b.sb_.length() );
+			else
+				renderChildren( sb, b.first_, b.last_, atDepth );	// Guessed wrong.
+			b.sb_ = null;
+		}
+		return true;
+
+	}//serializeChildren()
+
+
+	// renderChildren() -- renders the siblings from first through last (null for through the end of the list).
+	private void renderChildren( StringBuilder sb, PGPNode first, PGPNode last, int atDepth ) {
+		renderer_.serializeSiblings( sb, first, last, atDepth );
+	}
+
+	// lastChar() -- the last char of the output, or EMPTY.
+	private static char lastChar( StringBuilder sb ) {
+		return (sb.length() == 0) ? EMPTY : sb.charAt( sb.length()-1 );
+	}
+
+
+	// countNodes() -- counts node and the nodes below it, stopping at cap.
+	static int countNodes( PGPNode node, int cap ) {
+		int     count = 1;
+		PGPNode n     = node.headChild_;
+		while ( null != n && count < cap ) {
+			++count;
+			if ( null != n.headChild_ ) {
+				n = n.headChild_;
+				continue;
+			}
+			// Move to the next sibling, or the next sibling of a parent.
+			while ( n != node && n.next_ == n.parent_.headChild_ )
+				n = n.parent_;
+			n = (n == node) ? null : n.next_;
+		}
+		return count;
+	}//countNodes()
+
+
+	// Batch -- a run of siblings rendered together.
+	private static class Batch {
+		final PGPNode first_;
+		final boolean big_;		// a single child of threshold nodes or more
+		PGPNode       last_;
+		int           weight_;
+		char          follows_;	// the last char of the output before this batch (' ' for any but '\n')
+		StringBuilder sb_;
+
+		Batch( PGPNode first, boolean big ) {
+			first_ = first;
+			big_   = big;
+		}
+	}
+
+
+	// BatchTask -- renders a range of batches, splitting the range in halves.
+	private static class BatchTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final PGPParallelSerializer parallel_;
+		private final List<Batch> batches_;
+		private final int         atDepth_;
+		private final int         from_;
+		private final int         to_;
+
+		BatchTask( PGPParallelSerializer parallel, List<Batch> batches, int atDepth, int from, int to ) {
+			parallel_ = parallel;
+			batches_  = batches;
+			atDepth_  = atDepth;
+			from_     = from;
+			to_       = to;
+		}
+
+		protected void compute() {
+			if ( to_ - from_ > 1 ) {
+				int mid = (from_ + to_) >>> 1;
+				invokeAll( new BatchTask( parallel_, batches_, atDepth_, from_, mid ),
+						   new BatchTask( parallel_, batches_, atDepth_, mid, to_ ) );
+				return;
+			}
+			Batch batch = batches_.get( from_ );
+			StringBuilder sb = new StringBuilder( 32 * Math.min( batch.weight_, 1 << 20 ) );
+			if ( batch.follows_ != EMPTY )
+				sb.append( batch.follows_ );
+
+			// Small batches don't split their children again.
+			boolean[] sequential = sequential_.get();
+			sequential[0] = !batch.big_;
+			try {
+				parallel_.renderChildren( sb, batch.first_, batch.last_, atDepth_ );
+			} finally {
+				sequential[0] = false;
+			}
+			batch.sb_ = sb;
+
+		}//compute()
+
+	}//class BatchTask
+
+}//class PGPParallelSerializer
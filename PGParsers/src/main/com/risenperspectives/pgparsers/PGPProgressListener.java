@@ -0,0 +1,15 @@
+package com.risenperspectives.pgparsers;
+
+// PGPProgressListener -- told how far a parse has got, and able to cancel it.
+//
+// progress() is called on the parsing thread every 64K chars or so, and once more
+// with charsDone == charsTotal when the parse is done. Returning false cancels the
+// parse, which then throws a PGPException "Parse cancelled".
+// The batches of a parallel parse don't report, so a parallel parse may report only
+// its start and end.
+
+public interface PGPProgressListener {
+
+	boolean progress( int charsDone, int charsTotal );
+
+}
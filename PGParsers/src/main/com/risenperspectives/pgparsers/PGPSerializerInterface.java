@@ -1,5 +1,7 @@
 package com.risenperspectives.pgparsers;
 
+import java.io.IOException;
+
 public interface PGPSerializerInterface {
 
 	// serialize() -- Creates output recursively from the GPNode structure
@@ -18,6 +20,20 @@ public interface PGPSerializerInterface {
 	String serialize( PGPNode topNode, PGPOptionFlags flags );
 	StringBuilder serialize( StringBuilder sb, PGPNode topNode, PGPOptionFlags flags );
 
+	// serialize() -- render the node and sub-nodes to out (a Writer, PrintStream...).
+	// Serializers that can't stream render to a StringBuilder first.
+	default void serialize( Appendable out, PGPNode topNode, PGPOptionFlags flags ) throws IOException {
+		out.append( serialize( new StringBuilder(1024), topNode, flags ) );
+	}
+
+	// setMetrics() -- told of each serialize, or PGPMetrics.NONE (or null) for none, the default.
+	// Serializers that aren't metered ignore it.
+	default void setMetrics( PGPMetrics metrics ) {
+	}
+	default PGPMetrics getMetrics() {
+		return PGPMetrics.NONE;
+	}
+
 	// setDebugLevel()
 	// level 0 is none, 1 and 2 are increasing levels of info
 	void setDebugLevel( int dbgLevel );
@@ -0,0 +1,205 @@
+package com.risenperspectives.pgparsers;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import com.risenperspectives.pgparsers.PGPNodeVisitor.Action;
+
+// PGPTreeWalker -- walks a PGPNode tree, calling a PGPNodeVisitor for each node.
+//
+// walk() visits the nodes in document order on the calling thread. It follows the
+// parent_ and next_ links instead of recursing, so deep trees don't overflow the stack,
+// and it keeps its place when a callback replaces the node it was given.
+//
+// walkParallel() does the same, except the children of a wide node (parallelThreshold
+// children or more) are split into ranges that are walked on a ForkJoinPool. A node is
+// still entered before and left after its own children, but siblings in different ranges
+// are visited in no particular order. A STOP ends the other ranges at their next node.
+//
+// Usage:
+//   PGPTreeWalker walker = new PGPTreeWalker();
+//   walker.walk( topNode, new PGPNodeVisitor() {
+//       public Action enter( PGPNode node ) {
+//           if ( node.isNameEqual("password") )
+//               node.replaceWith( new PGPNode( "password", "***" ) );
+//           return Action.CONTINUE;
+//       }
+//   });
+
+public class PGPTreeWalker {
+
+	private ForkJoinPool pool_;
+	private int          parallelThreshold_ = 64;	// nodes with fewer children are walked sequentially
+
+	public PGPTreeWalker() {
+	}
+
+	// setForkJoinPool() -- pool used by walkParallel(). null uses the common pool.
+	public void setForkJoinPool( ForkJoinPool pool ) {
+		pool_ = pool;
+	}
+	public ForkJoinPool getForkJoinPool() {
+		return pool_;
+	}
+
+	// setParallelThreshold() -- The children of a node are split across threads when it has
+	// at least this many of them.
+	public void setParallelThreshold( int children ) {
+		parallelThreshold_ = Math.max( 2, children );
+	}
+	public int getParallelThreshold() {
+		return parallelThreshold_;
+	}
+
+
+	// walk() -- visits root and all the nodes below it on this thread.
+	// returns false if a callback returned STOP.
+	public boolean walk( PGPNode root, PGPNodeVisitor visitor ) {
+		return new Walk( visitor, null, 0 ).walk( root );
+	}
+
+	// walkParallel() -- visits root and all the nodes below it, splitting the children of
+	// wide nodes across the ForkJoinPool.
+	// returns false if a callback returned STOP.
+	public boolean walkParallel( PGPNode root, PGPNodeVisitor visitor ) {
+		ForkJoinPool pool = (null != pool_) ? pool_ : ForkJoinPool.commonPool();
+		Walk walk = new Walk( visitor, pool, parallelThreshold_ );
+		if ( ForkJoinTask.getPool() == pool )
+			return walk.walk( root );
+
+		pool.invoke( new WalkTask( walk, new PGPNode[] { root }, 0, 1, 1 ) );
+		return !walk.stopped_;
+	}
+
+
+	// Walk -- the state of one walk.
+	private static class Walk {
+		private final PGPNodeVisitor visitor_;
+		private final ForkJoinPool   pool_;			// null when sequential
+		private final int            threshold_;
+		private volatile boolean     stopped_;
+
+		Walk( PGPNodeVisitor visitor, ForkJoinPool pool, int threshold ) {
+			visitor_   = visitor;
+			pool_      = pool;
+			threshold_ = threshold;
+		}
+
+		// walk() -- visits root and the nodes below it.
+		// returns false if the walk was stopped.
+		boolean walk( PGPNode root ) {
+			PGPNode node = root;
+			boolean down = true;	// false when coming back up to node from its last child
+
+			while ( true ) {
+				// Where to go after node. Its siblings don't change while below it.
+				PGPNode parent = node.parent_;
+				boolean top    = (node == root);
+				PGPNode next   = top ? null : node.next_;
+				boolean last   = top || next == parent.headChild_;
+				boolean leave  = true;
+
+				if ( down ) {
+					if ( stopped_ )
+						return false;
+					Action action = visitor_.enter( node );
+					if ( Action.STOP == action )
+						return stop();
+
+					if ( node.parent_ != parent ) {
+						leave = false;	// Replaced. It is done.
+					} else if ( Action.CONTINUE == action && null != node.headChild_ ) {
+						if ( !isWide( node ) ) {
+							node = node.headChild_;
+							continue;
+						}
+						if ( !walkChildren( node ) )
+							return false;
+					}
+				}
+
+				if ( leave && Action.STOP == visitor_.leave( node ) )
+					return stop();
+
+				if ( top )
+					return !stopped_;
+				if ( last ) {
+					node = parent;
+					down = false;
+				} else {
+					node = next;
+					down = true;
+				}
+			}
+
+		}//walk()
+
+		private boolean stop() {
+			stopped_ = true;
+			return false;
+		}
+
+		// isWide() -- true if the children of node should be split across threads.
+		private boolean isWide( PGPNode node ) {
+			if ( null == pool_ )
+				return false;
+			PGPNode child = node.headChild_;
+			int     count = 1;
+			while ( count < threshold_ ) {
+				child = child.next_;
+				if ( child == node.headChild_ )
+					return false;
+				++count;
+			}
+			return true;
+		}
+
+		// walkChildren() -- walks the children of node in ranges on the pool.
+		private boolean walkChildren( PGPNode node ) {
+			PGPNode[] children = new PGPNode[ node.getChildCount() ];
+			PGPNode   child    = node.headChild_;
+			for ( int i = 0; i < children.length; ++i, child = child.next_ )
+				children[i] = child;
+
+			int grain = Math.max( 1, children.length / (4 * pool_.getParallelism()) );
+			new WalkTask( this, children, 0, children.length, grain ).invoke();
+			return !stopped_;
+		}
+
+	}//class Walk
+
+
+	// WalkTask -- walks the subtrees of a range of siblings, splitting the range in halves.
+	private static class WalkTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Walk      walk_;
+		private final PGPNode[] nodes_;
+		private final int       from_;
+		private final int       to_;
+		private final int       grain_;
+
+		WalkTask( Walk walk, PGPNode[] nodes, int from, int to, int grain ) {
+			walk_  = walk;
+			nodes_ = nodes;
+			from_  = from;
+			to_    = to;
+			grain_ = grain;
+		}
+
+		protected void compute() {
+			if ( to_ - from_ > grain_ ) {
+				int mid = (from_ + to_) >>> 1;
+				invokeAll( new WalkTask( walk_, nodes_, from_, mid, grain_ ),
+						   new WalkTask( walk_, nodes_, mid, to_, grain_ ) );
+				return;
+			}
+			for ( int i = from_; i < to_; ++i ) {
+				if ( !walk_.walk( nodes_[i] ) )
+					return;
+			}
+		}
+
+	}//class WalkTask
+
+}//class PGPTreeWalker
@@ -0,0 +1,16 @@
+package com.risenperspectives.pgparsers;
+
+// PGPUncheckedException -- carries a PGPException out of code that can't throw it,
+// like a Stream of parsed records. getPGPException() has the error position.
+
+public class PGPUncheckedException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public PGPUncheckedException( PGPException e ) {
+		super( e.getMessage(), e );
+	}
+
+	public PGPException getPGPException() { return (PGPException)getCause(); }
+
+}
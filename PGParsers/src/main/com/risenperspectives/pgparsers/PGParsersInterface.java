@@ -11,6 +11,25 @@ public interface PGParsersInterface {
 	PGPNode parse( String data ) throws PGPException;
 	PGPNode parse( String data, PGPOptionFlags flags ) throws PGPException;
 
+	// parse() -- scans text that is not a String, such as a StringBuilder or CharBuffer.
+	// Parsers that read it in place don't copy it; the others parse text.toString().
+	// The text must not change during the parse.
+	default PGPNode parse( CharSequence text ) throws PGPException {
+		return parse( text.toString() );
+	}
+	default PGPNode parse( CharSequence text, PGPOptionFlags flags ) throws PGPException {
+		return parse( text.toString(), flags );
+	}
+
+	// reparse() -- parses data, which is the text topNode was parsed from after an edit that
+	// replaced removed chars at offset with inserted chars. Parsers that record source spans
+	// parse only the part of the text around the edit again, and update topNode.
+	// The others parse data in full.
+	// returns the top node of data, which may be topNode.
+	default PGPNode reparse( PGPNode topNode, CharSequence data, int offset, int removed, int inserted ) throws PGPException {
+		return parse( data );
+	}
+
 	void          setFlags( PGPOptionFlags flags );
 	PGPOptionFlags getFlags();
 
@@ -18,6 +37,19 @@ public interface PGParsersInterface {
 	// level 0 is none, 1 and 2 are increasing levels of info
 	void setDebugLevel( int dbgLevel );
 
+	// setProgressListener() -- listener told of the progress of each parse, or null for none.
+	// Parsers that don't report progress ignore it.
+	default void setProgressListener( PGPProgressListener listener ) {
+	}
+
+	// setMetrics() -- told of each parse, or PGPMetrics.NONE (or null) for none, the default.
+	// Parsers that aren't metered ignore it.
+	default void setMetrics( PGPMetrics metrics ) {
+	}
+	default PGPMetrics getMetrics() {
+		return PGPMetrics.NONE;
+	}
+
 	// getLastErrorText()
 	// Returns null if none, or info on the last error encountered.
 	String getLastErrorText();
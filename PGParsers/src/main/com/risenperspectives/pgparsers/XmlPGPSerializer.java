@@ -1,5 +1,7 @@
 package com.risenperspectives.pgparsers;
 
+import java.util.concurrent.ForkJoinPool;
+
 import com.risenperspectives.pgparsers.PGPNode.PGPDataType;
 
 public class XmlPGPSerializer implements PGPSerializerInterface {
@@ -9,6 +11,12 @@ public class XmlPGPSerializer implements PGPSerializerInterface {
     private String depthString_ = "  ";
 	private int    debug_;
 
+	// Parallel serializing (PGPOptionFlags.PARALLEL)
+	private ForkJoinPool pool_;
+	private int    parallelThreshold_ = 1 << 14;	// smaller trees (in nodes) are serialized sequentially
+	private PGPParallelSerializer parallel_;
+	private PGPMetrics metrics_ = PGPMetrics.NONE;
+
 	public String protocolName() { return "XML"; }
 
 	public void setFlags( PGPOptionFlags flags ) {
@@ -34,6 +42,43 @@ public class XmlPGPSerializer implements PGPSerializerInterface {
 		return null;
 	}
 
+	// setForkJoinPool() -- pool used when the PARALLEL flag is set. null uses the common pool.
+	public void setForkJoinPool( ForkJoinPool pool ) {
+		pool_     = pool;
+		parallel_ = null;
+	}
+	public ForkJoinPool getForkJoinPool() {
+		return pool_;
+	}
+
+	// setParallelThreshold() -- Nodes with fewer nodes below them than this are serialized
+	// sequentially even when the PARALLEL flag is set.
+	public void setParallelThreshold( int nodes ) {
+		parallelThreshold_ = nodes;
+		parallel_          = null;
+	}
+	public int getParallelThreshold() {
+		return parallelThreshold_;
+	}
+
+	// setMetrics() -- told of each serialize, or PGPMetrics.NONE (or null) for none.
+	public void setMetrics( PGPMetrics metrics ) {
+		metrics_ = (null == metrics) ? PGPMetrics.NONE : metrics;
+	}
+	public PGPMetrics getMetrics() {
+		return metrics_;
+	}
+
+	// parallel() -- renders the children of large nodes in parallel when the PARALLEL flag is set.
+	// returns null when serializing sequentially.
+	private PGPParallelSerializer parallel() {
+		if ( null == flags_ || !flags_.isSet(PGPOptionFlags.PARALLEL) )
+			return null;
+		if ( null == parallel_ )
+			parallel_ = new PGPParallelSerializer( this::serialize, node -> false, pool_, parallelThreshold_ );
+		return parallel_;
+	}
+
 
 	// encodeAndAppend().  Encodes a string and appends it to the StringBuilder.
 	public void encodeAndAppend( StringBuilder sb, String s ) {
@@ -91,7 +136,7 @@ public class XmlPGPSerializer implements PGPSerializerInterface {
 	// serialize() -- with Option flags
 	public String serialize( PGPNode topNode, PGPOptionFlags flags )
 	{
-		return serialize( new StringBuilder(1024), topNode, 0 ).toString();
+		return serialize( new StringBuilder(1024), topNode, flags ).toString();
 	}
 
 	// serialize() -- simplest form.
@@ -100,6 +145,13 @@ public class XmlPGPSerializer implements PGPSerializerInterface {
 	}
 
 	public StringBuilder serialize( StringBuilder sb, PGPNode node, PGPOptionFlags flags ) {
+		if ( PGPMetrics.NONE != metrics_ )
+			return PGPMetered.serialize( metrics_, protocolName(), sb, node, () -> serializeText( sb, node, flags ) );
+		return serializeText( sb, node, flags );
+	}
+
+	// serializeText() -- serialize() without the metrics.
+	private StringBuilder serializeText( StringBuilder sb, PGPNode node, PGPOptionFlags flags ) {
 		flags_ = (null == flags) ? new PGPOptionFlags() : flags;
 		PGPNode siblingNode = node;
 		do {
@@ -107,12 +159,43 @@ public class XmlPGPSerializer implements PGPSerializerInterface {
 			siblingNode = siblingNode.next_;
 		} while ( (null == getLastErrorText()) && (siblingNode != null) && (siblingNode != node) );
 
-		return serialize( sb, node, 0 );
+		return sb;
 	}
 
 	// serialize() -- renders the node and subnodes to look like XML output
+	// The walk goes down .headChild_ and back up .parent_ instead of recursing,
+	// so deep trees don't need a deep thread stack.
 	//  returns the StringBuilder.
 	public StringBuilder serialize( StringBuilder sb, PGPNode node, int atDepth ) {
+		PGPParallelSerializer parallel = parallel();
+		PGPNode current = node;
+		int     depth   = atDepth;
+		while ( true ) {
+			serializeOpen( sb, current, depth );
+			if ( null != current.headChild_ && (null == parallel || !parallel.serializeChildren( sb, current, depth+1 )) ) {
+				current = current.headChild_;	// Go down to the children
+				++depth;
+				continue;
+			}
+
+			// Close current, and the parents it was the last child of.
+			while ( true ) {
+				serializeClose( sb, current, depth );
+				if ( current == node )
+					return sb;
+				if ( current.next_ != current.parent_.headChild_ ) {
+					current = current.next_;	// On to the next sibling
+					break;
+				}
+				current = current.parent_;
+				--depth;
+			}
+		}
+
+	}//serialize()
+
+	// serializeOpen() -- renders the node up to its children.
+	private void serializeOpen( StringBuilder sb, PGPNode node, int atDepth ) {
 		int d;
 
 		if ( getDepthSpaces() > 0 ) {
@@ -152,20 +235,16 @@ public class XmlPGPSerializer implements PGPSerializerInterface {
 		// Output the value (if specified)
 		appendValue( sb, node, false);
 
-		// Go through and output the children
-		PGPNode firstChild = node.getChild();
-		PGPNode subnode    = firstChild;
-		while ( null != subnode ) {
-			serialize( sb, subnode, atDepth+1 );
-			subnode = subnode.getNext();
-			if ( subnode == firstChild )
-				break;
-		}
+	}//serializeOpen()
+
+	// serializeClose() -- renders the element closing tag after the children.
+	private void serializeClose( StringBuilder sb, PGPNode node, int atDepth ) {
+		int d;
 
 		// Add in the element closing tag
 		if ( null != node.getName() )
 		{
-			if ( null != subnode && getDepthSpaces() > 0 ) {
+			if ( null != node.getChild() && getDepthSpaces() > 0 ) {
 				// Flush the current line if any.
 				if ( sb.length() > 0  && sb.charAt(sb.length()-1) != '\n')
 					sb.append('\n');
@@ -179,8 +258,6 @@ public class XmlPGPSerializer implements PGPSerializerInterface {
 
 		}//if name
 
-		return sb;
-
-	}//serialize()
+	}//serializeClose()
 
 }//class XmlPGPSerializer
@@ -6,7 +6,10 @@ package com.risenperspectives.pgparsers;
 // February, 2025
 //
 
+import java.util.Arrays;
 import java.util.Hashtable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import com.risenperspectives.pgparsers.PGPNode.PGPDataType;
 
@@ -15,13 +18,33 @@ public class XmlPGParser implements PGParsersInterface {
 	public  PGPOptionFlags flags_ = new PGPOptionFlags();
 	private int    debug_;
 
-	private String data_;
+	private PGPChars data_;
 	public  int    onLine_;
 	public  int    at_;
 	private boolean bPastSpaces_;
 	public  int    onCharOfLine_;
 	public  Hashtable<String,PGPNode> aliases_;
 
+	// The item count of each open element. Nested elements are scanned in a loop
+	// instead of recursively, so the depth is only limited by maxDepth_.
+	private int[]  stateStack_ = new int[64];
+	private int    depth_;
+	private int    maxDepth_   = 100000;
+
+	// Parallel parsing (PGPOptionFlags.PARALLEL)
+	private ForkJoinPool pool_;
+	private int    parallelThreshold_ = 1 << 20;	// smaller documents are parsed sequentially
+	private int    minChunkSize_      = 1 << 16;
+	private ParallelParse parallel_;				// null when parsing sequentially
+
+	// Progress reporting (setProgressListener())
+	private PGPProgressListener progress_;
+	private int    nextProgressAt_ = Integer.MAX_VALUE;
+	private static final int PROGRESS_CHARS = 1 << 16;	// chars between progress() calls
+
+	// Metrics (setMetrics())
+	private PGPMetrics metrics_ = PGPMetrics.NONE;
+
 	public String protocolName() { return "XML"; }
 
 	public XmlPGParser() {
@@ -38,6 +61,68 @@ public class XmlPGParser implements PGParsersInterface {
 		debug_ = dbgLevel;
 	}
 
+	// setForkJoinPool() -- pool used when the PARALLEL flag is set. null uses the common pool.
+	public void setForkJoinPool( ForkJoinPool pool ) {
+		pool_ = pool;
+	}
+	public ForkJoinPool getForkJoinPool() {
+		return pool_;
+	}
+
+	// setParallelThreshold() -- Documents shorter than this (in chars) are parsed sequentially
+	// even when the PARALLEL flag is set.
+	public void setParallelThreshold( int chars ) {
+		parallelThreshold_ = chars;
+	}
+	public int getParallelThreshold() {
+		return parallelThreshold_;
+	}
+
+	// setMaxDepth() -- Elements nested deeper than this are an error.
+	public void setMaxDepth( int depth ) {
+		maxDepth_ = depth;
+	}
+	public int getMaxDepth() {
+		return maxDepth_;
+	}
+
+	// reportProgress() -- tells the progress listener how far the parse has got.
+	// throws PGPException if the listener cancels the parse.
+	private void reportProgress() throws PGPException {
+		nextProgressAt_ = at_ + PROGRESS_CHARS;
+		if ( !progress_.progress( at_, data_.length() ) )
+			throw new PGPException( at_, onLine_, onCharOfLine_, 1, "Parse cancelled" );
+	}
+
+	// startProgress() -- resets the progress reporting for a new parse.
+	private void startProgress() {
+		nextProgressAt_ = (null == progress_) ? Integer.MAX_VALUE : PROGRESS_CHARS;
+	}
+
+	// endProgress() -- tells the progress listener the parse is done.
+	private void endProgress() {
+		nextProgressAt_ = Integer.MAX_VALUE;
+		if ( null != progress_ )
+			progress_.progress( data_.length(), data_.length() );
+	}
+
+
+	// setProgressListener() -- listener told of the progress of each parse, or null for none.
+	public void setProgressListener( PGPProgressListener listener ) {
+		progress_ = listener;
+	}
+	public PGPProgressListener getProgressListener() {
+		return progress_;
+	}
+
+	// setMetrics() -- told of each parse, or PGPMetrics.NONE (or null) for none.
+	public void setMetrics( PGPMetrics metrics ) {
+		metrics_ = (null == metrics) ? PGPMetrics.NONE : metrics;
+	}
+	public PGPMetrics getMetrics() {
+		return metrics_;
+	}
+
 	public String getLastErrorText() {
 		return null;
 	}
@@ -74,7 +159,6 @@ public class XmlPGParser implements PGParsersInterface {
 	// This should only need to be done once after a hard lookAhead.
 	protected void pushBack() {
 		--at_;
-		--onCharOfLine_;
 		if ( --onCharOfLine_ < 0 ) {
 			bPastSpaces_ = true;
 			--onLine_;
@@ -154,14 +238,20 @@ public class XmlPGParser implements PGParsersInterface {
 				}
 			}// if a comment.
 
-			if ( c != ' ' && c != '\n'  &&  c != '\t' )
+			if ( c == '\n' ) {
+				onLine_++;
+				onCharOfLine_ = 0;
+				bPastSpaces_  = false;
+			}
+			else if ( c != ' ' &&  c != '\t' )
 				return c;
 
 		}//while
 		return '\0';
 	}//getNextNonSpaceChar()
 
-	public String decodeXmlValue( String data, int start, int end ) {
+	public String decodeXmlValue( CharSequence text, int start, int end ) {
+		PGPChars data = PGPChars.of( text );
 		StringBuffer sb = new StringBuffer();
 		for (int i=start; i<end; ++i) {
 			char c = data.charAt(i);
@@ -211,6 +301,11 @@ public class XmlPGParser implements PGParsersInterface {
 		flags_ = flags;
 		return parse( data );
 	}
+	public PGPNode parse( CharSequence text, PGPOptionFlags flags ) throws PGPException
+	{
+		flags_ = flags;
+		return parse( text );
+	}
 
 
 	// scanInAttrValue -- at_ should be at char after '='
@@ -372,13 +467,48 @@ public class XmlPGParser implements PGParsersInterface {
 	// scanInElementValue -- Could be as simple as a value, or a value with sub-elements
 	private void scanInElementValue( PGPNode node ) throws PGPException
 	{
+		scanInElementContent( node, 0, -1 );
+
+	}//scanInElementValue()
+
+
+	// scanInElementContent() -- scans the values and sub-elements of an element up to its closing tag.
+	// count is the number of items already scanned for this element. A parallel parse starts
+	// a chunk at a sub-element in the middle of the content, and stops when the item
+	// at stopAt is reached, which is where the next chunk starts.
+	// Sub-elements are scanned by this same loop: the count of the element is pushed on
+	// the state stack, and the parent_ of the sub-element leads back out.
+	// returns true if it stopped at stopAt.
+	private boolean scanInElementContent( PGPNode node, int count, int stopAt ) throws PGPException
+	{
+		int base = depth_;
+		statePush( count );
+
 		char c = getNextNonSpaceChar();
-		int count = 0;
 
 		// This is a real value
-		while ( c != 0 && (c != '<' || lookAhead() != '/') ) {
+		while ( true ) {
+
+			if ( c == 0 || (c == '<' && lookAhead() == '/') ) {
+				// End of the content of this element
+				pushBack();
+				if ( --depth_ == base )
+					break;
+				scanInEndTag( node );
+				node  = node.parent_;
+				count = stateStack_[ depth_-1 ];
+				c = getNextNonSpaceChar();
+				continue;
+			}
+
+			if ( at_-1 == stopAt && depth_ == base+1 ) {
+				depth_ = base;
+				return true;
+			}
 
 			++count;
+			if ( at_ >= nextProgressAt_ )
+				reportProgress();
 
 			if ( c == '<' ) {
 				c = lookAhead();
@@ -387,7 +517,14 @@ public class XmlPGParser implements PGParsersInterface {
 					scanInSpecial(node);
 				}
 				else {
-					scanInElement(node);
+					PGPNode child = scanInStartTag(node);
+					if ( null != child ) {
+						// Continue with the content of the sub-element
+						stateStack_[ depth_-1 ] = count;
+						statePush( 0 );
+						node  = child;
+						count = 0;
+					}
 				}
 				c = getNextNonSpaceChar();
 				continue;
@@ -413,12 +550,30 @@ public class XmlPGParser implements PGParsersInterface {
 
 		}//while
 
-		pushBack();
+		return false;
 
-	}//scanInElementValue()
+	}//scanInElementContent()
 
 
 	private void scanInElement( PGPNode parentNode ) throws PGPException
+	{
+		PGPNode node = scanInStartTag( parentNode );
+		if ( null == node )
+			return;	// No Data for this item
+
+		// We have the element name, now gather the element value
+		// Or, it could be another set of sub-elements.
+		if ( null == parallel_ || !parallel_.scanInRootContent( this, node ) )
+			scanInElementValue( node );
+
+		scanInEndTag( node );
+
+	}//scanInElement
+
+
+	// scanInStartTag() -- scans the name and attributes of an element and adds it to parentNode.
+	// returns the new node, or null if the element has no content (<name/>).
+	private PGPNode scanInStartTag( PGPNode parentNode ) throws PGPException
 	{
 		char c = getNextNonSpaceChar();
 
@@ -458,32 +613,58 @@ public class XmlPGParser implements PGParsersInterface {
 			if ( getNext() != '>' )
 				throw new PGPException( at_, onLine_, onCharOfLine_, 1, "'>' expected to close the element at offset " + at_ );
 			node.setType( PGPDataType.NULL );
-			return;
+			return null;
 		}
 		if ( c != '>' )
 			throw new PGPException( at_, onLine_, onCharOfLine_, 1, "'>' expected to close the element name at offset " + at_ );
 
-		// We have the element name, now gather the element value
-		// Or, it could be another set of sub-elements. Get them recursively.
-		scanInElementValue( node );
+		return node;
 
-		//Expect closing element for this name
+	}//scanInStartTag()
 
-		c = getNextNonSpaceChar();
+
+	// scanInEndTag() -- Expect closing element for the name of node
+	private void scanInEndTag( PGPNode node ) throws PGPException
+	{
+		char c = getNextNonSpaceChar();
 		int closeAnchor = at_-1;
-		if ( c != '<' || (c=getNext()) != '/' || !isStringNext( name) || (c=getNext()) != '>' ) {
+		if ( c != '<' || (c=getNext()) != '/' || !isStringNext( node.name_ ) || (c=getNext()) != '>' ) {
 			throw new PGPException( at_, onLine_, onCharOfLine_, 1, "'</' expected to close the element name at offset " + closeAnchor );
 		}
 
-	}//scanInElement
+	}//scanInEndTag()
+
+
+	// statePush() -- opens a level of nesting.
+	private void statePush( int state ) throws PGPException {
+		if ( depth_ >= maxDepth_ )
+			throw new PGPException( at_, onLine_, onCharOfLine_, 1, "Nesting deeper than " + maxDepth_ + " levels" );
+		if ( depth_ >= stateStack_.length )
+			stateStack_ = Arrays.copyOf( stateStack_, Math.max( stateStack_.length * 2, depth_ + 1 ) );
+		stateStack_[ depth_++ ] = state;
+	}
+
+	public PGPNode parse( String data ) throws PGPException {
+		return parse( (CharSequence)data );
+	}
 
 	// parser() -- Scan a XML message and create a PGPNode structure.
+	// The text is read in place: a StringBuilder or CharBuffer is not copied to a String first.
 	// returns topNode
 	// If there was an error, the lastError_ value will have a non-zero value.
 	// If
-	public PGPNode parse( String data ) throws PGPException {
+	public PGPNode parse( CharSequence text ) throws PGPException {
+		if ( PGPMetrics.NONE == metrics_ )
+			return parseText( text );
+		return PGPMetered.parse( metrics_, protocolName(), text, () -> parseText( text ), null );
+	}
+
+	// parseText() -- parse() without the metrics.
+	private PGPNode parseText( CharSequence text ) throws PGPException {
 		if (debug_>0) System.out.println("Enter: parse()" );
 
+		PGPChars data = PGPChars.of( text );
+
 		PGPNode topNode = new PGPNode();
 
 		data_         = data;
@@ -491,18 +672,267 @@ public class XmlPGParser implements PGParsersInterface {
 		onLine_       = 0;
 		onCharOfLine_ = 0;
 		bPastSpaces_  = false;
+		depth_        = 0;
+		startProgress();
 
-		char c;
-		while ( (c = getNextNonSpaceChar()) != '\0')
-		{
-			if ( c != '<' )
-				throw new PGPException( at_, onLine_, onCharOfLine_, 1, "'<' expected at position " + at_ );
-			pushBack();
-			scanInElement(topNode);
+		if ( null != flags_ && flags_.isSet(PGPOptionFlags.PARALLEL) && data.length() >= parallelThreshold_ ) {
+			ForkJoinPool pool = (null != pool_) ? pool_ : ForkJoinPool.commonPool();
+			int chunkSize = Math.max( minChunkSize_, data.length() / (4 * pool.getParallelism()) );
+			parallel_ = ParallelParse.prescan( data, pool, chunkSize );
+		}
+
+		try {
+			char c;
+			while ( (c = getNextNonSpaceChar()) != '\0')
+			{
+				if ( c != '<' )
+					throw new PGPException( at_, onLine_, onCharOfLine_, 1, "'<' expected at position " + at_ );
+				pushBack();
+				scanInElement(topNode);
+			}
+		} finally {
+			parallel_ = null;
 		}
 
+		endProgress();
 		return topNode;
 
-	}//parse()
+	}//parseText()
+
+
+	// ParallelParse -- Parallel parse of the content of the root element.
+	// The prescan finds the top-level child elements of the root, skipping comments,
+	// CDATA sections, processing instructions and quoted attribute values, and cuts the
+	// content into chunks at child elements. When the parse reaches the root content,
+	// the chunks are parsed on the ForkJoinPool, each starting with the line and column
+	// it has in the document, and their nodes are attached to the root in order.
+	// Each chunk must stop exactly where the next one starts. If the prescan guessed
+	// wrong, the root content is parsed sequentially. Otherwise the first error in
+	// document order is thrown, as the sequential parse would.
+	private static class ParallelParse {
+		final ForkJoinPool pool_;
+		int   contentStart_;	// after the '>' of the root start tag
+		int[] starts_;			// chunk start positions, starts_[0] is contentStart_
+		int[] lines_;			// line and column of each chunk start
+		int[] columns_;
+
+		ParallelParse( ForkJoinPool pool ) {
+			pool_  = pool;
+		}
+
+		// prescan() -- returns null if the root content is too small to split.
+		static ParallelParse prescan( PGPChars data, ForkJoinPool pool, int chunkSize ) {
+			int len = data.length();
+
+			// Find the root start tag.
+			int i = 0;
+			while ( i < len && Character.isWhitespace( data.charAt(i) ) )
+				++i;
+			if ( i+1 >= len || data.charAt(i) != '<' || !isNameStart( data.charAt(i+1) ) )
+				return null;
+			i = skipTag( data, i );
+			if ( i < 0 || data.charAt(i-2) == '/' )
+				return null;	// No content
+
+			ParallelParse parallel = new ParallelParse( pool );
+			parallel.contentStart_ = i;
+
+			// Collect the chunk starts at top-level child elements.
+			int[] starts = new int[16];
+			int   count  = 1;
+			int   depth  = 0;
+			starts[0] = i;
+			while ( i < len ) {
+				int lt = data.indexOf( '<', i );
+				if ( lt < 0 || lt+1 >= len )
+					return null;
+				char c = data.charAt( lt+1 );
+				if ( data.startsWith( "<!--", lt ) )
+					i = end( data.indexOf( "-->", lt+4 ), 3 );
+				else if ( data.startsWith( "<![CDATA[", lt ) )
+					i = end( data.indexOf( "]]>", lt+9 ), 3 );
+				else if ( c == '?' )
+					i = end( data.indexOf( "?>", lt+2 ), 2 );
+				else if ( c == '/' ) {
+					if ( depth-- == 0 )
+						break;	// The root closing tag.
+					i = end( data.indexOf( '>', lt+2 ), 1 );
+				}
+				else if ( isNameStart(c) ) {
+					if ( depth == 0 && lt - starts[count-1] >= chunkSize ) {
+						if ( count == starts.length )
+							starts = Arrays.copyOf( starts, count*2 );
+						starts[ count++ ] = lt;
+					}
+					i = skipTag( data, lt );
+					if ( i > 0 && data.charAt(i-2) != '/' )
+						++depth;
+				}
+				else
+					i = lt+1;
+				if ( i < 0 )
+					return null;
+			}
+			if ( count < 2 )
+				return null;
+
+			parallel.starts_  = Arrays.copyOf( starts, count );
+			parallel.lines_   = new int[ count ];
+			parallel.columns_ = new int[ count ];
+			int line      = 0;
+			int lineStart = 0;
+			int from      = 0;
+			for ( int k = 0; k < count; ++k ) {
+				int at = parallel.starts_[k];
+				for ( int n = data.indexOf( '\n', from ); n >= 0 && n < at; n = data.indexOf( '\n', n+1 ) ) {
+					++line;
+					lineStart = n+1;
+				}
+				parallel.lines_[k]   = line;
+				parallel.columns_[k] = at - lineStart;
+				from = at;
+			}
+			return parallel;
+
+		}//prescan()
+
+		static boolean isNameStart( char c ) {
+			return Character.isLetterOrDigit(c) || c=='_' || c==':';
+		}
+
+		// end() -- position after a found terminator, or -1 if it was not found.
+		static int end( int found, int length ) {
+			return (found < 0) ? -1 : found + length;
+		}
+
+		// skipTag() -- returns the position after the '>' of the tag starting at lt,
+		// skipping quoted attribute values. returns -1 if there is no '>'.
+		static int skipTag( PGPChars data, int lt ) {
+			int len = data.length();
+			for ( int i = lt+1; i < len; ++i ) {
+				char c = data.charAt(i);
+				if ( c == '>' )
+					return i+1;
+				if ( c == '\"' || c == '\'' ) {
+					i = data.indexOf( c, i+1 );
+					if ( i < 0 )
+						return -1;
+				}
+			}
+			return -1;
+		}
+
+		// scanInRootContent() -- If the parser is at the root content, parses it in parallel
+		// into node and leaves the parser before the root closing tag.
+		// returns false if this is not the root content, or the content has to be parsed sequentially.
+		boolean scanInRootContent( XmlPGParser parser, PGPNode node ) throws PGPException {
+			if ( parser.at_ != contentStart_ )
+				return false;
+
+			int count = starts_.length;
+			XmlPGParser[] chunks = new XmlPGParser[ count ];
+			for ( int k = 0; k < count; ++k ) {
+				XmlPGParser chunk = new XmlPGParser();
+				chunk.flags_         = parser.flags_;
+				chunk.debug_         = parser.debug_;
+				chunk.data_          = parser.data_;
+				chunk.at_            = starts_[k];
+				chunk.onLine_        = (k == 0) ? parser.onLine_ : lines_[k];
+				chunk.onCharOfLine_  = (k == 0) ? parser.onCharOfLine_ : columns_[k];
+				chunk.bPastSpaces_   = true;
+				chunk.maxDepth_      = parser.maxDepth_;
+				chunk.depth_         = parser.depth_;
+				chunks[k] = chunk;
+			}
+			ChunkTask task = new ChunkTask( this, chunks, node.getName(), 0, count );
+			pool_.invoke( task );
+
+			// The first chunk that fails decides, as everything before it was verified.
+			for ( int k = 0; k < count; ++k ) {
+				if ( null != task.errors_[k] )
+					throw task.errors_[k];
+				if ( !task.verified_[k] )
+					return false;	// The prescan guessed wrong.
+			}
+
+			for ( PGPNode holder : task.holders_ ) {
+				if ( null != holder.type_ )
+					node.type_ = holder.type_;
+				if ( null != holder.value_ )
+					node.value_ = holder.value_;
+				while ( null != holder.headChild_ )
+					node.addChild( holder.headChild_.unlink() );
+			}
+
+			XmlPGParser last = chunks[ count-1 ];
+			parser.at_           = last.at_;
+			parser.onLine_       = last.onLine_;
+			parser.onCharOfLine_ = last.onCharOfLine_;
+			parser.bPastSpaces_  = last.bPastSpaces_;
+			return true;
+
+		}//scanInRootContent()
+
+	}//class ParallelParse
+
+
+	// ChunkTask -- parses a range of chunks of the root content, splitting the range in halves.
+	private static class ChunkTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final ParallelParse parallel_;
+		private final XmlPGParser[] chunks_;
+		private final String        rootName_;
+		private final int           from_;
+		private final int           to_;
+		final PGPNode[]        holders_;
+		final boolean[]        verified_;	// stopped where the next chunk starts
+		final PGPException[]   errors_;
+
+		ChunkTask( ParallelParse parallel, XmlPGParser[] chunks, String rootName, int from, int to ) {
+			parallel_ = parallel;
+			chunks_   = chunks;
+			rootName_ = rootName;
+			from_     = from;
+			to_       = to;
+			holders_  = new PGPNode[ chunks.length ];
+			verified_ = new boolean[ chunks.length ];
+			errors_   = new PGPException[ chunks.length ];
+		}
+		private ChunkTask( ChunkTask parent, int from, int to ) {
+			parallel_ = parent.parallel_;
+			chunks_   = parent.chunks_;
+			rootName_ = parent.rootName_;
+			from_     = from;
+			to_       = to;
+			holders_  = parent.holders_;
+			verified_ = parent.verified_;
+			errors_   = parent.errors_;
+		}
+
+		protected void compute() {
+			if ( to_ - from_ > 1 ) {
+				int mid = (from_ + to_) >>> 1;
+				invokeAll( new ChunkTask( this, from_, mid ), new ChunkTask( this, mid, to_ ) );
+				return;
+			}
+			// The holder has the root name, so a CDATA section is added as a child like it is to the root.
+			XmlPGParser chunk  = chunks_[ from_ ];
+			PGPNode     holder = new PGPNode( rootName_ );
+			boolean     last   = (from_ == chunks_.length-1);
+			int         stopAt = last ? -1 : parallel_.starts_[ from_+1 ];
+			holders_[ from_ ] = holder;
+			try {
+				// A chunk after the first starts at a child element, so there was an item before it.
+				boolean stopped = chunk.scanInElementContent( holder, (from_ == 0) ? 0 : 1, stopAt );
+				verified_[ from_ ] = (stopped != last);
+			} catch ( PGPException e ) {
+				errors_[ from_ ] = e;
+			} catch ( RuntimeException e ) {
+				;// Not verified. The sequential parse will report it.
+			}
+
+		}//compute()
+
+	}//class ChunkTask
 
 }//class XmlPGParsers
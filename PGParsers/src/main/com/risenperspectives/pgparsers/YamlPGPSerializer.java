@@ -1,13 +1,21 @@
 package com.risenperspectives.pgparsers;
+import java.util.concurrent.ForkJoinPool;
+
 import com.risenperspectives.pgparsers.PGPNode.PGPDataType;
 
 public class YamlPGPSerializer implements PGPSerializerInterface {
 
 	public  PGPOptionFlags flags_ = new PGPOptionFlags();
-	private int    depthSpaces_;
-    private String depthString_;
+	private int    depthSpaces_ = 2;
+    private String depthString_ = "  ";
 	private int    debug_;
 
+	// Parallel serializing (PGPOptionFlags.PARALLEL)
+	private ForkJoinPool pool_;
+	private int    parallelThreshold_ = 1 << 14;	// smaller trees (in nodes) are serialized sequentially
+	private PGPParallelSerializer parallel_;
+	private PGPMetrics metrics_ = PGPMetrics.NONE;
+
 	public String protocolName() { return "YAML"; }
 
 	public void setDepthSpaces( int depthSpaces)
@@ -33,65 +41,42 @@ public class YamlPGPSerializer implements PGPSerializerInterface {
 		return null;
 	}
 
-	byte XXX = (byte)0xFF;	// Not Escaped Char
-	byte NUL = 0x00;
-	byte SOH = 0x01;
-	byte STX = 0x02;
-	byte ETX = 0x03;
-	byte EOT = 0x04;
-	byte ENQ = 0x05;
-	byte ACK = 0x06;
-	byte BEL = 0x07; // \a
-	byte BS  = 0x08; // \b
-	byte TAB = 0x09; // \t
-	byte LF  = 0x0A; // \n
-	byte VT  = 0x0B; // \v
-	byte FF  = 0x0C; // \f
-	byte CR  = 0x0D; // \r
-	byte SO  = 0x0E; //
-	byte SI  = 0x0F; //
-	byte DLE = 0x10; //
-	byte DC1 = 0x11; //
-	byte DC2 = 0x12; //
-	byte DC3 = 0x13; //
-	byte DC4 = 0x14; //
-	byte NAK = 0x15; //
-	byte SYN = 0x16; //
-	byte ETB = 0x17; //
-	byte CAN = 0x18; //
-	byte EM  = 0x19; //
-	byte SUB = 0x1A; //
-	byte ESC = 0x1B; // \e
-	byte FS  = 0x1C; //
-	byte GS  = 0x1D; //
-	byte RS  = 0x1E; //
-	byte US  = 0x1F; //
-
-	// TODO: Find out what the following values should be.
-	byte LS  = XXX;
-	byte NEL = XXX;
-	byte PS  = XXX;
-	byte NBSP= XXX;
-
-	byte encodingCodes[] = {
-			 // NUL  SOH  STX  ETX  EOT  ENQ  ACK  BEL  BS   HT   LF   VT   FF   CR   SO   SI
-				XXX, XXX, XXX, XXX, XXX, XXX, XXX, 'a', 'b', 't', 'n', 'v', XXX, 'l', XXX, XXX,
-			 // DLE  DC1  DC2  DC3  DC4  NAK  SYN  ETB  CAN  EM   SUB  ESC  FS   GS   RS   US
-				XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX,
-			 // ' '  !    "    #    $    %    &    '    (    )    *    +    ,    -    .    /
-				' ', XXX, '\"',XXX, XXX, XXX, XXX, '\'',XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX,
-			 // 0    1    2    3    4    5    6    7    8    9    :    ;    <    =    >    ?
-				XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX,
-			 // @    A    B    C    D    E    F    G    H    I    J    K    L    M    N    O
-				XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX,
-			 // P    Q    R    S    T    U    V    W    X    Y    Z    [    \    ]    ^    _
-				XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, '\\', XXX, XXX, XXX,
-			 // `    a    b    c    d    e    f    g    h    i    j    k    l    m    n    o
-		        XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX,
-			 // p    q    r    s    t    u    v    w    x    y    z    {    |    }    ~
-		        XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX, XXX,
-
-	};
+	// setForkJoinPool() -- pool used when the PARALLEL flag is set. null uses the common pool.
+	public void setForkJoinPool( ForkJoinPool pool ) {
+		pool_     = pool;
+		parallel_ = null;
+	}
+	public ForkJoinPool getForkJoinPool() {
+		return pool_;
+	}
+
+	// setParallelThreshold() -- Nodes with fewer nodes below them than this are serialized
+	// sequentially even when the PARALLEL flag is set.
+	public void setParallelThreshold( int nodes ) {
+		parallelThreshold_ = nodes;
+		parallel_          = null;
+	}
+	public int getParallelThreshold() {
+		return parallelThreshold_;
+	}
+
+	// setMetrics() -- told of each serialize, or PGPMetrics.NONE (or null) for none.
+	public void setMetrics( PGPMetrics metrics ) {
+		metrics_ = (null == metrics) ? PGPMetrics.NONE : metrics;
+	}
+	public PGPMetrics getMetrics() {
+		return metrics_;
+	}
+
+	// parallel() -- renders the children of large nodes in parallel when the PARALLEL flag is set.
+	// returns null when serializing sequentially.
+	private PGPParallelSerializer parallel() {
+		if ( null == flags_ || !flags_.isSet(PGPOptionFlags.PARALLEL) )
+			return null;
+		if ( null == parallel_ )
+			parallel_ = new PGPParallelSerializer( this::serialize, node -> null != node.headChild_, pool_, parallelThreshold_ );
+		return parallel_;
+	}
 
 
 	// appendQuotedString(). serializes a quoted string
@@ -136,7 +121,7 @@ public class YamlPGPSerializer implements PGPSerializerInterface {
 	// serialize() -- with Option flags
 	public String serialize( PGPNode topNode, PGPOptionFlags flags )
 	{
-		return serialize( new StringBuilder(1024), topNode, 0 ).toString();
+		return serialize( new StringBuilder(1024), topNode, flags ).toString();
 	}
 
 	// serialize() -- simplest form.
@@ -145,6 +130,13 @@ public class YamlPGPSerializer implements PGPSerializerInterface {
 	}
 
 	public StringBuilder serialize( StringBuilder sb, PGPNode node, PGPOptionFlags flags ) {
+		if ( PGPMetrics.NONE != metrics_ )
+			return PGPMetered.serialize( metrics_, protocolName(), sb, node, () -> serializeText( sb, node, flags ) );
+		return serializeText( sb, node, flags );
+	}
+
+	// serializeText() -- serialize() without the metrics.
+	private StringBuilder serializeText( StringBuilder sb, PGPNode node, PGPOptionFlags flags ) {
 		flags_ = (null == flags) ? new PGPOptionFlags() : flags;
 		PGPNode siblingNode = node;
 		do {
@@ -152,13 +144,43 @@ public class YamlPGPSerializer implements PGPSerializerInterface {
 			siblingNode = siblingNode.next_;
 		} while ( (null == getLastErrorText()) && (siblingNode != null) && (siblingNode != node) );
 
-		return serialize( sb, node, 0 );
+		return sb;
 	}
 
-	// serialize() -- renders the node and subnodes to look like JSON output
-	// This method can recursively call itself as needed for children nodes
+	// serialize() -- renders the node and subnodes to look like YAML output
+	// The walk goes down .headChild_ and back up .parent_ instead of recursing,
+	// so deep trees don't need a deep thread stack.
 	//  returns the StringBuilder.
 	public StringBuilder serialize( StringBuilder sb, PGPNode node, int atDepth ) {
+		PGPParallelSerializer parallel = parallel();
+		PGPNode current = node;
+		int     depth   = atDepth;
+		while ( true ) {
+			serializeOpen( sb, current, depth );
+			if ( null != current.headChild_ && (null == parallel || !parallel.serializeChildren( sb, current, depth+1 )) ) {
+				current = current.headChild_;	// Go down to the children
+				++depth;
+				continue;
+			}
+
+			// Close current, and the parents it was the last child of.
+			while ( true ) {
+				serializeClose( sb, current, depth );
+				if ( current == node )
+					return sb;
+				if ( current.next_ != current.parent_.headChild_ ) {
+					current = current.next_;	// On to the next sibling
+					break;
+				}
+				current = current.parent_;
+				--depth;
+			}
+		}
+
+	}//serialize()
+
+	// serializeOpen() -- renders the node up to its children.
+	private void serializeOpen( StringBuilder sb, PGPNode node, int atDepth ) {
 		int d;
 
 		// End the current line if any.
@@ -166,7 +188,7 @@ public class YamlPGPSerializer implements PGPSerializerInterface {
 			sb.append('\n');
 
 		// Show depth
-		for (d=0; d<atDepth; ++d)
+		for (d=0; d<atDepth && getDepthSpaces() > 0; ++d)
 			sb.append( getDepthString() );
 
 		// Are we an array element?
@@ -200,21 +222,14 @@ public class YamlPGPSerializer implements PGPSerializerInterface {
 			sb.append("}");
 		}//if headAttr_
 
-		// Show The Children
-		if ( null != node.headChild_ ) {
-			subnode = node.headChild_;
-			do {
-				serialize( sb, subnode, atDepth+1 );
-				subnode = subnode.next_;
-			} while ( subnode != node.headChild_ );
+	}//serializeOpen()
 
+	// serializeClose() -- ends the line after the children.
+	private void serializeClose( StringBuilder sb, PGPNode node, int atDepth ) {
+		if ( null != node.headChild_ ) {
 			// Flush sb buffer if not empty
 			sb.append('\n');
-
-		}//if headChild_
-
-		return sb;
-
-	}//showYAML()
+		}
+	}//serializeClose()
 
 }//class YamlPGPSerializer
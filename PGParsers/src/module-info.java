@@ -1,3 +1,4 @@
 module PGParsers {
+	requires transitive java.management;
 	exports com.risenperspectives.pgparsers;
 }
\ No newline at end of file
@@ -0,0 +1,42 @@
+package com.risenperspectives.pgparsers;
+
+// BenchSerializePGP -- times the serializers and dump() on a wide, shallow tree.
+// Usage: BenchSerializePGP [records] [rounds]
+
+public class BenchSerializePGP {
+
+	public static void main(String[] args) throws PGPException {
+		int records = (args.length > 0) ? Integer.parseInt(args[0]) : 5000;
+		int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+
+		StringBuilder sb = new StringBuilder("{ records: [\n");
+		for (int i = 0; i < records; i++) {
+			if (i > 0)
+				sb.append(",\n");
+			sb.append("  { id: ").append(i).append(", name: \"rec ").append(i).append("\", tags: [a, b, { x: 1 }], ok: true }");
+		}
+		sb.append("\n] }\n");
+		PGPNode topNode = new JsonPGParser().parse(sb.toString());
+
+		PGPSerializerInterface[] serializers = { new JsonPGPSerializer(), new XmlPGPSerializer(), new YamlPGPSerializer(), new FlatPGPSerializer() };
+		for (PGPSerializerInterface serializer : serializers)
+			time(serializer.protocolName(), rounds, () -> serializer.serialize(new StringBuilder(), topNode, new PGPOptionFlags()).length());
+		time("dump", rounds, () -> topNode.dump(new StringBuilder()).length());
+	}
+
+	private interface Run {
+		int run();
+	}
+
+	// time() -- warms up, then prints the average time of a round and the output size.
+	private static void time(String name, int rounds, Run run) {
+		int length = 0;
+		for (int i = 0; i < rounds; i++)
+			length = run.run();
+		long start = System.nanoTime();
+		for (int i = 0; i < rounds; i++)
+			length = run.run();
+		long micros = (System.nanoTime() - start) / 1000 / rounds;
+		System.out.println(name + ": " + micros + " us/round, " + length + " chars");
+	}
+}
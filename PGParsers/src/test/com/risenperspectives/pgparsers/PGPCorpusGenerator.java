@@ -0,0 +1,457 @@
+package com.risenperspectives.pgparsers;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import com.risenperspectives.pgparsers.PGPNode.PGPDataType;
+
+// PGPCorpusGenerator -- writes made-up documents of records for the tests and benchmarks, in any
+// of the formats the parsers read, from a few bytes to tens of GB.
+//
+// Each record is built as a PGPNode tree and rendered by the serializer of the format, one record
+// at a time, so memory doesn't grow with the size of the document. The records come from a
+// java.util.Random with the seed, and the random draws don't depend on the format: the same seed
+// and settings give the same records in every format (JSON has no attributes, so they are dropped
+// there, and XML names the items of arrays).
+//
+// What the records look like is set by:
+//   depth       -- how many levels of objects and arrays a record may have under it
+//   fanOut      -- the most fields of an object, or items of an array (at least one)
+//   keys        -- how many different field names there are
+//   stringLength, lengths -- the mean length of strings, and how lengths spread around it
+//   escapes     -- the share of the chars of strings that some format has to escape
+//   numbers     -- the share of values that are numbers rather than strings
+//   attributes  -- the most attributes of an object (XML and FLAT)
+//   aliases     -- the share of the objects and arrays directly under a record that repeat one
+//                  of the last ALIAS_RING of them. JSON_ALIASES writes them as *alias references
+//                  to an &alias, YAML style; the other formats write the copy.
+//
+// Usage: PGPCorpusGenerator format size [seed] [setting=value ...] > file
+//   size may end in K, M or G, as in: PGPCorpusGenerator XML 2G 7 depth=5 escapes=0.05
+
+public class PGPCorpusGenerator {
+
+	public enum Format {
+		JSON,			// { "items": [ record, ... ] }
+		JSON_ALIASES,	// JSON, with repeated objects and arrays as &alias / *alias
+		JSONL,			// a record on each line
+		XML,			// <items><record>...</record>...</items>
+		FLAT			// items.[0].name=value lines
+	}
+
+	public enum Lengths {
+		FIXED,			// every string is stringLength long
+		UNIFORM,		// from 0 to twice stringLength
+		EXPONENTIAL		// mostly short, a few long, like real text fields
+	}
+
+	private static final int    WRITE_CHUNK     = 64 * 1024;
+	private static final int    ALIAS_RING      = 64;
+	private static final int    MAX_STRING      = 1 << 20;
+	private static final double CONTAINER_SHARE = 0.3;	// of the values above the last level
+
+	private static final String[] SYLLABLES = {
+		"ba", "ce", "di", "fo", "gu", "ha", "je", "ki", "lo", "mu", "na", "pe", "ri", "so", "tu", "vy"
+	};
+	private static final String PLAIN_CHARS = "abcdefghijklmnopqrstuvwxyz   ABCDEFGHIJKLM0123456789.,-";
+	// Chars JSON, XML or FLAT write escaped or that trip simple scanners: quotes, markup, a tab,
+	// and Latin-1 letters and signs (the serializers escape only the low byte of a char, so chars
+	// above 0xFF wouldn't come back).
+	private static final String ESCAPED_CHARS = "\"'<>&\t\u00e9\u00fc\u00df\u00c5\u00f1\u00b0\u00a7";
+
+	private final long seed_;
+	private int     depth_        = 3;
+	private int     fanOut_       = 6;
+	private int     keys_         = 64;
+	private int     stringLength_ = 12;
+	private Lengths lengths_      = Lengths.EXPONENTIAL;
+	private double  escapes_      = 0.0;
+	private double  numbers_      = 0.3;
+	private int     attributes_   = 0;
+	private double  aliases_      = 0.0;
+
+	public PGPCorpusGenerator( long seed ) {
+		seed_ = seed;
+	}
+
+	public PGPCorpusGenerator setDepth( int depth ) {
+		depth_ = check( depth, 0, "depth" );
+		return this;
+	}
+	public PGPCorpusGenerator setFanOut( int fanOut ) {
+		fanOut_ = check( fanOut, 1, "fanOut" );
+		return this;
+	}
+	public PGPCorpusGenerator setKeyCardinality( int keys ) {
+		keys_ = check( keys, 1, "keys" );
+		return this;
+	}
+	public PGPCorpusGenerator setStringLength( int mean, Lengths lengths ) {
+		stringLength_ = check( mean, 0, "stringLength" );
+		lengths_      = lengths;
+		return this;
+	}
+	public PGPCorpusGenerator setEscapeDensity( double share ) {
+		escapes_ = check( share, "escapes" );
+		return this;
+	}
+	public PGPCorpusGenerator setNumericShare( double share ) {
+		numbers_ = check( share, "numbers" );
+		return this;
+	}
+	public PGPCorpusGenerator setAttributeCount( int most ) {
+		attributes_ = check( most, 0, "attributes" );
+		return this;
+	}
+	public PGPCorpusGenerator setAliasReuse( double share ) {
+		aliases_ = check( share, "aliases" );
+		return this;
+	}
+
+	private static int check( int value, int least, String name ) {
+		if ( value < least )
+			throw new IllegalArgumentException( name + " must be at least " + least + ", not " + value );
+		return value;
+	}
+	private static double check( double share, String name ) {
+		if ( !(share >= 0.0 && share <= 1.0) )
+			throw new IllegalArgumentException( name + " must be from 0 to 1, not " + share );
+		return share;
+	}
+
+
+	// generate() -- a document of at least bytes UTF-8 bytes: records are added until it is
+	// that long, and then it is closed. There is always at least one record.
+	public String generate( Format format, long bytes ) {
+		StringBuilder sb = new StringBuilder( (int) Math.min( bytes + 4096, Integer.MAX_VALUE - 16 ) );
+		try {
+			generate( format, bytes, sb );
+		} catch ( IOException e ) {
+			throw new IllegalStateException( e );	// Can't happen with a StringBuilder
+		}
+		return sb.toString();
+	}
+
+	// generate() -- writes the document to out as UTF-8. out is flushed, not closed.
+	// returns the bytes written.
+	public long generate( Format format, long bytes, OutputStream out ) throws IOException {
+		Writer writer = new OutputStreamWriter( out, StandardCharsets.UTF_8 );
+		long written = generate( format, bytes, writer );
+		writer.flush();
+		return written;
+	}
+
+	// generate() -- writes the document to out (a Writer, StringBuilder...) in pieces of about
+	// WRITE_CHUNK chars. returns the UTF-8 bytes written.
+	public long generate( Format format, long bytes, Appendable out ) throws IOException {
+		Records records = new Records( format );
+		StringBuilder sb = new StringBuilder( WRITE_CHUNK + 4096 );
+		long written = 0;
+		switch ( format ) {
+		case JSON:
+		case JSON_ALIASES:	sb.append( "{ \"items\": [\n" );	break;
+		case XML:			sb.append( "<items>\n" );			break;
+		default:
+		}
+		written += utf8Length( sb, 0, sb.length() );
+
+		for ( long index = 0; index == 0 || written < bytes; ++index ) {
+			int mark = sb.length();
+			if ( index > 0 && (format == Format.JSON || format == Format.JSON_ALIASES) )
+				sb.append( ",\n" );
+			records.append( sb, index );
+			if ( format == Format.JSONL || format == Format.XML )
+				sb.append( '\n' );
+			written += utf8Length( sb, mark, sb.length() );
+			if ( sb.length() >= WRITE_CHUNK ) {
+				out.append( sb );
+				sb.setLength( 0 );
+			}
+		}
+
+		int mark = sb.length();
+		switch ( format ) {
+		case JSON:
+		case JSON_ALIASES:	sb.append( "\n] }\n" );	break;
+		case XML:			sb.append( "</items>\n" );	break;
+		default:
+		}
+		written += utf8Length( sb, mark, sb.length() );
+		out.append( sb );
+		return written;
+	}
+
+	// utf8Length() -- the UTF-8 bytes of the chars of sb from start to end.
+	static long utf8Length( StringBuilder sb, int start, int end ) {
+		long length = end - start;
+		for ( int i = start; i < end; ++i ) {
+			char c = sb.charAt(i);
+			if ( c >= 0x80 )
+				length += (c < 0x800) ? 1 : Character.isSurrogate(c) ? 1 : 2;	// a pair is 4 bytes
+		}
+		return length;
+	}
+
+
+	// Records -- the state of one document: the random draws, the field names and the aliases.
+	private final class Records {
+		private final Format  format_;
+		private final Random  random_ = new Random( seed_ );
+		private final String[] names_ = new String[ keys_ ];
+		private final String  itemName_;	// of the items of arrays, which only XML names
+		private final PGPSerializerInterface serializer_;
+		private final PGPOptionFlags flags_ = new PGPOptionFlags();
+		private final StringBuilder  lines_ = new StringBuilder( 4096 );	// a FLAT record
+
+		private final PGPNode[] ring_ = new PGPNode[ ALIAS_RING ];	// the last aliased values
+		private final long[]    ringIds_ = new long[ ALIAS_RING ];
+		private long aliasCount_;
+
+		// The fields of the record being built. With JSON_ALIASES they aren't added to the record,
+		// since each is written on its own, after its &alias or as its *alias.
+		private PGPNode[] values_  = new PGPNode[ 16 ];
+		private String[]  fields_  = new String[ 16 ];
+		private long[]    defines_ = new long[ 16 ];	// the alias a value defines, or -1
+		private long[]    repeats_ = new long[ 16 ];	// the alias a value repeats, or -1
+
+		Records( Format format ) {
+			format_   = format;
+			itemName_ = (format == Format.XML) ? "item" : null;
+			switch ( format ) {
+			case XML:	serializer_ = new XmlPGPSerializer();	break;
+			case FLAT:	serializer_ = new FlatPGPSerializer();	break;
+			default:	serializer_ = new JsonPGPSerializer();
+			}
+			serializer_.setDepthSpaces( 0 );
+			StringBuilder name = new StringBuilder();
+			for ( int i = 0; i < keys_; ++i ) {
+				name.setLength( 0 );
+				int n = i;
+				do {
+					name.append( SYLLABLES[ n & 15 ] );
+					n >>>= 4;
+				} while ( n != 0 );
+				names_[i] = name.toString();
+			}
+		}
+
+		// append() -- builds record number index and appends it to sb.
+		void append( StringBuilder sb, long index ) {
+			PGPNode record = new PGPNode( (format_ == Format.XML) ? "record" : null, null, PGPDataType.OBJECT );
+			addAttributes( record );
+			int count = buildFields();
+
+			if ( format_ == Format.JSON_ALIASES ) {
+				appendAliased( sb, count );
+				return;
+			}
+			for ( int i = 0; i < count; ++i )
+				record.addChild( values_[i] ).setName( fields_[i] );
+			if ( format_ == Format.FLAT )
+				appendFlat( sb, record, index );
+			else
+				serializer_.serialize( sb, record, flags_ );
+		}
+
+		// buildFields() -- the fields of a record, into values_ and fields_.
+		// returns how many there are.
+		private int buildFields() {
+			int count = Math.min( 1 + random_.nextInt( fanOut_ ), keys_ );
+			if ( count > values_.length ) {
+				int size = Math.max( count, values_.length * 2 );
+				values_  = new PGPNode[ size ];
+				fields_  = new String[ size ];
+				defines_ = new long[ size ];
+				repeats_ = new long[ size ];
+			}
+			int first = random_.nextInt( keys_ );
+			for ( int i = 0; i < count; ++i ) {
+				fields_[i]  = names_[ (first + i) % keys_ ];
+				defines_[i] = repeats_[i] = -1;
+				if ( aliases_ > 0.0 && aliasCount_ > 0 && random_.nextDouble() < aliases_ ) {
+					int slot = random_.nextInt( (int) Math.min( aliasCount_, ALIAS_RING ) );
+					repeats_[i] = ringIds_[ slot ];
+					values_[i]  = (format_ == Format.JSON_ALIASES) ? null : new PGPNode().setValue( ring_[ slot ] );
+					continue;
+				}
+				PGPNode value = buildValue( 1 );
+				if ( aliases_ > 0.0 && null != value.getChild() ) {
+					int slot = (int) (aliasCount_ % ALIAS_RING);
+					ring_[ slot ]    = value;
+					ringIds_[ slot ] = defines_[i] = aliasCount_++;
+				}
+				values_[i] = value;
+			}
+			return count;
+		}
+
+		// buildValue() -- a scalar, or below depth_ sometimes an object or an array.
+		private PGPNode buildValue( int level ) {
+			if ( level <= depth_ && random_.nextDouble() < CONTAINER_SHARE ) {
+				if ( random_.nextBoolean() ) {
+					PGPNode object = new PGPNode( null, null, PGPDataType.OBJECT );
+					addAttributes( object );
+					int count = Math.min( 1 + random_.nextInt( fanOut_ ), keys_ );
+					int first = random_.nextInt( keys_ );
+					for ( int i = 0; i < count; ++i )
+						object.addChild( buildValue( level+1 ) ).setName( names_[ (first + i) % keys_ ] );
+					return object;
+				}
+				PGPNode array = new PGPNode( null, null, PGPDataType.ARRAY );
+				int count = 1 + random_.nextInt( fanOut_ );
+				for ( int i = 0; i < count; ++i )
+					array.addChild( buildValue( level+1 ) ).setName( itemName_ );
+				return array;
+			}
+			if ( random_.nextDouble() < numbers_ )
+				return new PGPNode( null, buildNumber(), PGPDataType.NUMBER );
+			return new PGPNode( null, buildString(), PGPDataType.STRING );
+		}
+
+		// addAttributes() -- up to attributes_ attributes, drawn for every format so the records
+		// stay the same, but only kept where the format can write them.
+		private void addAttributes( PGPNode node ) {
+			if ( attributes_ == 0 )
+				return;
+			int count = Math.min( random_.nextInt( attributes_ + 1 ), keys_ );
+			int first = random_.nextInt( keys_ );
+			for ( int i = 0; i < count; ++i ) {
+				String value;
+				PGPDataType type;
+				if ( random_.nextDouble() < numbers_ ) {
+					value = buildNumber();
+					type  = PGPDataType.NUMBER;
+				} else {
+					value = buildString();
+					type  = PGPDataType.STRING;
+				}
+				if ( format_ == Format.XML || format_ == Format.FLAT )
+					node.addAttr( names_[ (first + i) % keys_ ], value, type );
+			}
+		}
+
+		// buildNumber() -- an integer, or a number with two decimals, of up to 7 digits.
+		private String buildNumber() {
+			int n = random_.nextInt( 20000000 ) - 10000000;
+			if ( random_.nextBoolean() )
+				return Integer.toString( n );
+			int whole = Math.abs( n / 100 );
+			int cents = Math.abs( n % 100 );
+			return ((n < 0) ? "-" : "") + whole + ((cents < 10) ? ".0" : ".") + cents;
+		}
+
+		// buildString() -- of plain chars, with a share of escapes_ chars that need escaping.
+		private String buildString() {
+			int length;
+			switch ( lengths_ ) {
+			case FIXED:		length = stringLength_;									break;
+			case UNIFORM:	length = random_.nextInt( 2 * stringLength_ + 1 );		break;
+			default:		length = (int) Math.min( MAX_STRING, -stringLength_ * Math.log( 1.0 - random_.nextDouble() ) );
+			}
+			char[] chars = new char[ length ];
+			for ( int i = 0; i < length; ++i ) {
+				if ( escapes_ > 0.0 && random_.nextDouble() < escapes_ )
+					chars[i] = ESCAPED_CHARS.charAt( random_.nextInt( ESCAPED_CHARS.length() ) );
+				else
+					chars[i] = PLAIN_CHARS.charAt( random_.nextInt( PLAIN_CHARS.length() ) );
+			}
+			return new String( chars );
+		}
+
+		// appendAliased() -- the record as JSON, with its fields written one at a time so that the
+		// values that define aliases get their &alias and repeated ones are only their *alias.
+		private void appendAliased( StringBuilder sb, int count ) {
+			sb.append( '{' );
+			for ( int i = 0; i < count; ++i ) {
+				if ( i > 0 )
+					sb.append( ',' );
+				sb.append( '"' ).append( fields_[i] ).append( "\":" );
+				if ( repeats_[i] >= 0 ) {
+					sb.append( "*a" ).append( repeats_[i] ).append( ' ' );	// a name ends at a space or a comma
+					continue;
+				}
+				if ( defines_[i] >= 0 )
+					sb.append( "&a" ).append( defines_[i] ).append( ' ' );
+				serializer_.serialize( sb, values_[i], flags_ );
+			}
+			sb.append( '}' );
+		}
+
+		// appendFlat() -- the lines of the record, under items.[index].
+		private void appendFlat( StringBuilder sb, PGPNode record, long index ) {
+			lines_.setLength( 0 );
+			serializer_.serialize( lines_, record, flags_ );
+			int length = lines_.length();
+			for ( int start = 0; start < length; ) {
+				int end = lines_.indexOf( "\n", start ) + 1;
+				if ( end == 0 )
+					end = length;
+				sb.append( "items.[" ).append( index ).append( ']' );
+				if ( lines_.charAt( start ) != '#' )
+					sb.append( '.' );
+				sb.append( lines_, start, end );
+				start = end;
+			}
+		}
+
+	}//class Records
+
+
+	public static void main( String[] args ) throws IOException {
+		if ( args.length < 2 ) {
+			System.err.println( "Usage: PGPCorpusGenerator format size [seed] [setting=value ...]" );
+			System.err.println( "  format: JSON, JSON_ALIASES, JSONL, XML or FLAT; size in bytes, or with K, M or G" );
+			System.err.println( "  settings: depth, fanOut, keys, stringLength, lengths, escapes, numbers, attributes, aliases" );
+			System.exit( 2 );
+		}
+		Format format = Format.valueOf( args[0].toUpperCase() );
+		long   bytes  = parseSize( args[1] );
+		int    next   = 2;
+		long   seed   = 1;
+		if ( args.length > 2 && !args[2].contains( "=" ) ) {
+			seed = Long.parseLong( args[2] );
+			next = 3;
+		}
+
+		PGPCorpusGenerator generator = new PGPCorpusGenerator( seed );
+		Lengths lengths = generator.lengths_;
+		int     mean    = generator.stringLength_;
+		for ( int i = next; i < args.length; ++i ) {
+			int    equals = args[i].indexOf( '=' );
+			String name   = args[i].substring( 0, Math.max( equals, 0 ) );
+			String value  = args[i].substring( equals + 1 );
+			switch ( name ) {
+			case "depth":			generator.setDepth( Integer.parseInt( value ) );				break;
+			case "fanOut":			generator.setFanOut( Integer.parseInt( value ) );				break;
+			case "keys":			generator.setKeyCardinality( Integer.parseInt( value ) );		break;
+			case "stringLength":	mean = Integer.parseInt( value );								break;
+			case "lengths":			lengths = Lengths.valueOf( value.toUpperCase() );				break;
+			case "escapes":			generator.setEscapeDensity( Double.parseDouble( value ) );		break;
+			case "numbers":			generator.setNumericShare( Double.parseDouble( value ) );		break;
+			case "attributes":		generator.setAttributeCount( Integer.parseInt( value ) );		break;
+			case "aliases":			generator.setAliasReuse( Double.parseDouble( value ) );			break;
+			default:
+				System.err.println( "Unknown setting: " + args[i] );
+				System.exit( 2 );
+			}
+		}
+		generator.setStringLength( mean, lengths );
+
+		OutputStream out = new BufferedOutputStream( System.out, WRITE_CHUNK );
+		generator.generate( format, bytes, out );
+		out.flush();
+	}
+
+	// parseSize() -- a count of bytes, which may end in K, M or G.
+	private static long parseSize( String size ) {
+		char unit  = Character.toUpperCase( size.charAt( size.length()-1 ) );
+		int  shift = (unit == 'K') ? 10 : (unit == 'M') ? 20 : (unit == 'G') ? 30 : 0;
+		return Long.parseLong( (shift == 0) ? size : size.substring( 0, size.length()-1 ) ) << shift;
+	}
+
+}//class PGPCorpusGenerator
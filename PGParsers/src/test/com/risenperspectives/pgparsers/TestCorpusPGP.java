@@ -0,0 +1,57 @@
+package com.risenperspectives.pgparsers;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import com.risenperspectives.pgparsers.PGPCorpusGenerator.Format;
+
+public class TestCorpusPGP {
+
+	public static void main(String[] args) throws Exception {
+		PGPCorpusGenerator generator = new PGPCorpusGenerator(42).setDepth(4).setFanOut(5).setKeyCardinality(200)
+				.setEscapeDensity(0.1).setNumericShare(0.4).setAttributeCount(2).setAliasReuse(0.3);
+
+		// Every format parses, at every size, and the same seed gives the same document.
+		for (Format format : Format.values()) {
+			for (int bytes : new int[] { 1, 1000, 256 * 1024 }) {
+				String text = generator.generate(format, bytes);
+				int length = text.getBytes(StandardCharsets.UTF_8).length;
+				PGPNode topNode = parser(format).parse(text);
+				System.out.println(format + " " + bytes + ": " + (length >= bytes) + ", parsed " + (null != topNode)
+						+ ", same again " + text.equals(generator.generate(format, bytes)));
+			}
+		}
+
+		// Streamed to an OutputStream, it is the same document, of the bytes it says.
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		long written = generator.generate(Format.FLAT, 300 * 1024, out);
+		System.out.println("Streamed: " + (written == out.size()) + ", same "
+				+ generator.generate(Format.FLAT, 300 * 1024).equals(out.toString(StandardCharsets.UTF_8)));
+
+		// The aliases stand for the same records as the copies.
+		PGPNode copies = new JsonPGParser().parse(generator.generate(Format.JSON, 64 * 1024)).getChild();
+		PGPNode aliased = new JsonPGParser().parse(generator.generate(Format.JSON_ALIASES, 64 * 1024)).getChild();
+		int records = Math.min(copies.getChildCount(), aliased.getChildCount());
+		int differ = 0;
+		JsonPGPSerializer serializer = new JsonPGPSerializer();
+		for (int i = 0; i < records; i++) {
+			String copy = serializer.serialize(new StringBuilder(), copies.getChildAt(i), 0).toString();
+			if (!copy.equals(serializer.serialize(new StringBuilder(), aliased.getChildAt(i), 0).toString()))
+				differ++;
+		}
+		System.out.println("Aliased records: " + records + ", differ " + differ);
+
+		// Another seed, another document.
+		System.out.println("Other seed differs: "
+				+ !generator.generate(Format.JSON, 1000).equals(new PGPCorpusGenerator(43).generate(Format.JSON, 1000)));
+	}
+
+	private static PGParsersInterface parser(Format format) {
+		switch (format) {
+		case XML:	return new XmlPGParser();
+		case FLAT:	return new FlatPGParser();
+		case JSONL:	return new JsonLinesPGParser();
+		default:	return new JsonPGParser();
+		}
+	}
+}
@@ -36,6 +36,28 @@ public class TestFlatPGP {
         tests.add("root=some <cdata> content");
 
         runTests(tests, true, true, true, true);
+        runParallelTest();
+    }
+
+    // runParallelTest() -- a parallel parse must build the same tree as a sequential parse.
+    private static void runParallelTest() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            sb.append("grp").append(i % 50).append(".rec").append(i / 50).append(".[").append(i % 3).append("]=v").append(i).append('\n');
+            if (i % 7 == 0)
+                sb.append("grp").append(i % 50).append("#count=").append(i).append('\n');
+        }
+        String data = sb.toString();
+        try {
+            FlatPGParser flatParser = new FlatPGParser();
+            String sequential = flatParser.parse(data).dump(new StringBuilder()).toString();
+            flatParser.setParallelThreshold(0);
+            flatParser.setFlags(new PGPOptionFlags(PGPOptionFlags.PARALLEL));
+            String parallel = flatParser.parse(data).dump(new StringBuilder()).toString();
+            System.out.println("Parallel parse matches sequential: " + sequential.equals(parallel));
+        } catch (PGPException e) {
+            System.out.println("PGPException at offset " + e.getErrorCharOfLine() + " of line " + e.getErrorLine() + ": " + e.getMessage());
+        }
     }
 
     private static void runTests(List<String> tests, boolean runJson, boolean runYaml, boolean runXml, boolean runFlat) {
@@ -0,0 +1,48 @@
+package com.risenperspectives.pgparsers;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+
+public class TestJsonLinesPGP {
+
+	public static void main(String[] args) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			sb.append("{ \"id\": ").append(i).append(", name: rec").append(i).append(", tags: [a, b] }\n");
+		}
+		String data = sb.toString();
+
+		JsonLinesPGParser parser = new JsonLinesPGParser();
+		parser.setBatchSize(4096);
+
+		// Ordered: records come back in input order.
+		try (Stream<PGPNode> records = parser.stream(data)) {
+			long[] expected = { 0 };
+			boolean inOrder = records.allMatch(node -> Long.parseLong(node.findChild("id").getValue()) == expected[0]++);
+			System.out.println("Ordered records in order: " + inOrder + ", count=" + expected[0]);
+		}
+
+		// Unordered: same records, any order.
+		parser.setOrdered(false);
+		try (Stream<PGPNode> records = parser.stream(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)))) {
+			System.out.println("Unordered id sum: " + records.mapToLong(node -> Long.parseLong(node.findChild("id").getValue())).sum());
+		}
+		parser.setOrdered(true);
+
+		// Errors report the line of the input.
+		try {
+			parser.parse("{ a: 1 }\n{ b: 2 }\n{ c: }\n");
+		} catch (PGPException e) {
+			System.out.println("PGPException at offset " + e.getErrorCharOfLine() + " of line " + e.getErrorLine() + ": " + e.getMessage());
+		}
+
+		JsonPGPSerializer jsonSerializer = new JsonPGPSerializer();
+		jsonSerializer.setDepthSpaces(0);
+		try {
+			System.out.println(jsonSerializer.serialize(parser.parse("{ a: 1 }\n\n{ b: [2, 3] }\n"), new PGPOptionFlags()));
+		} catch (PGPException e) {
+			System.out.println("PGPException at offset " + e.getErrorCharOfLine() + " of line " + e.getErrorLine() + ": " + e.getMessage());
+		}
+	}
+}
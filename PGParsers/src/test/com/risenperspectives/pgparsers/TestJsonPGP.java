@@ -1,5 +1,10 @@
 package com.risenperspectives.pgparsers;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -32,6 +37,322 @@ public class TestJsonPGP {
 		tests.add("{ another_test: { list: [true, false, null], number: 12345 } }");
 
 		runTests(tests, true, true, true, true);
+		runParallelTest();
+		runProgressTest();
+		runReparseTest();
+		runCharSequenceTest();
+		runTruncatedTest();
+		runSelfAliasTest();
+
+		// Deep documents are parsed and serialized on a small stack.
+		Thread thread = new Thread(null, TestJsonPGP::runDeepTest, "deep", 512 * 1024);
+		thread.start();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// runDeepTest() -- nesting is limited by maxDepth, not by the thread stack.
+	// Serializing and dumping a deep tree don't use the thread stack either.
+	private static void runDeepTest() {
+		final int depth = 300000;
+		StringBuilder sb = new StringBuilder("{ a: ");
+		for (int i = 0; i < depth; i++)
+			sb.append(i % 2 == 0 ? "[" : "{ k: ");
+		sb.append("leaf");
+		for (int i = depth - 1; i >= 0; i--)
+			sb.append(i % 2 == 0 ? "]" : " }");
+		sb.append(" }\n");
+		String data = sb.toString();
+
+		JsonPGParser jsonParser = new JsonPGParser();
+		try {
+			jsonParser.parse(data);
+		} catch (PGPException e) {
+			System.out.println("PGPException at offset " + e.getErrorCharOfLine() + " of line " + e.getErrorLine() + ": " + e.getMessage());
+		}
+		try {
+			jsonParser.setMaxDepth(depth + 2);
+			PGPNode topNode = jsonParser.parse(data);
+			PGPNode node = topNode;
+			int levels = 0;
+			while (null != node.getChild()) {
+				node = node.getChild();
+				++levels;
+			}
+			System.out.println("Deep parse levels: " + levels + ", leaf: " + node.getValue());
+
+			PGPSerializerInterface[] serializers = { new JsonPGPSerializer(), new XmlPGPSerializer(), new YamlPGPSerializer() };
+			for (PGPSerializerInterface serializer : serializers) {
+				serializer.setDepthSpaces(0);
+				String text = serializer.serialize(new StringBuilder(), topNode, new PGPOptionFlags()).toString();
+				System.out.println("Deep " + serializer.protocolName() + " serialize length: " + text.length());
+			}
+			topNode.setDepthSpaces(0);
+			System.out.println("Deep dump length: " + topNode.dump(new StringBuilder()).length());
+			topNode.setDepthSpaces(2);
+			System.out.println("Deep flat name length: " + node.flatName().length());
+
+			// An alias of a deep value is copied without the thread stack too.
+			String aliased = "{ a: &x " + data.substring("{ a: ".length(), data.length() - " }\n".length()) + ", b: *x }\n";
+			PGPNode copy = jsonParser.parse(aliased).getChildAt(1);
+			levels = 0;
+			while (null != copy.getChild()) {
+				copy = copy.getChild();
+				++levels;
+			}
+			System.out.println("Deep alias levels: " + levels + ", leaf: " + copy.getValue());
+		} catch (PGPException e) {
+			System.out.println("PGPException at offset " + e.getErrorCharOfLine() + " of line " + e.getErrorLine() + ": " + e.getMessage());
+		}
+	}
+
+	// runTruncatedTest() -- data that ends inside an Object or Array is an error, in either parse.
+	private static void runTruncatedTest() {
+		String[] data = { "{b: {c: 1", "{b: [1", "{b: [", "{b: [1, {c: [2", "{\"a\":[1\n" };
+		for (String text : data) {
+			for (boolean parallel : new boolean[] { false, true }) {
+				JsonPGParser jsonParser = new JsonPGParser();
+				if (parallel) {
+					jsonParser.setParallelThreshold(0);
+					jsonParser.setFlags(new PGPOptionFlags(PGPOptionFlags.PARALLEL));
+				}
+				try {
+					jsonParser.parse(text);
+					System.out.println("Truncated " + text.trim() + (parallel ? " (parallel)" : "") + ": parsed");
+				} catch (PGPException e) {
+					System.out.println("Truncated " + text.trim() + (parallel ? " (parallel)" : "") + ": " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	// runSelfAliasTest() -- an alias referenced inside its own value is an error, not an endless copy.
+	private static void runSelfAliasTest() {
+		String[] data = { "{a: &x {b: *x }}", "{a: &x [1, [2, *x ]]}" };
+		for (String text : data) {
+			try {
+				new JsonPGParser().parse(text);
+				System.out.println("Self alias " + text + ": parsed");
+			} catch (PGPException e) {
+				System.out.println("Self alias " + text + ": " + e.getMessage());
+			}
+		}
+	}
+
+	// runProgressTest() -- parsers report progress while parsing, and stop when the listener says so.
+	private static void runProgressTest() {
+		String json = parallelTestData(5000);
+		PGPNode topNode;
+		try {
+			topNode = new JsonPGParser().parse(json);
+		} catch (PGPException e) {
+			System.out.println("PGPException at offset " + e.getErrorCharOfLine() + " of line " + e.getErrorLine() + ": " + e.getMessage());
+			return;
+		}
+		String[] data = { json, new XmlPGPSerializer().serialize(topNode), new FlatPGPSerializer().serialize(topNode) };
+		PGParsersInterface[] parsers = { new JsonPGParser(), new XmlPGParser(), new FlatPGParser() };
+		for (int i = 0; i < parsers.length; i++) {
+			PGParsersInterface parser = parsers[i];
+			int[] calls = new int[1];
+			boolean[] ordered = { true };
+			int[] last = new int[1];
+			parser.setProgressListener((done, total) -> {
+				ordered[0] &= done >= last[0] && done <= total;
+				last[0] = done;
+				calls[0]++;
+				return true;
+			});
+			try {
+				parser.parse(data[i]);
+			} catch (PGPException e) {
+				System.out.println("PGPException at offset " + e.getErrorCharOfLine() + " of line " + e.getErrorLine() + ": " + e.getMessage());
+			}
+			System.out.println(parser.protocolName() + " progress: several " + (calls[0] > 2) + ", in order " + ordered[0] + ", ended at total " + (last[0] == data[i].length()));
+
+			parser.setProgressListener((done, total) -> done < total / 2);
+			try {
+				parser.parse(data[i]);
+				System.out.println(parser.protocolName() + " parse not cancelled");
+			} catch (PGPException e) {
+				System.out.println(parser.protocolName() + " " + e.getMessage() + " past half: " + (e.getErrorAt() >= data[i].length() / 2));
+			}
+		}
+	}
+
+	// runCharSequenceTest() -- text that is not a String is parsed in place, to the same tree.
+	private static void runCharSequenceTest() {
+		try {
+			String json = parallelTestData(200);
+			PGPNode topNode = new JsonPGParser().parse(json);
+			String[] data = { json, new XmlPGPSerializer().serialize(topNode), new FlatPGPSerializer().serialize(topNode) };
+			PGParsersInterface[] parsers = { new JsonPGParser(), new XmlPGParser(), new FlatPGParser() };
+			for (int i = 0; i < parsers.length; i++) {
+				PGParsersInterface parser = parsers[i];
+				String expected = parser.parse(data[i]).dump(new StringBuilder()).toString();
+				char[] padded = ("xx" + data[i] + "yy").toCharArray();
+				CharSequence[] texts = {
+					new StringBuilder(data[i]),
+					CharBuffer.wrap(padded, 2, data[i].length()).slice(),
+					CharBuffer.wrap(padded).position(2).limit(padded.length - 2),
+					CharBuffer.wrap(data[i].toCharArray()).asReadOnlyBuffer(),
+				};
+				boolean matches = true;
+				for (CharSequence text : texts)
+					matches &= expected.equals(parser.parse(text).dump(new StringBuilder()).toString());
+				System.out.println(parser.protocolName() + " CharSequence parse matches: " + matches);
+			}
+
+			JsonPGParser parallelParser = new JsonPGParser();
+			parallelParser.setParallelThreshold(0);
+			parallelParser.setFlags(new PGPOptionFlags(PGPOptionFlags.PARALLEL));
+			json = parallelTestData(5000);
+			System.out.println("Parallel CharBuffer parse matches: " + new JsonPGParser().parse(json).dump(new StringBuilder()).toString()
+					.equals(parallelParser.parse(CharBuffer.wrap(json.toCharArray())).dump(new StringBuilder()).toString()));
+		} catch (PGPException e) {
+			System.out.println("PGPException at offset " + e.getErrorCharOfLine() + " of line " + e.getErrorLine() + ": " + e.getMessage());
+		}
+	}
+
+	// runReparseTest() -- after an edit, reparse() must build the same tree, with the same spans,
+	// as a full parse of the edited text.
+	private static void runReparseTest() {
+		StringBuilder sb = new StringBuilder("{ records: [\n");
+		for (int i = 0; i < 20000; i++)
+			sb.append(i > 0 ? ",\n" : "").append("  { id: ").append(i).append(", name: \"rec ").append(i).append("\", tags: [a, b] }");
+		String data = sb.append("\n], count: 20000 }\n").toString();
+
+		try {
+			JsonPGParser parallelParser = new JsonPGParser();
+			parallelParser.setParallelThreshold(0);
+			parallelParser.setFlags(new PGPOptionFlags(PGPOptionFlags.PARALLEL));
+			System.out.println("Parallel parse spans match: " + spans(parallelParser.parse(data)).equals(spans(new JsonPGParser().parse(data))));
+
+			JsonPGParser parser = new JsonPGParser();
+			PGPNode topNode = parser.parse(data);
+			String lastRecord = ",\n  { id: 19999, name: \"rec 19999\", tags: [a, b] }";
+			Object[][] edits = {
+				// at text, + chars, removed, inserted
+				{ "{ id: 12345,", 6, 5, "54321" },
+				{ "{ id: 54321,", 2, 0, "first: [1, {x: 2}], " },
+				{ "rec 777\"", 0, 3, "} ], {" },
+				{ lastRecord, 0, lastRecord.length(), "" },
+				{ "count: ", 7, 5, "19999" },
+				{ "rec 100\", tags: [", 17, 0, "z, " },
+				{ "id: 54321,", 0, 0, "\"" },
+			};
+			for (Object[] edit : edits) {
+				int offset = data.indexOf((String) edit[0]) + (Integer) edit[1];
+				int removed = (Integer) edit[2];
+				String inserted = (String) edit[3];
+				String edited = data.substring(0, offset) + inserted + data.substring(offset + removed);
+				PGPNode expected;
+				try {
+					expected = new JsonPGParser().parse(edited);
+				} catch (PGPException e) {
+					expected = null;
+				}
+				try {
+					PGPNode reparsed = parser.reparse(topNode, edited, offset, removed, inserted.length());
+					System.out.println("Reparse at " + offset + ": incremental " + (reparsed == topNode)
+							+ ", tree matches " + reparsed.dump(new StringBuilder()).toString().equals(expected.dump(new StringBuilder()).toString())
+							+ ", spans match " + spans(reparsed).equals(spans(expected)));
+					topNode = reparsed;
+					data = edited;
+				} catch (PGPException e) {
+					System.out.println("Reparse at " + offset + ": " + e.getMessage() + " on line " + e.getErrorLine() + ", like parse " + (null == expected));
+				}
+			}
+
+			// An edit in an aliased container changes its copies too.
+			String aliased = "{ \"a\": &x { \"k\": 1 }, \"b\": *x }";
+			PGPNode aliasedTop = parser.parse(aliased);
+			String editedAlias = aliased.replace("1", "2");
+			JsonPGPSerializer serializer = new JsonPGPSerializer();
+			PGPNode reparsedAlias = parser.reparse(aliasedTop, editedAlias, aliased.indexOf('1'), 1, 1);
+			System.out.println("Reparse of an alias: "
+					+ serializer.serialize(new StringBuilder(), reparsedAlias, 0).toString().equals(
+							serializer.serialize(new StringBuilder(), new JsonPGParser().parse(editedAlias), 0).toString()));
+		} catch (PGPException e) {
+			System.out.println("PGPException at offset " + e.getErrorCharOfLine() + " of line " + e.getErrorLine() + ": " + e.getMessage());
+		}
+	}
+
+	// spans() -- the spans of all the nodes of a tree.
+	private static String spans(PGPNode topNode) {
+		StringBuilder sb = new StringBuilder();
+		List<PGPNode> stack = new ArrayList<PGPNode>();
+		stack.add(topNode);
+		while (!stack.isEmpty()) {
+			PGPNode node = stack.remove(stack.size() - 1);
+			sb.append(node.getSpanStart()).append('-').append(node.getSpanEnd()).append(' ');
+			PGPNode child = node.getChild();
+			if (null != child) {
+				do {
+					stack.add(child);
+					child = child.getNext();
+				} while (child != node.getChild());
+			}
+		}
+		return sb.toString();
+	}
+
+	// runParallelTest() -- a parallel parse must build the same tree as a sequential parse,
+	// and a parallel serialize must render the same text as a sequential serialize.
+	private static void runParallelTest() {
+		try {
+			String data = parallelTestData(20000);
+			JsonPGParser jsonParser = new JsonPGParser();
+			String sequential = jsonParser.parse(data).dump(new StringBuilder()).toString();
+			jsonParser.setParallelThreshold(0);
+			jsonParser.setFlags(new PGPOptionFlags(PGPOptionFlags.PARALLEL));
+			String parallel = jsonParser.parse(data).dump(new StringBuilder()).toString();
+			System.out.println("Parallel parse matches sequential: " + sequential.equals(parallel));
+
+			PGPNode topNode = jsonParser.parse(parallelTestData(2000));
+			JsonPGPSerializer jsonSerializer = new JsonPGPSerializer();
+			XmlPGPSerializer xmlSerializer = new XmlPGPSerializer();
+			YamlPGPSerializer yamlSerializer = new YamlPGPSerializer();
+			FlatPGPSerializer flatSerializer = new FlatPGPSerializer();
+			jsonSerializer.setParallelThreshold(1000);
+			xmlSerializer.setParallelThreshold(1000);
+			yamlSerializer.setParallelThreshold(1000);
+			flatSerializer.setParallelThreshold(1000);
+			PGPSerializerInterface[] serializers = { jsonSerializer, xmlSerializer, yamlSerializer, flatSerializer };
+			for (PGPSerializerInterface serializer : serializers) {
+				serializer.setDepthSpaces(2);
+				String sequentialText = serializer.serialize(new StringBuilder(), topNode, new PGPOptionFlags()).toString();
+				String parallelText = serializer.serialize(new StringBuilder(), topNode, new PGPOptionFlags(PGPOptionFlags.PARALLEL)).toString();
+				System.out.println("Parallel " + serializer.protocolName() + " serialize matches sequential: " + sequentialText.equals(parallelText));
+			}
+
+			// Streaming FLAT output matches the StringBuilder output.
+			String flatText = flatSerializer.serialize(new StringBuilder(), topNode, 0).toString();
+			StringWriter writer = new StringWriter();
+			flatSerializer.serialize(writer, topNode, new PGPOptionFlags());
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			flatSerializer.serialize(bytes, topNode, new PGPOptionFlags(PGPOptionFlags.PARALLEL));
+			System.out.println("Streamed FLAT serialize matches: " + flatText.equals(writer.toString()) + ", " + flatText.equals(bytes.toString(StandardCharsets.UTF_8)));
+		} catch (PGPException e) {
+			System.out.println("PGPException at offset " + e.getErrorCharOfLine() + " of line " + e.getErrorLine() + ": " + e.getMessage());
+		} catch (IOException e) {
+			System.out.println("IOException: " + e.getMessage());
+		}
+	}
+
+	private static String parallelTestData(int records) {
+		StringBuilder sb = new StringBuilder("{ records: [\n");
+		for (int i = 0; i < records; i++) {
+			if (i > 0)
+				sb.append(",\n");
+			sb.append("  { id: ").append(i).append(", name: \"rec, ").append(i).append("\", tags: [a, 'b]', &t").append(i).append(" c], copy: *t").append(i).append(" }");
+			if (i % 100 == 0)
+				sb.append(" # comment, ] }");
+		}
+		sb.append("\n], count: ").append(records).append(" }\n");
+		return sb.toString();
 	}
 
 	private static void runTests(List<String> tests, boolean runJson, boolean runYaml, boolean runXml, boolean runFlat) {
@@ -0,0 +1,87 @@
+package com.risenperspectives.pgparsers;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import com.risenperspectives.pgparsers.PGPCorpusGenerator.Format;
+
+public class TestMetricsPGP {
+
+	public static void main(String[] args) throws Exception {
+		MBeanServer server = MBeanServerFactory.newMBeanServer();
+		PGPJmxMetrics metrics = new PGPJmxMetrics("test", server);
+
+		// Parses are counted with their chars, nodes, depth and alias expansions.
+		JsonPGParser parser = new JsonPGParser();
+		System.out.println("Default metrics: " + (PGPMetrics.NONE == parser.getMetrics()));
+		parser.setMetrics(metrics);
+		String text = "{ \"a\": &x { \"b\": [1, 2, { \"c\": 3 }] }, \"d\": *x , \"e\": *x }";
+		parser.parse(text);
+		parser.parse(text);
+		PGPFormatMetrics json = metrics.get("JSON");
+		System.out.println("JSON parses: " + json.getParseCount() + ", chars " + (json.getParseChars() == 2 * text.length())
+				+ ", max depth " + json.getParseMaxDepth() + ", aliases " + json.getAliasExpansions());
+
+		// A failed parse is an error, and isn't timed.
+		try {
+			parser.parse("{ \"a\": ");
+		} catch (PGPException e) {
+			// Counted
+		}
+		System.out.println("JSON errors: " + json.getParseErrorCount() + ", parses " + json.getParseCount());
+
+		// Serializes are counted per format, with the chars written.
+		PGPNode topNode = new FlatPGParser().parse(new PGPCorpusGenerator(5).generate(Format.FLAT, 16 * 1024));
+		XmlPGPSerializer xmlSerializer = new XmlPGPSerializer();
+		xmlSerializer.setMetrics(metrics);
+		int xmlChars = xmlSerializer.serialize(new StringBuilder(), topNode, new PGPOptionFlags()).length();
+		FlatPGPSerializer flatSerializer = new FlatPGPSerializer();
+		flatSerializer.setMetrics(metrics);
+		StringBuilder flat = new StringBuilder();
+		flatSerializer.serialize((Appendable) flat, topNode, new PGPOptionFlags());
+		PGPFormatMetrics xml = metrics.get("XML");
+		System.out.println("XML serializes: " + xml.getSerializeCount() + ", chars " + (xml.getSerializeChars() == xmlChars)
+				+ ", FLAT chars " + (metrics.get("FLAT").getSerializeChars() == flat.length())
+				+ ", nodes match " + (xml.getSerializeNodes() == metrics.get("FLAT").getSerializeNodes()));
+
+		// The formats are MBeans, until closed.
+		ObjectName name = metrics.objectName("JSON");
+		System.out.println("MBean: " + name + " parses " + server.getAttribute(name, "ParseCount")
+				+ ", p99 <= max " + ((Long) server.getAttribute(name, "ParseP99Micros")
+						<= (Long) server.getAttribute(name, "ParseMaxMicros")));
+		// A name in use is refused up front, and an MBean that can't be registered doesn't fail
+		// the parse it measures.
+		try {
+			new PGPJmxMetrics("test", server);
+			System.out.println("Name in use: accepted");
+		} catch (IllegalArgumentException e) {
+			System.out.println("Name in use: " + e.getMessage());
+		}
+		PGPJmxMetrics clash = new PGPJmxMetrics("clash", server);
+		server.registerMBean(new PGPFormatMetrics("JSON"), clash.objectName("JSON"));
+		JsonPGParser clashParser = new JsonPGParser();
+		clashParser.setMetrics(clash);
+		clashParser.parse("{ \"a\": 1 }");
+		clashParser.parse("{ \"a\": 1 }");
+		System.out.println("Unregistered parses: " + clash.get("JSON").getParseCount()
+				+ ", failure kept " + (null != clash.getRegisterFailure()));
+
+		server.invoke(name, "reset", null, null);
+		System.out.println("After reset: " + json.getParseCount());
+		metrics.close();
+		System.out.println("Closed: " + !server.isRegistered(name));
+
+		// The histogram's percentiles are within a bucket of the values.
+		PGPHistogram histogram = new PGPHistogram();
+		for (long value = 1; value <= 1000; value++)
+			histogram.record(value);
+		System.out.println("Histogram: " + histogram + ", p50 in [500, 563] "
+				+ (histogram.getPercentile(50) >= 500 && histogram.getPercentile(50) <= 563));
+		boolean edges = true;
+		for (long value : new long[] { 0, 7, 8, 9, 15, 16, 1000, 1L << 40, Long.MAX_VALUE })
+			edges &= value <= PGPHistogram.top(PGPHistogram.bucket(value))
+					&& (0 == PGPHistogram.bucket(value) || value > PGPHistogram.top(PGPHistogram.bucket(value) - 1));
+		System.out.println("Bucket edges: " + edges);
+	}
+}
@@ -0,0 +1,105 @@
+package com.risenperspectives.pgparsers;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestTreeWalkerPGP {
+
+	public static void main(String[] args) {
+		try {
+			JsonPGParser jsonParser = new JsonPGParser();
+			PGPTreeWalker walker = new PGPTreeWalker();
+
+			// Order of the callbacks.
+			StringBuilder order = new StringBuilder();
+			walker.walk(jsonParser.parse("{ a: { b: 1, c: [2, 3] }, d: 4 }"), new PGPNodeVisitor() {
+				public Action enter(PGPNode node) {
+					order.append('<').append(node.getName());
+					return Action.CONTINUE;
+				}
+				public Action leave(PGPNode node) {
+					order.append('>');
+					return Action.CONTINUE;
+				}
+			});
+			System.out.println("Order: " + order);
+
+			// Skip children and stop.
+			order.setLength(0);
+			boolean finished = walker.walk(jsonParser.parse("{ a: { b: 1 }, c: { d: 2 }, e: 3 }"), new PGPNodeVisitor() {
+				public Action enter(PGPNode node) {
+					order.append(node.getName()).append(' ');
+					if ("a".equals(node.getName()))
+						return Action.SKIP_CHILDREN;
+					return "d".equals(node.getName()) ? Action.STOP : Action.CONTINUE;
+				}
+			});
+			System.out.println("Stopped: " + !finished + " after: " + order);
+
+			// Replace and remove nodes, sequentially and in parallel.
+			StringBuilder sb = new StringBuilder("{ users: [\n");
+			for (int i = 0; i < 5000; i++) {
+				if (i > 0)
+					sb.append(",\n");
+				sb.append("  { id: ").append(i).append(", password: p").append(i).append(", temp: [1, 2], groups: [g").append(i % 7).append(", h] }");
+			}
+			sb.append("\n] }\n");
+			String data = sb.toString();
+
+			PGPNodeVisitor redact = new PGPNodeVisitor() {
+				public Action enter(PGPNode node) {
+					if ("password".equals(node.getName())) {
+						node.replaceWith(new PGPNode("password", "***", PGPNode.PGPDataType.STRING));
+					} else if ("temp".equals(node.getName())) {
+						node.replaceWith(null);
+					}
+					return Action.CONTINUE;
+				}
+				public Action leave(PGPNode node) {
+					if ("groups".equals(node.getName()) && node.getChildCount() == 2)
+						node.getChild().replaceWith(new PGPNode(null, "all", PGPNode.PGPDataType.UNQUOTED_STRING));
+					return Action.CONTINUE;
+				}
+			};
+			PGPNode sequentialTop = jsonParser.parse(data);
+			walker.walk(sequentialTop, redact);
+			PGPNode parallelTop = jsonParser.parse(data);
+			walker.setParallelThreshold(8);
+			walker.walkParallel(parallelTop, redact);
+			String sequential = sequentialTop.dump(new StringBuilder()).toString();
+			System.out.println("Parallel transform matches sequential: " + sequential.equals(parallelTop.dump(new StringBuilder()).toString()));
+			System.out.println("Redacted: " + !sequential.contains("p42") + ", first user: " + sequentialTop.getChild().getChild().dump(0, new StringBuilder()).toString().replace('\n', ' '));
+
+			// Every node is visited once, in parallel too.
+			AtomicInteger entered = new AtomicInteger();
+			AtomicInteger left = new AtomicInteger();
+			walker.walkParallel(jsonParser.parse(data), new PGPNodeVisitor() {
+				public Action enter(PGPNode node) {
+					entered.incrementAndGet();
+					return Action.CONTINUE;
+				}
+				public Action leave(PGPNode node) {
+					left.incrementAndGet();
+					return Action.CONTINUE;
+				}
+			});
+			System.out.println("Parallel visits: " + entered + " entered, " + left + " left");
+
+			// Deep trees don't recurse.
+			PGPNode deepTop = new PGPNode();
+			PGPNode node = deepTop;
+			for (int i = 0; i < 200000; i++)
+				node = node.addChild("n");
+			AtomicInteger depth = new AtomicInteger();
+			walker.walk(deepTop, new PGPNodeVisitor() {
+				public Action enter(PGPNode node) {
+					depth.incrementAndGet();
+					return Action.CONTINUE;
+				}
+			});
+			System.out.println("Deep walk visited: " + depth);
+
+		} catch (PGPException e) {
+			System.out.println("PGPException at offset " + e.getErrorCharOfLine() + " of line " + e.getErrorLine() + ": " + e.getMessage());
+		}
+	}
+}
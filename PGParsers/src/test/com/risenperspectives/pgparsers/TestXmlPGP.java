@@ -25,6 +25,72 @@ public class TestXmlPGP {
         tests.add("<root><![CDATA[some <cdata> content]]></root>");
 
         runTests(tests, true, true, true, true);
+        runParallelTest();
+        runDeepTest();
+    }
+
+    // runDeepTest() -- nesting is limited by maxDepth, not by the thread stack.
+    private static void runDeepTest() {
+        final int depth = 300000;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; i++)
+            sb.append("<e").append(i % 3).append(">");
+        sb.append("leaf");
+        for (int i = depth - 1; i >= 0; i--)
+            sb.append("</e").append(i % 3).append(">");
+        String data = sb.toString();
+
+        XmlPGParser xmlParser = new XmlPGParser();
+        try {
+            xmlParser.parse(data);
+        } catch (PGPException e) {
+            System.out.println("PGPException at offset " + e.getErrorCharOfLine() + " of line " + e.getErrorLine() + ": " + e.getMessage());
+        }
+        try {
+            xmlParser.setMaxDepth(depth);
+            PGPNode node = xmlParser.parse(data);
+            int levels = 0;
+            while (null != node.getChild()) {
+                node = node.getChild();
+                ++levels;
+            }
+            System.out.println("Deep parse levels: " + levels + ", leaf: " + node.getValue());
+        } catch (PGPException e) {
+            System.out.println("PGPException at offset " + e.getErrorCharOfLine() + " of line " + e.getErrorLine() + ": " + e.getMessage());
+        }
+    }
+
+    // runParallelTest() -- a parallel parse must build the same tree as a sequential parse,
+    // and report an error at the same line and column.
+    private static void runParallelTest() {
+        StringBuilder sb = new StringBuilder("<records count=\"20000\">\n");
+        for (int i = 0; i < 20000; i++) {
+            sb.append("  <rec id=\"").append(i).append("\" note=\"a > b\"><name>rec").append(i).append("</name>");
+            if (i % 100 == 0)
+                sb.append("<!-- <rec> --><![CDATA[</rec>]]>");
+            sb.append("<tags><tag>a</tag><tag/></tags></rec>\n");
+        }
+        sb.append("</records>\n");
+        String data = sb.toString();
+        String broken = data.replace("<name>rec15000</name>", "<name>rec15000</nam>");
+        XmlPGParser xmlParser = new XmlPGParser();
+        XmlPGParser parallelParser = new XmlPGParser();
+        parallelParser.setParallelThreshold(0);
+        parallelParser.setFlags(new PGPOptionFlags(PGPOptionFlags.PARALLEL));
+        try {
+            String sequential = xmlParser.parse(data).dump(new StringBuilder()).toString();
+            String parallel = parallelParser.parse(data).dump(new StringBuilder()).toString();
+            System.out.println("Parallel parse matches sequential: " + sequential.equals(parallel));
+        } catch (PGPException e) {
+            System.out.println("PGPException at offset " + e.getErrorCharOfLine() + " of line " + e.getErrorLine() + ": " + e.getMessage());
+        }
+        for (XmlPGParser parser : new XmlPGParser[] { xmlParser, parallelParser }) {
+            try {
+                parser.parse(broken);
+            } catch (PGPException e) {
+                System.out.println("PGPException at offset " + e.getErrorCharOfLine() + " of line " + e.getErrorLine() + ": " + e.getMessage());
+            }
+        }
     }
 
     private static void runTests(List<String> tests, boolean runJson, boolean runYaml, boolean runXml, boolean runFlat) {
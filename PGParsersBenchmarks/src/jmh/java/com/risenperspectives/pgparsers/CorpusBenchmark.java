@@ -0,0 +1,60 @@
+package com.risenperspectives.pgparsers;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// CorpusBenchmark -- parses generated documents of records in each format, with and without
+// chars to escape, and with a share of the objects repeated (as aliases in JSON_ALIASES).
+
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CorpusBenchmark {
+
+	@Param({ "JSON", "JSON_ALIASES", "JSONL", "XML", "FLAT" })
+	public PGPCorpusGenerator.Format format;
+
+	@Param({ "0", "0.05" })
+	public double escapes;
+
+	@Param({ "64", "1024" })
+	public int kb;
+
+	@Param({ "1" })
+	public long seed;
+
+	private String text_;
+	private PGParsersInterface parser_;
+
+	@Setup
+	public void setup() {
+		text_ = new PGPCorpusGenerator( seed ).setEscapeDensity( escapes ).setAttributeCount( 2 ).setAliasReuse( 0.2 )
+			.generate( format, kb * 1024L );
+		switch ( format ) {
+		case XML:	parser_ = new XmlPGParser();		break;
+		case FLAT:	parser_ = new FlatPGParser();		break;
+		case JSONL:	parser_ = new JsonLinesPGParser();	break;
+		default:	parser_ = new JsonPGParser();
+		}
+	}
+
+	@Benchmark
+	public PGPNode parse() throws PGPException {
+		return parser_.parse( text_ );
+	}
+
+}//class CorpusBenchmark
@@ -0,0 +1,91 @@
+package com.risenperspectives.pgparsers;
+
+// Documents -- the documents the benchmarks work on, in a few shapes, generated to about a
+// given size. The same shape and size always give the same document.
+
+public final class Documents {
+
+	public enum Shape {
+		RECORDS,	// an array of small objects, like most API payloads
+		WIDE,		// one object with many scalar fields
+		DEEP,		// an array of objects nested 32 levels deep
+		TEXT		// an array of long strings with escaped quotes, tabs and non-ASCII chars
+	}
+
+	private static final int DEPTH = 32;
+
+	private Documents() {
+	}
+
+	// json() -- a JSON document of the shape, of at least kb KB.
+	public static String json( Shape shape, int kb ) {
+		int size = kb * 1024;
+		StringBuilder sb = new StringBuilder( size + 1024 );
+		sb.append( (shape == Shape.WIDE) ? "{\n" : "{ \"items\": [\n" );
+		for ( int i = 0; sb.length() < size; ++i ) {
+			if ( i > 0 )
+				sb.append( ",\n" );
+			switch ( shape ) {
+			case RECORDS:
+				sb.append( "  { \"id\": " ).append( i ).append( ", \"name\": \"item " ).append( i )
+					.append( "\", \"price\": " ).append( i % 1000 ).append( ".95, \"tags\": [\"tag" ).append( i % 7 )
+					.append( "\", \"tag" ).append( i % 11 ).append( "\"], \"active\": " ).append( i % 2 == 0 ).append( " }" );
+				break;
+			case WIDE:
+				sb.append( "  \"field" ).append( i ).append( "\": \"value " ).append( i ).append( '\"' );
+				break;
+			case DEEP:
+				sb.append( "  " );
+				for ( int level = 0; level < DEPTH; ++level )
+					sb.append( "{ \"id\": " ).append( level ).append( ", \"level" ).append( level ).append( "\": " );
+				sb.append( "{ \"leaf\": \"value " ).append( i ).append( "\" }" );
+				for ( int level = 0; level < DEPTH; ++level )
+					sb.append( " }" );
+				break;
+			case TEXT:
+				sb.append( "  \"Line " ).append( i );
+				for ( int j = 0; j < 4; ++j )
+					sb.append( " has \\\"quotes\\\", a tab\\t, caf\\u00e9 \\u00fcber \\u4e2d\\u6587." );
+				sb.append( '\"' );
+				break;
+			}
+		}
+		sb.append( (shape == Shape.WIDE) ? "\n}\n" : "\n] }\n" );
+		return sb.toString();
+	}
+
+	// tree() -- the document of the shape and size, parsed.
+	public static PGPNode tree( Shape shape, int kb ) {
+		try {
+			return new JsonPGParser().parse( json( shape, kb ) );
+		} catch ( PGPException e ) {
+			throw new IllegalStateException( "A generated document doesn't parse: " + e.getMessage(), e );
+		}
+	}
+
+	// middle() -- the last leaf under the middle child of the longest child list in the tree,
+	// which a search takes about as long to reach as an average node.
+	public static PGPNode middle( PGPNode top ) {
+		PGPNode list = longestList( top );
+		PGPNode node = list.getChildAt( list.getChildCount() / 2 );
+		while ( null != node.getChild() )
+			node = node.getChild().getPrev();	// the last child
+		return node;
+	}
+
+	// longestList() -- the node with the most children, following the first child of each list
+	// down from the top (the lists under the other children look the same in these documents).
+	public static PGPNode longestList( PGPNode top ) {
+		PGPNode longest = top;
+		int     most    = top.getChildCount();
+		for ( PGPNode node = top.getChild(); null != node; node = node.getChild() ) {
+			int count = node.getChildCount();
+			if ( count > most ) {
+				longest = node;
+				most    = count;
+			}
+		}
+		return longest;
+	}
+
+}//class Documents
@@ -0,0 +1,76 @@
+package com.risenperspectives.pgparsers;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// NodeBenchmark -- the PGPNode operations the converter and the editors use most, on a node
+// in the middle of the longest child list of the tree (see Documents.middle()).
+
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NodeBenchmark {
+
+	@Param({ "RECORDS", "WIDE", "DEEP", "TEXT" })
+	public Documents.Shape shape;
+
+	@Param({ "1", "64", "1024" })
+	public int kb;
+
+	private PGPNode topNode_;
+	private PGPNode list_;			// the longest child list
+	private int     index_;			// of the middle child in list_
+	private PGPNode middle_;		// a leaf under that child
+	private String  flatName_;		// of middle_
+
+	@Setup
+	public void setup() {
+		topNode_  = Documents.tree( shape, kb );
+		list_     = Documents.longestList( topNode_ );
+		index_    = list_.getChildCount() / 2;
+		middle_   = Documents.middle( topNode_ );
+		flatName_ = middle_.flatName();
+	}
+
+	@Benchmark
+	public PGPNode findNode() {
+		return topNode_.findNode( flatName_ );
+	}
+
+	// getNode() -- of a node that is there, so nothing is added.
+	@Benchmark
+	public PGPNode getNode() {
+		return topNode_.getNode( flatName_ );
+	}
+
+	@Benchmark
+	public PGPNode getChildAt() {
+		return list_.getChildAt( index_ );
+	}
+
+	@Benchmark
+	public String flatName() {
+		return middle_.flatName();
+	}
+
+	// addChild() -- to the end of the longest list, and unlinked again so the list keeps its length.
+	@Benchmark
+	public PGPNode addChild() {
+		return list_.addChild( "added", "value" ).unlink();
+	}
+
+}//class NodeBenchmark
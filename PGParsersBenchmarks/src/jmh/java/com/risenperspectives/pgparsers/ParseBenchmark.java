@@ -0,0 +1,66 @@
+package com.risenperspectives.pgparsers;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// ParseBenchmark -- parses the same document as JSON, XML and FLAT.
+// kb is the size of the JSON text; the XML and FLAT texts of the same tree are somewhat larger.
+
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+	@Param({ "RECORDS", "WIDE", "DEEP", "TEXT" })
+	public Documents.Shape shape;
+
+	@Param({ "1", "64", "1024" })
+	public int kb;
+
+	private String json_;
+	private String xml_;
+	private String flat_;
+
+	// One parser of each, reused, as the converter keeps them
+	private final JsonPGParser jsonParser_ = new JsonPGParser();
+	private final XmlPGParser  xmlParser_  = new XmlPGParser();
+	private final FlatPGParser flatParser_ = new FlatPGParser();
+
+	@Setup
+	public void setup() {
+		json_ = Documents.json( shape, kb );
+		PGPNode topNode = Documents.tree( shape, kb );
+		xml_  = new XmlPGPSerializer().serialize( topNode );
+		flat_ = new FlatPGPSerializer().serialize( topNode );
+	}
+
+	@Benchmark
+	public PGPNode json() throws PGPException {
+		return jsonParser_.parse( json_ );
+	}
+
+	@Benchmark
+	public PGPNode xml() throws PGPException {
+		return xmlParser_.parse( xml_ );
+	}
+
+	@Benchmark
+	public PGPNode flat() throws PGPException {
+		return flatParser_.parse( flat_ );
+	}
+
+}//class ParseBenchmark
@@ -0,0 +1,75 @@
+package com.risenperspectives.pgparsers;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// SerializeBenchmark -- writes the same tree as JSON, XML, YAML and FLAT.
+// The output goes to a StringBuilder that is reused, so the allocation measured is the
+// serializer's own, not the growing of the output buffer.
+
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializeBenchmark {
+
+	@Param({ "RECORDS", "WIDE", "DEEP", "TEXT" })
+	public Documents.Shape shape;
+
+	@Param({ "1", "64", "1024" })
+	public int kb;
+
+	private PGPNode topNode_;
+	private final PGPOptionFlags flags_ = new PGPOptionFlags();
+	private final StringBuilder  sb_    = new StringBuilder();
+
+	private final JsonPGPSerializer jsonSerializer_ = new JsonPGPSerializer();
+	private final XmlPGPSerializer  xmlSerializer_  = new XmlPGPSerializer();
+	private final YamlPGPSerializer yamlSerializer_ = new YamlPGPSerializer();
+	private final FlatPGPSerializer flatSerializer_ = new FlatPGPSerializer();
+
+	@Setup
+	public void setup() {
+		topNode_ = Documents.tree( shape, kb );
+	}
+
+	// serialize() -- the length of the output, so that the JIT can't drop the work.
+	private int serialize( PGPSerializerInterface serializer ) {
+		sb_.setLength( 0 );
+		return serializer.serialize( sb_, topNode_, flags_ ).length();
+	}
+
+	@Benchmark
+	public int json() {
+		return serialize( jsonSerializer_ );
+	}
+
+	@Benchmark
+	public int xml() {
+		return serialize( xmlSerializer_ );
+	}
+
+	@Benchmark
+	public int yaml() {
+		return serialize( yamlSerializer_ );
+	}
+
+	@Benchmark
+	public int flat() {
+		return serialize( flatSerializer_ );
+	}
+
+}//class SerializeBenchmark
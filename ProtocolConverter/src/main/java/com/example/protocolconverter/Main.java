@@ -1,11 +1,46 @@
 package com.example.protocolconverter;
 
+import java.util.Arrays;
+
 import javax.swing.SwingUtilities;
 
+import com.example.protocolconverter.cli.BatchCommand;
+import com.example.protocolconverter.cli.ClientCommand;
+import com.example.protocolconverter.cli.DaemonCommand;
+import com.example.protocolconverter.cli.LoadTestCommand;
+import com.example.protocolconverter.cli.PipeCommand;
+import com.example.protocolconverter.cli.ServeCommand;
 import com.example.protocolconverter.view.MainFrame;
 
 public class Main {
     public static void main(String[] args) {
+        if (args.length > 0) {
+            // A command runs without a window
+            String[] rest = Arrays.copyOfRange(args, 1, args.length);
+            switch (args[0]) {
+                case "batch":
+                    System.exit(BatchCommand.run(rest, System.out, System.err));
+                    break;
+                case "pipe":
+                    System.exit(PipeCommand.run(rest, System.in, System.out, System.err));
+                    break;
+                case "serve":
+                    System.exit(ServeCommand.run(rest, System.out, System.err));
+                    break;
+                case "loadtest":
+                    System.exit(LoadTestCommand.run(rest, System.out, System.err));
+                    break;
+                case "daemon":
+                    System.exit(DaemonCommand.run(rest, System.out, System.err));
+                    break;
+                case "client":
+                    System.exit(ClientCommand.run(rest, System.in, System.out, System.err));
+                    break;
+                default:
+                    System.err.println("Usage: batch | pipe | serve | loadtest | daemon | client [OPTIONS] (see a command's options with --help)");
+                    System.exit(2);
+            }
+        }
         SwingUtilities.invokeLater(() -> {
             MainFrame frame = new MainFrame();
             frame.setVisible(true);
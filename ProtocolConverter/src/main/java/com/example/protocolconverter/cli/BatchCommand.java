@@ -0,0 +1,250 @@
+package com.example.protocolconverter.cli;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.stream.Stream;
+
+import com.example.protocolconverter.model.BatchConverter;
+import com.example.protocolconverter.model.BatchConverter.Failure;
+import com.example.protocolconverter.model.BatchConverter.Job;
+import com.example.protocolconverter.model.BatchConverter.Summary;
+import com.example.protocolconverter.model.FormatCodec;
+import com.example.protocolconverter.model.ProtocolConverter;
+
+/**
+ * The command line batch mode: converts files and directory trees without opening a window.
+ * <pre>
+ * batch --to FORMAT --out DIR [--from FORMAT] [--glob PATTERN] [--threads N] [--budget MB] PATH...
+ * </pre>
+ * A PATH is a file, a directory, whose files are converted with their paths below it kept, or
+ * {@code @FILE}, a file listing one path per line. Each output file is named after its input,
+ * with the extension of the output format; of two inputs that differ only in their extension,
+ * the second fails rather than overwrite the output of the first. Exits with 0 when every file
+ * was converted, 1 when some failed, and 2 when the arguments are wrong.
+ */
+public class BatchCommand {
+
+    static final String USAGE =
+            "Usage: batch --to FORMAT --out DIR [--from FORMAT] [--glob PATTERN] [--threads N] [--budget MB] PATH...\n"
+            + "  PATH      a file, a directory to convert recursively, or @FILE listing one path per line\n"
+            + "  --from    the input format; detected for each file when omitted\n"
+            + "  --glob    converts only the files in directories whose names match, e.g. *.json\n"
+            + "  --threads the number of files converted at once (default: the number of processors)\n"
+            + "  --budget  megabytes of input read ahead of the conversions (default: 256)\n";
+
+    private final ProtocolConverter converter = new ProtocolConverter();
+    private FormatCodec from;
+    private FormatCodec to;
+    private Path outDir;
+    private PathMatcher glob;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private long budgetBytes = 256L << 20;
+    private final List<Path> paths = new ArrayList<>();
+
+    /** Runs the command, and returns the exit code. */
+    public static int run(String[] args, PrintStream out, PrintStream err) {
+        BatchCommand command = new BatchCommand();
+        try {
+            command.parseArguments(args);
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.print(USAGE);
+            return 2;
+        }
+
+        Summary summary;
+        try {
+            summary = new BatchConverter(command.converter, command.from, command.to, command.threads, command.budgetBytes)
+                    .run(command.jobs());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            err.println("Interrupted");
+            return 1;
+        }
+
+        int total = summary.getConverted() + summary.getFailures().size();
+        out.printf(Locale.ROOT, "Converted %d of %d files (%.1f MB -> %.1f MB) in %.1f s%n",
+                summary.getConverted(), total, summary.getBytesIn() / 1048576.0, summary.getBytesOut() / 1048576.0,
+                summary.getElapsedMillis() / 1000.0);
+        for (Failure failure : summary.getFailures()) {
+            err.println((failure.getInput() != null ? failure.getInput() + ": " : "") + failure.getMessage());
+        }
+        return summary.getFailures().isEmpty() ? 0 : 1;
+    }
+
+    private void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                if (arg.startsWith("@")) {
+                    addListedPaths(Paths.get(arg.substring(1)));
+                } else {
+                    paths.add(existing(Paths.get(arg)));
+                }
+                continue;
+            }
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value for " + arg);
+            }
+            String value = args[++i];
+            switch (arg) {
+                case "--from":
+                    from = codec(value);
+                    if (!from.canParse()) {
+                        throw new IllegalArgumentException("Cannot read " + from.getName());
+                    }
+                    break;
+                case "--to":
+                    to = codec(value);
+                    if (!to.canSerialize()) {
+                        throw new IllegalArgumentException("Cannot write " + to.getName());
+                    }
+                    break;
+                case "--out":
+                    outDir = Paths.get(value);
+                    break;
+                case "--glob":
+                    glob = Paths.get("").getFileSystem().getPathMatcher("glob:" + value);
+                    break;
+                case "--threads":
+                    threads = positive(arg, value);
+                    break;
+                case "--budget":
+                    budgetBytes = (long) positive(arg, value) << 20;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        if (to == null || outDir == null) {
+            throw new IllegalArgumentException("--to and --out are required");
+        }
+        if (paths.isEmpty()) {
+            throw new IllegalArgumentException("No files to convert");
+        }
+    }
+
+    private void addListedPaths(Path listFile) {
+        try (Stream<String> lines = Files.lines(existing(listFile), StandardCharsets.UTF_8)) {
+            lines.map(String::trim).filter(line -> !line.isEmpty()).forEach(line -> paths.add(Paths.get(line)));
+        } catch (IOException | UncheckedIOException e) {
+            throw new IllegalArgumentException("Cannot read " + listFile + ": " + e.getMessage());
+        }
+    }
+
+    private FormatCodec codec(String name) {
+        return converter.getRegistry().get(name);   // IllegalArgumentException for unknown names
+    }
+
+    private static Path existing(Path path) {
+        if (!Files.exists(path)) {
+            throw new IllegalArgumentException("No such file: " + path);
+        }
+        return path;
+    }
+
+    private static int positive(String option, String value) {
+        try {
+            int n = Integer.parseInt(value);
+            if (n > 0) {
+                return n;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException(option + " must be a positive number: " + value);
+    }
+
+    // jobs() -- the files to convert. Directories are walked as the jobs are taken, so listing
+    // a large tree does not hold up the first conversions, or hold the whole tree in memory.
+    // When walking a directory fails, the UncheckedIOException is passed on (for BatchConverter
+    // to record), and the next call goes on with the next path.
+    private Iterator<Job> jobs() {
+        Path absoluteOut = outDir.toAbsolutePath().normalize();
+        return new Iterator<Job>() {
+            private final Iterator<Path> roots = paths.iterator();
+            private Path root;                  // The directory being walked
+            private Stream<Path> walk;
+            private Iterator<Path> files;
+            private Job next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null) {
+                    if (files != null && nextFile()) {
+                        Path file = files.next();
+                        if (Files.isRegularFile(file)
+                                && (glob == null || glob.matches(file.getFileName()))
+                                && !file.toAbsolutePath().normalize().startsWith(absoluteOut)) {
+                            next = new Job(file, output(root.relativize(file)));
+                        }
+                    } else if (files != null) {
+                        walk.close();
+                        files = null;
+                    } else if (roots.hasNext()) {
+                        Path path = roots.next();
+                        if (Files.isDirectory(path)) {
+                            try {
+                                walk = Files.walk(path);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                            root = path;
+                            files = walk.iterator();
+                        } else {
+                            next = new Job(path, output(path.isAbsolute() ? path.getFileName() : path));
+                        }
+                    } else {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            // nextFile() -- files.hasNext(), giving up on the walk when it fails.
+            private boolean nextFile() {
+                try {
+                    return files.hasNext();
+                } catch (UncheckedIOException e) {
+                    walk.close();
+                    files = null;
+                    throw e;
+                }
+            }
+
+            @Override
+            public Job next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Job job = next;
+                next = null;
+                return job;
+            }
+        };
+    }
+
+    // output() -- where the file at relative path goes: below the output directory, with the
+    // extension of the output format.
+    private Path output(Path relative) {
+        Path normalized = relative.normalize();
+        if (normalized.startsWith("..")) {
+            normalized = normalized.getFileName();  // Keep the outputs in the output directory
+        }
+        String name = normalized.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String renamed = (dot > 0 ? name.substring(0, dot) : name) + "." + to.getName().toLowerCase(Locale.ROOT);
+        return outDir.resolve(normalized).resolveSibling(renamed);
+    }
+}
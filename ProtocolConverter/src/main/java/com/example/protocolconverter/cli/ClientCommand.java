@@ -0,0 +1,107 @@
+package com.example.protocolconverter.cli;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import com.example.protocolconverter.server.ConversionDaemon;
+
+/**
+ * The client of the daemon mode: sends stdin to the daemon, and writes the converted output to
+ * stdout. It does nothing but copy bytes, so that it starts quickly; the daemon does the work.
+ * <pre>
+ * client [--socket PATH] [--from FORMAT] --to FORMAT
+ * </pre>
+ * Exits with 0 when the input was converted, 1 when it wasn't (the reason goes to stderr), and
+ * 2 when the arguments are wrong.
+ */
+public class ClientCommand {
+
+    // The first string concatenation (+) bootstraps an invokedynamic call site, which adds about
+    // 50 ms to the client's start. So + is only used on the paths that fail.
+
+    static String usage() {
+        return "Usage: client [--socket PATH] [--from FORMAT] --to FORMAT  < input > output\n"
+                + "  --socket the daemon's socket file (default: " + ConversionDaemon.defaultSocket() + ")\n"
+                + "  --from   the input format; detected when omitted\n";
+    }
+
+    /** Converts in to out through the daemon, and returns the exit code. */
+    public static int run(String[] args, InputStream in, OutputStream out, PrintStream err) {
+        Path socket = null;
+        String from = "-";
+        String to = null;
+        for (int i = 0; i < args.length; i += 2) {
+            String value = (i + 1 < args.length) ? args[i + 1] : null;
+            if (value == null || value.isEmpty() || value.contains(" ")) {
+                err.println("Missing value for " + args[i]);
+                err.print(usage());
+                return 2;
+            }
+            switch (args[i]) {
+                case "--socket":
+                    socket = Paths.get(value);
+                    break;
+                case "--from":
+                    from = value;
+                    break;
+                case "--to":
+                    to = value;
+                    break;
+                default:
+                    err.println("Unknown option: " + args[i]);
+                    err.print(usage());
+                    return 2;
+            }
+        }
+        if (to == null) {
+            err.println("--to is required");
+            err.print(usage());
+            return 2;
+        }
+        if (socket == null) {
+            socket = ConversionDaemon.defaultSocket();
+            try {
+                if (!ConversionDaemon.isPrivateDirectory(socket.getParent())) {
+                    err.println("Not using " + socket + ": " + socket.getParent() + " can be used by other users");
+                    return 1;
+                }
+            } catch (IOException e) {
+                err.println("Cannot reach the daemon on " + socket + ": " + e.getMessage());
+                return 1;
+            }
+        }
+
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+            OutputStream request = Channels.newOutputStream(channel);
+            request.write(String.join(" ", from, to).concat("\n").getBytes(StandardCharsets.UTF_8));
+            in.transferTo(request);
+            channel.shutdownOutput();
+
+            InputStream response = Channels.newInputStream(channel);
+            ByteArrayOutputStream status = new ByteArrayOutputStream();
+            for (int b = response.read(); b >= 0 && b != '\n'; b = response.read()) {
+                status.write(b);
+            }
+            String line = status.toString(StandardCharsets.UTF_8);
+            if (!line.equals("OK")) {
+                err.println(line.startsWith("ERROR ") ? line.substring(6) : "No answer from the daemon");
+                return 1;
+            }
+            response.transferTo(out);
+            out.flush();
+            return 0;
+        } catch (IOException e) {
+            err.println("Cannot reach the daemon on " + socket + ": " + e.getMessage());
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.protocolconverter.cli;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+
+import com.example.protocolconverter.model.CodecRegistry;
+import com.example.protocolconverter.model.ConversionCache;
+import com.example.protocolconverter.model.ProtocolConverter;
+import com.example.protocolconverter.server.ConversionDaemon;
+import com.risenperspectives.pgparsers.PGPJmxMetrics;
+import com.risenperspectives.pgparsers.PGPMetrics;
+
+/**
+ * The command line daemon mode: converts for the client command on a Unix domain socket until
+ * the process is stopped (see ConversionDaemon).
+ * <pre>
+ * daemon [--socket PATH] [--threads N] [--max-body MB] [--cache MB] [--jmx NAME]
+ * </pre>
+ */
+public class DaemonCommand {
+
+    static final String USAGE =
+            "Usage: daemon [--socket PATH] [--threads N] [--max-body MB] [--cache MB] [--jmx NAME]\n"
+            + "  --socket   the socket file (default: " + ConversionDaemon.defaultSocket() + ")\n"
+            + "  --threads  requests converted at once (default: the number of processors)\n"
+            + "  --max-body megabytes of the largest input (default: 64)\n"
+            + "  --cache    megabytes of outputs kept for repeated inputs (default: 0, none)\n"
+            + "  --jmx      publishes parse and serialize metrics as MBeans with this name (default: none)\n";
+
+    /** Serves until the process is stopped; returns the exit code if the daemon can't start. */
+    public static int run(String[] args, PrintStream out, PrintStream err) {
+        Path socket = ConversionDaemon.defaultSocket();
+        int threads = Runtime.getRuntime().availableProcessors();
+        long maxBodyBytes = 64L << 20;
+        long cacheBytes = 0;
+        String jmxName = null;
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                if (i + 1 == args.length) {
+                    throw new IllegalArgumentException("Missing value for " + args[i]);
+                }
+                String value = args[i + 1];
+                switch (args[i]) {
+                    case "--socket":
+                        socket = Paths.get(value);
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(value);
+                        break;
+                    case "--max-body":
+                        maxBodyBytes = Long.parseLong(value) << 20;
+                        break;
+                    case "--cache":
+                        cacheBytes = Long.parseLong(value) << 20;
+                        break;
+                    case "--jmx":
+                        jmxName = value;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+            if (threads < 1 || maxBodyBytes < 1 || cacheBytes < 0) {
+                throw new IllegalArgumentException("Values out of range");
+            }
+        } catch (IllegalArgumentException e) {    // Also NumberFormatException
+            err.println(e.getMessage());
+            err.print(USAGE);
+            return 2;
+        }
+
+        ConversionDaemon daemon;
+        try {
+            ConversionCache cache = (cacheBytes > 0) ? new ConversionCache(cacheBytes) : null;
+            PGPMetrics metrics = (jmxName != null) ? new PGPJmxMetrics(jmxName) : PGPMetrics.NONE;
+            daemon = new ConversionDaemon(new ProtocolConverter(CodecRegistry.withDefaults(metrics), cache), socket,
+                    threads, maxBodyBytes);
+        } catch (IOException e) {
+            err.println("Cannot listen on " + socket + ": " + e.getMessage());
+            return 1;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                daemon.close();
+            } catch (IOException e) {
+                // Exiting anyway
+            }
+        }));
+        daemon.start();
+        out.println("Listening on " + socket);
+        try {
+            new CountDownLatch(1).await();   // Until the process is stopped
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,210 @@
+package com.example.protocolconverter.cli;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A load test for the server mode: posts one file over and over from a number of threads, each
+ * waiting for its response before sending the next, and reports the throughput and latency at
+ * each number of threads.
+ * <pre>
+ * loadtest --url URL --file FILE [--concurrency 1,4,16,64] [--duration S] [--warmup S]
+ * </pre>
+ * Requests that end during the warmup are not counted. Latencies are of 200 responses only;
+ * 503s are counted as rejected, and anything else as errors.
+ */
+public class LoadTestCommand {
+
+    static final String USAGE =
+            "Usage: loadtest --url URL --file FILE [--concurrency 1,4,16,64] [--duration S] [--warmup S]\n"
+            + "  --url         e.g. http://127.0.0.1:8080/convert?from=JSON&to=XML\n"
+            + "  --concurrency the numbers of threads to test with, one after another\n"
+            + "  --duration    seconds measured at each number of threads (default: 10)\n"
+            + "  --warmup      seconds run before measuring (default: 2)\n";
+
+    /** What one number of threads did. */
+    static final class Result {
+        int threads;
+        long[] latencies;       // nanos, sorted
+        int rejected;
+        int errors;
+        double seconds;
+
+        double throughput() {
+            return latencies.length / seconds;
+        }
+
+        /** The latency in millis that the fraction p of the requests took at most. */
+        double percentile(double p) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(p * latencies.length) - 1;
+            return latencies[Math.max(index, 0)] / 1e6;
+        }
+    }
+
+    /** Runs the load test, and returns the exit code. */
+    public static int run(String[] args, PrintStream out, PrintStream err) {
+        URI uri = null;
+        byte[] body = null;
+        int[] levels = { 1, 4, 16, 64 };
+        double duration = 10;
+        double warmup = 2;
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                if (i + 1 == args.length) {
+                    throw new IllegalArgumentException("Missing value for " + args[i]);
+                }
+                String value = args[i + 1];
+                switch (args[i]) {
+                    case "--url":
+                        uri = URI.create(value);
+                        break;
+                    case "--file":
+                        body = Files.readAllBytes(Paths.get(value));
+                        break;
+                    case "--concurrency":
+                        levels = Arrays.stream(value.split(",")).mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+                        break;
+                    case "--duration":
+                        duration = Double.parseDouble(value);
+                        break;
+                    case "--warmup":
+                        warmup = Double.parseDouble(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+            if (uri == null || body == null) {
+                throw new IllegalArgumentException("--url and --file are required");
+            }
+            if (duration <= 0 || warmup < 0 || Arrays.stream(levels).anyMatch(n -> n < 1)) {
+                throw new IllegalArgumentException("Values out of range");
+            }
+        } catch (IOException e) {
+            err.println("Cannot read the file: " + e.getMessage());
+            return 2;
+        } catch (IllegalArgumentException e) {    // Also NumberFormatException
+            err.println(e.getMessage());
+            err.print(USAGE);
+            return 2;
+        }
+
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        HttpRequest request = HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.ofByteArray(body)).build();
+        out.println("threads  requests/s     p50 ms     p99 ms   p99.9 ms  rejected  errors");
+        int exitCode = 0;
+        for (int threads : levels) {
+            Result result;
+            try {
+                result = measure(client, request, threads, warmup, duration);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return 1;
+            }
+            out.printf(Locale.ROOT, "%7d  %10.1f  %9.3f  %9.3f  %9.3f  %8d  %6d%n", threads, result.throughput(),
+                    result.percentile(0.50), result.percentile(0.99), result.percentile(0.999),
+                    result.rejected, result.errors);
+            if (result.errors > 0) {
+                exitCode = 1;
+            }
+        }
+        return exitCode;
+    }
+
+    static Result measure(HttpClient client, HttpRequest request, int threads, double warmupSeconds,
+                          double durationSeconds) throws InterruptedException {
+        long start = System.nanoTime();
+        long measureFrom = start + (long) (warmupSeconds * 1e9);
+        long measureTo = measureFrom + (long) (durationSeconds * 1e9);
+
+        List<Worker> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Worker worker = new Worker(client, request, measureFrom, measureTo);
+            worker.setName("loadtest-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+        Result result = new Result();
+        result.threads = threads;
+        int count = 0;
+        for (Worker worker : workers) {
+            worker.join();
+            count += worker.count;
+            result.rejected += worker.rejected;
+            result.errors += worker.errors;
+        }
+        result.latencies = new long[count];
+        int at = 0;
+        for (Worker worker : workers) {
+            System.arraycopy(worker.latencies, 0, result.latencies, at, worker.count);
+            at += worker.count;
+        }
+        Arrays.sort(result.latencies);
+        result.seconds = durationSeconds;
+        return result;
+    }
+
+    private static final class Worker extends Thread {
+        private final HttpClient client;
+        private final HttpRequest request;
+        private final long measureFrom;
+        private final long measureTo;
+        long[] latencies = new long[1024];
+        int count;
+        int rejected;
+        int errors;
+
+        Worker(HttpClient client, HttpRequest request, long measureFrom, long measureTo) {
+            this.client = client;
+            this.request = request;
+            this.measureFrom = measureFrom;
+            this.measureTo = measureTo;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                long sent = System.nanoTime();
+                if (sent >= measureTo) {
+                    return;
+                }
+                int status;
+                try {
+                    status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                } catch (IOException e) {
+                    status = -1;
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long received = System.nanoTime();
+                if (sent < measureFrom || received > measureTo) {
+                    continue;   // Warming up, or after the end
+                }
+                if (status == 200) {
+                    if (count == latencies.length) {
+                        latencies = Arrays.copyOf(latencies, count * 2);
+                    }
+                    latencies[count++] = received - sent;
+                } else if (status == 503) {
+                    rejected++;
+                } else {
+                    errors++;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.protocolconverter.cli;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import com.example.protocolconverter.model.FormatCodec;
+import com.example.protocolconverter.model.ProtocolConverter;
+import com.example.protocolconverter.model.RecordReader;
+import com.example.protocolconverter.model.RecordReader.RecordTooLongException;
+import com.risenperspectives.pgparsers.PGPException;
+
+/**
+ * The command line pipe mode: converts a stream of records from stdin to stdout, one record at
+ * a time, and flushes each record's output as soon as it is converted.
+ * <pre>
+ * pipe --from FORMAT --to FORMAT [--max-record MB]
+ * </pre>
+ * JSON and JSONL are read one document per line, XML as concatenated documents, and FLAT as
+ * records separated by blank lines (see RecordReader). The outputs are written one after the
+ * other, each ending with a newline; FLAT outputs are followed by a blank line, so they can be
+ * read back as records. A record that fails is reported on stderr, and the stream goes on.
+ * Memory stays bounded by the longest record, so the input can go on forever.
+ * Exits with 0 at the end of the input when every record was converted, 1 when some failed,
+ * and 2 when the arguments are wrong.
+ */
+public class PipeCommand {
+
+    static final String USAGE =
+            "Usage: pipe --from FORMAT --to FORMAT [--max-record MB]\n"
+            + "  --from       JSON or JSONL (a document per line), XML (concatenated documents),\n"
+            + "               or FLAT (records separated by blank lines)\n"
+            + "  --max-record megabytes of the longest record; longer ones are skipped (default: 16)\n";
+
+    private final ProtocolConverter converter = new ProtocolConverter();
+    private FormatCodec from;
+    private FormatCodec to;
+    private int maxRecordChars = 16 << 20;
+
+    /** Runs the command until the end of in, and returns the exit code. */
+    public static int run(String[] args, InputStream in, OutputStream out, PrintStream err) {
+        PipeCommand command = new PipeCommand();
+        try {
+            command.parseArguments(args);
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.print(USAGE);
+            return 2;
+        }
+        try {
+            return command.convert(in, out, err) ? 0 : 1;
+        } catch (IOException e) {
+            err.println("Error: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    private void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i += 2) {
+            String arg = args[i];
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value for " + arg);
+            }
+            String value = args[i + 1];
+            switch (arg) {
+                case "--from":
+                    from = converter.getRegistry().get(value);
+                    if (from.getName().equalsIgnoreCase("JSONL")) {
+                        from = converter.getRegistry().get("JSON");     // Each line is parsed as a document
+                    }
+                    if (!from.canParse()) {
+                        throw new IllegalArgumentException("Cannot read " + from.getName());
+                    }
+                    break;
+                case "--to":
+                    to = converter.getRegistry().get(value);
+                    if (!to.canSerialize()) {
+                        throw new IllegalArgumentException("Cannot write " + to.getName());
+                    }
+                    break;
+                case "--max-record":
+                    try {
+                        int megabytes = Integer.parseInt(value);
+                        if (megabytes < 1 || megabytes > 1024) {
+                            throw new NumberFormatException();
+                        }
+                        maxRecordChars = megabytes << 20;
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("--max-record must be from 1 to 1024: " + value);
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("--from and --to are required");
+        }
+    }
+
+    // convert() -- returns false if any record failed.
+    private boolean convert(InputStream in, OutputStream out, PrintStream err) throws IOException {
+        boolean allConverted = true;
+        boolean separateWithBlankLine = to.getName().equalsIgnoreCase("FLAT");
+        RecordReader records = new RecordReader(new InputStreamReader(in, StandardCharsets.UTF_8),
+                RecordReader.framingFor(from), maxRecordChars);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        while (true) {
+            CharSequence record;
+            try {
+                record = records.next();
+            } catch (RecordTooLongException e) {
+                err.println(e.getMessage());
+                allConverted = false;
+                continue;
+            }
+            if (record == null) {
+                break;
+            }
+
+            try {
+                String output = converter.convert(record, from, to);
+                writer.write(output);
+                if (!output.endsWith("\n")) {
+                    writer.write('\n');
+                }
+                if (separateWithBlankLine) {
+                    writer.write('\n');
+                }
+                writer.flush();
+            } catch (PGPException e) {
+                err.println("Error on line " + (records.getRecordLine() + e.getErrorLine()) + " at offset "
+                        + e.getErrorCharOfLine() + ": " + e.getMessage());
+                allConverted = false;
+            }
+        }
+        writer.flush();
+        return allConverted;
+    }
+}
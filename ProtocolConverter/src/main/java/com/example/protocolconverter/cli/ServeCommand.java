@@ -0,0 +1,108 @@
+package com.example.protocolconverter.cli;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.CountDownLatch;
+
+import com.example.protocolconverter.model.CodecRegistry;
+import com.example.protocolconverter.model.ConversionCache;
+import com.example.protocolconverter.model.ProtocolConverter;
+import com.example.protocolconverter.server.ConversionServer;
+import com.risenperspectives.pgparsers.PGPJmxMetrics;
+import com.risenperspectives.pgparsers.PGPMetrics;
+
+/**
+ * The command line server mode: serves conversions over HTTP on localhost until the process is
+ * stopped (see ConversionServer).
+ * <pre>
+ * serve [--port N] [--max-concurrent N] [--max-body MB] [--cache MB] [--jmx NAME]
+ * </pre>
+ */
+public class ServeCommand {
+
+    static final String USAGE =
+            "Usage: serve [--port N] [--max-concurrent N] [--max-body MB] [--cache MB] [--jmx NAME]\n"
+            + "  --port           the port on 127.0.0.1 (default: 8080; 0 picks a free one)\n"
+            + "  --max-concurrent requests converted at once; more get 503 (default: twice the processors)\n"
+            + "  --max-body       megabytes of the largest request body (default: 64)\n"
+            + "  --cache          megabytes of outputs kept for repeated bodies (default: 0, none)\n"
+            + "  --jmx            publishes parse and serialize metrics as MBeans with this name (default: none)\n";
+
+    /** Serves until the process is stopped; returns the exit code if the server can't start. */
+    public static int run(String[] args, PrintStream out, PrintStream err) {
+        int port = 8080;
+        int maxConcurrent = 2 * Runtime.getRuntime().availableProcessors();
+        long maxBodyBytes = 64L << 20;
+        long cacheBytes = 0;
+        String jmxName = null;
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                if (i + 1 == args.length) {
+                    throw new IllegalArgumentException("Missing value for " + args[i]);
+                }
+                String value = args[i + 1];
+                switch (args[i]) {
+                    case "--port":
+                        port = number(args[i], value);
+                        break;
+                    case "--max-concurrent":
+                        maxConcurrent = number(args[i], value);
+                        break;
+                    case "--max-body":
+                        maxBodyBytes = (long) number(args[i], value) << 20;
+                        break;
+                    case "--cache":
+                        cacheBytes = (long) number(args[i], value) << 20;
+                        break;
+                    case "--jmx":
+                        jmxName = value;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+            if (port > 65535 || maxConcurrent < 1 || maxBodyBytes < 1) {
+                throw new IllegalArgumentException("Values out of range");
+            }
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.print(USAGE);
+            return 2;
+        }
+
+        ConversionServer server;
+        try {
+            ConversionCache cache = (cacheBytes > 0) ? new ConversionCache(cacheBytes) : null;
+            PGPMetrics metrics = (jmxName != null) ? new PGPJmxMetrics(jmxName) : PGPMetrics.NONE;
+            server = new ConversionServer(new ProtocolConverter(CodecRegistry.withDefaults(metrics), cache), port,
+                    maxConcurrent, maxBodyBytes);
+        } catch (IOException e) {
+            err.println("Cannot listen on port " + port + ": " + e.getMessage());
+            return 1;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        server.start();
+        out.println("Serving on http://127.0.0.1:" + server.getPort() + "/convert with "
+                + (server.usesVirtualThreads() ? "virtual threads" : "a thread pool")
+                + ", " + maxConcurrent + " requests at a time");
+        try {
+            new CountDownLatch(1).await();   // Until the process is stopped
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        server.close();
+        return 0;
+    }
+
+    private static int number(String option, String value) {
+        try {
+            int n = Integer.parseInt(value);
+            if (n >= 0) {
+                return n;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException(option + " must be a number: " + value);
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.protocolconverter.model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.risenperspectives.pgparsers.PGPException;
+
+/**
+ * Converts many files with a fixed pool of worker threads.
+ * The calling thread reads the files, so the next files are read while the workers convert
+ * the ones before them. Files that are read but not yet converted count against a budget of
+ * bytes. The reader waits when the budget is spent, which bounds the memory a run takes
+ * however far the reading gets ahead. A file that fails is recorded in the Summary, and the
+ * run goes on with the next one. So is a file whose output would overwrite the output of a
+ * file before it in the run.
+ */
+public class BatchConverter {
+
+    private final ProtocolConverter converter;
+    private final FormatCodec from;     // null to detect each file's format
+    private final FormatCodec to;
+    private final int threads;
+    private final int budgetBytes;
+
+    /**
+     * @param from        the input format, or null to detect it for each file
+     * @param threads     the number of files converted at once
+     * @param budgetBytes how many bytes of input may be read ahead of the workers. A larger
+     *                    file is read on its own, once the files before it are converted.
+     */
+    public BatchConverter(ProtocolConverter converter, FormatCodec from, FormatCodec to, int threads, long budgetBytes) {
+        if (threads < 1 || budgetBytes < 1) {
+            throw new IllegalArgumentException("threads and budgetBytes must be positive");
+        }
+        this.converter = converter;
+        this.from = from;
+        this.to = to;
+        this.threads = threads;
+        this.budgetBytes = (int) Math.min(budgetBytes, Integer.MAX_VALUE);
+    }
+
+    /** A file to convert, and where its output goes. */
+    public static final class Job {
+        private final Path input;
+        private final Path output;
+
+        public Job(Path input, Path output) {
+            this.input = input;
+            this.output = output;
+        }
+
+        public Path getInput() {
+            return input;
+        }
+
+        public Path getOutput() {
+            return output;
+        }
+    }
+
+    /** A file that could not be converted. */
+    public static final class Failure {
+        private final Path input;
+        private final String message;
+
+        Failure(Path input, String message) {
+            this.input = input;
+            this.message = message;
+        }
+
+        /** The file, or null if listing the files failed. */
+        public Path getInput() {
+            return input;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    /** What a run did. */
+    public static final class Summary {
+        private final int converted;
+        private final List<Failure> failures;
+        private final long bytesIn;
+        private final long bytesOut;
+        private final long elapsedMillis;
+
+        Summary(int converted, List<Failure> failures, long bytesIn, long bytesOut, long elapsedMillis) {
+            this.converted = converted;
+            this.failures = failures;
+            this.bytesIn = bytesIn;
+            this.bytesOut = bytesOut;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public int getConverted() {
+            return converted;
+        }
+
+        public List<Failure> getFailures() {
+            return failures;
+        }
+
+        public long getBytesIn() {
+            return bytesIn;
+        }
+
+        public long getBytesOut() {
+            return bytesOut;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+    }
+
+    /**
+     * Converts the files of jobs, which is consumed lazily, so it can list a large tree as it goes.
+     * When jobs throws UncheckedIOException, listing some of the files failed: that is recorded,
+     * and jobs is asked for the files after them. Returns when all of them are done.
+     */
+    public Summary run(Iterator<Job> jobs) throws InterruptedException {
+        long startNanos = System.nanoTime();
+        Semaphore budget = new Semaphore(budgetBytes);
+        AtomicInteger converted = new AtomicInteger();
+        AtomicLong bytesIn = new AtomicLong();
+        AtomicLong bytesOut = new AtomicLong();
+        ConcurrentLinkedQueue<Failure> failures = new ConcurrentLinkedQueue<>();
+        Set<Path> outputs = new HashSet<>();    // Of the jobs so far, to catch two with the same output
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "batch-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            while (true) {
+                Job job;
+                try {
+                    if (!jobs.hasNext()) {
+                        break;
+                    }
+                    job = jobs.next();
+                } catch (UncheckedIOException e) {
+                    failures.add(new Failure(null, "Listing the files failed: " + e.getCause().getMessage()));
+                    continue;
+                }
+                if (!outputs.add(job.output.toAbsolutePath().normalize())) {
+                    failures.add(new Failure(job.input, "Not converted, as another file was converted to " + job.output));
+                    continue;
+                }
+
+                byte[] bytes;
+                int permits;
+                try {
+                    permits = (int) Math.min(Files.size(job.input), budgetBytes);
+                    budget.acquire(permits);
+                    try {
+                        bytes = Files.readAllBytes(job.input);
+                    } catch (IOException | RuntimeException e) {
+                        budget.release(permits);
+                        throw e;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    failures.add(new Failure(job.input, describe(e)));
+                    continue;
+                }
+
+                workers.execute(() -> {
+                    try {
+                        bytesOut.addAndGet(convert(bytes, job.output));
+                        bytesIn.addAndGet(bytes.length);
+                        converted.incrementAndGet();
+                    } catch (PGPException | IOException | RuntimeException e) {
+                        failures.add(new Failure(job.input, describe(e)));
+                    } finally {
+                        budget.release(permits);
+                    }
+                });
+            }
+        } finally {
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+
+        List<Failure> failed = new ArrayList<>(failures);
+        return new Summary(converted.get(), Collections.unmodifiableList(failed), bytesIn.get(), bytesOut.get(),
+                (System.nanoTime() - startNanos) / 1000000);
+    }
+
+    // convert() -- converts one UTF-8 file's bytes, and returns the size of the output written.
+    private long convert(byte[] bytes, Path output) throws PGPException, IOException {
+        CharBuffer text = StandardCharsets.UTF_8.decode(ByteBuffer.wrap(bytes));
+        if (text.length() > 0 && text.charAt(0) == '\uFEFF') {
+            text.position(1);   // byte order mark
+        }
+        FormatCodec format = (from != null) ? from : converter.detectFormat(text);
+
+        Path parent = output.getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (Writer writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            converter.convert(text, format, to, null, writer);
+        } catch (PGPException | IOException | RuntimeException e) {
+            Files.deleteIfExists(output);   // don't leave half a file behind
+            throw e;
+        }
+        return Files.size(output);
+    }
+
+    private static String describe(Exception e) {
+        if (e instanceof PGPException) {
+            PGPException pe = (PGPException) e;
+            return "Error on line " + pe.getErrorLine() + " at offset " + pe.getErrorCharOfLine() + ": " + pe.getMessage();
+        }
+        return (e.getMessage() != null) ? e.getMessage() : e.toString();
+    }
+}
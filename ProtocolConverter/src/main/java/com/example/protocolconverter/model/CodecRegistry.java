@@ -0,0 +1,91 @@
+package com.example.protocolconverter.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.risenperspectives.pgparsers.FlatPGPSerializer;
+import com.risenperspectives.pgparsers.FlatPGParser;
+import com.risenperspectives.pgparsers.JsonLinesPGParser;
+import com.risenperspectives.pgparsers.JsonPGPSerializer;
+import com.risenperspectives.pgparsers.JsonPGParser;
+import com.risenperspectives.pgparsers.PGPMetrics;
+import com.risenperspectives.pgparsers.PGPSerializerInterface;
+import com.risenperspectives.pgparsers.PGParsersInterface;
+import com.risenperspectives.pgparsers.XmlPGPSerializer;
+import com.risenperspectives.pgparsers.XmlPGParser;
+import com.risenperspectives.pgparsers.YamlPGPSerializer;
+
+/**
+ * Maps format names to the codecs that read and write them. Names are matched without regard to case.
+ */
+public class CodecRegistry {
+
+    private final ConcurrentMap<String, FormatCodec> codecs = new ConcurrentHashMap<>();
+
+    /** A registry with the formats of the PGParsers library: JSON, XML, YAML (write only), FLAT and JSONL (read only). */
+    public static CodecRegistry withDefaults() {
+        return withDefaults(PGPMetrics.NONE);
+    }
+
+    /** The default formats, with parsers and serializers that report each call to metrics. */
+    public static CodecRegistry withDefaults(PGPMetrics metrics) {
+        CodecRegistry registry = new CodecRegistry();
+        // Lambdas rather than constructor references: a constructor reference loads its class when
+        // the registry is built, while a lambda loads it on first use, so formats that a run doesn't
+        // use are never loaded.
+        registry.register(new FormatCodec("JSON", () -> metered(new JsonPGParser(), metrics),
+                () -> metered(new JsonPGPSerializer(), metrics)));
+        registry.register(new FormatCodec("XML", () -> metered(new XmlPGParser(), metrics),
+                () -> metered(new XmlPGPSerializer(), metrics)));
+        registry.register(new FormatCodec("YAML", null, () -> metered(new YamlPGPSerializer(), metrics)));
+        registry.register(new FormatCodec("FLAT", () -> metered(new FlatPGParser(), metrics),
+                () -> metered(new FlatPGPSerializer(), metrics)));
+        registry.register(new FormatCodec("JSONL", () -> metered(new JsonLinesPGParser(), metrics), null));
+        return registry;
+    }
+
+    /** Adds a codec, replacing any codec with the same name. */
+    public void register(FormatCodec codec) {
+        codecs.put(key(codec.getName()), codec);
+    }
+
+    /** The codec for a format name, or null if there is none. */
+    public FormatCodec find(String name) {
+        if (name == null) {
+            return null;
+        }
+        FormatCodec codec = codecs.get(name);
+        return (codec != null) ? codec : codecs.get(key(name));
+    }
+
+    /** The codec for a format name. */
+    public FormatCodec get(String name) {
+        FormatCodec codec = find(name);
+        if (codec == null) {
+            throw new IllegalArgumentException("Unknown format: " + name);
+        }
+        return codec;
+    }
+
+    /** The registered codecs, in no particular order. */
+    public List<FormatCodec> codecs() {
+        return new ArrayList<>(codecs.values());
+    }
+
+    private static <P extends PGParsersInterface> P metered(P parser, PGPMetrics metrics) {
+        parser.setMetrics(metrics);
+        return parser;
+    }
+
+    private static <S extends PGPSerializerInterface> S metered(S serializer, PGPMetrics metrics) {
+        serializer.setMetrics(metrics);
+        return serializer;
+    }
+
+    private static String key(String name) {
+        return name.toUpperCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,353 @@
+package com.example.protocolconverter.model;
+
+import java.nio.CharBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.risenperspectives.pgparsers.PGPException;
+
+/**
+ * Keeps the outputs of conversions, so that converting the same input again (a retried request,
+ * a config file read by many jobs) is a lookup. An output is found by a 64-bit hash of the input
+ * text, the two formats and the option flags; the input is then compared in full, so that a hash
+ * collision can't return the output of another input.
+ * <p>
+ * The cache holds at most maxBytes of inputs and outputs, counting two bytes a char and a little
+ * for each entry. It is split by hash into stripes, each with its own lock and an equal share of
+ * the budget, which it keeps to by evicting its least recently used entries. Eviction is LRU
+ * within a stripe rather than across the whole cache, and threads converting different inputs
+ * seldom wait for each other. An output too large for a stripe isn't kept.
+ * <p>
+ * Threads asking for the same conversion at the same time share it: the first one converts, and
+ * the others wait for its output, or its exception. Failed conversions aren't kept.
+ */
+public class ConversionCache {
+
+    private static final int ENTRY_BYTES = 128;     // about what an entry takes besides its chars
+    private static final long MIN_STRIPE_BYTES = 1 << 20;
+
+    /** A conversion to run on a miss. */
+    public interface Conversion {
+        String convert() throws PGPException;
+    }
+
+    private final long maxBytes;
+    private final Stripe[] stripes;
+    private final ConcurrentMap<Key, CompletableFuture<String>> running = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder shared = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /** A cache of at most maxBytes, with a stripe for every 1 MB up to four times the processors. */
+    public ConversionCache(long maxBytes) {
+        this(maxBytes, defaultStripes(maxBytes));
+    }
+
+    /** @param stripes a power of two */
+    public ConversionCache(long maxBytes, int stripes) {
+        if (maxBytes < 1 || stripes < 1 || Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("maxBytes must be positive, and stripes a power of two");
+        }
+        this.maxBytes = maxBytes;
+        this.stripes = new Stripe[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new Stripe(maxBytes / stripes);
+        }
+    }
+
+    private static int defaultStripes(long maxBytes) {
+        long wanted = Math.min(4L * Runtime.getRuntime().availableProcessors(), maxBytes / MIN_STRIPE_BYTES);
+        return (wanted <= 1) ? 1 : Integer.highestOneBit((int) Math.min(wanted, 1 << 16));
+    }
+
+    /**
+     * The output of converting input from one format to the other with flags: the kept one, the
+     * one another thread is converting, or else the one conversion returns, which is then kept.
+     * input must not change during the call.
+     */
+    public String get(CharSequence input, FormatCodec from, FormatCodec to, int flags, Conversion conversion)
+            throws PGPException {
+        Key key = new Key(input, from.getName(), to.getName(), flags);
+        Stripe stripe = stripes[(int) (key.hash >>> 40) & (stripes.length - 1)];
+        String output = stripe.find(key);
+        if (output != null) {
+            hits.increment();
+            return output;
+        }
+
+        CompletableFuture<String> mine = new CompletableFuture<>();
+        CompletableFuture<String> theirs = running.putIfAbsent(key, mine);
+        if (theirs != null) {
+            shared.increment();
+            return await(theirs);
+        }
+        try {
+            output = stripe.find(key);  // Kept by a thread that finished after the first look
+            if (output != null) {
+                hits.increment();
+            } else {
+                misses.increment();
+                output = conversion.convert();
+                stripe.keep(key.kept(), output);
+            }
+            mine.complete(output);
+            return output;
+        } catch (PGPException | RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            running.remove(key, mine);
+        }
+    }
+
+    private static String await(CompletableFuture<String> future) throws PGPException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof PGPException) {
+                throw (PGPException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    /** Drops every kept output. */
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            stripe.clear();
+        }
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /** The bytes of the kept inputs and outputs. */
+    public long getSizeBytes() {
+        long size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.sizeBytes();
+        }
+        return size;
+    }
+
+    /** How many outputs are kept. */
+    public int getEntryCount() {
+        int count = 0;
+        for (Stripe stripe : stripes) {
+            count += stripe.entryCount();
+        }
+        return count;
+    }
+
+    /** Lookups answered with a kept output. */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /** Lookups that converted. */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /** Lookups that waited for the same conversion by another thread. */
+    public long getShared() {
+        return shared.sum();
+    }
+
+    /** Outputs dropped to keep to the budget. */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d hits, %d misses, %d shared, %d evictions, %d entries of %d bytes",
+                getHits(), getMisses(), getShared(), getEvictions(), getEntryCount(), getSizeBytes());
+    }
+
+    /** One share of the cache, in least recently used order. */
+    private final class Stripe {
+        private final long maxBytes;
+        private final LinkedHashMap<Key, String> outputs = new LinkedHashMap<>(16, 0.75f, true);
+        private long sizeBytes;
+
+        Stripe(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        synchronized String find(Key key) {
+            return outputs.get(key);
+        }
+
+        synchronized void keep(Key key, String output) {
+            long bytes = bytes(key, output);
+            if (bytes > maxBytes) {
+                return;
+            }
+            String old = outputs.put(key, output);
+            if (old != null) {
+                sizeBytes -= bytes(key, old);
+            }
+            sizeBytes += bytes;
+            Iterator<Map.Entry<Key, String>> eldest = outputs.entrySet().iterator();
+            while (sizeBytes > maxBytes) {
+                Map.Entry<Key, String> entry = eldest.next();
+                sizeBytes -= bytes(entry.getKey(), entry.getValue());
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+
+        synchronized void clear() {
+            outputs.clear();
+            sizeBytes = 0;
+        }
+
+        synchronized long sizeBytes() {
+            return sizeBytes;
+        }
+
+        synchronized int entryCount() {
+            return outputs.size();
+        }
+
+        private long bytes(Key key, String output) {
+            return 2L * (key.input.length() + output.length()) + ENTRY_BYTES;
+        }
+    }
+
+    /** What an output is kept under. The input is compared in full by equals(). */
+    static final class Key {
+        private static final long M = 0x9E3779B97F4A7C15L;
+
+        final long hash;
+        final CharSequence input;
+        private final String from;
+        private final String to;
+        private final int flags;
+
+        Key(CharSequence input, String from, String to, int flags) {
+            this(hash(input) ^ mix(from.hashCode() * 31L + to.hashCode() + ((long) flags << 32)),
+                    input, from, to, flags);
+        }
+
+        private Key(long hash, CharSequence input, String from, String to, int flags) {
+            this.hash = hash;
+            this.input = input;
+            this.from = from;
+            this.to = to;
+            this.flags = flags;
+        }
+
+        // kept() -- this key with a copy of the input, which the caller may change after the call.
+        Key kept() {
+            return (input instanceof String) ? this : new Key(hash, input.toString(), from, to, flags);
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (hash ^ (hash >>> 32));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && flags == other.flags && from.equals(other.from) && to.equals(other.to)
+                    && sameText(input, other.input);
+        }
+
+        private static boolean sameText(CharSequence a, CharSequence b) {
+            if (a == b) {
+                return true;
+            }
+            if (a.length() != b.length()) {
+                return false;
+            }
+            if (a instanceof String) {
+                return ((String) a).contentEquals(b);
+            }
+            if (b instanceof String) {
+                return ((String) b).contentEquals(a);
+            }
+            if (a instanceof CharBuffer && b instanceof CharBuffer) {
+                return a.equals(b);     // Compares the chars remaining
+            }
+            return a.toString().contentEquals(b);
+        }
+
+        // hash() -- a 64-bit hash of the chars of text. Four chars are taken at a time, into four
+        // lanes, so that each multiply doesn't wait for the one before it.
+        static long hash(CharSequence text) {
+            if (text instanceof CharBuffer && ((CharBuffer) text).hasArray()) {
+                CharBuffer buffer = (CharBuffer) text;
+                return hash(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            }
+            String s = text.toString();
+            int length = s.length();
+            long a = 1;
+            long b = 2;
+            long c = 3;
+            long d = 4;
+            int i = 0;
+            for (; i + 4 <= length; i += 4) {
+                a = Long.rotateLeft((a ^ s.charAt(i)) * M, 29);
+                b = Long.rotateLeft((b ^ s.charAt(i + 1)) * M, 29);
+                c = Long.rotateLeft((c ^ s.charAt(i + 2)) * M, 29);
+                d = Long.rotateLeft((d ^ s.charAt(i + 3)) * M, 29);
+            }
+            for (; i < length; i++) {
+                a = Long.rotateLeft((a ^ s.charAt(i)) * M, 29);
+            }
+            return combine(a, b, c, d, length);
+        }
+
+        static long hash(char[] chars, int offset, int length) {
+            long a = 1;
+            long b = 2;
+            long c = 3;
+            long d = 4;
+            int i = offset;
+            int end = offset + length;
+            for (; i + 4 <= end; i += 4) {
+                a = Long.rotateLeft((a ^ chars[i]) * M, 29);
+                b = Long.rotateLeft((b ^ chars[i + 1]) * M, 29);
+                c = Long.rotateLeft((c ^ chars[i + 2]) * M, 29);
+                d = Long.rotateLeft((d ^ chars[i + 3]) * M, 29);
+            }
+            for (; i < end; i++) {
+                a = Long.rotateLeft((a ^ chars[i]) * M, 29);
+            }
+            return combine(a, b, c, d, length);
+        }
+
+        private static long combine(long a, long b, long c, long d, int length) {
+            long h = mix(a);
+            h = mix(h * 31 + b);
+            h = mix(h * 31 + c);
+            h = mix(h * 31 + d);
+            return mix(h + length);
+        }
+
+        // mix() -- the MurmurHash3 finalizer: every bit of x changes about half the bits of the result.
+        private static long mix(long x) {
+            x = (x ^ (x >>> 33)) * 0xFF51AFD7ED558CCDL;
+            x = (x ^ (x >>> 33)) * 0xC4CEB9FE1A85EC53L;
+            return x ^ (x >>> 33);
+        }
+    }
+}
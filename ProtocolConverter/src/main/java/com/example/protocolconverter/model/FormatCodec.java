@@ -0,0 +1,69 @@
+package com.example.protocolconverter.model;
+
+import java.util.function.Supplier;
+
+import com.risenperspectives.pgparsers.PGParsersInterface;
+import com.risenperspectives.pgparsers.PGPSerializerInterface;
+
+/**
+ * A data format the converter can read, write, or both.
+ * The parser and serializer are created once per thread, on first use, and reused after that.
+ */
+public final class FormatCodec {
+
+    private final String name;
+    private final Supplier<? extends PGParsersInterface> parserFactory;
+    private final Supplier<? extends PGPSerializerInterface> serializerFactory;
+    private final ThreadLocal<PGParsersInterface> parsers;
+    private final ThreadLocal<PGPSerializerInterface> serializers;
+
+    /**
+     * @param name              format name, like "JSON". Looked up without regard to case.
+     * @param parserFactory     creates a parser, or null if the format can't be read
+     * @param serializerFactory creates a serializer, or null if the format can't be written
+     */
+    public FormatCodec(String name, Supplier<? extends PGParsersInterface> parserFactory,
+                       Supplier<? extends PGPSerializerInterface> serializerFactory) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("A format needs a name");
+        }
+        this.name = name;
+        this.parserFactory = parserFactory;
+        this.serializerFactory = serializerFactory;
+        this.parsers = (parserFactory == null) ? null : ThreadLocal.withInitial(parserFactory::get);
+        this.serializers = (serializerFactory == null) ? null : ThreadLocal.withInitial(serializerFactory::get);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean canParse() {
+        return parserFactory != null;
+    }
+
+    public boolean canSerialize() {
+        return serializerFactory != null;
+    }
+
+    /** This thread's parser for the format. */
+    public PGParsersInterface parser() {
+        if (parsers == null) {
+            throw new UnsupportedOperationException(name + " can't be read");
+        }
+        return parsers.get();
+    }
+
+    /** This thread's serializer for the format. */
+    public PGPSerializerInterface serializer() {
+        if (serializers == null) {
+            throw new UnsupportedOperationException(name + " can't be written");
+        }
+        return serializers.get();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
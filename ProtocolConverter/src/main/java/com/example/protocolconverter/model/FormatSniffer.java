@@ -0,0 +1,295 @@
+package com.example.protocolconverter.model;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Guesses the format of a document (JSON, XML, FLAT or YAML) from the first few KB of it,
+ * without parsing it. Each format gets a score from 0 to 1, and the best one is the guess.
+ *
+ * Leading blank lines and comments (#, // and &#47;* *&#47;) are skipped, then:
+ * <ul>
+ * <li>'&lt;' starts XML.</li>
+ * <li>'{' starts JSON. So does '[', unless it is a FLAT index like "[0]=".</li>
+ * <li>"---", "%YAML" and "- " start YAML.</li>
+ * <li>Otherwise the first lines are looked at one by one: "name=value" is FLAT (even when
+ *     the value has braces in it), and "name: value" and "- item" are YAML.</li>
+ * </ul>
+ */
+public class FormatSniffer {
+
+    public static final String JSON = "JSON";
+    public static final String XML = "XML";
+    public static final String FLAT = "FLAT";
+    public static final String YAML = "YAML";
+
+    public static final int DEFAULT_PREFIX_CHARS = 4096;
+    private static final int MAX_LINES = 32;
+
+    private final int prefixChars;
+
+    public FormatSniffer() {
+        this(DEFAULT_PREFIX_CHARS);
+    }
+
+    /** @param prefixChars how much of the document is looked at */
+    public FormatSniffer(int prefixChars) {
+        this.prefixChars = Math.max(64, prefixChars);
+    }
+
+    public int getPrefixChars() {
+        return prefixChars;
+    }
+
+    /** The scores of each format, and the best of them. */
+    public static final class Detection {
+        private final double json;
+        private final double xml;
+        private final double flat;
+        private final double yaml;
+
+        Detection(double json, double xml, double flat, double yaml) {
+            this.json = json;
+            this.xml = xml;
+            this.flat = flat;
+            this.yaml = yaml;
+        }
+
+        /** The most likely format, or null if there was nothing to go on. */
+        public String getFormat() {
+            double best = getConfidence();
+            if (best <= 0) {
+                return null;
+            }
+            return (best == json) ? JSON : (best == xml) ? XML : (best == flat) ? FLAT : YAML;
+        }
+
+        /** The score of the most likely format. */
+        public double getConfidence() {
+            return Math.max(Math.max(json, xml), Math.max(flat, yaml));
+        }
+
+        /** The score of a format, 0 for formats that aren't sniffed. */
+        public double getScore(String format) {
+            switch (format) {
+                case JSON: return json;
+                case XML:  return xml;
+                case FLAT: return flat;
+                case YAML: return yaml;
+                default:   return 0;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s (JSON %.2f, XML %.2f, FLAT %.2f, YAML %.2f)", getFormat(), json, xml, flat, yaml);
+        }
+    }
+
+    public Detection sniff(CharSequence text) {
+        return new Scan(text, Math.min(text.length(), prefixChars)).detect();
+    }
+
+    /**
+     * Sniffs encoded text. A UTF-16 byte order mark is honored; anything else is looked at a byte
+     * at a time, since only the ASCII chars that shape the formats matter.
+     */
+    public Detection sniff(byte[] data, int offset, int length) {
+        if (length >= 2 && ((data[offset] == (byte) 0xFE && data[offset + 1] == (byte) 0xFF)
+                || (data[offset] == (byte) 0xFF && data[offset + 1] == (byte) 0xFE))) {
+            return sniff(new String(data, offset, Math.min(length, 2 * prefixChars), StandardCharsets.UTF_16));
+        }
+        int end = offset + length;
+        if (length >= 3 && data[offset] == (byte) 0xEF && data[offset + 1] == (byte) 0xBB && data[offset + 2] == (byte) 0xBF) {
+            offset += 3;    // UTF-8 byte order mark
+        }
+        return new Scan(new ByteChars(data, offset, end), Math.min(end - offset, prefixChars)).detect();
+    }
+
+    // Scan -- one look at the prefix of a document.
+    private static final class Scan {
+        private final CharSequence text;
+        private final int end;
+        private int at;
+        private boolean cComments;      // saw // or /* comments, which only JSON has
+
+        Scan(CharSequence text, int end) {
+            this.text = text;
+            this.end = end;
+        }
+
+        Detection detect() {
+            skipSpaceAndComments();
+            if (at >= end) {
+                return new Detection(0, 0, 0, 0);
+            }
+            char c = text.charAt(at);
+            if (c == '\uFEFF') {
+                ++at;
+                return detect();
+            }
+            if (c == '<') {
+                return new Detection(0, startsWith("<?xml") ? 1.0 : 0.95, 0, 0);
+            }
+            if (c == '{') {
+                return new Detection(cComments ? 0.98 : 0.9, 0, 0, cComments ? 0 : 0.1);
+            }
+            if (c == '[' && !isFlatName(at)) {
+                return new Detection(cComments ? 0.95 : 0.85, 0, 0, cComments ? 0 : 0.15);
+            }
+            if (startsWith("---") || startsWith("%YAML")) {
+                return new Detection(0, 0, 0, 0.95);
+            }
+            return detectLines();
+        }
+
+        // detectLines() -- scores the first lines as FLAT or YAML.
+        private Detection detectLines() {
+            int lines = 0;
+            int flat = 0;
+            int yaml = 0;
+            while (at < end && lines < MAX_LINES) {
+                int eol = lineEnd(at);
+                if (eol == end && end < text.length() && lines > 0) {
+                    break;  // A line cut off by the prefix says little
+                }
+                char c = text.charAt(at);
+                if (c != '#') {
+                    ++lines;
+                    if (isFlatName(at)) {
+                        ++flat;
+                    } else if (isYamlLine(at, eol)) {
+                        ++yaml;
+                    }
+                }
+                at = eol;
+                skipBlankLines();
+            }
+            if (lines == 0) {
+                return new Detection(0, 0, 0, 0);
+            }
+            double weight = (lines >= 3) ? 0.95 : (lines == 2) ? 0.85 : 0.75;
+            return new Detection(0, 0, weight * flat / lines, weight * yaml / lines);
+        }
+
+        // isFlatName() -- true if the line at from starts with a flat name and '=', like "a.b[2]#x=".
+        private boolean isFlatName(int from) {
+            int i = from;
+            while (i < end) {
+                char c = text.charAt(i);
+                if (c == '=') {
+                    return i > from;
+                }
+                if (c == ':' || c == '{' || c == '}' || c == '"' || c == '\'' || c == ',' || Character.isWhitespace(c)) {
+                    return false;
+                }
+                ++i;
+            }
+            return false;
+        }
+
+        // isYamlLine() -- true for "- item", "key:" and "key: value" lines.
+        private boolean isYamlLine(int from, int eol) {
+            int i = from;
+            while (i < eol && text.charAt(i) == ' ') {
+                ++i;
+            }
+            if (i < eol && text.charAt(i) == '-' && (i + 1 == eol || text.charAt(i + 1) == ' ')) {
+                return true;
+            }
+            int key = i;
+            while (i < eol) {
+                char c = text.charAt(i);
+                if (c == ':') {
+                    return i > key && (i + 1 == eol || text.charAt(i + 1) == ' ' || text.charAt(i + 1) == '\r');
+                }
+                if (c == '=' || c == '{' || c == '[' || c == ',') {
+                    return false;
+                }
+                ++i;
+            }
+            return false;
+        }
+
+        private void skipSpaceAndComments() {
+            while (at < end) {
+                char c = text.charAt(at);
+                if (Character.isWhitespace(c)) {
+                    ++at;
+                } else if (c == '#') {
+                    at = lineEnd(at);
+                } else if (c == '/' && at + 1 < end && text.charAt(at + 1) == '/') {
+                    cComments = true;
+                    at = lineEnd(at);
+                } else if (c == '/' && at + 1 < end && text.charAt(at + 1) == '*') {
+                    cComments = true;
+                    at += 2;
+                    while (at < end && !(text.charAt(at) == '*' && at + 1 < end && text.charAt(at + 1) == '/')) {
+                        ++at;
+                    }
+                    at = Math.min(end, at + 2);
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private void skipBlankLines() {
+            while (at < end && Character.isWhitespace(text.charAt(at))) {
+                ++at;
+            }
+        }
+
+        private int lineEnd(int from) {
+            int i = from;
+            while (i < end && text.charAt(i) != '\n') {
+                ++i;
+            }
+            return i;
+        }
+
+        private boolean startsWith(String s) {
+            if (end - at < s.length()) {
+                return false;
+            }
+            for (int i = 0; i < s.length(); i++) {
+                if (text.charAt(at + i) != s.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    // ByteChars -- bytes seen as chars, one each, without decoding them.
+    private static final class ByteChars implements CharSequence {
+        private final byte[] data;
+        private final int offset;
+        private final int end;
+
+        ByteChars(byte[] data, int offset, int end) {
+            this.data = data;
+            this.offset = offset;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return end - offset;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (data[offset + index] & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int stop) {
+            return new ByteChars(data, offset + start, offset + stop);
+        }
+
+        @Override
+        public String toString() {
+            return new String(data, offset, end - offset, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.protocolconverter.model;
+
+import com.risenperspectives.pgparsers.PGPException;
+import com.risenperspectives.pgparsers.PGPNode;
+import com.risenperspectives.pgparsers.PGPProgressListener;
+import com.risenperspectives.pgparsers.PGParsersInterface;
+
+/**
+ * The tree parsed from the last version of a document that is being edited. When the next
+ * version differs from it in one place, only the part of the tree around that place is parsed
+ * again (see PGParsersInterface.reparse()). The edit is found by comparing the two versions
+ * from both ends, so several edits made between parses are handled as one.
+ * The text is kept until the next parse, and must not be changed by the caller.
+ * Not safe to share between threads.
+ */
+public class ParsedDocument {
+
+    private CharSequence text;  // the text topNode was parsed from, or null
+    private FormatCodec codec;
+    private PGPNode topNode;
+
+    /**
+     * Parses text, reusing the tree of the last version when it was parsed with the same codec.
+     * The returned tree is updated in place by the next call.
+     */
+    public PGPNode parse(CharSequence text, FormatCodec codec, PGPProgressListener listener) throws PGPException {
+        PGParsersInterface parser = codec.parser();
+        parser.setProgressListener(listener);
+        try {
+            PGPNode parsed;
+            if (topNode != null && codec == this.codec) {
+                CharSequence old = this.text;
+                int limit = Math.min(old.length(), text.length());
+                int head = 0;
+                while (head < limit && old.charAt(head) == text.charAt(head)) {
+                    head++;
+                }
+                if (head == old.length() && head == text.length()) {
+                    this.text = text;
+                    return topNode;     // No change
+                }
+                int tail = 0;
+                while (tail < limit - head && old.charAt(old.length() - 1 - tail) == text.charAt(text.length() - 1 - tail)) {
+                    tail++;
+                }
+                parsed = parser.reparse(topNode, text, head, old.length() - head - tail, text.length() - head - tail);
+            } else {
+                parsed = parser.parse(text);
+            }
+            this.text = text;
+            this.codec = codec;
+            this.topNode = parsed;
+            return parsed;
+        } catch (PGPException | RuntimeException e) {
+            clear();    // The tree no longer matches the text
+            throw e;
+        } finally {
+            parser.setProgressListener(null);
+        }
+    }
+
+    /** Forgets the last version, so the next parse() is a full parse. */
+    public void clear() {
+        text = null;
+        codec = null;
+        topNode = null;
+    }
+}
@@ -1,19 +1,176 @@
 package com.example.protocolconverter.model;
 
+import java.io.IOException;
+
+import com.risenperspectives.pgparsers.PGPException;
+import com.risenperspectives.pgparsers.PGPNode;
+import com.risenperspectives.pgparsers.PGPOptionFlags;
+import com.risenperspectives.pgparsers.PGPProgressListener;
+import com.risenperspectives.pgparsers.PGParsersInterface;
+
+/**
+ * Converts text between the formats of a CodecRegistry.
+ * Safe to share between threads: each thread gets its own parsers, serializers and output buffer.
+ * Input that is not a String, such as a CharBuffer, is parsed in place rather than copied, and
+ * must not change during the call.
+ * <p>
+ * Given a ConversionCache, the converter keeps its outputs there and converts an input it has
+ * converted before only once. Conversions with a progress listener aren't cached, as the
+ * listener may cancel them.
+ */
 public class ProtocolConverter {
 
-    public String convertToXML(String input) {
-        // Placeholder for XML conversion logic
-        return "Converted to XML: " + input;
+    private static final int KEPT_BUFFER_CHARS = 1 << 20;   // larger output buffers aren't kept for the next call
+    // The formats the sniffer scores, in the order it breaks ties in
+    private static final String[] SNIFFED_FORMATS = { FormatSniffer.JSON, FormatSniffer.XML, FormatSniffer.FLAT, FormatSniffer.YAML };
+
+    private final CodecRegistry registry;
+    private final FormatCodec xml;
+    private final FormatCodec json;
+    private final FormatCodec yaml;
+    private final FormatCodec flat;
+    private final ConversionCache cache;    // null when outputs aren't kept
+    private final FormatSniffer sniffer = new FormatSniffer();
+    private final PGPOptionFlags flags = new PGPOptionFlags();
+    private final ThreadLocal<StringBuilder> buffers = ThreadLocal.withInitial(() -> new StringBuilder(4096));
+
+    public ProtocolConverter() {
+        this(CodecRegistry.withDefaults());
+    }
+
+    public ProtocolConverter(CodecRegistry registry) {
+        this(registry, null);
+    }
+
+    /** A converter that keeps its outputs in cache, which may be shared with other converters. */
+    public ProtocolConverter(CodecRegistry registry, ConversionCache cache) {
+        this.registry = registry;
+        this.cache = cache;
+        this.xml = registry.get("XML");
+        this.json = registry.get("JSON");
+        this.yaml = registry.get("YAML");
+        this.flat = registry.get("FLAT");
+    }
+
+    public CodecRegistry getRegistry() {
+        return registry;
+    }
+
+    /** The cache of outputs, or null. */
+    public ConversionCache getCache() {
+        return cache;
+    }
+
+    public String convertToXML(String input) throws PGPException {
+        return convert(input, detectFormat(input), xml);
+    }
+
+    public String convertToJson(String input) throws PGPException {
+        return convert(input, detectFormat(input), json);
+    }
+
+    public String convertToYaml(String input) throws PGPException {
+        return convert(input, detectFormat(input), yaml);
+    }
+
+    public String convertToFlat(String input) throws PGPException {
+        return convert(input, detectFormat(input), flat);
+    }
+
+    /** Converts input from one format to another, by name. A null fromFormat means detect it. */
+    public String convert(CharSequence input, String fromFormat, String toFormat) throws PGPException {
+        FormatCodec from = (fromFormat == null) ? detectFormat(input) : registry.get(fromFormat);
+        return convert(input, from, registry.get(toFormat));
+    }
+
+    public String convert(CharSequence input, FormatCodec from, FormatCodec to) throws PGPException {
+        return convert(input, from, to, null);
+    }
+
+    /**
+     * Converts input, telling listener how far the parse has got. The listener can cancel the
+     * conversion by returning false, and convert() then throws a PGPException.
+     */
+    public String convert(CharSequence input, FormatCodec from, FormatCodec to, PGPProgressListener listener) throws PGPException {
+        if (cache == null || listener != null) {
+            return serialize(parse(input, from, listener), to);
+        }
+        return cache.get(input, from, to, flags.getFlagsInt(), () -> serialize(parse(input, from, null), to));
+    }
+
+    /** Renders a parsed tree, such as the one kept by a ParsedDocument, in the to format. */
+    public String serialize(PGPNode topNode, FormatCodec to) {
+        StringBuilder sb = buffers.get();
+        sb.setLength(0);
+        String output = to.serializer().serialize(sb, topNode, flags).toString();
+        if (sb.capacity() > KEPT_BUFFER_CHARS) {
+            buffers.remove();
+        }
+        return output;
+    }
+
+    /**
+     * Converts input and writes the output to out, for output too large to hold as a String.
+     * FLAT is written as it is rendered; the other formats are rendered in full first, as is
+     * every format when the output is cached.
+     */
+    public void convert(CharSequence input, FormatCodec from, FormatCodec to, PGPProgressListener listener, Appendable out)
+            throws PGPException, IOException {
+        if (cache != null && listener == null) {
+            out.append(convert(input, from, to, null));
+            return;
+        }
+        serialize(parse(input, from, listener), to, out);
+    }
+
+    /** Parses input, for rendering it later with serialize(). */
+    public PGPNode parse(CharSequence input, FormatCodec from) throws PGPException {
+        return parse(input, from, null);
+    }
+
+    /** Renders a parsed tree in the to format, and writes it to out. */
+    public void serialize(PGPNode topNode, FormatCodec to, Appendable out) throws IOException {
+        to.serializer().serialize(out, topNode, flags);
+    }
+
+    private PGPNode parse(CharSequence input, FormatCodec from, PGPProgressListener listener) throws PGPException {
+        PGParsersInterface parser = from.parser();
+        parser.setProgressListener(listener);
+        try {
+            return parser.parse(input);
+        } finally {
+            parser.setProgressListener(null);
+        }
     }
 
-    public String convertToJson(String input) {
-        // Placeholder for JSON conversion logic
-        return "Converted to JSON: " + input;
+    /** Scores the formats input might be in, from its first few KB. */
+    public FormatSniffer.Detection sniff(CharSequence input) {
+        return sniffer.sniff(input);
     }
 
-    public String convertToFlat(String input) {
-        // Placeholder for FLAT conversion logic
-        return "Converted to FLAT: " + input;
+    /**
+     * The codec for the format input seems to be in, of the formats that can be read. JSON when
+     * there is no telling. Throws a PGPException if input only looks like a format that can't be
+     * read, such as YAML.
+     */
+    public FormatCodec detectFormat(CharSequence input) throws PGPException {
+        FormatSniffer.Detection detection = sniffer.sniff(input);
+        if (detection.getFormat() == null) {
+            return json;
+        }
+        FormatCodec best = null;
+        double bestScore = 0;
+        for (String format : SNIFFED_FORMATS) {
+            FormatCodec codec = registry.find(format);
+            double score = detection.getScore(format);
+            if (codec != null && codec.canParse() && score > bestScore) {
+                best = codec;
+                bestScore = score;
+            }
+        }
+        if (best == null) {
+            throw new PGPException(1, "Input looks like " + detection.getFormat() + ", which can't be read");
+        }
+        return best;
     }
 }
@@ -0,0 +1,356 @@
+package com.example.protocolconverter.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.Locale;
+
+/**
+ * Cuts a stream of text into records, for converting a stream one record at a time.
+ * Records are read as they arrive, so a stream that never ends (like a pipe from a log shipper)
+ * gives up each record as soon as it is complete. Only the record being read is kept, so the
+ * memory taken is bounded by the longest record, however long the stream is.
+ * Not safe to share between threads.
+ */
+public class RecordReader implements Closeable {
+
+    /** How the records of a stream are told apart. */
+    public enum Framing {
+        /** One record per line, as in NDJSON. Blank lines are skipped. */
+        LINES,
+        /** Records are separated by blank lines, as FLAT records are. */
+        BLANK_LINES,
+        /**
+         * Concatenated XML documents. Each record is one root element; the XML declarations,
+         * comments and DOCTYPEs around the root elements are left out.
+         */
+        XML_DOCUMENTS
+    }
+
+    /** Thrown for a record longer than the limit. The record is skipped, and the next one can be read. */
+    public static class RecordTooLongException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        RecordTooLongException(String message) {
+            super(message);
+        }
+    }
+
+    // XML_DOCUMENTS states
+    private static final int TEXT = 0;
+    private static final int LT = 1;            // after '<'
+    private static final int BANG = 2;          // after "<!"
+    private static final int BANG_DASH = 3;     // after "<!-"
+    private static final int COMMENT = 4;
+    private static final int CDATA = 5;
+    private static final int DECLARATION = 6;   // <!DOCTYPE ...>
+    private static final int PI = 7;            // <? ... ?>
+    private static final int START_TAG = 8;
+    private static final int END_TAG = 9;
+
+    private final Reader in;
+    private final Framing framing;
+    private final int maxRecordChars;
+
+    private final char[] buffer = new char[8192];
+    private int bufferAt;
+    private int bufferEnd;
+    private boolean eof;
+
+    private char[] record;
+    private int length;
+    private boolean tooLong;
+    private long line;          // of the next char read, from 0
+    private long recordLine;    // of the first char of the last record
+
+    // BLANK_LINES scanning
+    private int lineStart;      // where the line being scanned starts in the record
+    private boolean lineBlank = true;
+
+    // XML_DOCUMENTS scanning
+    private int state = TEXT;
+    private int depth;
+    private int markupStart;    // where the markup being scanned starts in the record
+    private char quote;         // the quote a start tag or declaration is in, or 0
+    private int bracketDepth;   // of a declaration's internal subset
+    private char prev1;         // the two chars before this one
+    private char prev2;
+
+    /**
+     * @param maxRecordChars the longest record returned. Longer records are skipped, and
+     *                       next() throws a RecordTooLongException for them.
+     */
+    public RecordReader(Reader in, Framing framing, int maxRecordChars) {
+        if (maxRecordChars < 1) {
+            throw new IllegalArgumentException("maxRecordChars must be positive");
+        }
+        this.in = in;
+        this.framing = framing;
+        this.maxRecordChars = maxRecordChars;
+        this.record = new char[Math.min(1024, maxRecordChars)];
+    }
+
+    /** How records in a format are told apart: XML documents, FLAT blank lines, and JSON lines. */
+    public static Framing framingFor(FormatCodec format) {
+        switch (format.getName().toUpperCase(Locale.ROOT)) {
+            case "XML":
+                return Framing.XML_DOCUMENTS;
+            case "FLAT":
+                return Framing.BLANK_LINES;
+            default:
+                return Framing.LINES;
+        }
+    }
+
+    /**
+     * The next record, or null at the end of the stream. Blocks until the record is complete.
+     * The returned chars are only valid until the next call.
+     */
+    public CharSequence next() throws IOException {
+        length = 0;
+        lineStart = 0;
+        tooLong = false;
+        while (true) {
+            if (bufferAt == bufferEnd && !fill()) {
+                // End of the stream: the record so far is the last one
+                if (framing == Framing.XML_DOCUMENTS) {
+                    state = TEXT;
+                    depth = 0;
+                }
+                return (!isBlank() || tooLong) ? complete() : null;
+            }
+            char c = buffer[bufferAt++];
+            boolean ends;
+            switch (framing) {
+                case LINES:
+                    ends = scanLine(c);
+                    break;
+                case BLANK_LINES:
+                    ends = scanBlankLines(c);
+                    break;
+                default:
+                    ends = scanXml(c);
+                    break;
+            }
+            if (c == '\n') {
+                line++;
+            }
+            if (ends) {
+                return complete();
+            }
+        }
+    }
+
+    /** The line of the stream the last record started on, counted from 0. */
+    public long getRecordLine() {
+        return recordLine;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    // fill() -- reads whatever has arrived, waiting only when nothing has.
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        int n;
+        do {
+            n = in.read(buffer, 0, buffer.length);
+        } while (n == 0);
+        if (n < 0) {
+            eof = true;
+            return false;
+        }
+        bufferAt = 0;
+        bufferEnd = n;
+        return true;
+    }
+
+    private boolean scanLine(char c) {
+        if (c == '\n') {
+            if (length > 0 && record[length - 1] == '\r') {
+                length--;
+            }
+            if (isBlank()) {
+                length = 0;     // A blank line, or the end of a record too long to keep
+                return tooLong;
+            }
+            return true;
+        }
+        append(c);
+        return false;
+    }
+
+    private boolean scanBlankLines(char c) {
+        if (c == '\n') {
+            boolean blank = lineBlank;
+            lineBlank = true;
+            if (blank) {
+                length = tooLong ? 0 : lineStart;  // Leave out the blank line
+                return length > 0 || tooLong;
+            }
+            append(c);
+            lineStart = length;
+            return false;
+        }
+        if (!Character.isWhitespace(c)) {
+            lineBlank = false;
+        }
+        append(c);
+        return false;
+    }
+
+    private boolean scanXml(char c) {
+        if (state == TEXT && depth == 0 && length == 0 && !tooLong && Character.isWhitespace(c)) {
+            return false;   // Between documents
+        }
+        append(c);
+
+        boolean ends = false;
+        switch (state) {
+            case TEXT:
+                if (c == '<') {
+                    markupStart = length - 1;
+                    state = LT;
+                }
+                break;
+            case LT:
+                if (c == '/') {
+                    state = END_TAG;
+                } else if (c == '?') {
+                    state = PI;
+                } else if (c == '!') {
+                    state = BANG;
+                } else {
+                    state = START_TAG;
+                    quote = 0;
+                }
+                break;
+            case BANG:
+                if (c == '-') {
+                    state = BANG_DASH;
+                } else if (c == '[') {
+                    state = CDATA;
+                } else {
+                    state = DECLARATION;
+                    quote = 0;
+                    bracketDepth = 0;
+                }
+                break;
+            case BANG_DASH:
+                state = COMMENT;
+                c = 0;      // The "<!--" dashes don't count toward a "-->"
+                break;
+            case COMMENT:
+                if (c == '>' && prev1 == '-' && prev2 == '-') {
+                    state = TEXT;
+                    dropMarkupOutsideRoot();
+                }
+                break;
+            case CDATA:
+                if (c == '>' && prev1 == ']' && prev2 == ']') {
+                    state = TEXT;
+                }
+                break;
+            case PI:
+                if (c == '>' && prev1 == '?') {
+                    state = TEXT;
+                    dropMarkupOutsideRoot();
+                }
+                break;
+            case DECLARATION:
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '"' || c == '\'') {
+                    quote = c;
+                } else if (c == '[') {
+                    bracketDepth++;
+                } else if (c == ']') {
+                    bracketDepth--;
+                } else if (c == '>' && bracketDepth <= 0) {
+                    state = TEXT;
+                    dropMarkupOutsideRoot();
+                }
+                break;
+            case START_TAG:
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '"' || c == '\'') {
+                    quote = c;
+                } else if (c == '>') {
+                    state = TEXT;
+                    if (prev1 != '/') {
+                        depth++;
+                    } else {
+                        ends = depth == 0;  // An empty root element
+                    }
+                }
+                break;
+            default:    // END_TAG
+                if (c == '>') {
+                    state = TEXT;
+                    depth = Math.max(depth - 1, 0);
+                    ends = depth == 0;
+                }
+                break;
+        }
+        prev2 = prev1;
+        prev1 = c;
+        return ends;
+    }
+
+    // dropMarkupOutsideRoot() -- leaves a declaration, comment or PI out of the record when it
+    // comes before the root element. (The parser doesn't take them there.)
+    private void dropMarkupOutsideRoot() {
+        if (depth == 0 && !tooLong) {
+            length = markupStart;
+        }
+    }
+
+    private void append(char c) {
+        if (tooLong) {
+            return;
+        }
+        if (length == 0) {
+            recordLine = line;
+        }
+        if (length == record.length) {
+            if (length == maxRecordChars) {
+                tooLong = true;     // Skip the rest of the record
+                length = 0;
+                return;
+            }
+            char[] grown = new char[(int) Math.min((long) length * 2, maxRecordChars)];
+            System.arraycopy(record, 0, grown, 0, length);
+            record = grown;
+        }
+        record[length++] = c;
+    }
+
+    private CharSequence complete() throws RecordTooLongException {
+        if (tooLong) {
+            tooLong = false;
+            length = 0;
+            throw new RecordTooLongException("The record on line " + (recordLine + 1) + " is longer than "
+                    + maxRecordChars + " chars");
+        }
+        return CharBuffer.wrap(record, 0, length);
+    }
+
+    private boolean isBlank() {
+        for (int i = 0; i < length; i++) {
+            if (!Character.isWhitespace(record[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
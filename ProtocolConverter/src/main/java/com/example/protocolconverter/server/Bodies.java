@@ -0,0 +1,52 @@
+package com.example.protocolconverter.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/** Reads the bodies of requests. */
+final class Bodies {
+
+    private Bodies() {
+    }
+
+    /**
+     * The UTF-8 text of in up to its end, decoded into a buffer that a parser can read in place,
+     * or null if it is over maxBytes. expected is the length in bytes if it is known, or -1.
+     */
+    static CharBuffer read(InputStream in, long expected, long maxBytes) throws IOException {
+        if (expected > maxBytes) {
+            return null;
+        }
+        byte[] bytes = new byte[(int) ((expected >= 0) ? expected : Math.min(8192, maxBytes))];
+        int size = 0;
+        while (true) {
+            if (size == bytes.length) {
+                if (expected >= 0) {
+                    break;  // All of the expected length
+                }
+                if (size >= maxBytes) {
+                    if (in.read() >= 0) {
+                        return null;
+                    }
+                    break;
+                }
+                bytes = Arrays.copyOf(bytes, (int) Math.min((long) size * 2, maxBytes));
+            }
+            int n = in.read(bytes, size, bytes.length - size);
+            if (n < 0) {
+                break;
+            }
+            size += n;
+        }
+
+        CharBuffer text = StandardCharsets.UTF_8.decode(ByteBuffer.wrap(bytes, 0, size));
+        if (text.length() > 0 && text.charAt(0) == '\uFEFF') {
+            text.position(1);   // byte order mark
+        }
+        return text;
+    }
+}
@@ -0,0 +1,353 @@
+package com.example.protocolconverter.server;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.example.protocolconverter.model.FormatCodec;
+import com.example.protocolconverter.model.ProtocolConverter;
+import com.risenperspectives.pgparsers.PGPException;
+import com.risenperspectives.pgparsers.PGPNode;
+
+/**
+ * Converts for clients on a Unix domain socket, so that a script converting many small files
+ * pays for starting and warming up a JVM once, rather than on every call.
+ * <p>
+ * Each connection carries one request:
+ * <pre>
+ * client: FROM TO\n BODY...    and then shuts down its output; FROM may be "-" to detect it
+ * daemon: OK\n OUTPUT...       or  ERROR message\n    and then closes the connection
+ * </pre>
+ * The body is read as it arrives, and the output is written as it is rendered. Being text, the
+ * protocol can be spoken by nc -U or socat as well as by the client command.
+ * <p>
+ * Requests run on a fixed pool of threads, whose parsers and serializers are kept between
+ * requests. When the converter has a ConversionCache, outputs are kept there for requests with
+ * the same input. The socket file is made readable and writable by its owner only, and the
+ * default socket is in a directory that only its owner can use (see defaultSocket()).
+ */
+public class ConversionDaemon implements Closeable {
+
+    private static final int MAX_HEADER_BYTES = 256;
+
+    private final ProtocolConverter converter;
+    private final Path socket;
+    private final long maxBodyBytes;
+    private final ServerSocketChannel channel;
+    private final ThreadPoolExecutor workers;
+    private final Thread acceptor;
+
+    /**
+     * Binds to socket, replacing a socket file left behind by a daemon that is no longer running.
+     * start() starts serving.
+     * @param threads how many requests are converted at once
+     */
+    public ConversionDaemon(ProtocolConverter converter, Path socket, int threads, long maxBodyBytes) throws IOException {
+        if (threads < 1 || maxBodyBytes < 1) {
+            throw new IllegalArgumentException("threads and maxBodyBytes must be positive");
+        }
+        this.converter = converter;
+        this.socket = socket;
+        this.maxBodyBytes = Math.min(maxBodyBytes, Integer.MAX_VALUE - 8);
+
+        if (socket.equals(defaultSocket())) {
+            createPrivateDirectory(socket.getParent());
+        }
+        if (Files.exists(socket)) {
+            if (isRunning(socket)) {
+                throw new IOException("A daemon is already running on " + socket);
+            }
+            Files.delete(socket);   // Left behind
+        }
+        this.channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        this.channel.bind(UnixDomainSocketAddress.of(socket));
+        try {
+            Files.setPosixFilePermissions(socket, PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException e) {
+            // Not a POSIX file system
+        }
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(16 * threads), r -> {
+                    Thread thread = new Thread(r, "daemon-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.acceptor = new Thread(this::accept, "daemon-accept");
+        this.acceptor.setDaemon(true);
+    }
+
+    /**
+     * The socket of the user's daemon when none is given, in a directory that only the user can
+     * use: $XDG_RUNTIME_DIR when it is set, or else a directory of the user's in the temporary
+     * directory, which the daemon creates. A socket in a directory that others can write to
+     * could be created by another user first, who would then be sent the user's documents.
+     */
+    public static Path defaultSocket() {
+        String runtimeDir = System.getenv("XDG_RUNTIME_DIR");
+        if (runtimeDir != null && !runtimeDir.isEmpty()) {
+            return Paths.get(runtimeDir, "protocolconverter.sock");
+        }
+        // Without +, which would slow the client's start (see ClientCommand)
+        String dir = "protocolconverter-".concat(System.getProperty("user.name"));
+        return Paths.get(System.getProperty("java.io.tmpdir"), dir, "daemon.sock");
+    }
+
+    /**
+     * True if dir is a directory (not a link to one) owned by the user, that others can't use.
+     * Always true on a file system without POSIX permissions.
+     */
+    public static boolean isPrivateDirectory(Path dir) throws IOException {
+        PosixFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(dir, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (UnsupportedOperationException e) {
+            return true;    // Not a POSIX file system
+        }
+        if (!attributes.isDirectory() || !attributes.owner().getName().equals(System.getProperty("user.name"))) {
+            return false;
+        }
+        for (PosixFilePermission permission : attributes.permissions()) {
+            if (permission.name().startsWith("GROUP_") || permission.name().startsWith("OTHERS_")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // createPrivateDirectory() -- creates dir for the owner only, or checks that it is so.
+    private static void createPrivateDirectory(Path dir) throws IOException {
+        try {
+            Files.createDirectory(dir, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        } catch (FileAlreadyExistsException e) {
+            // Checked below
+        } catch (UnsupportedOperationException e) {
+            Files.createDirectories(dir);   // Not a POSIX file system
+        }
+        if (!isPrivateDirectory(dir)) {
+            throw new IOException(dir + " is not a directory that only " + System.getProperty("user.name") + " can use");
+        }
+    }
+
+    /** True if a daemon is taking connections on socket. */
+    public static boolean isRunning(Path socket) {
+        try {
+            SocketChannel.open(UnixDomainSocketAddress.of(socket)).close();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /** Warms up the parsers and serializers, then starts taking requests. */
+    public void start() {
+        warmUp();
+        workers.prestartAllCoreThreads();
+        acceptor.start();
+    }
+
+    /** Stops taking requests, and removes the socket file. */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        workers.shutdownNow();
+        Files.deleteIfExists(socket);
+    }
+
+    // warmUp() -- converts a sample between every pair of formats until the JIT has compiled the
+    // common paths, so that the first requests are as quick as the later ones.
+    private void warmUp() {
+        StringBuilder sample = new StringBuilder("{ items: [");
+        for (int i = 0; i < 50; i++) {
+            sample.append(i == 0 ? "" : ", ").append("{ id: ").append(i).append(", name: item").append(i)
+                    .append(", tags: [a, b], nested: { value: '").append(i).append(" & more' } }");
+        }
+        sample.append("] }");
+        PGPNode tree;
+        try {
+            tree = converter.parse(sample, converter.getRegistry().get("JSON"));
+        } catch (PGPException e) {
+            throw new IllegalStateException("The warm-up sample doesn't parse", e);
+        }
+        for (FormatCodec from : converter.getRegistry().codecs()) {
+            if (!from.canParse() || !from.canSerialize()) {
+                continue;
+            }
+            String text;
+            try {
+                text = converter.serialize(tree, from);
+            } catch (RuntimeException e) {
+                continue;   // A format that can't write the sample; it warms up on requests instead
+            }
+            for (FormatCodec to : converter.getRegistry().codecs()) {
+                try {
+                    for (int i = 0; i < 300 && to.canSerialize(); i++) {
+                        converter.serialize(converter.parse(text, from), to);   // Not convert(), which may be cached
+                    }
+                } catch (PGPException | RuntimeException e) {
+                    // A format that doesn't read back what it writes; it warms up on requests instead
+                }
+            }
+        }
+    }
+
+    private void accept() {
+        while (true) {
+            SocketChannel connection;
+            try {
+                connection = channel.accept();
+            } catch (ClosedChannelException e) {
+                return;     // Closed
+            } catch (IOException e) {
+                continue;
+            }
+            try {
+                workers.execute(() -> handle(connection));
+            } catch (RejectedExecutionException e) {
+                try (SocketChannel busy = connection) {
+                    busy.write(StandardCharsets.UTF_8.encode("ERROR Busy\n"));
+                } catch (IOException ignored) {
+                    // The client has gone
+                }
+            }
+        }
+    }
+
+    private void handle(SocketChannel connection) {
+        try (connection) {
+            InputStream in = Channels.newInputStream(connection);
+            OutputStream out = Channels.newOutputStream(connection);
+
+            String header = readHeader(in);
+            String[] formats = (header != null) ? header.trim().split(" +") : new String[0];
+            if (formats.length != 2) {
+                error(in, out, "Expected \"FROM TO\" on the first line");
+                return;
+            }
+            FormatCodec from;
+            FormatCodec to;
+            try {
+                from = formats[0].equals("-") ? null : converter.getRegistry().get(formats[0]);
+                to = converter.getRegistry().get(formats[1]);
+            } catch (IllegalArgumentException e) {
+                error(in, out, e.getMessage());
+                return;
+            }
+            if (!to.canSerialize()) {
+                error(in, out, to.getName() + " can't be written");
+                return;
+            }
+
+            CharBuffer text = Bodies.read(in, -1, maxBodyBytes);
+            if (text == null) {
+                error(in, out, "The input is over " + maxBodyBytes + " bytes");
+                return;
+            }
+            PGPNode topNode = null;
+            String output = null;     // when the converter caches its outputs
+            try {
+                if (from == null) {
+                    from = converter.detectFormat(text);
+                }
+                if (converter.getCache() != null) {
+                    output = converter.convert(text, from, to);
+                } else {
+                    topNode = converter.parse(text, from);
+                }
+            } catch (PGPException e) {
+                error(in, out, "Error on line " + e.getErrorLine() + " at offset " + e.getErrorCharOfLine() + ": " + e.getMessage());
+                return;
+            } catch (UnsupportedOperationException e) {
+                error(in, out, e.getMessage());
+                return;
+            } catch (RuntimeException e) {
+                error(in, out, "Internal error: " + e);
+                return;
+            }
+
+            // The writer holds the first 64K of the answer, so until it passes them on, a
+            // serializer that fails can still be answered with an error instead of OK.
+            boolean[] sent = new boolean[1];
+            OutputStream sending = new FilterOutputStream(out) {
+                @Override
+                public void write(int b) throws IOException {
+                    sent[0] = true;
+                    out.write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    sent[0] = true;
+                    out.write(b, off, len);
+                }
+            };
+            Writer writer = new BufferedWriter(new OutputStreamWriter(sending, StandardCharsets.UTF_8), 65536);
+            writer.write("OK\n");
+            try {
+                if (output != null) {
+                    writer.write(output);
+                } else {
+                    converter.serialize(topNode, to, writer);
+                }
+            } catch (RuntimeException e) {
+                if (!sent[0]) {
+                    error(in, out, "Internal error: " + e);
+                }
+                return;     // Else closed with the output cut short
+            }
+            writer.flush();
+        } catch (IOException e) {
+            // The client has gone
+        }
+    }
+
+    // readHeader() -- the first line, or null if there isn't one of a sensible length.
+    private static String readHeader(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (int b = in.read(); b != '\n'; b = in.read()) {
+            if (b < 0 || line.size() == MAX_HEADER_BYTES) {
+                return null;
+            }
+            line.write(b);
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    // error() -- answers with message. The rest of the input is read before the connection is
+    // closed: closing with input unread would reset it, and the client could lose the answer.
+    private static void error(InputStream in, OutputStream out, String message) throws IOException {
+        out.write(("ERROR " + message.replace('\n', ' ') + "\n").getBytes(StandardCharsets.UTF_8));
+        byte[] discard = new byte[65536];
+        while (in.read(discard) >= 0) {
+            // Discarded
+        }
+    }
+}
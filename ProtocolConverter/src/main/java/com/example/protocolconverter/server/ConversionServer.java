@@ -0,0 +1,318 @@
+package com.example.protocolconverter.server;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.example.protocolconverter.model.FormatCodec;
+import com.example.protocolconverter.model.ProtocolConverter;
+import com.risenperspectives.pgparsers.PGPException;
+import com.risenperspectives.pgparsers.PGPNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Converts over HTTP on the loopback address, with the JDK's built-in server.
+ * <pre>
+ * POST /convert?from=JSON&amp;to=XML     (from may be left out to detect the format)
+ * </pre>
+ * The response is 200 with the output, 400 for input that can't be parsed or unknown formats,
+ * 413 for a body over the limit, and 503 when the server is full. Connections are kept alive
+ * between requests.
+ * <p>
+ * Each request runs on its own virtual thread where the JDK has them (21 and later), and on a
+ * pool of platform threads otherwise. A virtual thread reads the body and writes the answer, but
+ * hands the parse and serialize to a pool of maxConcurrent platform threads, whose parsers,
+ * serializers and output buffers are kept from one request to the next (a new virtual thread
+ * would make them afresh for every request). Either way, at most maxConcurrent requests are
+ * converted at once; a request that can't be admitted within a moment is turned away with 503,
+ * rather than queued without bound. (The platform pool's queue is bounded as well: when it is
+ * full, new connections are closed.) The body is decoded into a char buffer that the parser reads in place,
+ * and the output is streamed out of the serializer as it is rendered, unless the converter has a
+ * ConversionCache, when it is rendered in full and kept for the next request with the same body.
+ */
+public class ConversionServer implements Closeable {
+
+    private static final long ADMISSION_WAIT_MILLIS = 100;
+
+    static {
+        // Without TCP_NODELAY the last small writes of a chunked response wait for the client's
+        // delayed ACK, which added about 40 ms to every request. Read when the server first loads.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final ProtocolConverter converter;
+    private final long maxBodyBytes;
+    private final Semaphore admission;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ExecutorService converters;   // null when the request threads are pooled themselves
+    private final boolean virtualThreads;
+
+    /**
+     * Binds to port on the loopback address (0 picks a free port); start() starts serving.
+     * @param maxConcurrent how many requests are converted at once
+     * @param maxBodyBytes  the largest request body taken
+     */
+    public ConversionServer(ProtocolConverter converter, int port, int maxConcurrent, long maxBodyBytes) throws IOException {
+        if (maxConcurrent < 1 || maxBodyBytes < 1) {
+            throw new IllegalArgumentException("maxConcurrent and maxBodyBytes must be positive");
+        }
+        this.converter = converter;
+        this.maxBodyBytes = Math.min(maxBodyBytes, Integer.MAX_VALUE - 8);
+        this.admission = new Semaphore(maxConcurrent);
+
+        ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+        this.virtualThreads = virtual != null;
+        if (virtual != null) {
+            this.executor = virtual;
+            AtomicInteger threadNumber = new AtomicInteger();
+            this.converters = Executors.newFixedThreadPool(maxConcurrent, r -> {
+                Thread thread = new Thread(r, "convert-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            this.converters = null;
+            // Twice the admitted requests, so that requests over the limit get their 503 promptly.
+            // When the queue is full too, the pool rejects the request and the server closes its connection.
+            AtomicInteger threadNumber = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(2 * maxConcurrent, 2 * maxConcurrent, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(4 * maxConcurrent), r -> {
+                        Thread thread = new Thread(r, "http-" + threadNumber.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.server.createContext("/convert", this::handle);
+        this.server.setExecutor(executor);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /** The port served, which is the one picked when 0 was asked for. */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /** True if each request runs on its own virtual thread. */
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /** Stops taking requests, and waits up to a second for the ones being converted. */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdownNow();
+        if (converters != null) {
+            converters.shutdownNow();
+        }
+    }
+
+    // newVirtualThreadPerTaskExecutor() -- null before JDK 21. Found by reflection, so this
+    // still compiles and runs on older JDKs.
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;    // Not there, or a preview feature that isn't enabled
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                respond(exchange, 405, "Use POST");
+                return;
+            }
+            boolean admitted;
+            try {
+                admitted = admission.tryAcquire(ADMISSION_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (!admitted) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                respond(exchange, 503, "Busy");
+                return;
+            }
+            try {
+                convert(exchange);
+            } finally {
+                admission.release();
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void convert(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        FormatCodec from = null;
+        FormatCodec to;
+        try {
+            if (query.get("from") != null) {
+                from = converter.getRegistry().get(query.get("from"));
+            }
+            to = converter.getRegistry().get(query.getOrDefault("to", ""));
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, e.getMessage());
+            return;
+        }
+
+        CharBuffer text = readBody(exchange);
+        if (text == null) {
+            respond(exchange, 413, "The body is over " + maxBodyBytes + " bytes");
+            return;
+        }
+        if (!to.canSerialize()) {
+            respond(exchange, 400, to.getName() + " can't be written");
+            return;
+        }
+
+        PGPNode topNode = null;
+        String output = null;     // when the converter caches its outputs
+        try {
+            FormatCodec format = (from != null) ? from : converter.detectFormat(text);
+            if (converter.getCache() != null) {
+                output = converted(() -> converter.convert(text, format, to));
+            } else {
+                topNode = converted(() -> converter.parse(text, format));
+            }
+        } catch (PGPException e) {
+            respond(exchange, 400, "Error on line " + e.getErrorLine() + " at offset " + e.getErrorCharOfLine()
+                    + ": " + e.getMessage());
+            return;
+        } catch (UnsupportedOperationException e) {
+            respond(exchange, 400, e.getMessage());
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", contentType(to));
+        exchange.sendResponseHeaders(200, 0);   // Chunked, as the output is written while it is rendered
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8))) {
+            if (output != null) {
+                writer.write(output);
+            } else {
+                PGPNode parsed = topNode;
+                converted(() -> {
+                    converter.serialize(parsed, to, writer);
+                    return null;
+                });
+            }
+        } catch (PGPException e) {
+            throw new IOException(e);   // Not thrown by serializing
+        }
+    }
+
+    private interface Conversion<T> {
+        T run() throws PGPException, IOException;
+    }
+
+    // converted() -- runs conversion on a converter thread, if there are any, and waits for it.
+    // The admission semaphore keeps the requests to one conversion per converter thread.
+    private <T> T converted(Conversion<T> conversion) throws PGPException, IOException {
+        if (converters == null) {
+            return conversion.run();
+        }
+        Future<T> future = converters.submit(conversion::run);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while converting");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof PGPException) {
+                throw (PGPException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    // readBody() -- the UTF-8 body decoded, or null if it is over the limit.
+    private CharBuffer readBody(HttpExchange exchange) throws IOException {
+        String length = exchange.getRequestHeaders().getFirst("Content-Length");
+        long expected = -1;
+        try {
+            expected = (length != null) ? Long.parseLong(length) : -1;
+        } catch (NumberFormatException e) {
+            // Read to the end instead
+        }
+        try (InputStream in = exchange.getRequestBody()) {
+            return Bodies.read(in, expected, maxBodyBytes);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    private static String contentType(FormatCodec to) {
+        switch (to.getName().toUpperCase(Locale.ROOT)) {
+            case "JSON":
+                return "application/json; charset=utf-8";
+            case "XML":
+                return "application/xml; charset=utf-8";
+            default:
+                return "text/plain; charset=utf-8";
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+        Map<String, String> parameters = new HashMap<>();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                int equals = parameter.indexOf('=');
+                if (equals > 0) {
+                    parameters.put(URLDecoder.decode(parameter.substring(0, equals), "UTF-8"),
+                            URLDecoder.decode(parameter.substring(equals + 1), "UTF-8"));
+                }
+            }
+        }
+        return parameters;
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.protocolconverter.view;
+
+import javax.swing.AbstractListModel;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The lines of a UTF-8 text file as a ListModel, for files too large for a JTextArea.
+ * Only the offset of each line is kept in memory. A line is read from the file when the
+ * JList asks for it, which it does for the rows on screen, and the last few hundred
+ * lines read are cached.
+ */
+class LineFileModel extends AbstractListModel<String> implements Closeable {
+
+    private static final long serialVersionUID = 1L;
+    private static final int CACHED_LINES = 512;
+    private static final int MAX_LINE_BYTES = 16 * 1024;    // longer lines are cut short
+
+    private final Path file;
+    private final FileChannel channel;
+    private final long size;
+    private long[] starts = new long[4096];
+    private int lines;
+    private final Map<Integer, String> cache = new LinkedHashMap<Integer, String>(CACHED_LINES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+            return size() > CACHED_LINES;
+        }
+    };
+
+    /** Opens the file and finds its lines. Slow for large files, so not on the EDT. */
+    LineFileModel(Path file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            this.size = channel.size();
+            indexLines();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void indexLines() throws IOException {
+        if (size == 0) {
+            return;
+        }
+        addStart(0);
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        byte[] bytes = buffer.array();
+        long position = 0;
+        while (position < size) {
+            buffer.clear();
+            int n = channel.read(buffer, position);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (bytes[i] == '\n' && position + i + 1 < size) {
+                    addStart(position + i + 1);
+                }
+            }
+            position += n;
+        }
+    }
+
+    private void addStart(long start) {
+        if (lines == starts.length) {
+            starts = Arrays.copyOf(starts, lines * 2);
+        }
+        starts[lines++] = start;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    long getFileSize() {
+        return size;
+    }
+
+    @Override
+    public int getSize() {
+        return lines;
+    }
+
+    @Override
+    public String getElementAt(int index) {
+        String line = cache.get(index);
+        if (line == null) {
+            line = readLine(index);
+            cache.put(index, line);
+        }
+        return line;
+    }
+
+    private String readLine(int index) {
+        long start = starts[index];
+        long end = (index + 1 < lines) ? starts[index + 1] : size;
+        int length = (int) Math.min(end - start, MAX_LINE_BYTES);
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        try {
+            while (buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) > 0) {
+                // keep reading
+            }
+        } catch (IOException e) {
+            return "(unreadable: " + e.getMessage() + ")";
+        }
+        int n = buffer.position();
+        while (n > 0 && (buffer.get(n - 1) == '\n' || buffer.get(n - 1) == '\r')) {
+            n--;
+        }
+        String text = new String(buffer.array(), 0, n, StandardCharsets.UTF_8).replace("\t", "    ");
+        return (end - start > MAX_LINE_BYTES) ? text + " ..." : text;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
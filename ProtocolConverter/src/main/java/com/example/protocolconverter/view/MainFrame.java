@@ -3,6 +3,9 @@ package com.example.protocolconverter.view;
 import javax.swing.*;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
@@ -10,26 +13,68 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import com.example.protocolconverter.model.FormatCodec;
+import com.example.protocolconverter.model.ParsedDocument;
 import com.example.protocolconverter.model.ProtocolConverter;
+import com.risenperspectives.pgparsers.PGPException;
+import com.risenperspectives.pgparsers.PGPNode;
+import com.risenperspectives.pgparsers.PGPProgressListener;
 
 public class MainFrame extends JFrame {
 
     private JTextArea upperTextArea;
     private JTextArea lowerTextArea;
     private ProtocolConverter protocolConverter;
+    private JRadioButton autoRadioButton;
+    private String inputFormat; // null for Auto
     private JRadioButton xmlOutputRadioButton;
     private JRadioButton jsonOutputRadioButton;
+    private JRadioButton yamlOutputRadioButton;
     private JRadioButton flatOutputRadioButton;
     private JRadioButton normalRadioButton;
     private JRadioButton condensedRadioButton;
     private JRadioButton easyReadRadioButton;
 
+    // Conversions run on a background thread, after typing pauses for DEBOUNCE_MILLIS.
+    private static final int DEBOUNCE_MILLIS = 250;
+    private final ExecutorService conversionExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "conversion");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Timer debounceTimer = new Timer(DEBOUNCE_MILLIS, e -> convertText());
+    private final Timer elapsedTimer = new Timer(100, e -> showElapsed());
+    private ConversionWorker conversionWorker; // the conversion whose result will be shown
+    private final ParsedDocument parsedInput = new ParsedDocument(); // the last input parsed, used on the conversion thread
+    private JProgressBar progressBar;
+    private JLabel statusLabel;
+    private DocumentListener inputListener;
+
+    // Large documents are shown a screenful at a time from a file, instead of in the text areas.
+    private static final long LARGE_FILE_BYTES = 4L << 20;     // larger files are opened as large documents
+    private static final int LARGE_TEXT_CHARS = 2 << 20;       // larger inputs have their output written to a file
+    private JScrollPane upperScrollPane;
+    private JScrollPane lowerScrollPane;
+    private Path inputFile;                 // the large input file, or null when the input is in upperTextArea
+    private LineFileModel inputFileModel;   // the lines of inputFile, once they are indexed
+    private LineFileModel outputFileModel;  // the lines of the output file, or null when the output is in lowerTextArea
+
     public MainFrame() {
         protocolConverter = new ProtocolConverter();
         setTitle("Protocol Converter");
         setSize(800, 600);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLocationRelativeTo(null);
+        debounceTimer.setRepeats(false);
 
         // Menu Bar
         JMenuBar menuBar = new JMenuBar();
@@ -63,12 +108,12 @@ public class MainFrame extends JFrame {
         // Upper Panel
         JPanel upperPanel = new JPanel(new BorderLayout(5, 5));
         upperTextArea = new JTextArea();
-        JScrollPane upperScrollPane = new JScrollPane(upperTextArea);
+        upperScrollPane = new JScrollPane(upperTextArea);
         upperPanel.add(upperScrollPane, BorderLayout.CENTER);
 
         JPanel upperOptionsPanel = new JPanel(new GridLayout(4, 1, 5, 5));
         upperOptionsPanel.setBorder(BorderFactory.createTitledBorder("Input"));
-        JRadioButton autoRadioButton = new JRadioButton("Auto");
+        autoRadioButton = new JRadioButton("Auto", true);
         JRadioButton xmlInputRadioButton = new JRadioButton("XML");
         JRadioButton jsonInputRadioButton = new JRadioButton("JSON");
         JRadioButton flatInputRadioButton = new JRadioButton("FLAT");
@@ -81,27 +126,34 @@ public class MainFrame extends JFrame {
         upperOptionsPanel.add(xmlInputRadioButton);
         upperOptionsPanel.add(jsonInputRadioButton);
         upperOptionsPanel.add(flatInputRadioButton);
+        autoRadioButton.addActionListener(e -> setInputFormat(null));
+        xmlInputRadioButton.addActionListener(e -> setInputFormat("XML"));
+        jsonInputRadioButton.addActionListener(e -> setInputFormat("JSON"));
+        flatInputRadioButton.addActionListener(e -> setInputFormat("FLAT"));
         upperPanel.add(upperOptionsPanel, BorderLayout.EAST);
 
         // Lower Panel
         JPanel lowerPanel = new JPanel(new BorderLayout(5, 5));
         lowerTextArea = new JTextArea();
-        JScrollPane lowerScrollPane = new JScrollPane(lowerTextArea);
+        lowerScrollPane = new JScrollPane(lowerTextArea);
         lowerPanel.add(lowerScrollPane, BorderLayout.CENTER);
 
         JPanel lowerOptionsPanel = new JPanel(new GridLayout(2, 1, 5, 5));
 
-        JPanel outputTypePanel = new JPanel(new GridLayout(3, 1, 5, 5));
+        JPanel outputTypePanel = new JPanel(new GridLayout(4, 1, 5, 5));
         outputTypePanel.setBorder(BorderFactory.createTitledBorder("Output"));
         xmlOutputRadioButton = new JRadioButton("XML");
         jsonOutputRadioButton = new JRadioButton("JSON");
+        yamlOutputRadioButton = new JRadioButton("YAML");
         flatOutputRadioButton = new JRadioButton("FLAT");
         ButtonGroup outputGroup = new ButtonGroup();
         outputGroup.add(xmlOutputRadioButton);
         outputGroup.add(jsonOutputRadioButton);
+        outputGroup.add(yamlOutputRadioButton);
         outputGroup.add(flatOutputRadioButton);
         outputTypePanel.add(xmlOutputRadioButton);
         outputTypePanel.add(jsonOutputRadioButton);
+        outputTypePanel.add(yamlOutputRadioButton);
         outputTypePanel.add(flatOutputRadioButton);
 
         JPanel densityPanel = new JPanel(new GridLayout(3, 1, 5, 5));
@@ -120,6 +172,7 @@ public class MainFrame extends JFrame {
         ActionListener conversionListener = e -> convertText();
         xmlOutputRadioButton.addActionListener(conversionListener);
         jsonOutputRadioButton.addActionListener(conversionListener);
+        yamlOutputRadioButton.addActionListener(conversionListener);
         flatOutputRadioButton.addActionListener(conversionListener);
         normalRadioButton.addActionListener(conversionListener);
         condensedRadioButton.addActionListener(conversionListener);
@@ -134,8 +187,18 @@ public class MainFrame extends JFrame {
 
         add(mainPanel);
 
+        // Status Bar
+        JPanel statusPanel = new JPanel(new BorderLayout(5, 5));
+        statusPanel.setBorder(BorderFactory.createEmptyBorder(0, 5, 5, 5));
+        statusLabel = new JLabel(" ");
+        progressBar = new JProgressBar(0, 100);
+        progressBar.setVisible(false);
+        statusPanel.add(statusLabel, BorderLayout.CENTER);
+        statusPanel.add(progressBar, BorderLayout.EAST);
+        add(statusPanel, BorderLayout.SOUTH);
+
         // Add DocumentListener to upperTextArea
-        upperTextArea.getDocument().addDocumentListener(new DocumentListener() {
+        inputListener = new DocumentListener() {
             @Override
             public void insertUpdate(DocumentEvent e) {
                 updateLowerTextArea();
@@ -150,36 +213,268 @@ public class MainFrame extends JFrame {
             public void changedUpdate(DocumentEvent e) {
                 // Plain text components do not fire these events
             }
-        });
+        };
+        upperTextArea.getDocument().addDocumentListener(inputListener);
     }
 
     private void updateLowerTextArea() {
+        // Newer input makes the running conversion pointless. Wait for typing to pause before starting again.
+        cancelConversion();
+        debounceTimer.restart();
+    }
+
+    private void setInputFormat(String format) {
+        inputFormat = format;
         convertText();
     }
 
     private void convertText() {
-        String input = upperTextArea.getText();
-        String output;
+        debounceTimer.stop();
+        cancelConversion();
 
+        String to = null;
         if (xmlOutputRadioButton.isSelected()) {
-            output = protocolConverter.convertToXML(input);
+            to = "XML";
         } else if (jsonOutputRadioButton.isSelected()) {
-            output = protocolConverter.convertToJson(input);
+            to = "JSON";
+        } else if (yamlOutputRadioButton.isSelected()) {
+            to = "YAML";
         } else if (flatOutputRadioButton.isSelected()) {
-            output = protocolConverter.convertToFlat(input);
+            to = "FLAT";
+        }
+        String density = condensedRadioButton.isSelected() ? "Condensed" : easyReadRadioButton.isSelected() ? "Easy Read" : "Normal";
+
+        CharSequence input = (inputFile == null) ? documentChars(upperTextArea.getDocument()) : null;
+        conversionWorker = new ConversionWorker(input, inputFile, inputFormat, to, density);
+        conversionWorker.addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName()) && e.getSource() == conversionWorker) {
+                progressBar.setValue((Integer) e.getNewValue());
+            }
+        });
+        progressBar.setValue(0);
+        progressBar.setVisible(true);
+        elapsedTimer.restart();
+        conversionExecutor.execute(conversionWorker);
+    }
+
+    // documentChars() -- the text of a document, copied once into a char array, which the
+    // parsers read in place. getText() would copy it twice, into an array and then a String.
+    // A copy is still needed, as the conversion reads it while the user goes on typing.
+    private static CharBuffer documentChars(Document document) {
+        char[] chars = new char[document.getLength()];
+        Segment segment = new Segment();
+        segment.setPartialReturn(true);     // the part up to the gap of the document's buffer, without copying
+        try {
+            for (int at = 0; at < chars.length; at += segment.count) {
+                document.getText(at, chars.length - at, segment);
+                System.arraycopy(segment.array, segment.offset, chars, at, segment.count);
+            }
+        } catch (BadLocationException ex) {
+            throw new IllegalStateException(ex);    // The document can't change on the EDT
+        }
+        return CharBuffer.wrap(chars);
+    }
+
+    private void cancelConversion() {
+        if (conversionWorker != null) {
+            conversionWorker.cancel(false);   // The parser notices at its next progress report
+            conversionWorker = null;
+        }
+        elapsedTimer.stop();
+        progressBar.setVisible(false);
+    }
+
+    private void showElapsed() {
+        if (conversionWorker != null) {
+            statusLabel.setText(String.format("Converting... %.1f s", conversionWorker.elapsedMillis() / 1000.0));
+        }
+    }
+
+    // newLineList() -- a list showing the lines of a file in the font of a text area.
+    private JList<String> newLineList(LineFileModel model, JTextArea like) {
+        JList<String> list = new JList<>(model);
+        list.setFont(like.getFont());
+        // Fixed cell sizes keep the list from measuring every line.
+        FontMetrics metrics = list.getFontMetrics(list.getFont());
+        list.setFixedCellHeight(metrics.getHeight());
+        list.setFixedCellWidth(metrics.charWidth('m') * 200);
+        return list;
+    }
+
+    private void showInputFile(LineFileModel model) {
+        closeQuietly(inputFileModel);
+        inputFileModel = model;
+        upperScrollPane.setViewportView(newLineList(model, upperTextArea));
+    }
+
+    private void showInputText() {
+        closeQuietly(inputFileModel);
+        inputFileModel = null;
+        inputFile = null;
+        upperScrollPane.setViewportView(upperTextArea);
+    }
+
+    private void showOutput(ConversionResult result) {
+        discardOutputFile(outputFileModel);
+        outputFileModel = result.file;
+        if (result.file != null) {
+            lowerTextArea.setText("");
+            lowerScrollPane.setViewportView(newLineList(result.file, lowerTextArea));
         } else {
-            output = input; // Default to no conversion if nothing is selected
+            lowerTextArea.setText(result.text);
+            lowerScrollPane.setViewportView(lowerTextArea);
         }
+    }
 
-        // Placeholder for density logic
-        if (condensedRadioButton.isSelected()) {
-            output = output.replaceAll("\\s+", "");
-        } else if (easyReadRadioButton.isSelected()) {
-            // This is a placeholder, real "easy read" would involve more complex formatting
-            output = output.replaceAll("(.{80})", "$1\n");
+    private static void discardOutputFile(LineFileModel model) {
+        if (model != null) {
+            closeQuietly(model);
+            try {
+                Files.deleteIfExists(model.getFile());
+            } catch (IOException ex) {
+                // deleteOnExit() will have another go
+            }
         }
+    }
 
-        lowerTextArea.setText(output);
+    private static void closeQuietly(LineFileModel model) {
+        if (model != null) {
+            try {
+                model.close();
+            } catch (IOException ex) {
+                // Nothing more to do with it
+            }
+        }
+    }
+
+    // ConversionResult -- the output as text, or as a file for large documents.
+    private static class ConversionResult {
+        final String text;
+        final LineFileModel file;
+
+        ConversionResult(String text, LineFileModel file) {
+            this.text = text;
+            this.file = file;
+        }
+    }
+
+    // ConversionWorker -- converts one version of the input on the conversion executor and
+    // shows the result, unless newer input has replaced it by then.
+    // The output of a large input is written to a temporary file and shown from there.
+    private class ConversionWorker extends SwingWorker<ConversionResult, Void> {
+        private final CharSequence input;   // null when reading inputFile
+        private final Path inputFile;
+        private final String from;      // null to detect
+        private final String to;        // null for no conversion
+        private final String density;
+        private final long startNanos = System.nanoTime();
+        private String detectedFrom;
+
+        ConversionWorker(CharSequence input, Path inputFile, String from, String to, String density) {
+            this.input = input;
+            this.inputFile = inputFile;
+            this.from = from;
+            this.to = to;
+            this.density = density;
+        }
+
+        long elapsedMillis() {
+            return (System.nanoTime() - startNanos) / 1000000;
+        }
+
+        @Override
+        protected ConversionResult doInBackground() throws PGPException, IOException {
+            CharSequence text = (input != null) ? input : new String(Files.readAllBytes(inputFile), StandardCharsets.UTF_8);
+            FormatCodec fromCodec = (from != null) ? protocolConverter.getRegistry().get(from) : protocolConverter.detectFormat(text);
+            detectedFrom = fromCodec.getName();
+            PGPProgressListener progress = (done, total) -> {
+                if (isCancelled()) {
+                    return false;
+                }
+                setProgress((int) (100L * done / Math.max(1, total)));
+                return true;
+            };
+
+            if (inputFile != null || text.length() > LARGE_TEXT_CHARS) {
+                // Large document. The density options only apply to output shown as text.
+                parsedInput.clear();
+                Path outputFile = Files.createTempFile("protocol-converter-", ".txt");
+                outputFile.toFile().deleteOnExit();
+                try (Writer writer = Files.newBufferedWriter(outputFile, StandardCharsets.UTF_8)) {
+                    if (to == null) {
+                        writer.append(text); // Default to no conversion if nothing is selected
+                    } else {
+                        protocolConverter.convert(text, fromCodec, protocolConverter.getRegistry().get(to), progress, writer);
+                    }
+                } catch (PGPException | IOException ex) {
+                    Files.deleteIfExists(outputFile);
+                    throw ex;
+                }
+                LineFileModel model = new LineFileModel(outputFile);
+                if (isCancelled()) {
+                    discardOutputFile(model);   // done() won't see it
+                    return null;
+                }
+                return new ConversionResult(null, model);
+            }
+
+            if (to == null) {
+                return new ConversionResult(text.toString(), null); // Default to no conversion if nothing is selected
+            }
+            // After an edit, only the part of the input around it is parsed again.
+            PGPNode topNode = parsedInput.parse(text, fromCodec, progress);
+            String output = protocolConverter.serialize(topNode, protocolConverter.getRegistry().get(to));
+
+            // Placeholder for density logic
+            if ("Condensed".equals(density)) {
+                output = output.replaceAll("\\s+", "");
+            } else if ("Easy Read".equals(density)) {
+                // This is a placeholder, real "easy read" would involve more complex formatting
+                output = output.replaceAll("(.{80})", "$1\n");
+            }
+            return new ConversionResult(output, null);
+        }
+
+        @Override
+        protected void done() {
+            if (this != conversionWorker) {
+                // Cancelled, or replaced by a newer conversion. Drop any output file it made.
+                if (!isCancelled()) {
+                    try {
+                        discardOutputFile(get().file);
+                    } catch (InterruptedException | ExecutionException ex) {
+                        // It made none
+                    }
+                }
+                return;
+            }
+            conversionWorker = null;
+            elapsedTimer.stop();
+            progressBar.setVisible(false);
+            autoRadioButton.setText((from == null && detectedFrom != null) ? "Auto (" + detectedFrom + ")" : "Auto");
+
+            ConversionResult result;
+            try {
+                result = get();
+                String lines = (result.file != null) ? ", " + result.file.getSize() + " lines" : "";
+                statusLabel.setText((to == null) ? " " : detectedFrom + " to " + to + " in " + elapsedMillis() + " ms" + lines);
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                String message;
+                if (cause instanceof PGPException) {
+                    PGPException pe = (PGPException) cause;
+                    message = "Error on line " + pe.getErrorLine() + " at offset " + pe.getErrorCharOfLine() + ": " + pe.getMessage();
+                } else {
+                    message = String.valueOf(cause.getMessage());
+                }
+                result = new ConversionResult(message, null);
+                statusLabel.setText("Failed after " + elapsedMillis() + " ms");
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            showOutput(result);
+        }
     }
 
     private void openFile() {
@@ -187,19 +482,65 @@ public class MainFrame extends JFrame {
         int option = fileChooser.showOpenDialog(this);
         if (option == JFileChooser.APPROVE_OPTION) {
             File file = fileChooser.getSelectedFile();
+            if (file.length() > LARGE_FILE_BYTES) {
+                openLargeFile(file.toPath());
+                return;
+            }
             try (FileReader reader = new FileReader(file)) {
+                showInputText();
                 upperTextArea.read(reader, null);
+                upperTextArea.getDocument().addDocumentListener(inputListener); // read() replaced the document
+                convertText();
             } catch (IOException ex) {
                 JOptionPane.showMessageDialog(this, "Error reading file", "Error", JOptionPane.ERROR_MESSAGE);
             }
         }
     }
 
+    // openLargeFile() -- shows the file from disk, a screenful at a time, and converts it.
+    // Its lines are indexed on the conversion executor, ahead of the conversion.
+    private void openLargeFile(Path file) {
+        showInputText();
+        upperTextArea.setText("");
+        inputFile = file;
+        conversionExecutor.execute(new SwingWorker<LineFileModel, Void>() {
+            @Override
+            protected LineFileModel doInBackground() throws IOException {
+                return new LineFileModel(file);
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    LineFileModel model = get();
+                    if (inputFile == file) {
+                        showInputFile(model);
+                    } else {
+                        closeQuietly(model);    // Another file was opened since
+                    }
+                } catch (ExecutionException ex) {
+                    JOptionPane.showMessageDialog(MainFrame.this, "Error reading file", "Error", JOptionPane.ERROR_MESSAGE);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        convertText();
+    }
+
     private void saveFile() {
         JFileChooser fileChooser = new JFileChooser();
         int option = fileChooser.showSaveDialog(this);
         if (option == JFileChooser.APPROVE_OPTION) {
             File file = fileChooser.getSelectedFile();
+            if (outputFileModel != null) {
+                try {
+                    Files.copy(outputFileModel.getFile(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException ex) {
+                    JOptionPane.showMessageDialog(this, "Error saving file", "Error", JOptionPane.ERROR_MESSAGE);
+                }
+                return;
+            }
             try (FileWriter writer = new FileWriter(file)) {
                 lowerTextArea.write(writer);
             } catch (IOException ex) {
@@ -0,0 +1,212 @@
+package com.example.protocolconverter;
+
+import com.example.protocolconverter.model.CodecRegistry;
+import com.example.protocolconverter.model.FormatCodec;
+import com.risenperspectives.pgparsers.FlatPGParser;
+import com.risenperspectives.pgparsers.JsonLinesPGParser;
+import com.risenperspectives.pgparsers.JsonPGParser;
+import com.risenperspectives.pgparsers.PGPCorpusGenerator;
+import com.risenperspectives.pgparsers.PGPNode;
+import com.risenperspectives.pgparsers.PGPOptionFlags;
+import com.risenperspectives.pgparsers.PGPSerializerInterface;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Checks that parsing, serializing and the PGPNode lookups don't allocate more than they used to.
+ * The bytes each allocates per input char, output char or node are measured with ThreadMXBean
+ * on generated reference documents, and compared to the budgets in allocation-budgets.properties.
+ * A change that allocates more (a StringBuilder per string, a String.format per char) fails here
+ * rather than in production GC graphs. Raise a budget only with the change that needs it, and
+ * lower it when a change saves allocations.
+ * <p>
+ * Each path is warmed up first, since the JIT removes some allocations once it compiles the
+ * path, and the least of a few rounds is taken.
+ */
+public class AllocationBudgetTest {
+
+    private static final int DOCUMENT_BYTES = 64 * 1024;
+    private static final long WARMUP_NANOS = 300_000_000L;
+    private static final int ROUNDS = 5;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final CodecRegistry registry = CodecRegistry.withDefaults();
+    private final PGPCorpusGenerator generator = new PGPCorpusGenerator(7).setEscapeDensity(0.02)
+            .setAttributeCount(2).setAliasReuse(0.1);
+    private final Properties budgets = loadBudgets();
+    private final List<String> overBudget = new ArrayList<>();
+
+    // The threads JSONL parses its batches on, whose allocations count too
+    private final List<Thread> workers = new CopyOnWriteArrayList<>();
+
+    private interface Operation {
+        Object run() throws Exception;
+    }
+
+    @Test
+    public void testParse() throws Exception {
+        assumeTrue(THREADS.isThreadAllocatedMemorySupported());
+        ExecutorService executor = Executors.newFixedThreadPool(2, task -> {
+            Thread thread = new Thread(task, "jsonl");
+            thread.setDaemon(true);
+            workers.add(thread);
+            return thread;
+        });
+        try {
+            for (FormatCodec codec : registry.codecs()) {
+                if (!codec.canParse()) {
+                    continue;
+                }
+                if (codec.parser() instanceof JsonLinesPGParser) {
+                    ((JsonLinesPGParser) codec.parser()).setExecutor(executor);
+                }
+                String document = generator.generate(PGPCorpusGenerator.Format.valueOf(codec.getName()), DOCUMENT_BYTES);
+                double perByte = allocated(() -> codec.parser().parse(document)) / document.length();
+                check("parse." + codec.getName(), perByte);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(overBudget.isEmpty(), "Over the allocation budget: " + overBudget);
+    }
+
+    @Test
+    public void testSerialize() throws Exception {
+        assumeTrue(THREADS.isThreadAllocatedMemorySupported());
+        // The tree of the FLAT document, which has attributes, and its Latin-1 chars as they are
+        // (the XML parser leaves char references as they are written)
+        PGPNode tree = new FlatPGParser().parse(generator.generate(PGPCorpusGenerator.Format.FLAT, DOCUMENT_BYTES));
+        for (FormatCodec codec : registry.codecs()) {
+            if (!codec.canSerialize()) {
+                continue;
+            }
+            PGPSerializerInterface serializer = codec.serializer();
+            PGPOptionFlags flags = new PGPOptionFlags();
+            StringBuilder sb = new StringBuilder(4 * DOCUMENT_BYTES);
+            double perChar = allocated(() -> {
+                sb.setLength(0);
+                return serializer.serialize(sb, tree, flags);
+            }) / serializer.serialize(new StringBuilder(), tree, flags).length();
+            check("serialize." + codec.getName(), perChar);
+        }
+        assertTrue(overBudget.isEmpty(), "Over the allocation budget: " + overBudget);
+    }
+
+    @Test
+    public void testLookups() throws Exception {
+        assumeTrue(THREADS.isThreadAllocatedMemorySupported());
+        PGPNode top = new JsonPGParser().parse(generator.generate(PGPCorpusGenerator.Format.JSON, DOCUMENT_BYTES));
+        List<PGPNode> nodes = new ArrayList<>();
+        collect(top, nodes);
+        String[] names = new String[nodes.size()];
+        int[] indexes = new int[nodes.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = nodes.get(i).flatName();
+            indexes[i] = nodes.get(i).indexOf();
+        }
+
+        check("lookup.findNode", allocated(() -> {
+            for (String name : names) {
+                top.findNode(name);
+            }
+            return top;
+        }) / names.length);
+        check("lookup.getNode", allocated(() -> {
+            for (String name : names) {
+                top.getNode(name);
+            }
+            return top;
+        }) / names.length);
+        check("lookup.findChild", allocated(() -> {
+            for (PGPNode node : nodes) {
+                node.getParent().findChild(node.getName());
+            }
+            return top;
+        }) / names.length);
+        check("lookup.getChildAt", allocated(() -> {
+            for (int i = 0; i < indexes.length; i++) {
+                nodes.get(i).getParent().getChildAt(indexes[i]);
+            }
+            return top;
+        }) / names.length);
+        check("lookup.flatName", allocated(() -> {
+            for (PGPNode node : nodes) {
+                node.flatName();
+            }
+            return top;
+        }) / names.length);
+        assertTrue(overBudget.isEmpty(), "Over the allocation budget: " + overBudget);
+    }
+
+    // collect() -- every node under node, in order.
+    private static void collect(PGPNode node, List<PGPNode> nodes) {
+        PGPNode child = node.getChild();
+        if (child == null) {
+            return;
+        }
+        do {
+            nodes.add(child);
+            collect(child, nodes);
+            child = child.getNext();
+        } while (child != node.getChild());
+    }
+
+    // allocated() -- the least bytes a run of operation allocated, once warmed up.
+    private double allocated(Operation operation) throws Exception {
+        long warmEnd = System.nanoTime() + WARMUP_NANOS;
+        for (int i = 0; i < 20 || System.nanoTime() < warmEnd; i++) {
+            operation.run();
+        }
+        long least = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long before = allocatedBytes();
+            operation.run();
+            least = Math.min(least, allocatedBytes() - before);
+        }
+        return least;
+    }
+
+    private long allocatedBytes() {
+        long bytes = THREADS.getCurrentThreadAllocatedBytes();
+        for (Thread worker : workers) {
+            bytes += Math.max(0, THREADS.getThreadAllocatedBytes(worker.getId()));
+        }
+        return bytes;
+    }
+
+    private void check(String name, double measured) {
+        String budget = budgets.getProperty(name);
+        System.out.printf("%-20s %10.2f bytes, budget %s%n", name, measured, budget);
+        if (budget == null) {
+            overBudget.add(name + " has no budget (measured " + String.format("%.2f", measured) + ")");
+        } else if (measured > Double.parseDouble(budget)) {
+            overBudget.add(String.format("%s %.2f > %s", name, measured, budget));
+        }
+    }
+
+    private static Properties loadBudgets() {
+        Properties budgets = new Properties();
+        try (InputStream in = AllocationBudgetTest.class.getResourceAsStream("/allocation-budgets.properties")) {
+            if (in != null) {
+                budgets.load(in);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return budgets;
+    }
+}
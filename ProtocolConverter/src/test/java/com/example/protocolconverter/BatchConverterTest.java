@@ -0,0 +1,160 @@
+package com.example.protocolconverter;
+
+import com.example.protocolconverter.cli.BatchCommand;
+import com.example.protocolconverter.model.BatchConverter;
+import com.example.protocolconverter.model.FormatCodec;
+import com.example.protocolconverter.model.ProtocolConverter;
+import com.risenperspectives.pgparsers.PGPException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BatchConverterTest {
+
+    private final ProtocolConverter converter = new ProtocolConverter();
+
+    @Test
+    public void testConvertsAndRecordsFailures() throws IOException, InterruptedException, PGPException {
+        Path dir = Files.createTempDirectory("batch");
+        try {
+            FormatCodec json = converter.getRegistry().get("JSON");
+            FormatCodec flat = converter.getRegistry().get("FLAT");
+            List<BatchConverter.Job> jobs = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                Path input = write(dir.resolve("in/" + i + ".json"), "{ id: " + i + ", tags: [a, b] }");
+                jobs.add(new BatchConverter.Job(input, dir.resolve("out/" + i + ".flat")));
+            }
+            Path broken = write(dir.resolve("in/broken.json"), "{ id: ");
+            jobs.add(new BatchConverter.Job(broken, dir.resolve("out/broken.flat")));
+            jobs.add(new BatchConverter.Job(dir.resolve("in/missing.json"), dir.resolve("out/missing.flat")));
+
+            // A budget smaller than one file: each file waits for the one before it
+            BatchConverter.Summary summary = new BatchConverter(converter, json, flat, 3, 10).run(jobs.iterator());
+            assertEquals(40, summary.getConverted());
+            assertEquals(2, summary.getFailures().size());
+            for (BatchConverter.Failure failure : summary.getFailures()) {     // In no particular order
+                if (failure.getInput().equals(broken)) {
+                    assertTrue(failure.getMessage().startsWith("Error on line 0"));
+                } else {
+                    assertEquals(dir.resolve("in/missing.json"), failure.getInput());
+                }
+            }
+            assertFalse(Files.exists(dir.resolve("out/broken.flat")));
+            assertEquals(converter.convert("{ id: 7, tags: [a, b] }", json, flat),
+                    new String(Files.readAllBytes(dir.resolve("out/7.flat")), StandardCharsets.UTF_8));
+            assertTrue(summary.getBytesIn() > 0 && summary.getBytesOut() > 0);
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testCommandLine() throws IOException {
+        Path dir = Files.createTempDirectory("batch");
+        try {
+            write(dir.resolve("in/a.json"), "{ a: 1 }");
+            write(dir.resolve("in/sub/b.xml"), "<b>2</b>");
+            write(dir.resolve("in/sub/c.txt"), "not converted");
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+            String[] args = { "--to", "flat", "--out", dir.resolve("out").toString(), "--glob", "*.{json,xml}",
+                    "--threads", "2", dir.resolve("in").toString() };
+            assertEquals(0, BatchCommand.run(args, new PrintStream(out), new PrintStream(err)));
+            assertTrue(out.toString().startsWith("Converted 2 of 2 files"));
+            assertEquals("a=1\n", new String(Files.readAllBytes(dir.resolve("out/a.flat")), StandardCharsets.UTF_8));
+            assertEquals("b=2\n", new String(Files.readAllBytes(dir.resolve("out/sub/b.flat")), StandardCharsets.UTF_8));
+            assertFalse(Files.exists(dir.resolve("out/sub/c.flat")));
+
+            write(dir.resolve("in/sub/c.txt"), "{ c: ");
+            args = new String[] { "--from", "JSON", "--to", "XML", "--out", dir.resolve("out").toString(),
+                    dir.resolve("in/sub/c.txt").toString() };
+            assertEquals(1, BatchCommand.run(args, new PrintStream(out), new PrintStream(err)));
+            assertTrue(err.toString().contains("c.txt: Error on line 0"));
+
+            assertEquals(2, BatchCommand.run(new String[] { "--to", "YAML", "x" }, new PrintStream(out), new PrintStream(err)));
+            assertEquals(2, BatchCommand.run(new String[] { "--to", "JSONL", "--out", "o", dir.toString() },
+                    new PrintStream(out), new PrintStream(err)));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testSameOutputFailsTheSecondFile() throws IOException {
+        Path dir = Files.createTempDirectory("batch");
+        try {
+            write(dir.resolve("in/a.json"), "{ a: 1 }");
+            write(dir.resolve("in/a.flat"), "a=2\n");
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            String[] args = { "--to", "XML", "--out", dir.resolve("out").toString(), dir.resolve("in").toString() };
+            assertEquals(1, BatchCommand.run(args, new PrintStream(out), new PrintStream(err)));
+            assertTrue(out.toString().startsWith("Converted 1 of 2 files"));
+            assertTrue(err.toString().contains("another file was converted to"));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testListingFailureDoesNotStopTheRun() throws IOException, InterruptedException {
+        Path dir = Files.createTempDirectory("batch");
+        try {
+            Path input = write(dir.resolve("a.json"), "{ a: 1 }");
+            Iterator<BatchConverter.Job> jobs = new Iterator<BatchConverter.Job>() {
+                private int calls;
+
+                @Override
+                public boolean hasNext() {
+                    if (++calls == 1) {
+                        throw new UncheckedIOException(new IOException("unreadable"));
+                    }
+                    return calls == 2;
+                }
+
+                @Override
+                public BatchConverter.Job next() {
+                    return new BatchConverter.Job(input, dir.resolve("a.flat"));
+                }
+            };
+            BatchConverter.Summary summary = new BatchConverter(converter, null, converter.getRegistry().get("FLAT"), 1, 1000)
+                    .run(jobs);
+            assertEquals(1, summary.getConverted());
+            assertEquals(1, summary.getFailures().size());
+            assertNull(summary.getFailures().get(0).getInput());
+            assertTrue(summary.getFailures().get(0).getMessage().contains("unreadable"));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    private static Path write(Path file, String text) throws IOException {
+        Files.createDirectories(file.getParent());
+        return Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> walk = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) walk.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
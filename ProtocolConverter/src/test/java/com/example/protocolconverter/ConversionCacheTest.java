@@ -0,0 +1,134 @@
+package com.example.protocolconverter;
+
+import com.example.protocolconverter.model.CodecRegistry;
+import com.example.protocolconverter.model.ConversionCache;
+import com.example.protocolconverter.model.FormatCodec;
+import com.example.protocolconverter.model.ProtocolConverter;
+import com.risenperspectives.pgparsers.PGPException;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConversionCacheTest {
+
+    private final CodecRegistry registry = CodecRegistry.withDefaults();
+    private final FormatCodec json = registry.get("JSON");
+    private final FormatCodec xml = registry.get("XML");
+    private final FormatCodec flat = registry.get("FLAT");
+
+    @Test
+    public void testConvertsOnce() throws Exception {
+        ConversionCache cache = new ConversionCache(1 << 20, 4);
+        ProtocolConverter converter = new ProtocolConverter(registry, cache);
+        String input = "{ a: 1, b: [x, z] }";
+
+        String first = converter.convert(input, json, flat);
+        assertEquals("a=1\nb.[0]=x\nb.[1]=z\n", first);
+        assertSame(first, converter.convert(input, json, flat));
+        assertSame(first, converter.convert(CharBuffer.wrap(input.toCharArray()), json, flat));
+        assertSame(first, converter.convert(new StringBuilder(input), json, flat));
+        StringWriter writer = new StringWriter();
+        converter.convert(input, json, flat, null, writer);
+        assertEquals(first, writer.toString());
+        assertEquals(4, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        converter.convert(input, json, xml);                    // Another format
+        converter.convert("{ a: 2, b: [x, z] }", json, flat);   // Another input
+        converter.convert(input, json, xml, (done, total) -> true);    // Not cached with a listener
+        assertEquals(3, cache.getMisses());
+        assertEquals(3, cache.getEntryCount());
+    }
+
+    @Test
+    public void testEvictsTheLeastRecentlyUsed() throws PGPException {
+        ConversionCache cache = new ConversionCache(1200, 1);
+        String[] inputs = new String[5];
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = String.valueOf(i).repeat(100);
+        }
+        for (int i = 0; i < 3; i++) {
+            convert(cache, inputs[i]);      // Each takes 2 * 200 chars and a little, so two fit
+        }
+        assertEquals(2, cache.getEntryCount());
+        assertEquals(1, cache.getEvictions());
+        convert(cache, inputs[1]);          // Used, so inputs[2] is the least recently used
+        convert(cache, inputs[3]);
+        assertEquals(1, cache.getHits());
+        convert(cache, inputs[1]);
+        assertEquals(2, cache.getHits());
+        convert(cache, inputs[2]);
+        assertEquals(5, cache.getMisses());
+        assertTrue(cache.getSizeBytes() <= 1200);
+
+        convert(cache, "x".repeat(1000));  // Too large to keep
+        assertEquals(2, cache.getEntryCount());
+        cache.clear();
+        assertEquals(0, cache.getEntryCount());
+        assertEquals(0, cache.getSizeBytes());
+    }
+
+    @Test
+    public void testSharesConcurrentConversions() throws Exception {
+        ConversionCache cache = new ConversionCache(1 << 20, 16);
+        AtomicInteger conversions = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> outputs = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                outputs.add(pool.submit(() -> cache.get("same", json, xml, 0, () -> {
+                    conversions.incrementAndGet();
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return "output";
+                })));
+            }
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            while (cache.getShared() + cache.getHits() < 7) {
+                Thread.sleep(1);    // Until the others are waiting, or have found the output
+            }
+            release.countDown();
+            for (Future<String> output : outputs) {
+                assertEquals("output", output.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(1, conversions.get());
+            assertEquals(1, cache.getMisses());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testDoesNotKeepFailures() {
+        ConversionCache cache = new ConversionCache(1 << 20, 1);
+        ProtocolConverter converter = new ProtocolConverter(registry, cache);
+        assertThrows(PGPException.class, () -> converter.convert("{ a: ", json, xml));
+        assertThrows(PGPException.class, () -> converter.convert("{ a: ", json, xml));
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    private void convert(ConversionCache cache, String input) throws PGPException {
+        cache.get(input, json, json, 0, () -> input.toUpperCase());
+    }
+}
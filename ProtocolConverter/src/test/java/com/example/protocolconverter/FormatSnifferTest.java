@@ -0,0 +1,105 @@
+package com.example.protocolconverter;
+
+import com.example.protocolconverter.model.FormatSniffer;
+import com.example.protocolconverter.model.FormatSniffer.Detection;
+import com.example.protocolconverter.model.ProtocolConverter;
+import com.risenperspectives.pgparsers.PGPException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FormatSnifferTest {
+
+    private final FormatSniffer sniffer = new FormatSniffer();
+
+    private String format(String text) {
+        return sniffer.sniff(text).getFormat();
+    }
+
+    @Test
+    public void testPlainDocuments() {
+        assertEquals("XML", format("<?xml version='1.0'?><a/>"));
+        assertEquals("XML", format("\n  <!-- c --><a/>"));
+        assertEquals("JSON", format("{ \"a\": 1 }"));
+        assertEquals("JSON", format("[1, 2]"));
+        assertEquals("FLAT", format("a.b=1\na.c=2\n"));
+        assertEquals("YAML", format("a: 1\nb:\n  - x\n  - y\n"));
+        assertEquals("YAML", format("---\na: 1\n"));
+        assertEquals("YAML", format("- x\n- y\n"));
+    }
+
+    @Test
+    public void testJsonAfterHashComment() {
+        // '#' comments are in JSON, YAML and FLAT. What follows them decides.
+        Detection detection = sniffer.sniff("# settings\n# more\n{ a: 1 }");
+        assertEquals("JSON", detection.getFormat());
+        assertTrue(detection.getScore("JSON") > detection.getScore("YAML"));
+        assertEquals("YAML", format("# settings\na: 1\n"));
+        assertEquals("FLAT", format("# settings\na=1\n"));
+    }
+
+    @Test
+    public void testJsonAfterSlashComments() {
+        Detection detection = sniffer.sniff("// c\n/* multi\nline */ { a: 1 }");
+        assertEquals("JSON", detection.getFormat());
+        assertEquals(0.0, detection.getScore("YAML"));
+    }
+
+    @Test
+    public void testFlatLinesWithBraces() {
+        assertEquals("FLAT", format("a.b={x}\na.c=[1, 2]\na.d=k: v\n"));
+        assertEquals("FLAT", format("[0].name=x\n[1].name=y\n"));
+        assertEquals("FLAT", format("a.b#id=7\na.b=text\n"));
+    }
+
+    @Test
+    public void testMixedLinesLowerConfidence() {
+        Detection clean = sniffer.sniff("a=1\nb=2\nc=3\nd=4\n");
+        Detection mixed = sniffer.sniff("a=1\nb: 2\nc=3\nd=4\n");
+        assertEquals("FLAT", mixed.getFormat());
+        assertTrue(mixed.getConfidence() < clean.getConfidence());
+        assertTrue(mixed.getScore("YAML") > 0);
+    }
+
+    @Test
+    public void testNothingToGoOn() {
+        assertNull(format(""));
+        assertNull(format("  \n# only a comment\n"));
+        assertEquals(0.0, sniffer.sniff("").getConfidence());
+    }
+
+    @Test
+    public void testOnlyThePrefixIsRead() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            sb.append("key").append(i).append("=value\n");
+        }
+        sb.append("this: is yaml\n");
+        FormatSniffer small = new FormatSniffer(256);
+        Detection detection = small.sniff(sb);
+        assertEquals("FLAT", detection.getFormat());
+        assertEquals(0.0, detection.getScore("YAML"));
+    }
+
+    @Test
+    public void testBytes() {
+        byte[] utf8 = "\uFEFF<a>\u00e9</a>".getBytes(StandardCharsets.UTF_8);
+        assertEquals("XML", sniffer.sniff(utf8, 0, utf8.length).getFormat());
+        byte[] utf16 = "{ a: 1 }".getBytes(StandardCharsets.UTF_16);
+        assertEquals("JSON", sniffer.sniff(utf16, 0, utf16.length).getFormat());
+        byte[] flat = "xxa.b=1\n".getBytes(StandardCharsets.US_ASCII);
+        assertEquals("FLAT", sniffer.sniff(flat, 2, flat.length - 2).getFormat());
+    }
+
+    @Test
+    public void testConverterRoutesBySniffing() throws PGPException {
+        ProtocolConverter converter = new ProtocolConverter();
+        assertEquals("FLAT", converter.detectFormat("a.b={x}\n").getName());
+        assertEquals("a.b={x}\n", converter.convertToFlat("a.b={x}\n"));
+        assertEquals("JSON", converter.detectFormat("anything else").getName());
+    }
+}
@@ -1,31 +1,207 @@
 package com.example.protocolconverter;
 
+import com.example.protocolconverter.model.CodecRegistry;
+import com.example.protocolconverter.model.FormatCodec;
+import com.example.protocolconverter.model.ParsedDocument;
 import com.example.protocolconverter.model.ProtocolConverter;
+import com.risenperspectives.pgparsers.PGPException;
+import com.risenperspectives.pgparsers.PGPFormatMetrics;
+import com.risenperspectives.pgparsers.PGPJmxMetrics;
+import com.risenperspectives.pgparsers.PGPMetrics;
+import com.risenperspectives.pgparsers.PGPNode;
+import com.risenperspectives.pgparsers.PGParsersInterface;
+import com.risenperspectives.pgparsers.PGPSerializerInterface;
 import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.management.MBeanServer;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class ProtocolConverterTest {
 
     private final ProtocolConverter converter = new ProtocolConverter();
 
     @Test
-    public void testConvertToXML() {
-        String input = "test";
-        String expected = "Converted to XML: " + input;
+    public void testConvertToXML() throws PGPException {
+        String input = "{ name: value }";
+        String expected = "  <name>value</name>";
         assertEquals(expected, converter.convertToXML(input));
     }
 
     @Test
-    public void testConvertToJson() {
-        String input = "test";
-        String expected = "Converted to JSON: " + input;
+    public void testConvertToJson() throws PGPException {
+        String input = "<a><b>t</b></a>";
+        String expected = "{\n  \"a\": {\n    \"b\": \"t\"\n  }\n}";
         assertEquals(expected, converter.convertToJson(input));
     }
 
     @Test
-    public void testConvertToFlat() {
-        String input = "test";
-        String expected = "Converted to FLAT: " + input;
+    public void testConvertToYaml() throws PGPException {
+        String input = "{ name: value, n: 1 }";
+        String expected = "  name: value\n  n: 1\n";
+        assertEquals(expected, converter.convertToYaml(input));
+    }
+
+    @Test
+    public void testConvertToFlat() throws PGPException {
+        String input = "{ name: value, n: 1 }";
+        String expected = "name=value\nn=1\n";
         assertEquals(expected, converter.convertToFlat(input));
     }
+
+    @Test
+    public void testConvertByName() throws PGPException {
+        assertEquals("name=value\nn=1\n", converter.convert("name=value\nn=1\n", "flat", "Flat"));
+        assertThrows(IllegalArgumentException.class, () -> converter.convert("{}", "JSON", "NOPE"));
+        assertThrows(UnsupportedOperationException.class, () -> converter.convert("a: 1", "YAML", "JSON"));
+    }
+
+    @Test
+    public void testSyntaxError() {
+        assertThrows(PGPException.class, () -> converter.convertToXML("{ a: "));
+    }
+
+    @Test
+    public void testProgressAndCancel() throws PGPException {
+        StringBuilder sb = new StringBuilder("{ items: [");
+        for (int i = 0; i < 20000; i++) {
+            sb.append(i == 0 ? "" : ", ").append("{ id: ").append(i).append(" }");
+        }
+        String input = sb.append("] }").toString();
+        FormatCodec json = converter.getRegistry().get("JSON");
+        FormatCodec xml = converter.getRegistry().get("XML");
+
+        List<Integer> reports = new ArrayList<>();
+        converter.convert(input, json, xml, (done, total) -> {
+            reports.add(done);
+            return true;
+        });
+        assertTrue(reports.size() > 2);
+        assertEquals(input.length(), (int) reports.get(reports.size() - 1));
+
+        assertThrows(PGPException.class, () -> converter.convert(input, json, xml, (done, total) -> false));
+        assertEquals(converter.convertToXML(input), converter.convert(input, json, xml, null));
+    }
+
+    @Test
+    public void testConvertToWriter() throws PGPException, IOException {
+        String input = "{ a: { b: 1, c: [x, y] }, d: text }";
+        CodecRegistry registry = converter.getRegistry();
+        for (String format : new String[] { "XML", "JSON", "YAML", "FLAT" }) {
+            StringWriter writer = new StringWriter();
+            converter.convert(input, registry.get("JSON"), registry.get(format), null, writer);
+            assertEquals(converter.convert(input, "JSON", format), writer.toString());
+        }
+    }
+
+    @Test
+    public void testParsedDocumentReusesTheTree() throws PGPException {
+        FormatCodec json = converter.getRegistry().get("JSON");
+        FormatCodec flat = converter.getRegistry().get("FLAT");
+        ParsedDocument document = new ParsedDocument();
+        PGPNode topNode = document.parse("{ a: { b: 1, c: [x, y] }, d: text }", json, null);
+
+        String edited = "{ a: { b: 22, c: [x, y, z] }, d: text }";
+        assertSame(topNode, document.parse(edited, json, null));
+        assertEquals(converter.convert(edited, json, flat), converter.serialize(topNode, flat));
+        assertEquals(9, topNode.getChild().getChild().getNext().getSpanEnd() - topNode.getChild().getChild().getNext().getSpanStart());
+
+        assertThrows(PGPException.class, () -> document.parse("{ a: { b: 22, c: [x, y, z }, d: text }", json, null));
+        String fixed = "{ a: { b: 3 }, d: text }";
+        assertEquals(converter.convert(fixed, json, flat), converter.serialize(document.parse(fixed, json, null), flat));
+    }
+
+    @Test
+    public void testConvertCharSequence() throws PGPException {
+        String input = "{ a: { b: 1, c: [x, y] }, d: text }";
+        FormatCodec json = converter.getRegistry().get("JSON");
+        for (String format : new String[] { "XML", "JSON", "YAML", "FLAT" }) {
+            FormatCodec to = converter.getRegistry().get(format);
+            String expected = converter.convert(input, json, to);
+            assertEquals(expected, converter.convert(CharBuffer.wrap(input.toCharArray()), json, to));
+            assertEquals(expected, converter.convert(new StringBuilder(input), json, to));
+        }
+        assertEquals("XML", converter.detectFormat(new StringBuilder("<a/>")).getName());
+
+        ParsedDocument document = new ParsedDocument();
+        PGPNode topNode = document.parse(CharBuffer.wrap(input.toCharArray()), json, null);
+        assertSame(topNode, document.parse(CharBuffer.wrap(input.replace("1", "2").toCharArray()), json, null));
+    }
+
+    @Test
+    public void testDetectFormat() throws PGPException {
+        assertEquals("XML", converter.detectFormat("  <a/>").getName());
+        assertEquals("JSON", converter.detectFormat("{ a: 1 }").getName());
+        assertEquals("FLAT", converter.detectFormat("a.b=1\n").getName());
+        // As likely FLAT as YAML, and YAML can't be read
+        assertEquals("FLAT", converter.detectFormat("a=1\nb: 2\n").getName());
+    }
+
+    @Test
+    public void testDetectUnreadableFormat() {
+        for (String input : new String[] { "name: x", "a: 1", "---" }) {
+            PGPException e = assertThrows(PGPException.class, () -> converter.detectFormat(input));
+            assertEquals("Input looks like YAML, which can't be read", e.getMessage());
+            assertThrows(PGPException.class, () -> converter.convertToJson(input));
+            assertThrows(PGPException.class, () -> converter.convert(input, null, "XML"));
+        }
+    }
+
+    @Test
+    public void testRegistry() {
+        CodecRegistry registry = CodecRegistry.withDefaults();
+        assertSame(registry.get("json"), registry.get("JSON"));
+        assertNull(registry.find("NOPE"));
+        assertFalse(registry.get("YAML").canParse());
+        assertFalse(registry.get("JSONL").canSerialize());
+    }
+
+    @Test
+    public void testCodecsArePerThread() throws InterruptedException {
+        FormatCodec json = converter.getRegistry().get("JSON");
+        PGParsersInterface parser = json.parser();
+        PGPSerializerInterface serializer = json.serializer();
+        assertSame(parser, json.parser());
+        assertSame(serializer, json.serializer());
+
+        AtomicReference<PGParsersInterface> otherParser = new AtomicReference<>();
+        Thread thread = new Thread(() -> otherParser.set(json.parser()));
+        thread.start();
+        thread.join();
+        assertNotSame(parser, otherParser.get());
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        assertSame(PGPMetrics.NONE, converter.getRegistry().get("JSON").parser().getMetrics());
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try (PGPJmxMetrics metrics = new PGPJmxMetrics("ProtocolConverterTest", server)) {
+            ProtocolConverter metered = new ProtocolConverter(CodecRegistry.withDefaults(metrics));
+            metered.convert("{ a: [1, { b: 2 }] }", "JSON", "XML");
+            assertThrows(PGPException.class, () -> metered.convert("{ a: ", "JSON", "XML"));
+
+            PGPFormatMetrics json = metrics.get("JSON");
+            assertEquals(1, json.getParseCount());
+            assertEquals(1, json.getParseErrorCount());
+            assertEquals(3, json.getParseMaxDepth());
+            assertEquals(1L, server.getAttribute(metrics.objectName("XML"), "SerializeCount"));
+            assertTrue((Long) server.getAttribute(metrics.objectName("XML"), "SerializeChars") > 0);
+        }
+        assertFalse(server.isRegistered(new PGPJmxMetrics("ProtocolConverterTest", server).objectName("JSON")));
+    }
 }
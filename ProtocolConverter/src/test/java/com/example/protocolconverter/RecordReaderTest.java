@@ -0,0 +1,115 @@
+package com.example.protocolconverter;
+
+import com.example.protocolconverter.cli.PipeCommand;
+import com.example.protocolconverter.model.RecordReader;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RecordReaderTest {
+
+    @Test
+    public void testLines() throws IOException {
+        assertEquals(List.of("{ a: 1 }", "{ b: 2 }", "  { c: 3 }"),
+                records("\n{ a: 1 }\r\n\n{ b: 2 }\n  { c: 3 }", RecordReader.Framing.LINES));
+    }
+
+    @Test
+    public void testBlankLines() throws IOException {
+        assertEquals(List.of("a=1\nb=2\n", "c=3\n", "d=4"),
+                records("\n \na=1\nb=2\n\nc=3\n \r\n\nd=4", RecordReader.Framing.BLANK_LINES));
+    }
+
+    @Test
+    public void testXmlDocuments() throws IOException {
+        String stream = "<?xml version='1.0'?>\n<!-- first -->\n<a x='>'><b/><!-- <c> --><![CDATA[</a>]]></a>"
+                + "<a/>  \n<!DOCTYPE a [ <!ELEMENT a ANY> ]><a>t</a>\n<?xml version=\"1.0\"?><a><b>1</b>";
+        assertEquals(List.of("<a x='>'><b/><!-- <c> --><![CDATA[</a>]]></a>", "<a/>", "<a>t</a>", "<a><b>1</b>"),
+                records(stream, RecordReader.Framing.XML_DOCUMENTS));
+    }
+
+    @Test
+    public void testRecordTooLong() throws IOException {
+        RecordReader reader = new RecordReader(new StringReader("short\n" + "x".repeat(5000) + "\nafter\n"),
+                RecordReader.Framing.LINES, 1000);
+        assertEquals("short", reader.next().toString());
+        assertThrows(RecordReader.RecordTooLongException.class, reader::next);
+        assertEquals("after", reader.next().toString());
+        assertEquals(2, reader.getRecordLine());
+    }
+
+    @Test
+    public void testPipe() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        InputStream in = new ByteArrayInputStream("{ a: 1 }\n{ b: \n{ c: [x, z] }\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals(1, PipeCommand.run(new String[] { "--from", "JSONL", "--to", "FLAT" }, in, out, new PrintStream(err)));
+        assertEquals("a=1\n\nc.[0]=x\nc.[1]=z\n\n", out.toString(StandardCharsets.UTF_8));
+        assertTrue(err.toString().startsWith("Error on line 1"));
+
+        in = new ByteArrayInputStream("a=1\n\nb.c=2\n".getBytes(StandardCharsets.UTF_8));
+        out.reset();
+        assertEquals(0, PipeCommand.run(new String[] { "--from", "FLAT", "--to", "XML" }, in, out, new PrintStream(err)));
+        assertEquals("  <a>1</a>\n  <b>\n    <c>2</c>\n  </b>\n", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testPipeWritesEachRecordWithoutWaitingForTheEnd() throws IOException, InterruptedException {
+        PipedOutputStream feed = new PipedOutputStream();
+        PipedInputStream in = new PipedInputStream(feed);
+        BlockingQueue<String> lines = new ArrayBlockingQueue<>(10);
+        OutputStream out = new OutputStream() {
+            private final StringBuilder line = new StringBuilder();
+
+            @Override
+            public void write(int b) {
+                if (b == '\n') {
+                    lines.add(line.toString());
+                    line.setLength(0);
+                } else {
+                    line.append((char) b);
+                }
+            }
+        };
+        Thread pipe = new Thread(() -> PipeCommand.run(new String[] { "--from", "XML", "--to", "FLAT" }, in, out, System.err));
+        pipe.start();
+
+        feed.write("<a>1</a>".getBytes(StandardCharsets.UTF_8));
+        feed.flush();
+        assertEquals("a=1", lines.poll(10, TimeUnit.SECONDS));
+        feed.write("<b>2</b>".getBytes(StandardCharsets.UTF_8));
+        feed.flush();
+        assertEquals("", lines.poll(10, TimeUnit.SECONDS));
+        assertEquals("b=2", lines.poll(10, TimeUnit.SECONDS));
+
+        feed.close();
+        pipe.join(10000);
+    }
+
+    private static List<String> records(String stream, RecordReader.Framing framing) throws IOException {
+        List<String> records = new ArrayList<>();
+        RecordReader reader = new RecordReader(new StringReader(stream), framing, 1 << 20);
+        for (CharSequence record = reader.next(); record != null; record = reader.next()) {
+            records.add(record.toString());
+        }
+        return records;
+    }
+}
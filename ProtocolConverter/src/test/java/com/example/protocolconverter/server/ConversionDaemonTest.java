@@ -0,0 +1,130 @@
+package com.example.protocolconverter.server;
+
+import com.example.protocolconverter.cli.ClientCommand;
+import com.example.protocolconverter.model.CodecRegistry;
+import com.example.protocolconverter.model.FormatCodec;
+import com.example.protocolconverter.model.ProtocolConverter;
+import com.risenperspectives.pgparsers.JsonPGPSerializer;
+import com.risenperspectives.pgparsers.JsonPGParser;
+import com.risenperspectives.pgparsers.PGPNode;
+import com.risenperspectives.pgparsers.PGPOptionFlags;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConversionDaemonTest {
+
+    @Test
+    public void testClient() throws IOException {
+        Path dir = Files.createTempDirectory("daemon");
+        Path socket = dir.resolve("test.sock");
+        try (ConversionDaemon daemon = new ConversionDaemon(new ProtocolConverter(), socket, 2, 1000)) {
+            daemon.start();
+            assertTrue(ConversionDaemon.isRunning(socket));
+            assertThrows(IOException.class, () -> new ConversionDaemon(new ProtocolConverter(), socket, 1, 1000));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            assertEquals(0, client(socket, "{ a: 1, b: [x, z] }", out, err, "--to", "FLAT"));
+            assertEquals("a=1\nb.[0]=x\nb.[1]=z\n", out.toString(StandardCharsets.UTF_8));
+            out.reset();
+            assertEquals(0, client(socket, "<a>1</a>", out, err, "--from", "XML", "--to", "JSON"));
+            assertEquals("{\n  \"a\": \"1\"\n}", out.toString(StandardCharsets.UTF_8));
+
+            assertEquals(1, client(socket, "{ a: ", out, err, "--from", "JSON", "--to", "XML"));
+            assertTrue(err.toString().startsWith("Error on line 0"));
+            err.reset();
+            assertEquals(1, client(socket, "{}", out, err, "--to", "NOPE"));
+            assertEquals("Unknown format: NOPE", err.toString().trim());
+            err.reset();
+            assertEquals(1, client(socket, "x".repeat(5000), out, err, "--to", "XML"));
+            assertTrue(err.toString().startsWith("The input is over 1000 bytes"));
+            assertEquals(2, client(socket, "{}", out, err, "--from", "JSON"));
+        } finally {
+            assertFalse(Files.exists(socket));
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testReplacesALeftOverSocket() throws IOException {
+        Path dir = Files.createTempDirectory("daemon");
+        Path socket = Files.createFile(dir.resolve("test.sock"));
+        ConversionDaemon daemon = new ConversionDaemon(new ProtocolConverter(), socket, 1, 1000);
+        try {
+            assertTrue(ConversionDaemon.isRunning(socket));
+        } finally {
+            daemon.close();
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testAnswersRuntimeExceptions() throws IOException {
+        CodecRegistry registry = CodecRegistry.withDefaults();
+        registry.register(new FormatCodec("BROKEN", () -> new JsonPGParser() {
+            @Override
+            public PGPNode parse(CharSequence text) {
+                throw new IllegalStateException("parser bug");
+            }
+        }, () -> new JsonPGPSerializer() {
+            @Override
+            public StringBuilder serialize(StringBuilder sb, PGPNode node, PGPOptionFlags flags) {
+                throw new IllegalStateException("serializer bug");
+            }
+        }));
+        Path dir = Files.createTempDirectory("daemon");
+        Path socket = dir.resolve("test.sock");
+        try (ConversionDaemon daemon = new ConversionDaemon(new ProtocolConverter(registry), socket, 1, 1000)) {
+            daemon.start();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ByteArrayOutputStream err = new ByteArrayOutputStream();
+            assertEquals(1, client(socket, "{}", out, err, "--from", "BROKEN", "--to", "XML"));
+            assertTrue(err.toString().contains("parser bug"));
+            err.reset();
+            assertEquals(1, client(socket, "{}", out, err, "--from", "JSON", "--to", "BROKEN"));
+            assertTrue(err.toString().contains("serializer bug"));
+            // The one worker is still there
+            assertEquals(0, client(socket, "{ a: 1 }", out, err, "--to", "FLAT"));
+        } finally {
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testPrivateDirectory() throws IOException {
+        Path dir = Files.createTempDirectory("daemon");
+        try {
+            Files.setPosixFilePermissions(dir, PosixFilePermissions.fromString("rwx------"));
+            assertTrue(ConversionDaemon.isPrivateDirectory(dir));
+            Files.setPosixFilePermissions(dir, PosixFilePermissions.fromString("rwxrwxrwx"));
+            assertFalse(ConversionDaemon.isPrivateDirectory(dir));
+            assertFalse(ConversionDaemon.isPrivateDirectory(Files.createSymbolicLink(dir.resolve("link"), dir)));
+            Files.delete(dir.resolve("link"));
+        } finally {
+            Files.delete(dir);
+        }
+    }
+
+    private static int client(Path socket, String input, ByteArrayOutputStream out, ByteArrayOutputStream err,
+                              String... args) {
+        String[] withSocket = new String[args.length + 2];
+        withSocket[0] = "--socket";
+        withSocket[1] = socket.toString();
+        System.arraycopy(args, 0, withSocket, 2, args.length);
+        return ClientCommand.run(withSocket, new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), out,
+                new PrintStream(err));
+    }
+}
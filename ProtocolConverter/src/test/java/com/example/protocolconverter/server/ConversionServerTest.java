@@ -0,0 +1,126 @@
+package com.example.protocolconverter.server;
+
+import com.example.protocolconverter.cli.LoadTestCommand;
+import com.example.protocolconverter.model.CodecRegistry;
+import com.example.protocolconverter.model.ConversionCache;
+import com.example.protocolconverter.model.FormatCodec;
+import com.example.protocolconverter.model.ProtocolConverter;
+import com.risenperspectives.pgparsers.FlatPGPSerializer;
+import com.risenperspectives.pgparsers.JsonPGParser;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConversionServerTest {
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    @Test
+    public void testConvert() throws IOException, InterruptedException {
+        try (ConversionServer server = new ConversionServer(new ProtocolConverter(), 0, 2, 1000)) {
+            server.start();
+            String base = "http://127.0.0.1:" + server.getPort() + "/convert";
+
+            HttpResponse<String> response = post(base + "?from=JSON&to=FLAT", "{ a: 1, b: [x, z] }");
+            assertEquals(200, response.statusCode());
+            assertEquals("a=1\nb.[0]=x\nb.[1]=z\n", response.body());
+            assertEquals("a=1\n", post(base + "?to=flat", "<a>1</a>").body());  // Detected as XML
+
+            response = post(base + "?from=JSON&to=XML", "{ a: ");
+            assertEquals(400, response.statusCode());
+            assertTrue(response.body().startsWith("Error on line 0"));
+            assertEquals(400, post(base + "?to=NOPE", "{}").statusCode());
+            assertEquals(400, post(base + "?from=JSON&to=JSONL", "{}").statusCode());
+            assertEquals(413, post(base + "?to=XML", "{ a: '" + "x".repeat(2000) + "' }").statusCode());
+            HttpRequest chunked = HttpRequest.newBuilder(URI.create(base + "?to=XML"))
+                    .POST(HttpRequest.BodyPublishers.ofInputStream(() -> new ByteArrayInputStream(new byte[5000]))).build();
+            assertEquals(413, client.send(chunked, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+            HttpRequest get = HttpRequest.newBuilder(URI.create(base)).GET().build();
+            assertEquals(405, client.send(get, HttpResponse.BodyHandlers.ofString()).statusCode());
+        }
+    }
+
+    @Test
+    public void testCachedConvert() throws IOException, InterruptedException {
+        ConversionCache cache = new ConversionCache(1 << 20);
+        try (ConversionServer server = new ConversionServer(new ProtocolConverter(CodecRegistry.withDefaults(), cache),
+                0, 2, 1000)) {
+            server.start();
+            String base = "http://127.0.0.1:" + server.getPort() + "/convert";
+            for (int i = 0; i < 3; i++) {
+                assertEquals("a=1\n", post(base + "?from=JSON&to=FLAT", "{ a: 1 }").body());
+            }
+            assertEquals(2, cache.getHits());
+            assertEquals(400, post(base + "?from=JSON&to=XML", "{ a: ").statusCode());
+            assertEquals(400, post(base + "?from=JSON&to=JSONL", "{ a: 1 }").statusCode());
+            assertEquals(1, cache.getEntryCount());
+        }
+    }
+
+    @Test
+    public void testParsersAreKeptBetweenRequests() throws IOException, InterruptedException {
+        AtomicInteger parsers = new AtomicInteger();
+        AtomicInteger serializers = new AtomicInteger();
+        CodecRegistry registry = CodecRegistry.withDefaults();
+        registry.register(new FormatCodec("JSON", () -> {
+            parsers.incrementAndGet();
+            return new JsonPGParser();
+        }, null));
+        registry.register(new FormatCodec("FLAT", null, () -> {
+            serializers.incrementAndGet();
+            return new FlatPGPSerializer();
+        }));
+        int maxConcurrent = 2;
+        try (ConversionServer server = new ConversionServer(new ProtocolConverter(registry), 0, maxConcurrent, 1000)) {
+            server.start();
+            String base = "http://127.0.0.1:" + server.getPort() + "/convert";
+            for (int i = 0; i < 20; i++) {
+                assertEquals("a=" + i + "\n", post(base + "?from=JSON&to=FLAT", "{ a: " + i + " }").body());
+            }
+            // One for each thread that converts: the converter threads behind virtual threads, or
+            // the platform pool's threads
+            int threads = server.usesVirtualThreads() ? maxConcurrent : 2 * maxConcurrent;
+            assertTrue(parsers.get() <= threads, parsers + " parsers");
+            assertTrue(serializers.get() <= threads, serializers + " serializers");
+        }
+    }
+
+    @Test
+    public void testLoadTest() throws IOException {
+        Path file = Files.createTempFile("load", ".json");
+        try (ConversionServer server = new ConversionServer(new ProtocolConverter(), 0, 2, 1 << 20)) {
+            server.start();
+            Files.write(file, "{ id: 1, tags: [a, b] }".getBytes(StandardCharsets.UTF_8));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            String[] args = { "--url", "http://127.0.0.1:" + server.getPort() + "/convert?from=JSON&to=XML",
+                    "--file", file.toString(), "--concurrency", "1,2", "--duration", "0.5", "--warmup", "0" };
+            assertEquals(0, LoadTestCommand.run(args, new PrintStream(out), System.err));
+            String[] lines = out.toString().split("\n");
+            assertEquals(3, lines.length);
+            assertTrue(lines[2].trim().startsWith("2 "));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private HttpResponse<String> post(String uri, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(uri))
+                .POST(HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8)).build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.protocolconverter.view;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LineFileModelTest {
+
+    @Test
+    public void testLines() throws IOException {
+        Path file = Files.createTempFile("lines", ".txt");
+        try {
+            Files.write(file, "first\r\nsecond\tx\n\nl\u00e4st".getBytes(StandardCharsets.UTF_8));
+            try (LineFileModel model = new LineFileModel(file)) {
+                assertEquals(4, model.getSize());
+                assertEquals("first", model.getElementAt(0));
+                assertEquals("second    x", model.getElementAt(1));
+                assertEquals("", model.getElementAt(2));
+                assertEquals("l\u00e4st", model.getElementAt(3));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testEmptyFileAndTrailingNewline() throws IOException {
+        Path file = Files.createTempFile("lines", ".txt");
+        try {
+            try (LineFileModel model = new LineFileModel(file)) {
+                assertEquals(0, model.getSize());
+            }
+            Files.write(file, "a\nb\n".getBytes(StandardCharsets.UTF_8));
+            try (LineFileModel model = new LineFileModel(file)) {
+                assertEquals(2, model.getSize());
+                assertEquals("b", model.getElementAt(1));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testLargeFileReadsOnlyWhatIsAsked() throws IOException {
+        Path file = Files.createTempFile("lines", ".txt");
+        try {
+            try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                for (int i = 0; i < 300000; i++) {
+                    writer.write("line " + i + "\n");
+                }
+                char[] longLine = new char[100000];
+                Arrays.fill(longLine, 'x');
+                writer.write(longLine);
+            }
+            try (LineFileModel model = new LineFileModel(file)) {
+                assertEquals(300001, model.getSize());
+                assertEquals("line 0", model.getElementAt(0));
+                assertEquals("line 299999", model.getElementAt(299999));
+                assertEquals("line 123456", model.getElementAt(123456));
+                assertTrue(model.getElementAt(300000).endsWith(" ..."));
+                assertTrue(model.getElementAt(300000).length() < 20000);
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+}